@@ -3,8 +3,6 @@ package edu.ucsf.rbvi.enhancedGraphics.internal;
 import java.awt.Color;
 import java.awt.Image;
 import java.awt.geom.Point2D;
-import java.io.StreamTokenizer;
-import java.io.StringReader;
 import java.net.URL;
 import java.util.ArrayList;
 import java.util.HashMap;
@@ -24,6 +22,8 @@ import org.cytoscape.view.presentation.customgraphics.CyCustomGraphics;
 import org.cytoscape.view.presentation.customgraphics.CyCustomGraphicsFactory;
 import org.cytoscape.view.presentation.customgraphics.CustomGraphicLayer;
 
+import edu.ucsf.rbvi.enhancedGraphics.internal.parse.SpecLexer;
+
 public abstract class AbstractEnhancedCustomGraphics <T extends CustomGraphicLayer>
                 implements CyCustomGraphics <T> {
 
@@ -34,6 +34,7 @@ public abstract class AbstractEnhancedCustomGraphics <T extends CustomGraphicLay
 	protected int width = 50;
 	protected int height = 50;
 	protected Logger logger;
+	protected String error = null;
 
 	protected AbstractEnhancedCustomGraphics() {
 		layers = new ArrayList<T>();
@@ -59,58 +60,19 @@ public abstract class AbstractEnhancedCustomGraphics <T extends CustomGraphicLay
 		return displayName;
 	}
 
+	/**
+ 	 * Return the reason this custom graphics couldn't be created from its spec
+ 	 *
+ 	 * @return the error, or null if the spec is valid
+ 	 */
+	public String getError() { return error; }
+
 	abstract public Image getRenderedImage();
 	abstract public String toSerializableString();
 
 
 	protected Map<String, String> parseInput(String input) {
-		Map<String,String> settings = new HashMap<String,String>();
-
-		// Tokenize
-		StringReader reader = new StringReader(input);
-		StreamTokenizer st = new StreamTokenizer(reader);
-
-		// We don't really want to parse numbers as numbers...
-		st.ordinaryChar('/');
-		st.ordinaryChar('_');
-		st.ordinaryChar('-');
-		st.ordinaryChar('.');
-		st.ordinaryChars('0', '9');
-
-		st.wordChars('/', '/');
-		st.wordChars('_', '_');
-		st.wordChars('-', '-');
-		st.wordChars('.', '.');
-		st.wordChars('0', '9');
-
-		List<String> tokenList = new ArrayList<>();
-		int tokenIndex = 0;
-		int i;
-		try {
-			while ((i = st.nextToken()) != StreamTokenizer.TT_EOF) {
-				switch(i) {
-					case '=':
-						// Get the next token
-						i = st.nextToken();
-						if (i == StreamTokenizer.TT_WORD || i == '"') {
-							tokenIndex--;
-							String key = tokenList.get(tokenIndex);
-							settings.put(key, st.sval);
-							tokenList.remove(tokenIndex);
-						}
-						break;
-					case '"':
-					case StreamTokenizer.TT_WORD:
-						tokenList.add(st.sval);
-						tokenIndex++;
-						break;
-					default:
-						break;
-				}
-			}
-		} catch (Exception e) { return new HashMap<String,String>(); }
-
-		return settings;
+		return SpecLexer.parse(input);
 	}
 
 	protected Point2D parsePoint(String point) {
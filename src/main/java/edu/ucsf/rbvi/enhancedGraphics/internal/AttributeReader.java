@@ -0,0 +1,158 @@
+package edu.ucsf.rbvi.enhancedGraphics.internal;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.cytoscape.application.CyUserLog;
+import org.cytoscape.model.CyColumn;
+import org.cytoscape.model.CyRow;
+import org.cytoscape.model.CyTable;
+import org.apache.log4j.Logger;
+
+import edu.ucsf.rbvi.enhancedGraphics.internal.charts.ValueVector;
+
+/**
+ * Reads the values of an <code>attributelist</code> from a row.  The columns
+ * are looked up once, when the reader is created, and each is given a
+ * converter for its type, so reading a row doesn't look up any columns or
+ * test any types.  The rules are those charts have always used:
+ * <ul>
+ * <li>if there is a single column and it is a list column, its elements are
+ *     the values</li>
+ * <li>otherwise each Double, Integer, Float or String column gives one value,
+ *     and columns of other types, or that don't exist, are skipped</li>
+ * </ul>
+ * If the first column doesn't exist there are no values.  Empty cells and
+ * list elements are missing values (NaN).
+ *
+ * Readers are cached by {@link EnhancedGraphicsManager#getAttributeReader},
+ * which drops them when a column of the table is created, deleted or renamed.
+ */
+public class AttributeReader {
+	final Logger logger = Logger.getLogger(CyUserLog.NAME);
+
+	private final String missingColumn;
+	private final Converter[] converters;
+
+	public AttributeReader(CyTable table, List<String> attributeList) {
+		String first = attributeList.isEmpty() ? null : attributeList.get(0);
+		CyColumn firstColumn = (first == null) ? null : table.getColumn(first);
+		if (firstColumn == null) {
+			missingColumn = first;
+			converters = new Converter[0];
+			return;
+		}
+		missingColumn = null;
+
+		List<Converter> list = new ArrayList<Converter>();
+		if (attributeList.size() == 1 && firstColumn.getType().equals(List.class)) {
+			Converter converter = createListConverter(first, firstColumn.getListElementType());
+			if (converter != null)
+				list.add(converter);
+		} else {
+			for (String col: attributeList) {
+				CyColumn column = table.getColumn(col);
+				if (column == null)
+					continue;
+				Converter converter = createConverter(col, column.getType());
+				if (converter != null)
+					list.add(converter);
+			}
+		}
+		converters = list.toArray(new Converter[list.size()]);
+	}
+
+	/**
+ 	 * Read the values from a row
+ 	 *
+ 	 * @param row the row, which must be from the table the reader was created for
+ 	 * @return the values
+ 	 */
+	public ValueVector read(CyRow row) {
+		if (missingColumn != null) {
+			logger.warn("Cannot find node attribute column "+missingColumn);
+			return new ValueVector(0);
+		}
+		ValueVector values = new ValueVector(converters.length);
+		for (Converter converter: converters)
+			converter.read(row, values);
+		return values;
+	}
+
+	private static Converter createConverter(final String column, Class<?> type) {
+		if (type == Double.class) {
+			return new Converter() {
+				void read(CyRow row, ValueVector values) {
+					values.add(row.get(column, Double.class));
+				}
+			};
+		} else if (type == Integer.class) {
+			return new Converter() {
+				void read(CyRow row, ValueVector values) {
+					values.add(row.get(column, Integer.class));
+				}
+			};
+		} else if (type == Float.class) {
+			return new Converter() {
+				void read(CyRow row, ValueVector values) {
+					values.add(row.get(column, Float.class));
+				}
+			};
+		} else if (type == String.class) {
+			return new Converter() {
+				void read(CyRow row, ValueVector values) {
+					String s = row.get(column, String.class);
+					values.add(s == null ? Double.NaN : Double.parseDouble(s));
+				}
+			};
+		}
+		return null;
+	}
+
+	private static Converter createListConverter(final String column, Class<?> type) {
+		if (type == Double.class) {
+			return new Converter() {
+				void read(CyRow row, ValueVector values) {
+					List<Double> dList = row.getList(column, Double.class);
+					if (dList == null) return;
+					for (Double d: dList)
+						values.add(d);
+				}
+			};
+		} else if (type == Integer.class || type == Long.class || type == Float.class) {
+			return new NumberListConverter(column, type);
+		} else if (type == String.class) {
+			return new Converter() {
+				void read(CyRow row, ValueVector values) {
+					List<String> sList = row.getList(column, String.class);
+					if (sList == null) return;
+					for (String s: sList)
+						values.add(s == null ? Double.NaN : Double.parseDouble(s));
+				}
+			};
+		}
+		return null;
+	}
+
+	static abstract class Converter {
+		abstract void read(CyRow row, ValueVector values);
+	}
+
+	// Integer, Long and Float lists are all read as lists of Numbers
+	static class NumberListConverter extends Converter {
+		private final String column;
+		private final Class<? extends Number> type;
+
+		NumberListConverter(String column, Class<?> type) {
+			this.column = column;
+			this.type = type.asSubclass(Number.class);
+		}
+
+		void read(CyRow row, ValueVector values) {
+			List<? extends Number> list = row.getList(column, type);
+			if (list == null) return;
+			for (Number n: list)
+				values.add(n);
+		}
+	}
+}
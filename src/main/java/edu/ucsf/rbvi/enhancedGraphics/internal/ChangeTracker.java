@@ -0,0 +1,362 @@
+package edu.ucsf.rbvi.enhancedGraphics.internal;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.WeakHashMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.swing.SwingUtilities;
+
+import org.cytoscape.application.CyUserLog;
+import org.cytoscape.model.CyIdentifiable;
+import org.cytoscape.model.CyRow;
+import org.cytoscape.model.CyTable;
+import org.cytoscape.model.events.RowSetRecord;
+import org.cytoscape.view.model.CyNetworkView;
+import org.cytoscape.view.model.CyNetworkViewManager;
+import org.apache.log4j.Logger;
+
+/**
+ * Keeps track of which rows and columns have changed, so that charts only
+ * redraw the nodes whose data they use has changed.
+ *
+ * Every batch of changes gets a new version.  For each row and each column we
+ * remember the version at which it last changed; something computed at
+ * version <i>v</i> from columns <i>C</i> of a row is stale if the row and at
+ * least one of the columns in <i>C</i> have changed since <i>v</i>.  (The row
+ * and column may have changed in different places, so this is conservative.)
+ * Batches too large to track row by row make everything computed before them
+ * from the columns they change stale, whatever the row, and changes to the
+ * columns themselves make everything computed before them stale.
+ *
+ * Row changes are queued by the event handlers and applied in one batch,
+ * either when a chart next asks whether something is current or shortly after
+ * a burst of events has ended, so a bulk import costs one batch rather than
+ * one per event.  When a batch is applied on its own and changes a column
+ * that a chart that has been drawn reads, the views of the table are redrawn
+ * once, on the event dispatch thread.  Changes to any other column (selecting
+ * a node, for instance) are left for Cytoscape to redraw.
+ */
+public class ChangeTracker {
+	// How long to wait for more events before applying a batch
+	public static final long COALESCE_MILLIS = 100L;
+	// Batches with more changed rows than this, or more changed rows than this
+	// in all, invalidate their columns for every row
+	public static final int MAX_TRACKED_ROWS = 50000;
+
+	final Logger logger = Logger.getLogger(CyUserLog.NAME);
+
+	private final CyNetworkViewManager viewManager;
+	private final AtomicLong version = new AtomicLong();
+	// Everything computed before this version is stale
+	private volatile long resetVersion = 0L;
+	private final ConcurrentHashMap<Long, Long> rowVersions = new ConcurrentHashMap<Long, Long>();
+	private final ConcurrentHashMap<String, Long> columnVersions = new ConcurrentHashMap<String, Long>();
+	// The version at which each column last changed in too many rows to track
+	private final ConcurrentHashMap<String, Long> bulkVersions = new ConcurrentHashMap<String, Long>();
+
+	private final ConcurrentLinkedQueue<Change> pending = new ConcurrentLinkedQueue<Change>();
+	private final AtomicBoolean flushScheduled = new AtomicBoolean();
+	private final Set<CyTable> changedTables = new HashSet<CyTable>();
+	// The columns each chart that has been drawn reads
+	private final Map<Object, Collection<String>> drawnColumns = new WeakHashMap<Object, Collection<String>>();
+	private final ScheduledExecutorService scheduler;
+	private final AtomicLong events = new AtomicLong();
+	private final AtomicLong batches = new AtomicLong();
+
+	/**
+ 	 * @param viewManager the view manager used to redraw the views of changed
+ 	 * tables, or null if we shouldn't redraw anything
+ 	 */
+	public ChangeTracker(CyNetworkViewManager viewManager) {
+		this.viewManager = viewManager;
+		this.scheduler = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+			public Thread newThread(Runnable r) {
+				Thread thread = new Thread(r, "enhancedGraphics change tracker");
+				thread.setDaemon(true);
+				return thread;
+			}
+		});
+	}
+
+	/**
+ 	 * Queue a batch of row changes
+ 	 *
+ 	 * @param table the table the rows belong to
+ 	 * @param records the changed values
+ 	 */
+	public void rowsChanged(CyTable table, Collection<RowSetRecord> records) {
+		if (records == null || records.isEmpty()) return;
+		events.incrementAndGet();
+		pending.add(new Change(table, records));
+		scheduleFlush();
+	}
+
+	/**
+ 	 * Note that a column has changed in every row, which makes everything
+ 	 * computed from it stale without the cost of a {@link #reset}
+ 	 *
+ 	 * @param table the table the column belongs to
+ 	 * @param column the column name
+ 	 */
+	public void columnChanged(CyTable table, String column) {
+		columnsChanged(table, Collections.singleton(column));
+	}
+
+	/**
+ 	 * Note that some columns have changed in every row, as a single batch
+ 	 *
+ 	 * @param table the table the columns belong to
+ 	 * @param columns the column names
+ 	 */
+	public void columnsChanged(CyTable table, Collection<String> columns) {
+		synchronized (this) {
+			apply();
+			long batch = version.incrementAndGet();
+			batches.incrementAndGet();
+			for (String column: columns) {
+				columnVersions.put(column, batch);
+				bulkVersions.put(column, batch);
+			}
+			if (!getDrawnColumns(columns).isEmpty())
+				changedTables.add(table);
+		}
+		events.incrementAndGet();
+		scheduleFlush();
+	}
+
+	/**
+ 	 * Note the columns a chart reads, so that changes to them redraw the views
+ 	 * of their table.  Charts are forgotten once they are collected.
+ 	 *
+ 	 * @param chart the chart
+ 	 * @param columns the columns it reads, including the names that neighbor
+ 	 * counts and group aggregates are tracked under
+ 	 */
+	public synchronized void watch(Object chart, Collection<String> columns) {
+		drawnColumns.put(chart, columns);
+	}
+
+	/**
+ 	 * Note that a column has been created, deleted or renamed, or anything else
+ 	 * has happened that makes everything computed so far stale
+ 	 */
+	public synchronized void reset() {
+		apply();
+		resetVersion = version.incrementAndGet();
+		rowVersions.clear();
+		columnVersions.clear();
+		bulkVersions.clear();
+	}
+
+	/**
+ 	 * Return the current version, after applying any queued changes.  Anything
+ 	 * computed from the data should be stamped with the version read before it
+ 	 * is computed.
+ 	 *
+ 	 * @return the current version
+ 	 */
+	public long getVersion() {
+		if (!pending.isEmpty())
+			apply();
+		return version.get();
+	}
+
+	/**
+ 	 * Return whether something computed at a version from some columns of a row
+ 	 * is still current
+ 	 *
+ 	 * @param since the version it was computed at
+ 	 * @param suid the SUID of the row
+ 	 * @param columns the columns it depends on, or null if it may depend on any
+ 	 * column of the row
+ 	 * @return true if it is current
+ 	 */
+	public boolean isCurrent(long since, Long suid, Collection<String> columns) {
+		if (!pending.isEmpty())
+			apply();
+		if (since < resetVersion)
+			return false;
+		if (columns == null)
+			return version.get() <= since;
+		if (!bulkVersions.isEmpty() && changedSince(bulkVersions, since, columns))
+			return false;
+		Long rowVersion = rowVersions.get(suid);
+		if (rowVersion == null || rowVersion.longValue() <= since)
+			return true;
+		return !changedSince(columnVersions, since, columns);
+	}
+
+	/**
+ 	 * Return whether something computed at a version from some columns (of any
+ 	 * row) is still current
+ 	 *
+ 	 * @param since the version it was computed at
+ 	 * @param columns the columns it depends on, or null if it may depend on any
+ 	 * column
+ 	 * @return true if none of the columns have changed
+ 	 */
+	public boolean isCurrent(long since, Collection<String> columns) {
+		if (!pending.isEmpty())
+			apply();
+		if (since < resetVersion)
+			return false;
+		if (columns == null)
+			return version.get() <= since;
+		return !changedSince(columnVersions, since, columns);
+	}
+
+	/**
+ 	 * Return the version of the last reset.  Everything computed before this
+ 	 * version is stale.
+ 	 *
+ 	 * @return the reset version
+ 	 */
+	public long getResetVersion() {
+		if (!pending.isEmpty())
+			apply();
+		return resetVersion;
+	}
+
+	public long getEvents() { return events.get(); }
+
+	public long getBatches() { return batches.get(); }
+
+	public void dispose() {
+		scheduler.shutdownNow();
+	}
+
+	private static boolean changedSince(ConcurrentHashMap<String, Long> versions,
+	                                    long since, Collection<String> columns) {
+		for (String column: columns) {
+			Long columnVersion = versions.get(column);
+			if (columnVersion != null && columnVersion.longValue() > since)
+				return true;
+		}
+		return false;
+	}
+
+	// The columns of a batch that some chart reads
+	private Set<String> getDrawnColumns(Collection<String> columns) {
+		Set<String> drawn = new HashSet<String>();
+		for (Collection<String> chartColumns: drawnColumns.values()) {
+			for (String column: columns) {
+				if (chartColumns.contains(column))
+					drawn.add(column);
+			}
+		}
+		return drawn;
+	}
+
+	private void scheduleFlush() {
+		if (flushScheduled.compareAndSet(false, true)) {
+			scheduler.schedule(new Runnable() {
+				public void run() { flush(); }
+			}, COALESCE_MILLIS, TimeUnit.MILLISECONDS);
+		}
+	}
+
+	// Apply the queued changes and redraw the views of the changed tables
+	private void flush() {
+		flushScheduled.set(false);
+		apply();
+
+		final List<CyTable> tables;
+		synchronized (this) {
+			if (changedTables.isEmpty()) return;
+			tables = new ArrayList<CyTable>(changedTables);
+			changedTables.clear();
+		}
+		if (viewManager == null) return;
+		SwingUtilities.invokeLater(new Runnable() {
+			public void run() {
+				try {
+					for (CyNetworkView view: viewManager.getNetworkViewSet()) {
+						if (tables.contains(view.getModel().getDefaultNodeTable()))
+							view.updateView();
+					}
+				} catch (RuntimeException e) {
+					logger.warn("Unable to redraw views after a change: "+e.getMessage());
+				}
+			}
+		});
+	}
+
+	// Apply the queued changes as a single batch
+	private synchronized void apply() {
+		if (pending.isEmpty()) return;
+		long batch = version.incrementAndGet();
+		batches.incrementAndGet();
+		List<Change> changes = new ArrayList<Change>();
+		Map<String, Integer> counts = new HashMap<String, Integer>();
+		Change change;
+		while ((change = pending.poll()) != null) {
+			changes.add(change);
+			for (RowSetRecord record: change.records) {
+				Integer count = counts.get(record.getColumn());
+				counts.put(record.getColumn(), count == null ? 1 : count+1);
+			}
+		}
+
+		// Only redraw the tables whose changes some chart reads
+		Set<String> drawn = getDrawnColumns(counts.keySet());
+		if (!drawn.isEmpty()) {
+			for (Change c: changes) {
+				for (RowSetRecord record: c.records) {
+					if (drawn.contains(record.getColumn())) {
+						changedTables.add(c.table);
+						break;
+					}
+				}
+			}
+		}
+
+		// Columns that have changed in too many rows to track one by one have
+		// changed for every row
+		for (Map.Entry<String, Integer> entry: counts.entrySet()) {
+			columnVersions.put(entry.getKey(), batch);
+			if (entry.getValue() > MAX_TRACKED_ROWS)
+				bulkVersions.put(entry.getKey(), batch);
+		}
+
+		for (Change c: changes) {
+			for (RowSetRecord record: c.records) {
+				if (counts.get(record.getColumn()) > MAX_TRACKED_ROWS)
+					continue;
+				CyRow row = record.getRow();
+				Long suid = (row == null) ? null : row.get(CyIdentifiable.SUID, Long.class);
+				if (suid != null)
+					rowVersions.put(suid, batch);
+			}
+		}
+		if (rowVersions.size() > MAX_TRACKED_ROWS) {
+			// Forget the rows, and treat every column that has changed in one of
+			// them as having changed in all of them
+			bulkVersions.putAll(columnVersions);
+			rowVersions.clear();
+		}
+	}
+
+	private static class Change {
+		final CyTable table;
+		final Collection<RowSetRecord> records;
+
+		Change(CyTable table, Collection<RowSetRecord> records) {
+			this.table = table;
+			this.records = records;
+		}
+	}
+}
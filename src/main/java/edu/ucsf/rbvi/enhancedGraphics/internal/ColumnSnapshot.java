@@ -0,0 +1,202 @@
+package edu.ucsf.rbvi.enhancedGraphics.internal;
+
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.cytoscape.model.CyColumn;
+import org.cytoscape.model.CyTable;
+
+/**
+ * A columnar copy of the numeric columns of a node table, taken at one data
+ * version.  Charts that draw from <code>attributelist</code> read each node's
+ * values from here instead of looking up the row, the column and a boxed value
+ * for every column of every node on every repaint.
+ *
+ * The rows are indexed once, from the primary key column, when the snapshot is
+ * created.  Each column is copied into a <code>double[]</code> in one pass with
+ * {@link CyColumn#getValues} the first time a chart asks for it, so only the
+ * columns referred to by the specs in use are copied.  Snapshots are created by
+ * {@link EnhancedGraphicsManager#getSnapshot}, which replaces them when one of
+ * the copied columns changes.
+ *
+ * Only scalar Double, Integer and Float columns are copied, with missing
+ * values as NaN.  Callers should fall back to the row for any other column
+ * and for a node that isn't indexed.
+ */
+public class ColumnSnapshot {
+	// The marker for a column we can't copy
+	private static final Values NOT_NUMERIC = new Values(null, null);
+
+	private final CyTable table;
+	private final long version;
+	// Row SUIDs, sorted, and the position of each in the column values
+	private final long[] suids;
+	private final int[] positions;
+	private final int rowCount;
+	private final ConcurrentHashMap<String, Values> columns;
+
+	ColumnSnapshot(CyTable table, long version) {
+		this.table = table;
+		this.version = version;
+		this.columns = new ConcurrentHashMap<String, Values>();
+
+		List<Long> keys = table.getPrimaryKey().getValues(Long.class);
+		rowCount = keys.size();
+		long[] order = new long[rowCount];
+		int n = 0;
+		for (int i = 0; i < rowCount; i++) {
+			Long key = keys.get(i);
+			if (key == null) continue;
+			order[n++] = key.longValue();
+		}
+		// SUIDs are unique, so sort them and then look up where each one was
+		suids = Arrays.copyOf(order, n);
+		Arrays.sort(suids);
+		positions = new int[n];
+		for (int i = 0; i < rowCount; i++) {
+			Long key = keys.get(i);
+			if (key == null) continue;
+			int index = Arrays.binarySearch(suids, key.longValue());
+			if (index >= 0) positions[index] = i;
+		}
+	}
+
+	/**
+ 	 * Carry a snapshot forward to a later version, when none of the columns that
+ 	 * have been copied have changed.  The index and the copies are shared.
+ 	 * Rows added since the snapshot was taken aren't indexed, so charts read
+ 	 * them from the table.
+ 	 */
+	ColumnSnapshot(ColumnSnapshot previous, long version) {
+		this.table = previous.table;
+		this.version = version;
+		this.suids = previous.suids;
+		this.positions = previous.positions;
+		this.rowCount = previous.rowCount;
+		this.columns = previous.columns;
+	}
+
+	public long getVersion() { return version; }
+
+	/**
+ 	 * Return the names of the columns that have been copied, or that we have
+ 	 * found we can't copy
+ 	 *
+ 	 * @return the column names
+ 	 */
+	public Set<String> getColumnNames() {
+		return Collections.unmodifiableSet(columns.keySet());
+	}
+
+	public CyTable getTable() { return table; }
+
+	/**
+ 	 * Return the position of a row in the column values
+ 	 *
+ 	 * @param suid the SUID of the row's node
+ 	 * @return the position, or -1 if the row wasn't in the table when the
+ 	 * snapshot was taken
+ 	 */
+	public int indexOf(long suid) {
+		int index = Arrays.binarySearch(suids, suid);
+		return (index < 0) ? -1 : positions[index];
+	}
+
+	/**
+ 	 * Return whether a column has been copied (or can be)
+ 	 *
+ 	 * @param column the column name
+ 	 * @return true if the column exists and is a scalar numeric column
+ 	 */
+	public boolean isNumeric(String column) {
+		return values(column) != NOT_NUMERIC;
+	}
+
+	/**
+ 	 * Return the values of a column, in row position order.  The array is
+ 	 * shared, and must not be changed.  Missing values are NaN, and
+ 	 * {@link #isMissing} tells them apart from a NaN in the table.
+ 	 *
+ 	 * @param column the column name
+ 	 * @return the values, or null if the column isn't numeric
+ 	 */
+	public double[] getValues(String column) {
+		return values(column).values;
+	}
+
+	/**
+ 	 * Return whether a row has no value in a column
+ 	 *
+ 	 * @param column the column name
+ 	 * @param index the position of the row, from {@link #indexOf}
+ 	 * @return true if the row has no value, or the column isn't numeric
+ 	 */
+	public boolean isMissing(String column, int index) {
+		Values v = values(column);
+		return v == NOT_NUMERIC || (v.missing != null && v.missing.get(index));
+	}
+
+	/**
+ 	 * Return the number of columns that have been copied
+ 	 *
+ 	 * @return the number of numeric columns
+ 	 */
+	public int getColumnCount() {
+		int count = 0;
+		for (Values v: columns.values())
+			if (v != NOT_NUMERIC) count++;
+		return count;
+	}
+
+	private Values values(String column) {
+		if (column == null) return NOT_NUMERIC;
+		Values v = columns.get(column);
+		if (v == null) {
+			// Two threads may both copy the column, but the copies are the same
+			v = copy(column);
+			columns.putIfAbsent(column, v);
+		}
+		return v;
+	}
+
+	private Values copy(String name) {
+		CyColumn column = table.getColumn(name);
+		if (column == null) return NOT_NUMERIC;
+		Class<?> type = column.getType();
+		if (type != Double.class && type != Integer.class && type != Float.class)
+			return NOT_NUMERIC;
+
+		List<?> list = column.getValues(type);
+		// We can only line the values up with the rows if we got one per row
+		if (list == null || list.size() != rowCount)
+			return NOT_NUMERIC;
+
+		double[] values = new double[rowCount];
+		BitSet missing = null;
+		for (int i = 0; i < rowCount; i++) {
+			Object value = list.get(i);
+			if (value == null) {
+				if (missing == null) missing = new BitSet(rowCount);
+				missing.set(i);
+				values[i] = Double.NaN;
+			} else {
+				values[i] = ((Number)value).doubleValue();
+			}
+		}
+		return new Values(values, missing);
+	}
+
+	private static class Values {
+		final double[] values;
+		final BitSet missing;
+
+		Values(double[] values, BitSet missing) {
+			this.values = values;
+			this.missing = missing;
+		}
+	}
+}
@@ -0,0 +1,378 @@
+package edu.ucsf.rbvi.enhancedGraphics.internal;
+
+import java.util.Arrays;
+import java.util.List;
+
+import org.cytoscape.model.CyColumn;
+import org.cytoscape.model.CyTable;
+
+/**
+ * The minimum, maximum and percentiles of the values of a list of numeric
+ * columns of a table, taken over every row and every column together.  These
+ * are what <code>range=auto</code> normalizes to, so that charts of different
+ * nodes are drawn to the same scale, and the mean, standard deviation and
+ * ranks are what <code>normalize=rank|quantile|zscore</code> use.
+ *
+ * The table is scanned once, the first time the statistics are needed, into a
+ * copy of each row's values and a sorted array of all of them.  After that,
+ * {@link EnhancedGraphicsManager} passes on every change to one of the
+ * columns, and {@link #update} replaces the row's value in the copy and queues
+ * the change.  The queued changes are applied to the sorted array the next
+ * time the statistics are read: a few changes are moved into place one by
+ * one, and many are applied by sorting the copy again.  The table is only
+ * scanned again when a row we haven't seen, or a list column, changes.
+ *
+ * Scalar Double, Integer, Long and Float columns are read, and so are lists
+ * of them, whose elements are all included.  Missing values are ignored.
+ */
+public class ColumnStatistics {
+	// More queued changes than this are applied by sorting everything again
+	static final int MAX_PENDING = 64;
+
+	private final CyTable table;
+	private final List<String> columns;
+
+	// Row SUIDs, sorted, and the position of each in the row values
+	private long[] suids;
+	private int[] positions;
+	// The value of each row in each scalar column, in table order, or null for
+	// a list column
+	private double[][] rowValues;
+	// Every value, sorted
+	private double[] sorted = new double[0];
+	private int count = 0;
+	private double sum = 0.0;
+	private double sumOfSquares = 0.0;
+
+	private boolean rescan = true;
+	private boolean resort = false;
+	private double[] pendingOld = new double[MAX_PENDING];
+	private double[] pendingNew = new double[MAX_PENDING];
+	private int pendingCount = 0;
+
+	private long scans = 0;
+
+	public ColumnStatistics(CyTable table, List<String> columns) {
+		this.table = table;
+		this.columns = columns;
+	}
+
+	public CyTable getTable() { return table; }
+
+	public List<String> getColumns() { return columns; }
+
+	/**
+ 	 * Return true if one of our columns has this name
+ 	 *
+ 	 * @param column the column name
+ 	 * @return true if it is one of our columns
+ 	 */
+	public boolean hasColumn(String column) {
+		return columns.indexOf(column) >= 0;
+	}
+
+	/**
+ 	 * Note that a row's value in one of our columns has changed
+ 	 *
+ 	 * @param suid the row's SUID
+ 	 * @param column the column name
+ 	 * @param value the new value
+ 	 */
+	public synchronized void update(Long suid, String column, Object value) {
+		if (rescan) return;
+		int c = columns.indexOf(column);
+		if (c < 0) return;
+		int index = (suid == null) ? -1 : Arrays.binarySearch(suids, suid.longValue());
+		if (index < 0 || rowValues[c] == null) {
+			// A new row, or a list column: the values can't be replaced one by one
+			rescan = true;
+			return;
+		}
+		int position = positions[index];
+		double old = rowValues[c][position];
+		double v = (value instanceof Number) ? ((Number)value).doubleValue() : Double.NaN;
+		rowValues[c][position] = v;
+		if (resort || Double.compare(old, v) == 0) return;
+		if (pendingCount == MAX_PENDING) {
+			resort = true;
+			return;
+		}
+		pendingOld[pendingCount] = old;
+		pendingNew[pendingCount] = v;
+		pendingCount++;
+	}
+
+	/**
+ 	 * Note that the table must be scanned again, for example because rows have
+ 	 * been deleted
+ 	 */
+	public synchronized void invalidate() {
+		rescan = true;
+	}
+
+	/**
+ 	 * Return the number of values
+ 	 *
+ 	 * @return the number of values that aren't missing
+ 	 */
+	public synchronized int getCount() {
+		refresh();
+		return count;
+	}
+
+	/**
+ 	 * Return the smallest value
+ 	 *
+ 	 * @return the smallest value, or NaN if there are no values
+ 	 */
+	public synchronized double getMin() {
+		refresh();
+		return (count == 0) ? Double.NaN : sorted[0];
+	}
+
+	/**
+ 	 * Return the largest value
+ 	 *
+ 	 * @return the largest value, or NaN if there are no values
+ 	 */
+	public synchronized double getMax() {
+		refresh();
+		return (count == 0) ? Double.NaN : sorted[count-1];
+	}
+
+	/**
+ 	 * Return a percentile of the values, interpolating between the two closest
+ 	 * values.  The 0th percentile is the minimum and the 100th the maximum.
+ 	 *
+ 	 * @param percentile the percentile, between 0 and 100
+ 	 * @return the value, or NaN if there are no values
+ 	 */
+	public synchronized double getPercentile(double percentile) {
+		refresh();
+		if (count == 0) return Double.NaN;
+		double p = Math.max(0.0, Math.min(100.0, percentile));
+		double position = p / 100.0 * (count-1);
+		int lower = (int)Math.floor(position);
+		int upper = Math.min(lower+1, count-1);
+		double fraction = position - lower;
+		return sorted[lower] + fraction * (sorted[upper] - sorted[lower]);
+	}
+
+	/**
+ 	 * Return the mean of the values
+ 	 *
+ 	 * @return the mean, or NaN if there are no values
+ 	 */
+	public synchronized double getMean() {
+		refresh();
+		return (count == 0) ? Double.NaN : sum / count;
+	}
+
+	/**
+ 	 * Return the (population) standard deviation of the values
+ 	 *
+ 	 * @return the standard deviation, or NaN if there are no values
+ 	 */
+	public synchronized double getStandardDeviation() {
+		refresh();
+		if (count == 0) return Double.NaN;
+		double mean = sum / count;
+		return Math.sqrt(Math.max(0.0, sumOfSquares / count - mean * mean));
+	}
+
+	/**
+ 	 * Return the percentile rank of a value, from 0 for the smallest value to
+ 	 * 1 for the largest.  Values that are tied get the mean of their ranks, and
+ 	 * values between two of ours are interpolated.  This is a binary search of
+ 	 * the sorted values.
+ 	 *
+ 	 * @param v the value
+ 	 * @return the rank, or NaN if v is NaN or there are no values
+ 	 */
+	public synchronized double getRank(double v) {
+		refresh();
+		if (count == 0 || Double.isNaN(v)) return Double.NaN;
+		if (count == 1) return 0.5;
+		int below = lowerBound(v);
+		int notAbove = upperBound(v);
+		if (below < notAbove) {
+			// The value is one of ours: the mean rank of the ties
+			return (below + notAbove - 1) / (2.0 * (count-1));
+		}
+		// Between sorted[below-1] and sorted[below]
+		if (below == 0) return 0.0;
+		if (below == count) return 1.0;
+		double fraction = (v - sorted[below-1]) / (sorted[below] - sorted[below-1]);
+		return (below - 1 + fraction) / (count-1);
+	}
+
+	/**
+ 	 * Return the number of times the table has been scanned
+ 	 *
+ 	 * @return the number of scans
+ 	 */
+	public synchronized long getScans() { return scans; }
+
+	// Bring the sorted values up to date
+	private void refresh() {
+		if (rescan) {
+			scan();
+		} else if (resort) {
+			sort();
+		} else {
+			for (int i = 0; i < pendingCount; i++) {
+				if (!remove(pendingOld[i])) {
+					sort();
+					return;
+				}
+				insert(pendingNew[i]);
+			}
+			pendingCount = 0;
+		}
+	}
+
+	private void scan() {
+		scans++;
+		List<Long> keys = table.getPrimaryKey().getValues(Long.class);
+		int rowCount = keys.size();
+		long[] order = new long[rowCount];
+		int n = 0;
+		for (int i = 0; i < rowCount; i++) {
+			Long key = keys.get(i);
+			if (key != null) order[n++] = key.longValue();
+		}
+		suids = Arrays.copyOf(order, n);
+		Arrays.sort(suids);
+		positions = new int[n];
+		for (int i = 0; i < rowCount; i++) {
+			Long key = keys.get(i);
+			if (key == null) continue;
+			int index = Arrays.binarySearch(suids, key.longValue());
+			if (index >= 0) positions[index] = i;
+		}
+
+		rowValues = new double[columns.size()][];
+		double[] all = new double[rowCount];
+		int total = 0;
+		for (int c = 0; c < columns.size(); c++) {
+			CyColumn column = table.getColumn(columns.get(c));
+			if (column == null) continue;
+			Class<?> type = column.getType();
+			if (type == List.class) {
+				// List columns are only ever scanned
+				Class<?> elementType = column.getListElementType();
+				if (!isNumeric(elementType)) continue;
+				for (Object value: column.getValues(List.class)) {
+					if (value == null) continue;
+					for (Object element: (List<?>)value) {
+						if (!(element instanceof Number)) continue;
+						if (total == all.length) all = Arrays.copyOf(all, Math.max(16, total*2));
+						all[total++] = ((Number)element).doubleValue();
+					}
+				}
+				continue;
+			}
+			if (!isNumeric(type)) continue;
+			List<?> values = column.getValues(type);
+			if (values.size() != rowCount) continue;
+			double[] copy = new double[rowCount];
+			for (int i = 0; i < rowCount; i++) {
+				Object value = values.get(i);
+				copy[i] = (value == null) ? Double.NaN : ((Number)value).doubleValue();
+				if (Double.isNaN(copy[i])) continue;
+				if (total == all.length) all = Arrays.copyOf(all, Math.max(16, total*2));
+				all[total++] = copy[i];
+			}
+			rowValues[c] = copy;
+		}
+		Arrays.sort(all, 0, total);
+		sorted = all;
+		count = total;
+		sum();
+		rescan = false;
+		resort = false;
+		pendingCount = 0;
+	}
+
+	// Sort the row values again.  This is only called when all of our columns
+	// are scalar columns, since changes to list columns make us scan again.
+	private void sort() {
+		int total = 0;
+		for (double[] copy: rowValues)
+			if (copy != null) total += copy.length;
+		double[] all = (sorted.length >= total) ? sorted : new double[total];
+		int n = 0;
+		for (double[] copy: rowValues) {
+			if (copy == null) continue;
+			for (double v: copy)
+				if (!Double.isNaN(v)) all[n++] = v;
+		}
+		Arrays.sort(all, 0, n);
+		sorted = all;
+		count = n;
+		sum();
+		resort = false;
+		pendingCount = 0;
+	}
+
+	private boolean remove(double v) {
+		if (Double.isNaN(v)) return true;
+		int index = Arrays.binarySearch(sorted, 0, count, v);
+		if (index < 0) return false;
+		System.arraycopy(sorted, index+1, sorted, index, count-index-1);
+		count--;
+		sum -= v;
+		sumOfSquares -= v * v;
+		return true;
+	}
+
+	private void insert(double v) {
+		if (Double.isNaN(v)) return;
+		int index = Arrays.binarySearch(sorted, 0, count, v);
+		if (index < 0) index = -index-1;
+		if (count == sorted.length)
+			sorted = Arrays.copyOf(sorted, Math.max(16, count*2));
+		System.arraycopy(sorted, index, sorted, index+1, count-index);
+		sorted[index] = v;
+		count++;
+		sum += v;
+		sumOfSquares += v * v;
+	}
+
+	// The sums are kept up to date as values are moved, and added up again
+	// whenever we sort
+	private void sum() {
+		sum = 0.0;
+		sumOfSquares = 0.0;
+		for (int i = 0; i < count; i++) {
+			sum += sorted[i];
+			sumOfSquares += sorted[i] * sorted[i];
+		}
+	}
+
+	// The number of values less than v
+	private int lowerBound(double v) {
+		int low = 0, high = count;
+		while (low < high) {
+			int mid = (low + high) >>> 1;
+			if (sorted[mid] < v) low = mid + 1;
+			else high = mid;
+		}
+		return low;
+	}
+
+	// The number of values less than or equal to v
+	private int upperBound(double v) {
+		int low = 0, high = count;
+		while (low < high) {
+			int mid = (low + high) >>> 1;
+			if (sorted[mid] <= v) low = mid + 1;
+			else high = mid;
+		}
+		return low;
+	}
+
+	private static boolean isNumeric(Class<?> type) {
+		return type == Double.class || type == Integer.class || type == Long.class || type == Float.class;
+	}
+}
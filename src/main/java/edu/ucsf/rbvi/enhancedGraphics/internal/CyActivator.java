@@ -10,7 +10,19 @@ import org.cytoscape.application.CyUserLog;
 import org.apache.log4j.Logger;
 
 import org.cytoscape.application.CyApplicationManager;
+import org.cytoscape.event.CyEventHelper;
+import org.cytoscape.model.events.AboutToRemoveEdgesListener;
+import org.cytoscape.model.events.AboutToRemoveNodesListener;
+import org.cytoscape.model.events.AddedEdgesListener;
+import org.cytoscape.model.events.AddedNodesListener;
+import org.cytoscape.model.events.ColumnCreatedListener;
+import org.cytoscape.model.events.ColumnDeletedListener;
+import org.cytoscape.model.events.ColumnNameChangedListener;
+import org.cytoscape.model.events.NetworkAboutToBeDestroyedListener;
+import org.cytoscape.model.events.RowsSetListener;
 import org.cytoscape.service.util.AbstractCyActivator;
+import org.cytoscape.view.model.CyNetworkViewManager;
+import org.cytoscape.view.model.events.NetworkViewAboutToBeDestroyedListener;
 import org.cytoscape.view.presentation.customgraphics.CyCustomGraphicsFactory;
 import org.cytoscape.work.TaskFactory;
 
@@ -27,12 +39,24 @@ import edu.ucsf.rbvi.enhancedGraphics.internal.charts.label.LabelFactory;
 import edu.ucsf.rbvi.enhancedGraphics.internal.charts.line.LineChartFactory;
 import edu.ucsf.rbvi.enhancedGraphics.internal.charts.pie.PieChartFactory;
 import edu.ucsf.rbvi.enhancedGraphics.internal.charts.stripe.StripeChartFactory;
+import edu.ucsf.rbvi.enhancedGraphics.internal.tasks.AddOffHeapTaskFactory;
+import edu.ucsf.rbvi.enhancedGraphics.internal.tasks.AddPresetTaskFactory;
+import edu.ucsf.rbvi.enhancedGraphics.internal.tasks.ConvertMatrixTaskFactory;
 import edu.ucsf.rbvi.enhancedGraphics.internal.tasks.ListChartsTaskFactory;
+import edu.ucsf.rbvi.enhancedGraphics.internal.tasks.ListPresetsTaskFactory;
+import edu.ucsf.rbvi.enhancedGraphics.internal.tasks.LoadTaskFactory;
+import edu.ucsf.rbvi.enhancedGraphics.internal.tasks.RemoveOffHeapTaskFactory;
+import edu.ucsf.rbvi.enhancedGraphics.internal.tasks.RemovePresetTaskFactory;
+import edu.ucsf.rbvi.enhancedGraphics.internal.tasks.SetLimitsTaskFactory;
+import edu.ucsf.rbvi.enhancedGraphics.internal.tasks.StatsTaskFactory;
+import edu.ucsf.rbvi.enhancedGraphics.internal.tasks.ValidateTaskFactory;
 import edu.ucsf.rbvi.enhancedGraphics.internal.tasks.VersionTaskFactory;
 
 
 public class CyActivator extends AbstractCyActivator {
 	final Logger logger = Logger.getLogger(CyUserLog.NAME);
+	EnhancedGraphicsManager manager = null;
+
 	public CyActivator() {
 		super();
 	}
@@ -43,24 +67,39 @@ public class CyActivator extends AbstractCyActivator {
 
 		String version = bc.getBundle().getVersion().toString();
 
+		CyNetworkViewManager viewManager = getService(bc, CyNetworkViewManager.class);
+		CyEventHelper eventHelper = getService(bc, CyEventHelper.class);
+
+		manager = new EnhancedGraphicsManager(viewManager);
+		registerService(bc, manager, RowsSetListener.class, new Properties());
+		registerService(bc, manager, ColumnCreatedListener.class, new Properties());
+		registerService(bc, manager, ColumnDeletedListener.class, new Properties());
+		registerService(bc, manager, ColumnNameChangedListener.class, new Properties());
+		registerService(bc, manager, AddedEdgesListener.class, new Properties());
+		registerService(bc, manager, AboutToRemoveEdgesListener.class, new Properties());
+		registerService(bc, manager, AddedNodesListener.class, new Properties());
+		registerService(bc, manager, AboutToRemoveNodesListener.class, new Properties());
+		registerService(bc, manager, NetworkAboutToBeDestroyedListener.class, new Properties());
+		registerService(bc, manager, NetworkViewAboutToBeDestroyedListener.class, new Properties());
+
 		List<CyCustomGraphicsFactory> charts = new ArrayList<CyCustomGraphicsFactory>();
-		charts.add(new LinearGradientCGFactory());
+		charts.add(new LinearGradientCGFactory(manager));
 
-		charts.add(new RadialGradientCGFactory());
+		charts.add(new RadialGradientCGFactory(manager));
 
-		charts.add(new PieChartFactory());
+		charts.add(new PieChartFactory(manager));
 
-		charts.add(new BarChartFactory());
+		charts.add(new BarChartFactory(manager));
 
-		charts.add(new LabelFactory());
+		charts.add(new LabelFactory(manager));
 
-		charts.add(new LineChartFactory());
+		charts.add(new LineChartFactory(manager));
 
-		charts.add(new StripeChartFactory());
+		charts.add(new StripeChartFactory(manager));
 
-		charts.add(new HeatStripFactory());
+		charts.add(new HeatStripFactory(manager));
 
-		charts.add(new CircosChartFactory());
+		charts.add(new CircosChartFactory(manager));
 
 		for (CyCustomGraphicsFactory chart: charts) {
 				Properties chartProps = new Properties();
@@ -83,9 +122,105 @@ public class CyActivator extends AbstractCyActivator {
 			registerService(bc, versionFactory, TaskFactory.class, versionProps);
 		}
 
+		{
+			AddPresetTaskFactory addPresetFactory = new AddPresetTaskFactory(manager);
+			Properties addPresetProps = new Properties();
+			addPresetProps.setProperty(COMMAND_NAMESPACE, "enhancedGraphics");
+			addPresetProps.setProperty(COMMAND, "add preset");
+			addPresetProps.setProperty(COMMAND_DESCRIPTION, "Define a named set of arguments that specs can use with preset=name");
+			registerService(bc, addPresetFactory, TaskFactory.class, addPresetProps);
+		}
+
+		{
+			RemovePresetTaskFactory removePresetFactory = new RemovePresetTaskFactory(manager);
+			Properties removePresetProps = new Properties();
+			removePresetProps.setProperty(COMMAND_NAMESPACE, "enhancedGraphics");
+			removePresetProps.setProperty(COMMAND, "remove preset");
+			removePresetProps.setProperty(COMMAND_DESCRIPTION, "Remove a preset");
+			registerService(bc, removePresetFactory, TaskFactory.class, removePresetProps);
+		}
+
+		{
+			ListPresetsTaskFactory listPresetsFactory = new ListPresetsTaskFactory(manager);
+			Properties listPresetsProps = new Properties();
+			listPresetsProps.setProperty(COMMAND_NAMESPACE, "enhancedGraphics");
+			listPresetsProps.setProperty(COMMAND, "list presets");
+			listPresetsProps.setProperty(COMMAND_DESCRIPTION, "List the presets and their arguments");
+			registerService(bc, listPresetsFactory, TaskFactory.class, listPresetsProps);
+		}
+
+		{
+			ValidateTaskFactory validateFactory = new ValidateTaskFactory(cyApplicationManagerServiceRef, charts);
+			Properties validateProps = new Properties();
+			validateProps.setProperty(COMMAND_NAMESPACE, "enhancedGraphics");
+			validateProps.setProperty(COMMAND, "validate");
+			validateProps.setProperty(COMMAND_DESCRIPTION, "Parse every distinct spec in a node column and report errors and parse times");
+			registerService(bc, validateFactory, TaskFactory.class, validateProps);
+		}
+
+		{
+			StatsTaskFactory statsFactory = new StatsTaskFactory(manager);
+			Properties statsProps = new Properties();
+			statsProps.setProperty(COMMAND_NAMESPACE, "enhancedGraphics");
+			statsProps.setProperty(COMMAND, "stats");
+			statsProps.setProperty(COMMAND_DESCRIPTION, "Report rendering statistics");
+			registerService(bc, statsFactory, TaskFactory.class, statsProps);
+		}
+
+		{
+			SetLimitsTaskFactory setLimitsFactory = new SetLimitsTaskFactory(manager);
+			Properties setLimitsProps = new Properties();
+			setLimitsProps.setProperty(COMMAND_NAMESPACE, "enhancedGraphics");
+			setLimitsProps.setProperty(COMMAND, "set limits");
+			setLimitsProps.setProperty(COMMAND_DESCRIPTION, "Set the maximum size of the specs and value lists we will parse");
+			registerService(bc, setLimitsFactory, TaskFactory.class, setLimitsProps);
+		}
+
+		{
+			AddOffHeapTaskFactory addOffHeapFactory = new AddOffHeapTaskFactory(cyApplicationManagerServiceRef, manager);
+			Properties addOffHeapProps = new Properties();
+			addOffHeapProps.setProperty(COMMAND_NAMESPACE, "enhancedGraphics");
+			addOffHeapProps.setProperty(COMMAND, "add offheap");
+			addOffHeapProps.setProperty(COMMAND_DESCRIPTION, "Keep a copy of a numeric list column outside the heap for charts to read");
+			registerService(bc, addOffHeapFactory, TaskFactory.class, addOffHeapProps);
+		}
+
+		{
+			RemoveOffHeapTaskFactory removeOffHeapFactory = new RemoveOffHeapTaskFactory(cyApplicationManagerServiceRef, manager);
+			Properties removeOffHeapProps = new Properties();
+			removeOffHeapProps.setProperty(COMMAND_NAMESPACE, "enhancedGraphics");
+			removeOffHeapProps.setProperty(COMMAND, "remove offheap");
+			removeOffHeapProps.setProperty(COMMAND_DESCRIPTION, "Stop keeping a list column outside the heap");
+			registerService(bc, removeOffHeapFactory, TaskFactory.class, removeOffHeapProps);
+		}
+
+		{
+			ConvertMatrixTaskFactory convertMatrixFactory = new ConvertMatrixTaskFactory();
+			Properties convertMatrixProps = new Properties();
+			convertMatrixProps.setProperty(COMMAND_NAMESPACE, "enhancedGraphics");
+			convertMatrixProps.setProperty(COMMAND, "convert matrix");
+			convertMatrixProps.setProperty(COMMAND_DESCRIPTION, "Convert a CSV matrix into a matrix file for matrixfile=");
+			registerService(bc, convertMatrixFactory, TaskFactory.class, convertMatrixProps);
+		}
+
+		{
+			LoadTaskFactory loadFactory = new LoadTaskFactory(cyApplicationManagerServiceRef, eventHelper, manager);
+			Properties loadProps = new Properties();
+			loadProps.setProperty(COMMAND_NAMESPACE, "enhancedGraphics");
+			loadProps.setProperty(COMMAND, "load");
+			loadProps.setProperty(COMMAND_DESCRIPTION, "Load node values and chart specs from a JSON or CSV file in one batch");
+			registerService(bc, loadFactory, TaskFactory.class, loadProps);
+		}
+
 		// CyCustomGraphicsFactory clearFactory = new ClearFactory();
 
 		logger.info("Enhanced Custom Graphics started");
 	}
-}
 
+	@Override
+	public void stop(BundleContext bc) {
+		if (manager != null)
+			manager.dispose();
+		super.stop(bc);
+	}
+}
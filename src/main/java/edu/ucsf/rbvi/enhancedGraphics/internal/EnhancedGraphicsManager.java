@@ -0,0 +1,856 @@
+package edu.ucsf.rbvi.enhancedGraphics.internal;
+
+import java.io.File;
+import java.io.IOException;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.WeakHashMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.cytoscape.application.CyUserLog;
+import org.cytoscape.model.CyIdentifiable;
+import org.cytoscape.model.CyNetwork;
+import org.cytoscape.model.CyNode;
+import org.cytoscape.model.CyTable;
+import org.cytoscape.model.events.AboutToRemoveEdgesEvent;
+import org.cytoscape.model.events.AboutToRemoveEdgesListener;
+import org.cytoscape.model.events.AboutToRemoveNodesEvent;
+import org.cytoscape.model.events.AboutToRemoveNodesListener;
+import org.cytoscape.model.events.AddedEdgesEvent;
+import org.cytoscape.model.events.AddedEdgesListener;
+import org.cytoscape.model.events.AddedNodesEvent;
+import org.cytoscape.model.events.AddedNodesListener;
+import org.cytoscape.model.events.ColumnCreatedEvent;
+import org.cytoscape.model.events.ColumnCreatedListener;
+import org.cytoscape.model.events.ColumnDeletedEvent;
+import org.cytoscape.model.events.ColumnDeletedListener;
+import org.cytoscape.model.events.ColumnNameChangedEvent;
+import org.cytoscape.model.events.ColumnNameChangedListener;
+import org.cytoscape.model.events.NetworkAboutToBeDestroyedEvent;
+import org.cytoscape.model.events.NetworkAboutToBeDestroyedListener;
+import org.cytoscape.model.events.RowSetRecord;
+import org.cytoscape.model.events.RowsSetEvent;
+import org.cytoscape.model.events.RowsSetListener;
+import org.cytoscape.view.model.CyNetworkViewManager;
+import org.cytoscape.view.model.events.NetworkViewAboutToBeDestroyedEvent;
+import org.cytoscape.view.model.events.NetworkViewAboutToBeDestroyedListener;
+import org.apache.log4j.Logger;
+
+import edu.ucsf.rbvi.enhancedGraphics.internal.charts.AbstractChartCustomGraphics;
+import edu.ucsf.rbvi.enhancedGraphics.internal.parse.ParseLimits;
+import edu.ucsf.rbvi.enhancedGraphics.internal.parse.SpecLexer;
+
+/**
+ * State that is shared between the custom graphics factories and the
+ * enhancedGraphics commands.
+ *
+ * Presets are named sets of arguments that are stored once and merged into
+ * any spec that refers to them with <code>preset=name</code>, e.g.:
+ * <code>piechart: preset=expr attributelist="a,b,c"</code>.  Arguments given
+ * in the spec itself override the preset's arguments, and if more than one
+ * preset is given (<code>preset="colors,fonts"</code>) the later presets
+ * override the earlier ones.
+ *
+ * The manager also listens for changes to the tables, and keeps track of
+ * which rows and columns have changed in a {@link ChangeTracker}.  Charts use
+ * this to reuse the layers they created for a node until the data they were
+ * created from changes, and to know when the column snapshots they read
+ * values from are stale.  It passes the changes on to the
+ * {@link ColumnStatistics} that <code>range=auto</code> is resolved from, so
+ * that they are kept up to date without scanning the table again.
+ *
+ * Likewise, it passes edges that are added or removed, nodes that are removed
+ * and changes to the node table on to the {@link NeighborCounts} that
+ * <code>piechart: neighborattribute=column</code> draws, and tells the
+ * tracker which nodes' counts changed, so that only their charts are
+ * created again.  It does the same for the {@link GroupAggregates} that
+ * charts with <code>aggregate=sum|mean|max</code> draw on group nodes, with
+ * nodes that are added to or removed from the networks of groups' members.
+ *
+ * Charts tell the manager when they are first drawn, and it has them forget
+ * the layers they remembered for nodes that are removed and for networks and
+ * views that are destroyed.
+ */
+public class EnhancedGraphicsManager implements RowsSetListener, ColumnCreatedListener,
+                                                ColumnDeletedListener, ColumnNameChangedListener,
+                                                AddedEdgesListener, AboutToRemoveEdgesListener,
+                                                AddedNodesListener, AboutToRemoveNodesListener,
+                                                NetworkAboutToBeDestroyedListener,
+                                                NetworkViewAboutToBeDestroyedListener {
+	public static final String PRESET = "preset";
+	// How often we check whether a matrix file has changed
+	static final long MATRIX_CHECK_MILLIS = 1000L;
+
+	final Logger logger = Logger.getLogger(CyUserLog.NAME);
+
+	private final Map<String, Map<String, String>> presets =
+		new ConcurrentHashMap<String, Map<String, String>>();
+
+	private final List<SpecInterner<?>> interners = new CopyOnWriteArrayList<SpecInterner<?>>();
+	private final ChangeTracker changes;
+	private final AtomicLong suppressedFailures = new AtomicLong();
+	private final AtomicLong reusedLayers = new AtomicLong();
+	private final ConcurrentHashMap<Long, ColumnSnapshot> snapshots = new ConcurrentHashMap<Long, ColumnSnapshot>();
+	private final AtomicLong snapshotsTaken = new AtomicLong();
+	// The attribute readers for each table, by table SUID and then by column list
+	private final ConcurrentHashMap<Long, ConcurrentHashMap<List<String>, AttributeReader>> readers =
+		new ConcurrentHashMap<Long, ConcurrentHashMap<List<String>, AttributeReader>>();
+	// The column statistics for each table, by table SUID and then by column list
+	private final ConcurrentHashMap<Long, ConcurrentHashMap<List<String>, ColumnStatistics>> statistics =
+		new ConcurrentHashMap<Long, ConcurrentHashMap<List<String>, ColumnStatistics>>();
+	// The off-heap copies of list columns, by table SUID and then by column name
+	private final ConcurrentHashMap<Long, ConcurrentHashMap<String, OffHeapListStore>> offHeapStores =
+		new ConcurrentHashMap<Long, ConcurrentHashMap<String, OffHeapListStore>>();
+	// The neighbor counts of each network, by network SUID and then by column name
+	private final ConcurrentHashMap<Long, ConcurrentHashMap<String, NeighborCounts>> neighborCounts =
+		new ConcurrentHashMap<Long, ConcurrentHashMap<String, NeighborCounts>>();
+	// The aggregates of the members of group nodes, by column list
+	private final ConcurrentHashMap<List<String>, GroupAggregates> groupAggregates =
+		new ConcurrentHashMap<List<String>, GroupAggregates>();
+	// The tables being loaded in bulk, by table SUID, and whether their schema
+	// changed while they were
+	private final ConcurrentHashMap<Long, Boolean> loading = new ConcurrentHashMap<Long, Boolean>();
+	// The charts that have been drawn, which remember the layers of each node
+	private final Set<AbstractChartCustomGraphics<?>> charts =
+		Collections.synchronizedSet(Collections.newSetFromMap(new WeakHashMap<AbstractChartCustomGraphics<?>, Boolean>()));
+	// The open matrix files, by path
+	private final ConcurrentHashMap<String, OpenMatrix> matrices = new ConcurrentHashMap<String, OpenMatrix>();
+
+	public EnhancedGraphicsManager() {
+		this(null);
+	}
+
+	/**
+ 	 * @param viewManager the view manager used to redraw views after their data
+ 	 * changes (may be null)
+ 	 */
+	public EnhancedGraphicsManager(CyNetworkViewManager viewManager) {
+		this.changes = new ChangeTracker(viewManager);
+	}
+
+	/**
+ 	 * Define (or redefine) a preset.
+ 	 *
+ 	 * @param name the name of the preset
+ 	 * @param arguments the arguments, in the same form as a spec, e.g.
+ 	 * <code>colorlist="red,green,blue" arcstart=90</code>
+ 	 * @return the parsed arguments
+ 	 */
+	public Map<String, String> addPreset(String name, String arguments) {
+		Map<String, String> args = SpecLexer.parse(arguments);
+		// Presets can't refer to other presets
+		if (args.remove(PRESET) != null)
+			logger.warn("Ignoring '"+PRESET+"' argument in preset '"+name+"'");
+		args = Collections.unmodifiableMap(args);
+		presets.put(name, args);
+		clearInterners();
+		return args;
+	}
+
+	/**
+ 	 * Remove a preset.
+ 	 *
+ 	 * @param name the name of the preset
+ 	 * @return true if there was a preset with that name
+ 	 */
+	public boolean removePreset(String name) {
+		if (presets.remove(name) == null)
+			return false;
+		clearInterners();
+		return true;
+	}
+
+	/**
+ 	 * Return the arguments for a preset.
+ 	 *
+ 	 * @param name the name of the preset
+ 	 * @return the unmodifiable arguments, or null if there is no such preset
+ 	 */
+	public Map<String, String> getPreset(String name) {
+		return presets.get(name);
+	}
+
+	/**
+ 	 * Return the names of all of the presets, sorted.
+ 	 *
+ 	 * @return the preset names
+ 	 */
+	public List<String> getPresetNames() {
+		List<String> names = new ArrayList<String>(presets.keySet());
+		Collections.sort(names);
+		return names;
+	}
+
+	/**
+ 	 * Parse the arguments of a spec and merge in any presets it refers to.
+ 	 *
+ 	 * @param input the spec string
+ 	 * @return the arguments
+ 	 */
+	public Map<String, String> parseArguments(String input) {
+		if (input != null && input.length() > ParseLimits.getMaxSpecLength())
+			logger.warn("Ignoring a spec of "+input.length()+" characters, which is more than the limit of "+
+			            ParseLimits.getMaxSpecLength());
+		return applyPresets(SpecLexer.parse(input));
+	}
+
+	/**
+ 	 * Merge the presets named by the <code>preset</code> argument into a set
+ 	 * of arguments.  Unknown presets are logged and ignored.
+ 	 *
+ 	 * @param args the arguments from the spec
+ 	 * @return the merged arguments (without the preset argument itself), or
+ 	 * args if it doesn't refer to any presets
+ 	 */
+	public Map<String, String> applyPresets(Map<String, String> args) {
+		if (!args.containsKey(PRESET))
+			return args;
+
+		Map<String, String> merged = new HashMap<String, String>();
+		for (String name: SpecLexer.splitList(args.get(PRESET))) {
+			name = name.trim();
+			if (name.length() == 0) continue;
+			Map<String, String> preset = presets.get(name);
+			if (preset == null) {
+				logger.warn("Unknown preset '"+name+"'");
+				continue;
+			}
+			merged.putAll(preset);
+		}
+		merged.putAll(args);
+		merged.remove(PRESET);
+		return merged;
+	}
+
+	/**
+ 	 * Return the current data version.  This only ever increases.
+ 	 *
+ 	 * @return the data version
+ 	 */
+	public long getDataVersion() { return changes.getVersion(); }
+
+	/**
+ 	 * Return the tracker that knows which rows and columns have changed
+ 	 *
+ 	 * @return the change tracker
+ 	 */
+	public ChangeTracker getChangeTracker() { return changes; }
+
+	/**
+ 	 * Note that a chart has been drawn for the first time.  The change tracker
+ 	 * learns which columns it reads, and the chart is told when the nodes it
+ 	 * remembers layers for go away.  Charts are held weakly.
+ 	 *
+ 	 * @param chart the chart
+ 	 */
+	public void chartDrawn(AbstractChartCustomGraphics<?> chart) {
+		changes.watch(chart, chart.getSpec().getColumns());
+		charts.add(chart);
+	}
+
+	/**
+ 	 * Note that a chart has been asked to draw a node it already failed
+ 	 * to draw, and didn't try again.
+ 	 */
+	public void failureSuppressed() { suppressedFailures.incrementAndGet(); }
+
+	/**
+ 	 * Return the number of times a chart skipped a node it already failed to
+ 	 * draw.
+ 	 *
+ 	 * @return the number of suppressed failures
+ 	 */
+	public long getSuppressedFailures() { return suppressedFailures.get(); }
+
+	/**
+ 	 * Note that a chart has reused the layers it created for a node, since its
+ 	 * data hasn't changed.
+ 	 */
+	public void layersReused() { reusedLayers.incrementAndGet(); }
+
+	/**
+ 	 * Return the number of times a chart reused the layers for a node.
+ 	 *
+ 	 * @return the number of times layers were reused
+ 	 */
+	public long getReusedLayers() { return reusedLayers.get(); }
+
+	/**
+ 	 * Return a snapshot of the numeric columns of a table at the current data
+ 	 * version.  The snapshot is shared by every chart that draws from the table
+ 	 * until the data changes, when a new one is taken.
+ 	 *
+ 	 * @param table the (node) table
+ 	 * @return the snapshot
+ 	 */
+	public ColumnSnapshot getSnapshot(CyTable table) {
+		// Read the version first, so that a change while we copy makes the
+		// snapshot stale rather than wrong
+		long version = changes.getVersion();
+		Long key = table.getSUID();
+		ColumnSnapshot snapshot = snapshots.get(key);
+		if (snapshot != null && snapshot.getTable() == table) {
+			if (snapshot.getVersion() == version)
+				return snapshot;
+			// If none of the columns we copied have changed, the copies are still good
+			if (changes.isCurrent(snapshot.getVersion(), snapshot.getColumnNames()))
+				snapshot = new ColumnSnapshot(snapshot, version);
+			else
+				snapshot = null;
+		} else {
+			snapshot = null;
+		}
+
+		if (snapshot == null) {
+			snapshot = new ColumnSnapshot(table, version);
+			snapshotsTaken.incrementAndGet();
+		}
+		// Drop the stale snapshots of other tables, which may have been deleted
+		for (Map.Entry<Long, ColumnSnapshot> entry: snapshots.entrySet()) {
+			if (entry.getValue().getVersion() != version)
+				snapshots.remove(entry.getKey(), entry.getValue());
+		}
+		snapshots.put(key, snapshot);
+		return snapshot;
+	}
+
+	/**
+ 	 * Return the number of column snapshots that have been taken
+ 	 *
+ 	 * @return the number of snapshots
+ 	 */
+	public long getSnapshotsTaken() { return snapshotsTaken.get(); }
+
+	/**
+ 	 * Return the reader for a list of columns of a table.  Readers are kept
+ 	 * until a column of the table is created, deleted or renamed.
+ 	 *
+ 	 * @param table the (node) table
+ 	 * @param attributeList the column names
+ 	 * @return the reader
+ 	 */
+	public AttributeReader getAttributeReader(CyTable table, List<String> attributeList) {
+		Long key = table.getSUID();
+		ConcurrentHashMap<List<String>, AttributeReader> tableReaders = readers.get(key);
+		if (tableReaders == null) {
+			readers.putIfAbsent(key, new ConcurrentHashMap<List<String>, AttributeReader>());
+			tableReaders = readers.get(key);
+		}
+		AttributeReader reader = tableReaders.get(attributeList);
+		if (reader == null) {
+			reader = new AttributeReader(table, attributeList);
+			tableReaders.put(new ArrayList<String>(attributeList), reader);
+		}
+		return reader;
+	}
+
+	/**
+ 	 * Return the statistics of a list of columns of a table.  The statistics are
+ 	 * kept up to date as the table changes, until a column of the table is
+ 	 * created, deleted or renamed.
+ 	 *
+ 	 * @param table the (node) table
+ 	 * @param columns the column names
+ 	 * @return the statistics
+ 	 */
+	public ColumnStatistics getStatistics(CyTable table, List<String> columns) {
+		Long key = table.getSUID();
+		ConcurrentHashMap<List<String>, ColumnStatistics> tableStatistics = statistics.get(key);
+		if (tableStatistics == null) {
+			statistics.putIfAbsent(key, new ConcurrentHashMap<List<String>, ColumnStatistics>());
+			tableStatistics = statistics.get(key);
+		}
+		ColumnStatistics stats = tableStatistics.get(columns);
+		if (stats == null || stats.getTable() != table) {
+			List<String> copy = Collections.unmodifiableList(new ArrayList<String>(columns));
+			stats = new ColumnStatistics(table, copy);
+			tableStatistics.put(copy, stats);
+		}
+		return stats;
+	}
+
+	/**
+ 	 * Return all of the column statistics that are being kept
+ 	 *
+ 	 * @return the statistics
+ 	 */
+	public List<ColumnStatistics> getAllStatistics() {
+		List<ColumnStatistics> all = new ArrayList<ColumnStatistics>();
+		for (ConcurrentHashMap<List<String>, ColumnStatistics> tableStatistics: statistics.values())
+			all.addAll(tableStatistics.values());
+		return all;
+	}
+
+	/**
+ 	 * Return an open matrix file.  Files are opened once and shared by every
+ 	 * chart that uses them; they are opened again if they change, which we
+ 	 * check at most once a second.  A file that can't be opened is logged and
+ 	 * not tried again for a second.
+ 	 *
+ 	 * @param path the path of the file
+ 	 * @return the matrix, or null if the file can't be opened
+ 	 */
+	public MatrixFile getMatrix(String path) {
+		long now = System.currentTimeMillis();
+		OpenMatrix open = matrices.get(path);
+		if (open != null && now - open.checked < MATRIX_CHECK_MILLIS)
+			return open.matrix;
+		synchronized (matrices) {
+			open = matrices.get(path);
+			if (open != null && now - open.checked < MATRIX_CHECK_MILLIS)
+				return open.matrix;
+			MatrixFile matrix = (open == null) ? null : open.matrix;
+			if (matrix == null || matrix.isStale()) {
+				try {
+					matrix = MatrixFile.open(new File(path));
+				} catch (IOException e) {
+					logger.warn("Unable to open matrix file '"+path+"': "+e.getMessage());
+					matrix = null;
+				}
+				// Charts must read the new values
+				if (open != null)
+					changes.reset();
+			}
+			matrices.put(path, new OpenMatrix(matrix, now));
+			return matrix;
+		}
+	}
+
+	/**
+ 	 * Copy a numeric list column outside the heap, so that charts read it from
+ 	 * there instead of from the table.  The copy is kept up to date until the
+ 	 * column is deleted or renamed, or {@link #removeOffHeapStore} is called.
+ 	 *
+ 	 * @param table the (node) table
+ 	 * @param column the name of the list column
+ 	 * @return the store
+ 	 * @throws IllegalArgumentException if the column isn't a numeric list column
+ 	 */
+	public OffHeapListStore addOffHeapStore(CyTable table, String column) {
+		OffHeapListStore store = new OffHeapListStore(table, column);
+		Long key = table.getSUID();
+		offHeapStores.putIfAbsent(key, new ConcurrentHashMap<String, OffHeapListStore>());
+		offHeapStores.get(key).put(column, store);
+		return store;
+	}
+
+	/**
+ 	 * Stop keeping a list column outside the heap
+ 	 *
+ 	 * @param table the (node) table
+ 	 * @param column the name of the list column
+ 	 * @return true if there was a store for the column
+ 	 */
+	public boolean removeOffHeapStore(CyTable table, String column) {
+		ConcurrentHashMap<String, OffHeapListStore> tableStores = offHeapStores.get(table.getSUID());
+		return tableStores != null && column != null && tableStores.remove(column) != null;
+	}
+
+	/**
+ 	 * Return the off-heap copy of a list column
+ 	 *
+ 	 * @param table the (node) table
+ 	 * @param column the name of the list column
+ 	 * @return the store, or null if the column isn't kept outside the heap
+ 	 */
+	public OffHeapListStore getOffHeapStore(CyTable table, String column) {
+		if (offHeapStores.isEmpty()) return null;
+		ConcurrentHashMap<String, OffHeapListStore> tableStores = offHeapStores.get(table.getSUID());
+		if (tableStores == null) return null;
+		OffHeapListStore store = tableStores.get(column);
+		return (store == null || store.getTable() != table) ? null : store;
+	}
+
+	/**
+ 	 * Return all of the off-heap copies of list columns
+ 	 *
+ 	 * @return the stores
+ 	 */
+	public List<OffHeapListStore> getOffHeapStores() {
+		List<OffHeapListStore> all = new ArrayList<OffHeapListStore>();
+		for (ConcurrentHashMap<String, OffHeapListStore> tableStores: offHeapStores.values())
+			all.addAll(tableStores.values());
+		return all;
+	}
+
+	/**
+ 	 * Return the counts of the categories of each node's neighbors.  The
+ 	 * network is scanned the first time, and the counts are then kept up to
+ 	 * date as edges are added and removed and the column changes, until the
+ 	 * column is created, deleted or renamed, or the network is destroyed.
+ 	 *
+ 	 * @param network the network
+ 	 * @param column the name of the node column the categories come from
+ 	 * @return the counts, or null if the network has no such node column
+ 	 */
+	public NeighborCounts getNeighborCounts(CyNetwork network, String column) {
+		Long key = network.getSUID();
+		ConcurrentHashMap<String, NeighborCounts> networkCounts = neighborCounts.get(key);
+		if (networkCounts == null) {
+			neighborCounts.putIfAbsent(key, new ConcurrentHashMap<String, NeighborCounts>());
+			networkCounts = neighborCounts.get(key);
+		}
+		NeighborCounts counts = networkCounts.get(column);
+		if (counts != null && counts.getNetwork() == network)
+			return counts;
+		CyTable table = network.getDefaultNodeTable();
+		if (table == null || table.getColumn(column) == null)
+			return null;
+		synchronized (networkCounts) {
+			counts = networkCounts.get(column);
+			if (counts == null || counts.getNetwork() != network) {
+				counts = new NeighborCounts(network, column);
+				networkCounts.put(column, counts);
+			}
+		}
+		return counts;
+	}
+
+	/**
+ 	 * Return all of the neighbor counts that are being kept
+ 	 *
+ 	 * @return the counts
+ 	 */
+	public List<NeighborCounts> getAllNeighborCounts() {
+		List<NeighborCounts> all = new ArrayList<NeighborCounts>();
+		for (ConcurrentHashMap<String, NeighborCounts> networkCounts: neighborCounts.values())
+			all.addAll(networkCounts.values());
+		return all;
+	}
+
+	/**
+ 	 * Return the aggregates of a list of columns over the members of group
+ 	 * nodes.  Groups are built when they are first drawn, and then kept up to
+ 	 * date as their members change, until a column is created, deleted or
+ 	 * renamed.
+ 	 *
+ 	 * @param columns the column names
+ 	 * @return the aggregates
+ 	 */
+	public GroupAggregates getGroupAggregates(List<String> columns) {
+		GroupAggregates aggregates = groupAggregates.get(columns);
+		if (aggregates == null) {
+			List<String> copy = Collections.unmodifiableList(new ArrayList<String>(columns));
+			groupAggregates.putIfAbsent(copy, new GroupAggregates(copy));
+			aggregates = groupAggregates.get(copy);
+		}
+		return aggregates;
+	}
+
+	/**
+ 	 * Return all of the group aggregates that are being kept
+ 	 *
+ 	 * @return the aggregates
+ 	 */
+	public List<GroupAggregates> getAllGroupAggregates() {
+		return new ArrayList<GroupAggregates>(groupAggregates.values());
+	}
+
+	public void handleEvent(AddedNodesEvent e) {
+		if (e.getSource() == null) return;
+		for (GroupAggregates aggregates: groupAggregates.values())
+			groupsChanged(aggregates.addMembers(e.getSource(), e.getPayloadCollection()));
+	}
+
+	public void handleEvent(AddedEdgesEvent e) {
+		for (NeighborCounts counts: getNeighborCounts(e.getSource()))
+			neighborsChanged(counts, counts.addEdges(e.getPayloadCollection()));
+	}
+
+	public void handleEvent(AboutToRemoveEdgesEvent e) {
+		for (NeighborCounts counts: getNeighborCounts(e.getSource()))
+			neighborsChanged(counts, counts.removeEdges(e.getEdges()));
+	}
+
+	public void handleEvent(AboutToRemoveNodesEvent e) {
+		for (NeighborCounts counts: getNeighborCounts(e.getSource()))
+			neighborsChanged(counts, counts.removeNodes(e.getNodes()));
+		if (e.getSource() == null) return;
+		for (GroupAggregates aggregates: groupAggregates.values())
+			groupsChanged(aggregates.removeMembers(e.getSource(), e.getNodes()));
+		Set<Long> removed = new HashSet<Long>();
+		for (CyNode node: e.getNodes())
+			removed.add(node.getSUID());
+		for (AbstractChartCustomGraphics<?> chart: getCharts())
+			chart.forgetNodes(e.getSource().getSUID(), removed);
+	}
+
+	public void handleEvent(NetworkAboutToBeDestroyedEvent e) {
+		if (e.getNetwork() == null) return;
+		neighborCounts.remove(e.getNetwork().getSUID());
+		for (GroupAggregates aggregates: groupAggregates.values())
+			aggregates.removeNetwork(e.getNetwork());
+		for (AbstractChartCustomGraphics<?> chart: getCharts())
+			chart.forgetNodes(e.getNetwork().getSUID(), null);
+	}
+
+	public void handleEvent(NetworkViewAboutToBeDestroyedEvent e) {
+		if (e.getNetworkView() == null) return;
+		for (AbstractChartCustomGraphics<?> chart: getCharts())
+			chart.forgetView(e.getNetworkView().getSUID());
+	}
+
+	private List<AbstractChartCustomGraphics<?>> getCharts() {
+		synchronized (charts) {
+			return new ArrayList<AbstractChartCustomGraphics<?>>(charts);
+		}
+	}
+
+	private Collection<NeighborCounts> getNeighborCounts(CyNetwork network) {
+		if (network == null || neighborCounts.isEmpty()) return Collections.emptyList();
+		ConcurrentHashMap<String, NeighborCounts> networkCounts = neighborCounts.get(network.getSUID());
+		if (networkCounts == null) return Collections.emptyList();
+		return networkCounts.values();
+	}
+
+	// Tell the tracker which nodes' counts changed, or that every node's did
+	// if there are new categories
+	private void neighborsChanged(NeighborCounts counts, Set<Long> changed) {
+		CyNetwork network = counts.getNetwork();
+		String key = NeighborCounts.getKey(counts.getColumn());
+		if (counts.takeCategoriesAdded()) {
+			changes.columnChanged(network.getDefaultNodeTable(), key);
+			return;
+		}
+		nodesChanged(network, changed, key);
+	}
+
+	// Tell the tracker which group nodes' aggregates changed
+	private void groupsChanged(Map<Long, CyNetwork> changed) {
+		if (changed.isEmpty()) return;
+		Map<CyNetwork, List<Long>> byNetwork = new HashMap<CyNetwork, List<Long>>();
+		for (Map.Entry<Long, CyNetwork> entry: changed.entrySet()) {
+			List<Long> suids = byNetwork.get(entry.getValue());
+			if (suids == null) {
+				suids = new ArrayList<Long>();
+				byNetwork.put(entry.getValue(), suids);
+			}
+			suids.add(entry.getKey());
+		}
+		for (Map.Entry<CyNetwork, List<Long>> entry: byNetwork.entrySet())
+			nodesChanged(entry.getKey(), entry.getValue(), GroupAggregates.KEY);
+	}
+
+	// Tell the tracker that something a chart draws, tracked under a name that
+	// isn't a real column, has changed for some nodes
+	private void nodesChanged(CyNetwork network, Collection<Long> changed, String key) {
+		if (changed.isEmpty()) return;
+		List<RowSetRecord> records = new ArrayList<RowSetRecord>(changed.size());
+		for (Long suid: changed) {
+			CyNode node = network.getNode(suid);
+			if (node != null)
+				records.add(new RowSetRecord(network.getRow(node), key, null, null));
+		}
+		if (!records.isEmpty())
+			changes.rowsChanged(network.getDefaultNodeTable(), records);
+	}
+
+	/**
+ 	 * Start loading values into a table in bulk.  Until {@link #endBulkLoad}
+ 	 * is called, changes to the table are ignored rather than passed on one
+ 	 * row at a time.
+ 	 *
+ 	 * @param table the (node) table
+ 	 */
+	public void beginBulkLoad(CyTable table) {
+		loading.put(table.getSUID(), Boolean.FALSE);
+	}
+
+	/**
+ 	 * Finish loading values into a table in bulk, and make everything computed
+ 	 * from the columns that were written stale at once: statistics, neighbor
+ 	 * counts and group aggregates of those columns are dropped, off-heap copies
+ 	 * of them are made again, and charts that read them are drawn again.  The
+ 	 * table events of the load should have been flushed first.
+ 	 *
+ 	 * @param table the (node) table
+ 	 * @param columns the columns that were written
+ 	 */
+	public void endBulkLoad(CyTable table, Collection<String> columns) {
+		Long key = table.getSUID();
+		Boolean schemaChanged = loading.remove(key);
+		if (Boolean.TRUE.equals(schemaChanged))
+			schemaChanged(table);
+
+		ConcurrentHashMap<List<String>, ColumnStatistics> tableStatistics = statistics.get(key);
+		if (tableStatistics != null) {
+			for (List<String> statisticsColumns: tableStatistics.keySet()) {
+				if (!Collections.disjoint(statisticsColumns, columns))
+					tableStatistics.remove(statisticsColumns);
+			}
+		}
+		ConcurrentHashMap<String, OffHeapListStore> tableStores = offHeapStores.get(key);
+		if (tableStores != null) {
+			for (String column: columns) {
+				if (!tableStores.containsKey(column)) continue;
+				try {
+					addOffHeapStore(table, column);
+				} catch (IllegalArgumentException e) {
+					logger.warn("Unable to copy column '"+column+"' outside the heap again: "+e.getMessage());
+					removeOffHeapStore(table, column);
+				}
+			}
+		}
+		for (ConcurrentHashMap<String, NeighborCounts> networkCounts: neighborCounts.values()) {
+			for (NeighborCounts counts: networkCounts.values()) {
+				if (counts.getNetwork().getDefaultNodeTable() == table && columns.contains(counts.getColumn()))
+					networkCounts.remove(counts.getColumn(), counts);
+			}
+		}
+		for (GroupAggregates aggregates: groupAggregates.values()) {
+			if (!Collections.disjoint(aggregates.getColumns(), columns))
+				groupAggregates.remove(aggregates.getColumns(), aggregates);
+		}
+		changes.columnsChanged(table, columns);
+	}
+
+	public void handleEvent(RowsSetEvent e) {
+		if (e.getSource() != null && loading.containsKey(e.getSource().getSUID())) return;
+		changes.rowsChanged(e.getSource(), e.getPayloadCollection());
+		if (e.getSource() == null) return;
+		if (!neighborCounts.isEmpty()) {
+			for (ConcurrentHashMap<String, NeighborCounts> networkCounts: neighborCounts.values()) {
+				for (NeighborCounts counts: networkCounts.values()) {
+					if (counts.getNetwork().getDefaultNodeTable() != e.getSource()) continue;
+					Set<Long> changed = new HashSet<Long>();
+					for (RowSetRecord record: e.getPayloadCollection()) {
+						if (!counts.getColumn().equals(record.getColumn())) continue;
+						changed.addAll(counts.update(record.getRow().get(CyIdentifiable.SUID, Long.class),
+						                             record.getRawValue()));
+					}
+					neighborsChanged(counts, changed);
+				}
+			}
+		}
+		for (GroupAggregates aggregates: groupAggregates.values()) {
+			Map<Long, CyNetwork> changed = new HashMap<Long, CyNetwork>();
+			for (RowSetRecord record: e.getPayloadCollection()) {
+				if (aggregates.hasColumn(record.getColumn()))
+					changed.putAll(aggregates.update(record.getRow().get(CyIdentifiable.SUID, Long.class)));
+			}
+			groupsChanged(changed);
+		}
+		ConcurrentHashMap<String, OffHeapListStore> tableStores = offHeapStores.get(e.getSource().getSUID());
+		if (tableStores != null && !tableStores.isEmpty()) {
+			for (RowSetRecord record: e.getPayloadCollection()) {
+				OffHeapListStore store = tableStores.get(record.getColumn());
+				if (store != null)
+					store.update(record.getRow().get(CyIdentifiable.SUID, Long.class), record.getValue());
+			}
+		}
+		ConcurrentHashMap<List<String>, ColumnStatistics> tableStatistics = statistics.get(e.getSource().getSUID());
+		if (tableStatistics == null || tableStatistics.isEmpty()) return;
+
+		Collection<ColumnStatistics> all = tableStatistics.values();
+		for (RowSetRecord record: e.getPayloadCollection()) {
+			Long suid = null;
+			for (ColumnStatistics stats: all) {
+				if (!stats.hasColumn(record.getColumn())) continue;
+				if (suid == null)
+					suid = record.getRow().get(CyIdentifiable.SUID, Long.class);
+				stats.update(suid, record.getColumn(), record.getValue());
+			}
+		}
+	}
+
+	public void handleEvent(ColumnCreatedEvent e) { tableSchemaChanged(e.getSource()); }
+
+	public void handleEvent(ColumnDeletedEvent e) {
+		if (e.getSource() != null)
+			removeOffHeapStore(e.getSource(), e.getColumnName());
+		tableSchemaChanged(e.getSource());
+	}
+
+	public void handleEvent(ColumnNameChangedEvent e) {
+		if (e.getSource() != null)
+			removeOffHeapStore(e.getSource(), e.getOldColumnName());
+		tableSchemaChanged(e.getSource());
+	}
+
+	// A table that is being loaded in bulk is only reset once, at the end
+	private void tableSchemaChanged(CyTable table) {
+		if (table != null && loading.containsKey(table.getSUID())) {
+			loading.replace(table.getSUID(), Boolean.FALSE, Boolean.TRUE);
+			return;
+		}
+		schemaChanged(table);
+	}
+
+	private void schemaChanged(CyTable table) {
+		changes.reset();
+		if (table == null) {
+			readers.clear();
+			statistics.clear();
+			neighborCounts.clear();
+			groupAggregates.clear();
+		} else {
+			readers.remove(table.getSUID());
+			statistics.remove(table.getSUID());
+			// Groups' members may be in any table
+			groupAggregates.clear();
+			for (ConcurrentHashMap<String, NeighborCounts> networkCounts: neighborCounts.values()) {
+				for (NeighborCounts counts: networkCounts.values()) {
+					if (counts.getNetwork().getDefaultNodeTable() == table)
+						networkCounts.remove(counts.getColumn(), counts);
+				}
+			}
+		}
+	}
+
+	/**
+ 	 * Stop the background work.  The manager shouldn't be used afterwards.
+ 	 */
+	public void dispose() {
+		changes.dispose();
+	}
+
+	/**
+ 	 * Create an intern table for what a factory compiles from its specs.  The table
+ 	 * is cleared whenever a preset is added or removed, since that can change
+ 	 * what a spec string compiles to.
+ 	 *
+ 	 * @param name the name of the table (the factory prefix)
+ 	 * @return the intern table
+ 	 */
+	public <T> SpecInterner<T> createInterner(String name) {
+		SpecInterner<T> interner = new SpecInterner<T>(name);
+		interners.add(interner);
+		return interner;
+	}
+
+	/**
+ 	 * Return all of the intern tables
+ 	 *
+ 	 * @return the intern tables, in the order they were created
+ 	 */
+	public List<SpecInterner<?>> getInterners() {
+		return Collections.unmodifiableList(interners);
+	}
+
+	/**
+ 	 * Drop all of the interned instances, so that specs are compiled again
+ 	 */
+	public void clearInterners() {
+		for (SpecInterner<?> interner: interners)
+			interner.clear();
+	}
+
+	private static class OpenMatrix {
+		final MatrixFile matrix;
+		final long checked;
+
+		OpenMatrix(MatrixFile matrix, long checked) {
+			this.matrix = matrix;
+			this.checked = checked;
+		}
+	}
+}
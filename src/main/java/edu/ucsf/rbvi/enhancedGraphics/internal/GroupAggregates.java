@@ -0,0 +1,407 @@
+package edu.ucsf.rbvi.enhancedGraphics.internal;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.cytoscape.model.CyNetwork;
+import org.cytoscape.model.CyNode;
+import org.cytoscape.model.CyRow;
+import org.cytoscape.model.CyTable;
+
+import edu.ucsf.rbvi.enhancedGraphics.internal.charts.ChartSpec.Aggregation;
+import edu.ucsf.rbvi.enhancedGraphics.internal.charts.ValueVector;
+
+/**
+ * The values of an <code>attributelist</code> aggregated over the members of
+ * group nodes, which is what charts with <code>aggregate=sum|mean|max</code>
+ * draw on a node that stands for a collapsed group (a node whose network
+ * pointer is the network of its members).  A member that is itself a group
+ * contributes the aggregate of its own members, so nested groups aggregate
+ * all of the nodes below them.
+ *
+ * For each group we keep the sum, the number of values that aren't missing
+ * and the maximum of each value, and the part each member contributed to
+ * them.  A group is built the first time it is drawn; after that
+ * {@link EnhancedGraphicsManager} passes on changes to the members' rows and
+ * members that are added or removed, and each change only subtracts the
+ * member's old part and adds its new one, in the group and in the groups
+ * above it.  Only when the member that held a maximum gets smaller is the
+ * group's maximum found again from its members' parts.  Each change returns
+ * the group nodes whose aggregates changed, so only their charts are drawn
+ * again.
+ */
+public class GroupAggregates {
+	/**
+ 	 * The name under which changes to the aggregates are tracked, as though it
+ 	 * were a column of the group nodes' table.  Charts that aggregate depend on
+ 	 * this name.
+ 	 */
+	public static final String KEY = "group members";
+
+	private final List<String> columns;
+	// The groups we have built, by the SUID of the group node
+	private final Map<Long, Group> groups = new HashMap<Long, Group>();
+	// The groups each node is a member of, by the SUID of the member
+	private final Map<Long, Set<Group>> memberOf = new HashMap<Long, Set<Group>>();
+	// The groups whose members are in each network, by the SUID of the network
+	private final Map<Long, Set<Group>> byNetwork = new HashMap<Long, Set<Group>>();
+	private final Map<CyTable, AttributeReader> readers = new IdentityHashMap<CyTable, AttributeReader>();
+	private long updates = 0L;
+	private long rescans = 0L;
+
+	/**
+ 	 * @param columns the columns of the attributelist
+ 	 */
+	public GroupAggregates(List<String> columns) {
+		this.columns = columns;
+	}
+
+	public List<String> getColumns() { return columns; }
+
+	/**
+ 	 * Return true if a column is one of ours
+ 	 *
+ 	 * @param column the column name
+ 	 * @return true if it is in the attributelist
+ 	 */
+	public boolean hasColumn(String column) { return columns.contains(column); }
+
+	/**
+ 	 * Return the aggregated values of a group node.  The group is built the
+ 	 * first time, which reads every node below it.
+ 	 *
+ 	 * @param network the network the group node is drawn in
+ 	 * @param node the group node, whose network pointer isn't null
+ 	 * @param aggregation how to aggregate the members' values
+ 	 * @return a new vector of values, which are missing where no member has
+ 	 * a value
+ 	 */
+	public synchronized ValueVector getValues(CyNetwork network, CyNode node, Aggregation aggregation) {
+		Group group = groups.get(node.getSUID());
+		if (group == null || group.members != node.getNetworkPointer())
+			group = build(node, new HashSet<Long>());
+		if (group.network == null)
+			group.network = network;
+		return group.total.getValues(aggregation);
+	}
+
+	/**
+ 	 * Return the number of groups that have been built
+ 	 *
+ 	 * @return the number of groups
+ 	 */
+	public synchronized int getGroupCount() { return groups.size(); }
+
+	/**
+ 	 * Return the number of changes that have been applied
+ 	 *
+ 	 * @return the number of changes
+ 	 */
+	public synchronized long getUpdates() { return updates; }
+
+	/**
+ 	 * Return the number of times a maximum was found again from the parts
+ 	 *
+ 	 * @return the number of rescans
+ 	 */
+	public synchronized long getRescans() { return rescans; }
+
+	/**
+ 	 * Note that a node's values in our columns have changed
+ 	 *
+ 	 * @param suid the SUID of the node
+ 	 * @return the group nodes whose aggregates changed
+ 	 */
+	public synchronized Map<Long, CyNetwork> update(Long suid) {
+		Set<Group> parents = memberOf.get(suid);
+		if (parents == null || groups.containsKey(suid)) return Collections.emptyMap();
+		Map<Long, CyNetwork> changed = new HashMap<Long, CyNetwork>();
+		for (Group parent: new ArrayList<Group>(parents)) {
+			CyNode member = parent.members.getNode(suid);
+			if (member != null)
+				setPart(parent, suid, read(parent.members, member), changed, new HashSet<Group>());
+		}
+		updates++;
+		return changed;
+	}
+
+	/**
+ 	 * Note that nodes have been added to a network, which may be the network
+ 	 * of a group's members
+ 	 *
+ 	 * @param network the network
+ 	 * @param added the nodes
+ 	 * @return the group nodes whose aggregates changed
+ 	 */
+	public synchronized Map<Long, CyNetwork> addMembers(CyNetwork network, Collection<CyNode> added) {
+		Set<Group> owners = byNetwork.get(network.getSUID());
+		if (owners == null) return Collections.emptyMap();
+		Map<Long, CyNetwork> changed = new HashMap<Long, CyNetwork>();
+		for (Group group: new ArrayList<Group>(owners)) {
+			for (CyNode node: added) {
+				addMember(group, node, new HashSet<Long>(Collections.singleton(group.suid)));
+				setPart(group, node.getSUID(), part(network, node), changed, new HashSet<Group>());
+			}
+		}
+		updates++;
+		return changed;
+	}
+
+	/**
+ 	 * Note that nodes are about to be removed from a network, which may be the
+ 	 * network of a group's members
+ 	 *
+ 	 * @param network the network
+ 	 * @param removed the nodes
+ 	 * @return the group nodes whose aggregates changed
+ 	 */
+	public synchronized Map<Long, CyNetwork> removeMembers(CyNetwork network, Collection<CyNode> removed) {
+		Set<Group> owners = byNetwork.get(network.getSUID());
+		if (owners == null) return Collections.emptyMap();
+		Map<Long, CyNetwork> changed = new HashMap<Long, CyNetwork>();
+		for (Group group: new ArrayList<Group>(owners)) {
+			for (CyNode node: removed) {
+				Set<Group> parents = memberOf.get(node.getSUID());
+				if (parents == null || !parents.remove(group)) continue;
+				if (parents.isEmpty()) memberOf.remove(node.getSUID());
+				setPart(group, node.getSUID(), null, changed, new HashSet<Group>());
+			}
+		}
+		updates++;
+		return changed;
+	}
+
+	/**
+ 	 * Forget the groups whose members are in a network that is about to be
+ 	 * destroyed.  They are built again if they are drawn.
+ 	 *
+ 	 * @param network the network
+ 	 */
+	public synchronized void removeNetwork(CyNetwork network) {
+		Set<Group> owners = byNetwork.remove(network.getSUID());
+		if (owners == null) return;
+		for (Group group: owners)
+			forget(group);
+	}
+
+	private Group build(CyNode node, Set<Long> building) {
+		Group old = groups.get(node.getSUID());
+		if (old != null) forget(old);
+		Group group = new Group(node.getSUID(), node.getNetworkPointer());
+		groups.put(group.suid, group);
+		Set<Group> owners = byNetwork.get(group.members.getSUID());
+		if (owners == null) {
+			owners = new HashSet<Group>();
+			byNetwork.put(group.members.getSUID(), owners);
+		}
+		owners.add(group);
+
+		building.add(group.suid);
+		for (CyNode member: group.members.getNodeList()) {
+			addMember(group, member, building);
+			Part part = part(group.members, member);
+			group.parts.put(member.getSUID(), part);
+			group.total.add(part);
+		}
+		building.remove(group.suid);
+		return group;
+	}
+
+	private void forget(Group group) {
+		groups.remove(group.suid);
+		Set<Group> owners = byNetwork.get(group.members.getSUID());
+		if (owners != null) owners.remove(group);
+		for (Long member: group.parts.keySet()) {
+			Set<Group> parents = memberOf.get(member);
+			if (parents != null) parents.remove(group);
+		}
+	}
+
+	// Note that a node is a member of a group, and build it first if it is a
+	// group itself (unless that would go round in a circle)
+	private void addMember(Group group, CyNode member, Set<Long> building) {
+		Set<Group> parents = memberOf.get(member.getSUID());
+		if (parents == null) {
+			parents = new HashSet<Group>();
+			memberOf.put(member.getSUID(), parents);
+		}
+		parents.add(group);
+		if (member.getNetworkPointer() != null && !groups.containsKey(member.getSUID()) &&
+		    !building.contains(member.getSUID()))
+			build(member, building);
+	}
+
+	// What a member adds to a group: its values, or the totals of its members
+	// if it is a group
+	private Part part(CyNetwork network, CyNode member) {
+		Group group = groups.get(member.getSUID());
+		if (group != null)
+			return group.total.copy();
+		return read(network, member);
+	}
+
+	private Part read(CyNetwork network, CyNode member) {
+		CyRow row = network.getRow(member);
+		if (row == null) return new Part(0);
+		AttributeReader reader = readers.get(row.getTable());
+		if (reader == null) {
+			reader = new AttributeReader(row.getTable(), columns);
+			readers.put(row.getTable(), reader);
+		}
+		return Part.of(reader.read(row));
+	}
+
+	// Replace a member's part of a group, and the group's part of the groups
+	// above it.  The path holds the groups we're updating on the way up, so a
+	// group that is in two groups with a common parent updates the parent along
+	// both, but groups that go round in a circle stop when they get back.
+	private void setPart(Group group, Long member, Part part, Map<Long, CyNetwork> changed, Set<Group> path) {
+		if (!path.add(group)) return;
+		try {
+			Part old = (part == null) ? group.parts.remove(member) : group.parts.put(member, part);
+			if (old != null && old.equals(part)) return;
+			if (old != null && group.total.remove(old, part)) {
+				rescans++;
+				group.total.rescanMax(group.parts.values());
+			}
+			if (part != null) group.total.add(part);
+			if (group.network != null) changed.put(group.suid, group.network);
+
+			Set<Group> parents = memberOf.get(group.suid);
+			if (parents == null) return;
+			for (Group parent: new ArrayList<Group>(parents))
+				setPart(parent, group.suid, group.total.copy(), changed, path);
+		} finally {
+			path.remove(group);
+		}
+	}
+
+	private static class Group {
+		final Long suid;
+		final CyNetwork members;
+		// The network the group node is drawn in, which we learn when it is drawn
+		CyNetwork network = null;
+		final Map<Long, Part> parts = new HashMap<Long, Part>();
+		final Part total = new Part(0);
+
+		Group(Long suid, CyNetwork members) {
+			this.suid = suid;
+			this.members = members;
+		}
+	}
+
+	// The sum, the number of values and the maximum of each value
+	private static class Part {
+		double[] sum;
+		int[] count;
+		double[] max;
+
+		Part(int size) {
+			sum = new double[size];
+			count = new int[size];
+			max = new double[size];
+			Arrays.fill(max, Double.NaN);
+		}
+
+		static Part of(ValueVector values) {
+			Part part = new Part(values.size());
+			for (int i = 0; i < values.size(); i++) {
+				double v = values.get(i);
+				if (Double.isNaN(v)) continue;
+				part.sum[i] = v;
+				part.count[i] = 1;
+				part.max[i] = v;
+			}
+			return part;
+		}
+
+		Part copy() {
+			Part part = new Part(0);
+			part.sum = sum.clone();
+			part.count = count.clone();
+			part.max = max.clone();
+			return part;
+		}
+
+		void add(Part part) {
+			grow(part.sum.length);
+			for (int i = 0; i < part.sum.length; i++) {
+				if (part.count[i] == 0) continue;
+				sum[i] += part.sum[i];
+				count[i] += part.count[i];
+				if (Double.isNaN(max[i]) || part.max[i] > max[i])
+					max[i] = part.max[i];
+			}
+		}
+
+		// Take a part away, and return true if it held a maximum that the part
+		// replacing it (if any) doesn't reach
+		boolean remove(Part part, Part replacement) {
+			boolean heldMax = false;
+			for (int i = 0; i < part.sum.length; i++) {
+				if (part.count[i] == 0) continue;
+				count[i] -= part.count[i];
+				// Start again from zero rather than leave a rounding error behind
+				sum[i] = (count[i] == 0) ? 0.0 : sum[i] - part.sum[i];
+				if (part.max[i] == max[i] &&
+				    (replacement == null || i >= replacement.max.length || replacement.count[i] == 0 ||
+				     replacement.max[i] < max[i]))
+					heldMax = true;
+			}
+			return heldMax;
+		}
+
+		void rescanMax(Collection<Part> parts) {
+			Arrays.fill(max, Double.NaN);
+			for (Part part: parts) {
+				for (int i = 0; i < part.max.length; i++) {
+					if (part.count[i] > 0 && (Double.isNaN(max[i]) || part.max[i] > max[i]))
+						max[i] = part.max[i];
+				}
+			}
+		}
+
+		void grow(int size) {
+			if (size <= sum.length) return;
+			int old = sum.length;
+			sum = Arrays.copyOf(sum, size);
+			count = Arrays.copyOf(count, size);
+			max = Arrays.copyOf(max, size);
+			Arrays.fill(max, old, size, Double.NaN);
+		}
+
+		ValueVector getValues(Aggregation aggregation) {
+			double[] values = new double[sum.length];
+			for (int i = 0; i < values.length; i++) {
+				if (count[i] == 0)
+					values[i] = Double.NaN;
+				else if (aggregation == Aggregation.MEAN)
+					values[i] = sum[i]/count[i];
+				else if (aggregation == Aggregation.MAX)
+					values[i] = max[i];
+				else
+					values[i] = sum[i];
+			}
+			return ValueVector.wrap(values);
+		}
+
+		@Override
+		public boolean equals(Object o) {
+			if (!(o instanceof Part)) return false;
+			Part part = (Part)o;
+			return Arrays.equals(sum, part.sum) && Arrays.equals(count, part.count) &&
+			       Arrays.equals(max, part.max);
+		}
+
+		@Override
+		public int hashCode() { return Arrays.hashCode(sum); }
+	}
+}
@@ -0,0 +1,312 @@
+package edu.ucsf.rbvi.enhancedGraphics.internal;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import edu.ucsf.rbvi.enhancedGraphics.internal.charts.ValueVector;
+
+/**
+ * A read-only matrix of chart values in a local binary file, with one row
+ * per node (found by name) and one column per condition.  The values are
+ * memory mapped, so opening a file only reads the row and column names, and
+ * reading a node's values copies them straight from the page cache into the
+ * node's {@link ValueVector} without any lists or boxing.
+ *
+ * The file format (<code>.egm</code>) is big-endian:
+ * <pre>
+ *   0  "EGM1"
+ *   4  int   element size: 4 for float, 8 for double
+ *   8  int   number of rows
+ *  12  int   number of columns
+ *  16  long  offset of the values
+ *  24  long  offset of the row names
+ *  32  the column names, each as written by DataOutput.writeUTF
+ *      padding up to the values, which start at a multiple of 8
+ *      the values, row by row
+ *      the row names, each as written by DataOutput.writeUTF
+ * </pre>
+ * The row names come last so that {@link Writer} can stream a matrix without
+ * holding it in memory.  Missing values are NaN.
+ */
+public class MatrixFile {
+	public static final String MAGIC = "EGM1";
+	public static final String EXTENSION = ".egm";
+	private static final int HEADER_SIZE = 32;
+	// Values are mapped in chunks of whole rows no larger than this
+	private static final long MAX_CHUNK = 1L << 30;
+
+	private final File file;
+	private final long lastModified;
+	private final long length;
+	private final int elementSize;
+	private final int rowCount;
+	private final int columnCount;
+	private final List<String> columnNames;
+	private final Map<String, Integer> columnIndex;
+	private final Map<String, Integer> rowIndex;
+	private final ByteBuffer[] chunks;
+	private final int rowsPerChunk;
+
+	private MatrixFile(File file, long lastModified, long length, int elementSize, int rowCount,
+	                   List<String> columnNames, Map<String, Integer> rowIndex,
+	                   ByteBuffer[] chunks, int rowsPerChunk) {
+		this.file = file;
+		this.lastModified = lastModified;
+		this.length = length;
+		this.elementSize = elementSize;
+		this.rowCount = rowCount;
+		this.columnCount = columnNames.size();
+		this.columnNames = Collections.unmodifiableList(columnNames);
+		this.columnIndex = new HashMap<String, Integer>();
+		for (int i = 0; i < columnCount; i++)
+			columnIndex.put(columnNames.get(i), i);
+		this.rowIndex = rowIndex;
+		this.chunks = chunks;
+		this.rowsPerChunk = rowsPerChunk;
+	}
+
+	/**
+ 	 * Open a matrix file and map its values
+ 	 *
+ 	 * @param file the file
+ 	 * @return the matrix
+ 	 * @throws IOException if the file can't be read or isn't a matrix file
+ 	 */
+	public static MatrixFile open(File file) throws IOException {
+		long lastModified = file.lastModified();
+		RandomAccessFile raf = new RandomAccessFile(file, "r");
+		try {
+			FileChannel channel = raf.getChannel();
+			long length = channel.size();
+			if (length < HEADER_SIZE)
+				throw new IOException(file+" is not a matrix file");
+			byte[] magic = new byte[4];
+			raf.readFully(magic);
+			if (!MAGIC.equals(new String(magic, "US-ASCII")))
+				throw new IOException(file+" is not a matrix file");
+			int elementSize = raf.readInt();
+			int rows = raf.readInt();
+			int columns = raf.readInt();
+			long valuesOffset = raf.readLong();
+			long rowNamesOffset = raf.readLong();
+			if ((elementSize != 4 && elementSize != 8) || rows < 0 || columns < 0 ||
+			    valuesOffset < HEADER_SIZE || rowNamesOffset != valuesOffset + (long)rows*columns*elementSize ||
+			    rowNamesOffset > length)
+				throw new IOException(file+" has an invalid matrix header");
+
+			channel.position(HEADER_SIZE);
+			DataInputStream in = new DataInputStream(new BufferedInputStream(Channels.newInputStream(channel)));
+			List<String> columnNames = new ArrayList<String>(columns);
+			for (int i = 0; i < columns; i++)
+				columnNames.add(in.readUTF());
+
+			channel.position(rowNamesOffset);
+			in = new DataInputStream(new BufferedInputStream(Channels.newInputStream(channel)));
+			Map<String, Integer> rowIndex = new HashMap<String, Integer>(rows*2);
+			for (int i = 0; i < rows; i++) {
+				String name = in.readUTF();
+				// The first row with a name wins
+				if (!rowIndex.containsKey(name))
+					rowIndex.put(name, i);
+			}
+
+			long rowBytes = (long)columns*elementSize;
+			int rowsPerChunk = (rowBytes == 0) ? Math.max(rows, 1) : (int)Math.max(1, MAX_CHUNK / rowBytes);
+			int nChunks = (rows + rowsPerChunk - 1) / rowsPerChunk;
+			ByteBuffer[] chunks = new ByteBuffer[nChunks];
+			for (int c = 0; c < nChunks; c++) {
+				long first = (long)c*rowsPerChunk;
+				long n = Math.min(rowsPerChunk, rows - first);
+				chunks[c] = channel.map(FileChannel.MapMode.READ_ONLY, valuesOffset + first*rowBytes, n*rowBytes);
+			}
+			// The mappings stay valid after the channel is closed
+			return new MatrixFile(file, lastModified, length, elementSize, rows, columnNames, rowIndex,
+			                      chunks, rowsPerChunk);
+		} finally {
+			raf.close();
+		}
+	}
+
+	public File getFile() { return file; }
+
+	/**
+ 	 * Return true if the file has changed since we opened it
+ 	 *
+ 	 * @return true if the file's length or modification time is different
+ 	 */
+	public boolean isStale() {
+		return file.lastModified() != lastModified || file.length() != length;
+	}
+
+	public int getRowCount() { return rowCount; }
+	public int getColumnCount() { return columnCount; }
+	public boolean isDouble() { return elementSize == 8; }
+
+	/**
+ 	 * Return the names of the columns
+ 	 *
+ 	 * @return the unmodifiable list of names
+ 	 */
+	public List<String> getColumnNames() { return columnNames; }
+
+	/**
+ 	 * Return the row with a name
+ 	 *
+ 	 * @param name the row (node) name
+ 	 * @return the row, or -1 if there isn't one
+ 	 */
+	public int getRow(String name) {
+		Integer row = (name == null) ? null : rowIndex.get(name);
+		return (row == null) ? -1 : row.intValue();
+	}
+
+	/**
+ 	 * Return the column with a name
+ 	 *
+ 	 * @param name the column name
+ 	 * @return the column, or -1 if there isn't one
+ 	 */
+	public int getColumn(String name) {
+		Integer column = columnIndex.get(name);
+		return (column == null) ? -1 : column.intValue();
+	}
+
+	/**
+ 	 * Return a value
+ 	 *
+ 	 * @param row the row
+ 	 * @param column the column
+ 	 * @return the value
+ 	 */
+	public double get(int row, int column) {
+		ByteBuffer chunk = chunks[row / rowsPerChunk];
+		int offset = ((row % rowsPerChunk) * columnCount + column) * elementSize;
+		return (elementSize == 4) ? chunk.getFloat(offset) : chunk.getDouble(offset);
+	}
+
+	/**
+ 	 * Read some of the values of a row.  This only uses absolute reads of the
+ 	 * mapped buffers, so any number of threads can read at once.
+ 	 *
+ 	 * @param row the row
+ 	 * @param columns the columns to read, or null for all of them
+ 	 * @return a new vector with the values
+ 	 */
+	public ValueVector read(int row, int[] columns) {
+		ByteBuffer chunk = chunks[row / rowsPerChunk];
+		int rowOffset = (row % rowsPerChunk) * columnCount * elementSize;
+		int n = (columns == null) ? columnCount : columns.length;
+		double[] values = new double[n];
+		if (elementSize == 4) {
+			for (int i = 0; i < n; i++) {
+				int column = (columns == null) ? i : columns[i];
+				values[i] = chunk.getFloat(rowOffset + column*4);
+			}
+		} else {
+			for (int i = 0; i < n; i++) {
+				int column = (columns == null) ? i : columns[i];
+				values[i] = chunk.getDouble(rowOffset + column*8);
+			}
+		}
+		return ValueVector.wrap(values);
+	}
+
+	/**
+ 	 * Writes a matrix file a row at a time
+ 	 */
+	public static class Writer {
+		private final File file;
+		private final int elementSize;
+		private final int columnCount;
+		private final DataOutputStream out;
+		private final List<String> rowNames = new ArrayList<String>();
+		private final long valuesOffset;
+
+		/**
+ 		 * Start a matrix file
+ 		 *
+ 		 * @param file the file to write
+ 		 * @param columnNames the names of the columns
+ 		 * @param doubles true to store doubles, false to store floats
+ 		 * @throws IOException if the file can't be written
+ 		 */
+		public Writer(File file, List<String> columnNames, boolean doubles) throws IOException {
+			this.file = file;
+			this.elementSize = doubles ? 8 : 4;
+			this.columnCount = columnNames.size();
+			this.out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file), 1 << 16));
+			out.writeBytes(MAGIC);
+			out.writeInt(elementSize);
+			out.writeInt(0);
+			out.writeInt(columnCount);
+			// The offsets are filled in by close()
+			out.writeLong(0L);
+			out.writeLong(0L);
+			for (String name: columnNames)
+				out.writeUTF(name);
+			while (out.size() % 8 != 0)
+				out.writeByte(0);
+			valuesOffset = out.size();
+		}
+
+		/**
+ 		 * Add a row
+ 		 *
+ 		 * @param name the row (node) name
+ 		 * @param values the values, with NaN for missing values
+ 		 * @throws IOException if the file can't be written
+ 		 */
+		public void addRow(String name, double[] values) throws IOException {
+			if (values.length != columnCount)
+				throw new IllegalArgumentException("Row '"+name+"' has "+values.length+
+				                                   " values, not "+columnCount);
+			rowNames.add(name);
+			for (double v: values) {
+				if (elementSize == 4)
+					out.writeFloat((float)v);
+				else
+					out.writeDouble(v);
+			}
+		}
+
+		public int getRowCount() { return rowNames.size(); }
+		public int getColumnCount() { return columnCount; }
+
+		/**
+ 		 * Write the row names and finish the header
+ 		 *
+ 		 * @throws IOException if the file can't be written
+ 		 */
+		public void close() throws IOException {
+			long rowNamesOffset = valuesOffset + (long)rowNames.size()*columnCount*elementSize;
+			for (String name: rowNames)
+				out.writeUTF(name);
+			out.close();
+
+			RandomAccessFile raf = new RandomAccessFile(file, "rw");
+			try {
+				raf.seek(8);
+				raf.writeInt(rowNames.size());
+				raf.seek(16);
+				raf.writeLong(valuesOffset);
+				raf.writeLong(rowNamesOffset);
+			} finally {
+				raf.close();
+			}
+		}
+	}
+}
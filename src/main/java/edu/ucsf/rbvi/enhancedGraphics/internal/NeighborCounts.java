@@ -0,0 +1,377 @@
+package edu.ucsf.rbvi.enhancedGraphics.internal;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.cytoscape.model.CyEdge;
+import org.cytoscape.model.CyNetwork;
+import org.cytoscape.model.CyNode;
+import org.cytoscape.model.CyRow;
+
+import edu.ucsf.rbvi.enhancedGraphics.internal.charts.ValueVector;
+
+/**
+ * How many of each node's neighbors are in each category of a node column,
+ * which is what <code>piechart: neighborattribute=column</code> draws.  The
+ * categories are the distinct values of the column (each element counts for
+ * a list column), and a neighbor is counted once for each edge to it.
+ *
+ * The network is scanned once, the first time the counts are needed.  After
+ * that {@link EnhancedGraphicsManager} passes on edges that are added or
+ * removed, nodes that are removed, and changes to the column, and each costs
+ * the degree of the node whose category changed, or one step per edge.  Each
+ * of these returns the nodes whose counts changed, so that only their charts
+ * are drawn again; reading a node's counts costs the number of categories,
+ * however many neighbors it has.
+ *
+ * Each node only keeps a count for the categories its neighbors are in, and
+ * the categories are only sorted again when they are read after a new one has
+ * been found.  A column with more than {@link #MAX_CATEGORIES} distinct values
+ * (the node names, say) isn't a set of categories a pie can show, so we stop
+ * adding categories there and {@link #hasTooManyCategories} says so.
+ */
+public class NeighborCounts {
+	// The prefix of the name under which changes to the counts are tracked
+	private static final String KEY_PREFIX = "neighbors of ";
+	/** The most categories we count */
+	public static final int MAX_CATEGORIES = 256;
+	private static final int[] NONE = new int[0];
+
+	private final CyNetwork network;
+	private final String column;
+
+	// The categories, in the order we found them
+	private final List<String> categories = new ArrayList<String>();
+	private final Map<String, Integer> categoryIndex = new HashMap<String, Integer>();
+	// The categories in sorted order, and the position of each category index
+	// in them, which are sorted again when they're read after a new category
+	private List<String> sortedCategories = Collections.emptyList();
+	private int[] sortedPosition = NONE;
+	private boolean unsorted = false;
+	private boolean categoriesAdded = false;
+	private boolean tooManyCategories = false;
+	// The categories of each node
+	private final Map<Long, int[]> nodeCategories = new HashMap<Long, int[]>();
+	// The counts of each node's neighbors, as (category index, count) pairs
+	// sorted by category index, leaving out the categories with no neighbors
+	private final Map<Long, int[]> counts = new HashMap<Long, int[]>();
+	// The edges we have counted, so that an edge is never taken away twice
+	private final Set<Long> edges = new HashSet<Long>();
+	private long updates = 0L;
+
+	/**
+ 	 * Count the neighbors of every node of a network
+ 	 *
+ 	 * @param network the network
+ 	 * @param column the name of the node column
+ 	 */
+	public NeighborCounts(CyNetwork network, String column) {
+		this.network = network;
+		this.column = column;
+		for (CyNode node: network.getNodeList())
+			nodeCategories.put(node.getSUID(), categoriesOf(node));
+		for (CyEdge edge: network.getEdgeList())
+			addEdge(edge, null);
+		categoriesAdded = false;
+	}
+
+	/**
+ 	 * Return the name under which changes to the counts of a column are
+ 	 * tracked, as though it were a column of the node table.  Charts that
+ 	 * draw the counts depend on this name.
+ 	 *
+ 	 * @param column the name of the node column
+ 	 * @return the name
+ 	 */
+	public static String getKey(String column) {
+		return KEY_PREFIX+column;
+	}
+
+	public CyNetwork getNetwork() { return network; }
+
+	public String getColumn() { return column; }
+
+	/**
+ 	 * Return the categories, sorted
+ 	 *
+ 	 * @return the unmodifiable list of categories
+ 	 */
+	public synchronized List<String> getCategories() {
+		sortCategories();
+		return sortedCategories;
+	}
+
+	/**
+ 	 * Return true if the column has more than {@link #MAX_CATEGORIES} distinct
+ 	 * values, in which case only the first of them are counted
+ 	 *
+ 	 * @return true if there are too many categories
+ 	 */
+	public synchronized boolean hasTooManyCategories() { return tooManyCategories; }
+
+	/**
+ 	 * Return how many of a node's neighbors are in each category
+ 	 *
+ 	 * @param suid the node's SUID
+ 	 * @return a new vector with a count for each of {@link #getCategories},
+ 	 * in the same order
+ 	 */
+	public synchronized ValueVector getCounts(Long suid) {
+		sortCategories();
+		double[] values = new double[sortedPosition.length];
+		int[] pairs = counts.get(suid);
+		if (pairs != null) {
+			for (int i = 0; i < pairs.length; i += 2)
+				values[sortedPosition[pairs[i]]] = pairs[i+1];
+		}
+		return ValueVector.wrap(values);
+	}
+
+	/**
+ 	 * Return the number of changes that have been applied since we scanned the
+ 	 * network
+ 	 *
+ 	 * @return the number of changes
+ 	 */
+	public synchronized long getUpdates() { return updates; }
+
+	/**
+ 	 * Return the number of edges that are counted
+ 	 *
+ 	 * @return the number of edges
+ 	 */
+	public synchronized int getEdgeCount() { return edges.size(); }
+
+	/**
+ 	 * Return true, once, if a category has been added since the last call.
+ 	 * Every node's chart changes then, since each has a slice (and color) for
+ 	 * each category.
+ 	 *
+ 	 * @return true if there are new categories
+ 	 */
+	public synchronized boolean takeCategoriesAdded() {
+		boolean added = categoriesAdded;
+		categoriesAdded = false;
+		return added;
+	}
+
+	/**
+ 	 * Count edges that have been added
+ 	 *
+ 	 * @param added the edges
+ 	 * @return the SUIDs of the nodes whose counts changed
+ 	 */
+	public synchronized Set<Long> addEdges(Collection<CyEdge> added) {
+		Set<Long> changed = new HashSet<Long>();
+		for (CyEdge edge: added)
+			addEdge(edge, changed);
+		updates++;
+		return changed;
+	}
+
+	/**
+ 	 * Stop counting edges that are about to be removed
+ 	 *
+ 	 * @param removed the edges
+ 	 * @return the SUIDs of the nodes whose counts changed
+ 	 */
+	public synchronized Set<Long> removeEdges(Collection<CyEdge> removed) {
+		Set<Long> changed = new HashSet<Long>();
+		for (CyEdge edge: removed)
+			removeEdge(edge, changed);
+		updates++;
+		return changed;
+	}
+
+	/**
+ 	 * Stop counting nodes that are about to be removed, and their edges
+ 	 *
+ 	 * @param removed the nodes
+ 	 * @return the SUIDs of the nodes whose counts changed
+ 	 */
+	public synchronized Set<Long> removeNodes(Collection<CyNode> removed) {
+		Set<Long> changed = new HashSet<Long>();
+		for (CyNode node: removed) {
+			for (CyEdge edge: network.getAdjacentEdgeList(node, CyEdge.Type.ANY))
+				removeEdge(edge, changed);
+		}
+		for (CyNode node: removed) {
+			nodeCategories.remove(node.getSUID());
+			counts.remove(node.getSUID());
+			changed.remove(node.getSUID());
+		}
+		updates++;
+		return changed;
+	}
+
+	/**
+ 	 * Note that a node's value in our column has changed, and move it from its
+ 	 * old categories to its new ones in the counts of its neighbors
+ 	 *
+ 	 * @param suid the node's SUID
+ 	 * @param value the new value
+ 	 * @return the SUIDs of the nodes whose counts changed
+ 	 */
+	public synchronized Set<Long> update(Long suid, Object value) {
+		if (suid == null) return Collections.emptySet();
+		CyNode node = network.getNode(suid);
+		if (node == null) return Collections.emptySet();
+		int[] old = nodeCategories.get(suid);
+		int[] now = categoriesOf(value);
+		nodeCategories.put(suid, now);
+		if (old != null && Arrays.equals(old, now)) return Collections.emptySet();
+
+		Set<Long> changed = new HashSet<Long>();
+		for (CyEdge edge: network.getAdjacentEdgeList(node, CyEdge.Type.ANY)) {
+			if (!edges.contains(edge.getSUID())) continue;
+			CyNode source = edge.getSource();
+			CyNode target = edge.getTarget();
+			if (source.getSUID().equals(target.getSUID())) continue;
+			Long neighbor = source.getSUID().equals(suid) ? target.getSUID() : source.getSUID();
+			if (old != null) add(neighbor, old, -1);
+			add(neighbor, now, 1);
+			changed.add(neighbor);
+		}
+		updates++;
+		return changed;
+	}
+
+	private void addEdge(CyEdge edge, Set<Long> changed) {
+		if (!edges.add(edge.getSUID())) return;
+		Long source = edge.getSource().getSUID();
+		Long target = edge.getTarget().getSUID();
+		// A node isn't its own neighbor
+		if (source.equals(target)) return;
+		add(source, getCategories(edge.getTarget()), 1);
+		add(target, getCategories(edge.getSource()), 1);
+		if (changed != null) {
+			changed.add(source);
+			changed.add(target);
+		}
+	}
+
+	private void removeEdge(CyEdge edge, Set<Long> changed) {
+		if (!edges.remove(edge.getSUID())) return;
+		Long source = edge.getSource().getSUID();
+		Long target = edge.getTarget().getSUID();
+		if (source.equals(target)) return;
+		add(source, getCategories(edge.getTarget()), -1);
+		add(target, getCategories(edge.getSource()), -1);
+		changed.add(source);
+		changed.add(target);
+	}
+
+	private void add(Long suid, int[] neighborCategories, int delta) {
+		if (neighborCategories.length == 0) return;
+		int[] pairs = counts.get(suid);
+		if (pairs == null) pairs = NONE;
+		for (int category: neighborCategories)
+			pairs = add(pairs, category, delta);
+		if (pairs.length == 0)
+			counts.remove(suid);
+		else
+			counts.put(suid, pairs);
+	}
+
+	// Add to the count of a category in a node's (category, count) pairs.  The
+	// pairs are changed in place unless a category is added or removed.
+	private static int[] add(int[] pairs, int category, int delta) {
+		int low = 0;
+		int high = pairs.length/2-1;
+		while (low <= high) {
+			int mid = (low+high) >>> 1;
+			int c = pairs[2*mid];
+			if (c < category) {
+				low = mid+1;
+			} else if (c > category) {
+				high = mid-1;
+			} else {
+				int count = pairs[2*mid+1]+delta;
+				if (count != 0) {
+					pairs[2*mid+1] = count;
+					return pairs;
+				}
+				int[] fewer = new int[pairs.length-2];
+				System.arraycopy(pairs, 0, fewer, 0, 2*mid);
+				System.arraycopy(pairs, 2*mid+2, fewer, 2*mid, fewer.length-2*mid);
+				return fewer;
+			}
+		}
+		int[] more = new int[pairs.length+2];
+		System.arraycopy(pairs, 0, more, 0, 2*low);
+		more[2*low] = category;
+		more[2*low+1] = delta;
+		System.arraycopy(pairs, 2*low, more, 2*low+2, pairs.length-2*low);
+		return more;
+	}
+
+	// The categories of a node we may not have seen yet (a new node)
+	private int[] getCategories(CyNode node) {
+		int[] nodeCategory = nodeCategories.get(node.getSUID());
+		if (nodeCategory == null) {
+			nodeCategory = categoriesOf(node);
+			nodeCategories.put(node.getSUID(), nodeCategory);
+		}
+		return nodeCategory;
+	}
+
+	private int[] categoriesOf(CyNode node) {
+		CyRow row = network.getRow(node);
+		return (row == null) ? NONE : categoriesOf(row.getRaw(column));
+	}
+
+	private int[] categoriesOf(Object value) {
+		if (value == null) return NONE;
+		if (!(value instanceof List)) {
+			int index = indexOf(value.toString());
+			return (index < 0) ? NONE : new int[] {index};
+		}
+		List<?> list = (List<?>)value;
+		int[] result = new int[list.size()];
+		int n = 0;
+		for (Object element: list) {
+			int index = (element == null) ? -1 : indexOf(element.toString());
+			if (index >= 0)
+				result[n++] = index;
+		}
+		return (n == result.length) ? result : Arrays.copyOf(result, n);
+	}
+
+	// The index of a category, or -1 if it's new and we have too many
+	private int indexOf(String category) {
+		Integer index = categoryIndex.get(category);
+		if (index != null) return index.intValue();
+		if (categories.size() >= MAX_CATEGORIES) {
+			if (!tooManyCategories) {
+				tooManyCategories = true;
+				categoriesAdded = true;
+			}
+			return -1;
+		}
+		index = categories.size();
+		categories.add(category);
+		categoryIndex.put(category, index);
+		unsorted = true;
+		categoriesAdded = true;
+		return index.intValue();
+	}
+
+	private void sortCategories() {
+		if (!unsorted) return;
+		List<String> sorted = new ArrayList<String>(categories);
+		Collections.sort(sorted);
+		int[] position = new int[sorted.size()];
+		for (int i = 0; i < position.length; i++)
+			position[categoryIndex.get(sorted.get(i))] = i;
+		sortedCategories = Collections.unmodifiableList(sorted);
+		sortedPosition = position;
+		unsorted = false;
+	}
+}
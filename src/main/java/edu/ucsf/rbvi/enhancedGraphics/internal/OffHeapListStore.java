@@ -0,0 +1,278 @@
+package edu.ucsf.rbvi.enhancedGraphics.internal;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import org.cytoscape.model.CyColumn;
+import org.cytoscape.model.CyTable;
+
+import edu.ucsf.rbvi.enhancedGraphics.internal.charts.ValueVector;
+
+/**
+ * A copy of a numeric list column kept outside the Java heap, so that charts
+ * of very large networks with long lists can read a node's values without
+ * {@link org.cytoscape.model.CyRow#getList} building a list of boxed values
+ * for every node on every repaint.
+ *
+ * The column is copied once, when the store is created, into direct
+ * ByteBuffers of 64MB as doubles.  Each row's values are in one place, which
+ * is found from the row's SUID with a binary search.  After that
+ * {@link EnhancedGraphicsManager} passes on every change to the column, and
+ * {@link #update} copies only the changed row: in place if the list is the
+ * same length, and otherwise at the end of the store.  When more than half of
+ * the store is lists that have been replaced, the live lists are copied into
+ * new buffers.
+ *
+ * Reads don't lock.  Each row's location is one value in an
+ * AtomicLongArray, so a reader sees either the old or the new list of a row
+ * that is replaced by a list of another length; a list that is overwritten in
+ * place may be read half written, but the change makes the charts draw the
+ * node again.
+ */
+public class OffHeapListStore {
+	// Each chunk holds 2^CHUNK_BITS bytes
+	static final int CHUNK_BITS = 26;
+	static final int CHUNK_SIZE = 1 << CHUNK_BITS;
+	// A row's location is its chunk, its byte offset in the chunk and the
+	// number of values, packed into a long
+	private static final int LENGTH_BITS = 23;
+	private static final long LENGTH_MASK = (1L << LENGTH_BITS) - 1;
+	private static final long OFFSET_MASK = (1L << CHUNK_BITS) - 1;
+	private static final long NONE = -1L;
+
+	private final CyTable table;
+	private final String column;
+	private volatile Store store;
+	private long liveBytes = 0L;
+	private long garbageBytes = 0L;
+	private long updates = 0L;
+	private long compactions = 0L;
+
+	/**
+ 	 * Copy a list column
+ 	 *
+ 	 * @param table the table
+ 	 * @param column the name of a list column of Doubles, Integers, Longs or
+ 	 * Floats
+ 	 * @throws IllegalArgumentException if the column isn't a numeric list column
+ 	 */
+	public OffHeapListStore(CyTable table, String column) {
+		this.table = table;
+		this.column = column;
+		CyColumn col = table.getColumn(column);
+		if (col == null)
+			throw new IllegalArgumentException("Column '"+column+"' doesn't exist");
+		Class<?> type = col.getListElementType();
+		if (col.getType() != List.class ||
+		    (type != Double.class && type != Integer.class && type != Long.class && type != Float.class))
+			throw new IllegalArgumentException("Column '"+column+"' isn't a numeric list column");
+
+		List<Long> keys = table.getPrimaryKey().getValues(Long.class);
+		List<List> lists = col.getValues(List.class);
+		int rowCount = keys.size();
+		long[] suids = new long[rowCount];
+		int n = 0;
+		for (int i = 0; i < rowCount; i++) {
+			Long key = keys.get(i);
+			if (key != null) suids[n++] = key.longValue();
+		}
+		suids = Arrays.copyOf(suids, n);
+		Arrays.sort(suids);
+
+		Store s = new Store(suids);
+		double[] buffer = new double[16];
+		for (int i = 0; i < rowCount; i++) {
+			Long key = keys.get(i);
+			if (key == null) continue;
+			int index = Arrays.binarySearch(suids, key.longValue());
+			buffer = toArray(lists.get(i), buffer);
+			s.slots.set(index, append(s, buffer, length(lists.get(i))));
+		}
+		store = s;
+	}
+
+	public CyTable getTable() { return table; }
+
+	public String getColumn() { return column; }
+
+	/**
+ 	 * Read a row's values
+ 	 *
+ 	 * @param suid the row's SUID
+ 	 * @return a new vector with the values, with null elements as NaN, or
+ 	 * null if the row isn't in the store
+ 	 */
+	public ValueVector read(long suid) {
+		Store s = store;
+		long slot = s.getSlot(suid);
+		if (slot == NONE)
+			return null;
+		int length = (int)(slot & LENGTH_MASK);
+		int offset = (int)((slot >>> LENGTH_BITS) & OFFSET_MASK);
+		ByteBuffer chunk = s.chunks[(int)(slot >>> (LENGTH_BITS + CHUNK_BITS))];
+		double[] values = new double[length];
+		for (int i = 0; i < length; i++)
+			values[i] = chunk.getDouble(offset + i*8);
+		return ValueVector.wrap(values);
+	}
+
+	/**
+ 	 * Copy a row's new list
+ 	 *
+ 	 * @param suid the row's SUID
+ 	 * @param value the new list, or null
+ 	 */
+	public synchronized void update(Long suid, Object value) {
+		if (suid == null) return;
+		updates++;
+		Store s = store;
+		List<?> list = (value instanceof List) ? (List<?>)value : null;
+		int length = length(list);
+		double[] values = toArray(list, new double[Math.max(length, 1)]);
+
+		long old = s.getSlot(suid);
+		if (old != NONE && (old & LENGTH_MASK) == length) {
+			// Overwrite the old values
+			int offset = (int)((old >>> LENGTH_BITS) & OFFSET_MASK);
+			ByteBuffer chunk = s.chunks[(int)(old >>> (LENGTH_BITS + CHUNK_BITS))];
+			for (int i = 0; i < length; i++)
+				chunk.putDouble(offset + i*8, values[i]);
+			return;
+		}
+
+		s.setSlot(suid, append(s, values, length));
+		if (old != NONE) {
+			long bytes = (old & LENGTH_MASK) * 8;
+			liveBytes -= bytes;
+			garbageBytes += bytes;
+		}
+		if (garbageBytes > CHUNK_SIZE && garbageBytes > liveBytes)
+			compact();
+	}
+
+	/**
+ 	 * Return the number of rows in the store
+ 	 *
+ 	 * @return the number of rows
+ 	 */
+	public int getRowCount() {
+		Store s = store;
+		return s.suids.length + s.added.size();
+	}
+
+	/**
+ 	 * Return the number of bytes of values that are in use
+ 	 *
+ 	 * @return the bytes in use
+ 	 */
+	public synchronized long getLiveBytes() { return liveBytes; }
+
+	/**
+ 	 * Return the number of bytes allocated outside the heap
+ 	 *
+ 	 * @return the bytes allocated
+ 	 */
+	public long getAllocatedBytes() { return (long)store.chunks.length * CHUNK_SIZE; }
+
+	public synchronized long getUpdates() { return updates; }
+
+	public synchronized long getCompactions() { return compactions; }
+
+	// Copy the live lists into new buffers
+	private void compact() {
+		compactions++;
+		Store old = store;
+		Store s = new Store(old.suids);
+		liveBytes = 0L;
+		garbageBytes = 0L;
+		double[] buffer = new double[16];
+		for (int i = 0; i < old.suids.length; i++) {
+			long slot = old.slots.get(i);
+			buffer = copyOut(old, slot, buffer);
+			s.slots.set(i, append(s, buffer, (int)(slot & LENGTH_MASK)));
+		}
+		for (Long suid: old.added.keySet()) {
+			long slot = old.added.get(suid);
+			buffer = copyOut(old, slot, buffer);
+			s.added.put(suid, append(s, buffer, (int)(slot & LENGTH_MASK)));
+		}
+		store = s;
+	}
+
+	private static double[] copyOut(Store s, long slot, double[] buffer) {
+		int length = (int)(slot & LENGTH_MASK);
+		if (buffer.length < length) buffer = new double[length];
+		int offset = (int)((slot >>> LENGTH_BITS) & OFFSET_MASK);
+		ByteBuffer chunk = s.chunks[(int)(slot >>> (LENGTH_BITS + CHUNK_BITS))];
+		for (int i = 0; i < length; i++)
+			buffer[i] = chunk.getDouble(offset + i*8);
+		return buffer;
+	}
+
+	// Write values at the end of the store, and return their slot
+	private long append(Store s, double[] values, int length) {
+		long bytes = (long)length * 8;
+		if (length > LENGTH_MASK || bytes > CHUNK_SIZE)
+			throw new IllegalArgumentException("A list of "+length+" values is too long to store");
+		ByteBuffer chunk = s.chunks.length == 0 ? null : s.chunks[s.chunks.length-1];
+		if (chunk == null || chunk.remaining() < bytes) {
+			chunk = ByteBuffer.allocateDirect(CHUNK_SIZE);
+			ByteBuffer[] chunks = Arrays.copyOf(s.chunks, s.chunks.length+1);
+			chunks[chunks.length-1] = chunk;
+			// Publish the chunk before any slot refers to it
+			s.chunks = chunks;
+		}
+		int offset = chunk.position();
+		for (int i = 0; i < length; i++)
+			chunk.putDouble(values[i]);
+		liveBytes += bytes;
+		return ((long)(s.chunks.length-1) << (LENGTH_BITS + CHUNK_BITS)) | ((long)offset << LENGTH_BITS) | length;
+	}
+
+	private static int length(Object list) {
+		return (list instanceof List) ? ((List<?>)list).size() : 0;
+	}
+
+	private static double[] toArray(Object value, double[] buffer) {
+		if (!(value instanceof List)) return buffer;
+		List<?> list = (List<?>)value;
+		if (buffer.length < list.size()) buffer = new double[list.size()];
+		int i = 0;
+		for (Object element: list)
+			buffer[i++] = (element instanceof Number) ? ((Number)element).doubleValue() : Double.NaN;
+		return buffer;
+	}
+
+	// The buffers and the location of each row's values.  Rows that are added
+	// after the store is created are kept in a map.
+	private static class Store {
+		final long[] suids;
+		final AtomicLongArray slots;
+		final ConcurrentHashMap<Long, Long> added = new ConcurrentHashMap<Long, Long>();
+		volatile ByteBuffer[] chunks = new ByteBuffer[0];
+
+		Store(long[] suids) {
+			this.suids = suids;
+			this.slots = new AtomicLongArray(suids.length);
+		}
+
+		long getSlot(long suid) {
+			int index = Arrays.binarySearch(suids, suid);
+			if (index >= 0)
+				return slots.get(index);
+			Long slot = added.isEmpty() ? null : added.get(suid);
+			return (slot == null) ? NONE : slot.longValue();
+		}
+
+		void setSlot(long suid, long slot) {
+			int index = Arrays.binarySearch(suids, suid);
+			if (index >= 0)
+				slots.set(index, slot);
+			else
+				added.put(suid, slot);
+		}
+	}
+}
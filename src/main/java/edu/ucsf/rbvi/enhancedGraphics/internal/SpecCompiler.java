@@ -0,0 +1,19 @@
+package edu.ucsf.rbvi.enhancedGraphics.internal;
+
+import org.cytoscape.view.presentation.customgraphics.CyCustomGraphics;
+
+/**
+ * A factory that can compile a spec into a new instance without going through
+ * its {@link SpecInterner}.  Validation uses this so that it times the real
+ * parse and doesn't fill the intern tables with specs nobody draws.
+ */
+public interface SpecCompiler {
+	/**
+ 	 * Compile a spec into a new instance, without looking it up in or adding it
+ 	 * to the intern table
+ 	 *
+ 	 * @param input the spec, without its prefix
+ 	 * @return the new instance
+ 	 */
+	public CyCustomGraphics compile(String input);
+}
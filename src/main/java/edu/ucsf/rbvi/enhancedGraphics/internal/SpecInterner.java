@@ -0,0 +1,112 @@
+package edu.ucsf.rbvi.enhancedGraphics.internal;
+
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A concurrent intern table that maps spec strings to what was compiled from
+ * them, so that a spec is only parsed once however many nodes use it.  Only
+ * immutable things are interned: the chart factories intern the chart spec,
+ * and the gradient factories a gradient whose layers their instances share.
+ * Each call to a factory still returns a new custom graphics, since those have
+ * an identifier, name and size that their users set, and the layers they last
+ * drew.
+ *
+ * The values are weakly referenced, so a spec that is no longer used by any
+ * chart is dropped from the table when it is collected.  Interners
+ * are created by {@link EnhancedGraphicsManager#createInterner}, which clears
+ * them whenever a preset changes.
+ */
+public class SpecInterner<T> {
+	private final String name;
+	private final ConcurrentHashMap<String, Entry<T>> table = new ConcurrentHashMap<String, Entry<T>>();
+	private final ReferenceQueue<T> collected = new ReferenceQueue<T>();
+	private final AtomicLong hits = new AtomicLong();
+	private final AtomicLong misses = new AtomicLong();
+
+	SpecInterner(String name) {
+		this.name = name;
+	}
+
+	public String getName() { return name; }
+
+	/**
+ 	 * Return the interned instance for a spec
+ 	 *
+ 	 * @param spec the spec string
+ 	 * @return the instance, or null if there isn't one (which counts as a miss)
+ 	 */
+	public T get(String spec) {
+		if (spec == null) return null;
+		expunge();
+		Entry<T> entry = table.get(spec);
+		T value = (entry == null) ? null : entry.get();
+		if (value == null)
+			misses.incrementAndGet();
+		else
+			hits.incrementAndGet();
+		return value;
+	}
+
+	/**
+ 	 * Intern an instance for a spec.  If another thread interned an instance for
+ 	 * the same spec first, that instance is returned instead.
+ 	 *
+ 	 * @param spec the spec string
+ 	 * @param value the instance compiled from the spec
+ 	 * @return the interned instance
+ 	 */
+	public T intern(String spec, T value) {
+		if (spec == null) return value;
+		Entry<T> entry = new Entry<T>(spec, value, collected);
+		while (true) {
+			Entry<T> existing = table.putIfAbsent(spec, entry);
+			if (existing == null)
+				return value;
+			T other = existing.get();
+			if (other != null)
+				return other;
+			if (table.replace(spec, existing, entry))
+				return value;
+		}
+	}
+
+	public long getHits() { return hits.get(); }
+
+	public long getMisses() { return misses.get(); }
+
+	/**
+ 	 * Return the number of specs in the table.  This may include instances that
+ 	 * have been collected but not yet removed.
+ 	 *
+ 	 * @return the number of interned specs
+ 	 */
+	public int size() {
+		expunge();
+		return table.size();
+	}
+
+	public void clear() {
+		table.clear();
+	}
+
+	// Remove the entries whose instances have been collected
+	private void expunge() {
+		Object ref;
+		while ((ref = collected.poll()) != null) {
+			Entry<?> entry = (Entry<?>)ref;
+			table.remove(entry.spec, entry);
+		}
+	}
+
+	private static class Entry<T> extends WeakReference<T> {
+		final String spec;
+
+		Entry(String spec, T value, ReferenceQueue<T> queue) {
+			super(value, queue);
+			this.spec = spec;
+		}
+	}
+}
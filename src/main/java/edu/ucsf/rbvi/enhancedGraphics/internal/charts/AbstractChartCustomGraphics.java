@@ -1,40 +1,59 @@
 package edu.ucsf.rbvi.enhancedGraphics.internal.charts;
 
 import java.awt.Color;
-import java.awt.Font;
 import java.awt.Graphics2D;
 import java.awt.Image;
 import java.awt.Paint;
 import java.awt.Shape;
-import java.awt.geom.Point2D;
 import java.awt.geom.Rectangle2D;
 import java.awt.image.BufferedImage;
 
+import java.io.File;
+import java.io.IOException;
+
 import java.util.ArrayList;
 import java.util.Arrays;
-import java.util.Calendar;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Iterator;
 import java.util.List;
-import java.util.HashMap;
-import java.util.Map;
-import java.util.Random;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
 
+import org.cytoscape.model.CyIdentifiable;
 import org.cytoscape.model.CyNetwork;
 import org.cytoscape.model.CyNode;
 import org.cytoscape.model.CyRow;
 import org.cytoscape.model.CyTable;
+import org.cytoscape.view.model.CyNetworkView;
+import org.cytoscape.view.model.View;
 
 import org.cytoscape.view.presentation.customgraphics.CustomGraphicLayer;
 import org.cytoscape.view.presentation.customgraphics.Cy2DGraphicLayer;
 import org.cytoscape.view.presentation.customgraphics.PaintedShape;
 
 import edu.ucsf.rbvi.enhancedGraphics.internal.AbstractEnhancedCustomGraphics;
+import edu.ucsf.rbvi.enhancedGraphics.internal.AttributeReader;
+import edu.ucsf.rbvi.enhancedGraphics.internal.ChangeTracker;
+import edu.ucsf.rbvi.enhancedGraphics.internal.ColumnSnapshot;
+import edu.ucsf.rbvi.enhancedGraphics.internal.ColumnStatistics;
+import edu.ucsf.rbvi.enhancedGraphics.internal.EnhancedGraphicsManager;
+import edu.ucsf.rbvi.enhancedGraphics.internal.GroupAggregates;
+import edu.ucsf.rbvi.enhancedGraphics.internal.MatrixFile;
+import edu.ucsf.rbvi.enhancedGraphics.internal.NeighborCounts;
+import edu.ucsf.rbvi.enhancedGraphics.internal.OffHeapListStore;
+import edu.ucsf.rbvi.enhancedGraphics.internal.parse.SerializedSpec;
+import edu.ucsf.rbvi.enhancedGraphics.internal.parse.SpecLexer;
 
 abstract public class AbstractChartCustomGraphics<T extends CustomGraphicLayer> 
                 extends AbstractEnhancedCustomGraphics<T> {
 	// Standard command strings
+	public static final String AGGREGATE = "aggregate";
 	public static final String ANCHOR = "anchor";
 	public static final String ALL = "all";
 	public static final String ATTRIBUTELIST = "attributelist";
+	public static final String AUTO = "auto";
 	public static final String BORDERWIDTH = "borderwidth";
 	public static final String BORDERCOLOR = "bordercolor";
 	public static final String CLEAR = "clear";
@@ -48,6 +67,9 @@ abstract public class AbstractChartCustomGraphics<T extends CustomGraphicLayer>
 	public static final String LABELSPACING = "labelspacing"; // line spacing
 	public static final String LABELS = "labellist";
 	public static final String LIST = "list";
+	public static final String MATRIXCOLS = "matrixcols";
+	public static final String MATRIXFILE = "matrixfile";
+	public static final String MATRIXROW = "matrixrow";
 	public static final String NETWORK = "network";
 	public static final String NORMALIZE = "normalize";
 	public static final String POSITION = "position";
@@ -60,26 +82,164 @@ abstract public class AbstractChartCustomGraphics<T extends CustomGraphicLayer>
 	public static final String VALUES = "valuelist";
 	public static final String YBASE = "ybase";
 
-	protected List<Double> values = null;
-	protected List<String> labels = null;
-	protected List<String> attributes = null;
-	protected double rangeMax = 0.0;
-	protected double rangeMin = 0.0;
-	protected	double ybase = 0.5;
-	protected	double scale = 1.0;
-	protected	double borderWidth = 0.1;
-	protected Color labelColor = Color.BLACK;
-	protected Color borderColor = Color.BLACK;
-	protected int labelSize = ViewUtils.DEFAULT_SIZE;
-	protected String labelFont = ViewUtils.DEFAULT_FONT;
-	protected int labelStyle = ViewUtils.DEFAULT_STYLE;
-	protected double labelWidth = ViewUtils.DEFAULT_LABEL_WIDTH;
-	protected double labelSpacing = ViewUtils.DEFAULT_LABEL_LINE_SPACING;
-	protected boolean normalized = false;
-	protected List<? extends CustomGraphicLayer> shapeLayers = null;
-	protected Object position = ViewUtils.Position.CENTER;
-	protected Point2D labelOffset = null;
-	protected Object anchor = ViewUtils.Position.CENTER;
+	// Matrix columns given by index, e.g. 5 or 0-99
+	private static final Pattern INDEX_RANGE = Pattern.compile("(\\d+)(?:-(\\d+))?");
+
+	// The default range of z-scores, in standard deviations
+	public static final double ZSCORE_RANGE = 3.0;
+
+	// The layers from the last call to getLayers, used for getRenderedImage
+	protected volatile List<? extends CustomGraphicLayer> shapeLayers = null;
+
+	private final EnhancedGraphicsManager manager;
+	// The layers we last created for each node view (null if we failed to draw it)
+	private final ConcurrentHashMap<Long, CachedLayers<T>> cache = new ConcurrentHashMap<Long, CachedLayers<T>>();
+	// The tracker's reset version when the cache was last cleared
+	private volatile long cacheReset = 0L;
+	// Whether the manager knows we've been drawn
+	private volatile boolean registered = false;
+	// The matrix columns we read, looked up in the last matrix file we opened
+	private volatile MatrixColumns matrixColumns = null;
+
+	protected AbstractChartCustomGraphics() {
+		this(null);
+	}
+
+	/**
+ 	 * @param manager the manager that tracks changes to the data, used to reuse
+ 	 * layers until the data they were created from changes (may be null, in which
+ 	 * case layers are created every time)
+ 	 */
+	protected AbstractChartCustomGraphics(EnhancedGraphicsManager manager) {
+		this.manager = manager;
+	}
+
+	/**
+ 	 * Return the compiled specification for this chart
+ 	 *
+ 	 * @return the chart specification
+ 	 */
+	public abstract ChartSpec getSpec();
+
+	/**
+ 	 * Create the layers for a node.  Since our spec can't change, the layers for
+ 	 * a node only change when the columns the spec uses change for that node, so
+ 	 * the layers are remembered and reused until the manager's change tracker says
+ 	 * they are stale.  This includes failures: a node we failed to draw isn't
+ 	 * retried until its data changes.
+ 	 */
+	@Override
+	public List<T> getLayers(CyNetworkView networkView, View<? extends CyIdentifiable> nodeView) {
+		if (manager == null)
+			return createLayers(networkView, nodeView);
+
+		ChangeTracker changes = manager.getChangeTracker();
+		if (!registered) {
+			manager.chartDrawn(this);
+			registered = true;
+		}
+		// A matrix file that has changed resets the tracker when it's opened again
+		if (getSpec().hasMatrix())
+			manager.getMatrix(getSpec().getMatrixFile());
+		// Everything is stale after a reset, so drop it all.  (The manager has
+		// us forget the layers of nodes, networks and views that go away.)
+		long reset = changes.getResetVersion();
+		if (reset != cacheReset) {
+			cache.clear();
+			cacheReset = reset;
+		}
+
+		Long viewId = nodeView.getSUID();
+		Object model = nodeView.getModel();
+		Long nodeId = (model instanceof CyIdentifiable) ? ((CyIdentifiable)model).getSUID() : null;
+		// An automatic range depends on every row, so the layers are also stale
+		// if the range has changed
+		double[] range = getSpec().isAutoRange() ? getRange(networkView.getModel(), getSpec()) : null;
+		CachedLayers<T> cached = cache.get(viewId);
+		if (cached != null && cached.nodeId != null && cached.nodeId.equals(nodeId) &&
+		    isCurrent(changes, cached.version, nodeId) &&
+		    Arrays.equals(range, cached.range)) {
+			if (cached.layers == null) {
+				manager.failureSuppressed();
+				return null;
+			}
+			manager.layersReused();
+			shapeLayers = cached.layers;
+			return cached.layers;
+		}
+
+		// Read the version first, so a change while we draw makes the layers stale
+		long version = changes.getVersion();
+		List<T> layers = createLayers(networkView, nodeView);
+		if (layers == null || isCacheable())
+			cache.put(viewId, new CachedLayers<T>(networkView.getSUID(), networkView.getModel().getSUID(),
+			                                      nodeId, version, range, layers));
+		else if (cached != null)
+			cache.remove(viewId);
+		return layers;
+	}
+
+	/**
+ 	 * Forget the layers we created for nodes that are being removed from a
+ 	 * network, or for every node of a network that is being destroyed
+ 	 *
+ 	 * @param networkId the SUID of the network
+ 	 * @param nodeIds the SUIDs of the nodes, or null for all of them
+ 	 */
+	public void forgetNodes(Long networkId, Collection<Long> nodeIds) {
+		for (Iterator<CachedLayers<T>> i = cache.values().iterator(); i.hasNext(); ) {
+			CachedLayers<T> cached = i.next();
+			if (networkId.equals(cached.networkId) && (nodeIds == null || nodeIds.contains(cached.nodeId)))
+				i.remove();
+		}
+	}
+
+	/**
+ 	 * Forget the layers we created for the nodes of a view that is being
+ 	 * destroyed
+ 	 *
+ 	 * @param networkViewId the SUID of the network view
+ 	 */
+	public void forgetView(Long networkViewId) {
+		for (Iterator<CachedLayers<T>> i = cache.values().iterator(); i.hasNext(); ) {
+			if (networkViewId.equals(i.next().networkViewId))
+				i.remove();
+		}
+	}
+
+	// Whether layers created at a version are current.  If the values are
+	// normalized against their columns, a change to any row makes them stale.
+	private boolean isCurrent(ChangeTracker changes, long version, Long nodeId) {
+		if (getSpec().dependsOnAllRows())
+			return changes.isCurrent(version, getSpec().getColumns());
+		return changes.isCurrent(version, nodeId, getSpec().getColumns());
+	}
+
+	/**
+ 	 * Return whether the layers for a node can be reused until its data changes.
+ 	 * Charts whose layers depend on the node view itself (its size, for example)
+ 	 * should return false.
+ 	 *
+ 	 * @return true if the layers only depend on the spec and the node's data
+ 	 */
+	protected boolean isCacheable() { return true; }
+
+	/**
+ 	 * Create the layers for a node
+ 	 *
+ 	 * @param networkView the network view
+ 	 * @param nodeView the view of the node we're drawing
+ 	 * @return the layers, or null if the chart can't be drawn for this node
+ 	 */
+	protected abstract List<T> createLayers(CyNetworkView networkView, View<? extends CyIdentifiable> nodeView);
+
+	@Override
+	public String getError() { return getSpec().getError(); }
+
+	@Override
+	public String toSerializableString() {
+		return SerializedSpec.format(getIdentifier(), displayName, getSpec().getArguments());
+	}
 
 	@Override
 	public Image getRenderedImage() {
@@ -117,184 +277,6 @@ abstract public class AbstractChartCustomGraphics<T extends CustomGraphicLayer>
 		return image;
 	}
 
-	protected void populateValues(Map<String, String> args) {
-		if (args.containsKey(RANGE)) {
-			rangeMin = 0.0;
-			rangeMax = 0.0;
-			String split[] = args.get(RANGE).split(",");
-			try {
-				if (split.length == 2) {
-					rangeMin = getDoubleValue(split[0]);
-					rangeMax = getDoubleValue(split[1]);
-				}
-			} catch (NumberFormatException e) {
-				rangeMin = 0.0;
-				rangeMax = 0.0;
-			}
-			if (rangeMin == 0.0 && rangeMax == 0.0) {
-				logger.warn("Unable to parse min/max values from '"+args.get(RANGE)+"'");	
-			}
-		}
-
-		if (args.containsKey(BORDERWIDTH)) {
-			try {
-				borderWidth = getDoubleValue(args.get(BORDERWIDTH));
-			} catch (NumberFormatException e) {
-				logger.warn("Unable to parse border width from '"+args.get(BORDERWIDTH)+"'");	
-			}
-		}
-		
-		if(args.containsKey(BORDERCOLOR)) {
-			borderColor = getColorValue(args.get(BORDERCOLOR));
-		}
-
-    if(args.containsKey(NORMALIZE)) {
-      normalized = !getBooleanValue(args.get(NORMALIZE));
-    }
-
-		values = null;
-		if (args.containsKey(VALUES)) {
-			// Get our values.  convertData returns an array of values in degrees of arc
-			values = convertInputToDouble(args.get(VALUES));
-			if (values == null) {
-				logger.error("Cannot parse "+VALUES+" from input '"+args.get(VALUES)+"'");
-				return;
-			}
-			if (rangeMax != 0.0 || rangeMin != 0.0) {
-				values = normalize(values, rangeMin, rangeMax);
-				normalized = true;
-			}
-		}
-
-		labels = new ArrayList<String>();
-		if (args.containsKey(LABELS)) {
-			// Get our labels.  These may or may not be printed depending on options
-			labels = getStringList(args.get(LABELS));
-			if (labels == null) {
-				logger.error("Cannot parse "+LABELS+" from input '"+args.get(LABELS)+"'");
-				return;
-			}
-		}
-
-		boolean showLabels = true;
-		if (args.containsKey(SHOWLABELS)) {
-			showLabels = getBooleanValue(args.get(SHOWLABELS));
-		}
-
-		// Font information
-		if (args.containsKey(LABELSIZE))
-			labelSize = getIntegerValue(args.get(LABELSIZE));
-
-		if (args.containsKey(LABELFONT))
-			labelFont = args.get(LABELFONT);
-
-		if (args.containsKey(LABELSTYLE))
-			labelStyle = getFontStyle(args.get(LABELSTYLE));
-
-		if (args.containsKey(LABELWIDTH))
-			labelWidth = getDoubleValue(args.get(LABELWIDTH));
-
-		if (args.containsKey(LABELSPACING))
-			labelSpacing = getDoubleValue(args.get(LABELSPACING));
-
-		if (args.containsKey(LABELCOLOR))
-			labelColor = getColorValue(args.get(LABELCOLOR));
-
-		if (args.containsKey(SCALE)) {
-			try {
-				scale = getDoubleValue(args.get(SCALE));
-			} catch (NumberFormatException e) {
-				return;
-			}
-		}
-
-		// Get our position
-		if (args.containsKey(POSITION)) {
-			String pos = args.get(POSITION);
-			position = ViewUtils.getPosition(pos);
-			if (position == null) {
-				if (pos.indexOf(",") > 0) {
-					String[] point = pos.split(",");
-					if (point.length == 2) {
-						double x = Double.parseDouble(point[0]);
-						double y = Double.parseDouble(point[1]);
-						position = new Point2D.Double(x, y);
-					}
-				}
-				if (position == null) {
-					logger.warn("Cannot parse "+POSITION+" from input '"+pos+"'");
-					return;
-				}
-			}
-		}
-		
-		if (args.containsKey(LABELOFFSET)) {
-			String offset = args.get(LABELOFFSET);
-			if (offset.indexOf(",") > 0) {
-				String[] point = offset.split(",");
-				if (point.length == 2) {
-					double x = Double.parseDouble(point[0]);
-					double y = Double.parseDouble(point[1]);
-					labelOffset = new Point2D.Double(x, y);
-				}
-			}
-			if (labelOffset == null) {
-				logger.warn("Cannot parse "+LABELOFFSET+" from input '"+offset+"'");
-				return;
-			}
-		}
-
-		if (args.containsKey(ANCHOR)) {
-			String a = args.get(ANCHOR);
-			anchor = ViewUtils.getPosition(a);
-			if (anchor == null) {
-				logger.warn("Cannot parse "+ANCHOR+" from input '"+a+"'");
-				return;
-			}
-		}
-
-		// Get our size (if we have one)
-		// *not used anywhere*
-		Rectangle2D size = null;
-		if (args.containsKey(SIZE)) {
-			String sizeString = args.get(SIZE);
-			size = getSize(sizeString);
-		} 
-
-		// Get the base of the chart
-		if (args.containsKey(YBASE)) {
-			String yb = args.get(YBASE);
-			if (yb.equalsIgnoreCase("bottom"))
-				ybase = 1.0;
-			else if (yb.equalsIgnoreCase("top"))
-				ybase = 0.0;
-			else if (yb.equalsIgnoreCase("middle"))
-				ybase = 0.5;
-			else {
-				try {
-					ybase = getDoubleValue(yb);
-				} catch (NumberFormatException e) {
-					logger.warn("Cannot parse "+YBASE+" from input '"+args.get(YBASE)+"'");
-					ybase = 0.5;
-				}
-			}
-		}
-
-		if (!showLabels)
-			labels = null;
-
-		if (args.containsKey(ATTRIBUTELIST)) {
-			attributes = getStringList(args.get(ATTRIBUTELIST));
-			if (attributes == null || attributes.size() == 0) {
-				logger.error("Cannot parse "+ATTRIBUTELIST+" from input '"+args.get(ATTRIBUTELIST)+"'");
-			}
-		}
-	}
-
-	public List<Double> convertInputToDouble(String input) {
-		return parseStringList(input);
-	}
-
 	public String getLabelFromAttribute (CyNetwork network, CyNode node, 
 	                                     String attribute) {
 		if (attribute == null) return null;
@@ -316,613 +298,294 @@ abstract public class AbstractChartCustomGraphics<T extends CustomGraphicLayer>
  	 * numeric values or a list of integer or floating point attributes.  At some point, it might be interesting
  	 * to think about other combinations, but this is a good starting point.
  	 *
+ 	 * @param network the network the node is in
  	 * @param node the node we're getting the custom graphics from
- 	 * @param attributelist the list of column names
- 	 * @param labels the list of labels if the user wants to override the attribute names
- 	 * @return the list of values
+ 	 * @param attributeList the list of column names
+ 	 * @param spec the chart specification, which provides the range to normalize to
+ 	 * @return the values, with missing values as NaN
  	 * @ if the attributes aren't numeric
  	 */
-	public List<Double> getDataFromAttributes (CyNetwork network, CyNode node, 
-	                                           List<String>attributeList, List<String> labels) 
+	public ValueVector getDataFromAttributes (CyNetwork network, CyNode node, 
+	                                          List<String>attributeList, ChartSpec spec) 
 	{
-		List<Double> values = new ArrayList<Double>();
+		double[] range = getRange(network, spec);
+		if (spec.getAggregation() != null && node.getNetworkPointer() != null) {
+			// A group node draws the aggregate of its members' values
+			ValueVector values = getGroupAggregates(attributeList).getValues(network, node, spec.getAggregation());
+			return spec.normalize(normalizeToColumns(network, attributeList, values, spec), range[0], range[1]);
+		}
+		if (manager != null && attributeList.size() == 1) {
+			// A list column may be kept outside the heap
+			OffHeapListStore store = manager.getOffHeapStore(network.getDefaultNodeTable(), attributeList.get(0));
+			ValueVector values = (store == null) ? null : store.read(node.getSUID());
+			if (values != null)
+				return spec.normalize(normalizeToColumns(network, attributeList, values, spec), range[0], range[1]);
+		}
+		if (manager != null) {
+			ValueVector values = getDataFromSnapshot(manager.getSnapshot(network.getDefaultNodeTable()),
+			                                          node, attributeList);
+			if (values != null)
+				return spec.normalize(normalizeToColumns(network, attributeList, values, spec), range[0], range[1]);
+		}
 
 		// Get the row
 		CyRow row = network.getRow(node);
 		if (row == null) {
 			logger.warn("Cannot find row for node "+node);
-			return values;
-		}
-
-		CyTable table = row.getTable();
-
-		// Get the first attribute
-		String column = attributeList.get(0);
-		if (column == null || table.getColumn(column) == null) {
-			logger.warn("Cannot find node attribute column "+attributeList.get(0));
-			return values;
+			return new ValueVector(0);
 		}
 
-		Class<?> columnType = table.getColumn(column).getType();
-
-		// If this is a single attribute, we assume it's a list
-		if (attributeList.size() == 1 && columnType.equals(List.class)) {
-			Class<?> type = table.getColumn(column).getListElementType();
-			if (type == Double.class) {
-				//values.addAll(row.getList(column, Double.class));
-				List<Double> dList = row.getList(column, Double.class);
-				if(dList != null) {
-					values.addAll(dList);
-				}
-			} else if (type == Integer.class) {
-				List<Integer> iList = row.getList(column, Integer.class);
-				for (Integer i: iList) 
-					values.add(i.doubleValue());
-			} else if (type == Long.class) {
-				List<Long> lList = row.getList(column, Long.class);
-				for (Long l: lList) 
-					values.add(l.doubleValue());
-			} else if (type == Float.class) {
-				List<Float> fList = row.getList(column, Float.class);
-				for (Float f: fList) 
-					values.add(f.doubleValue());
-			} else if (type == String.class) {
-				List<String> sList = row.getList(column, String.class);
-				for (String s: sList) 
-					values.add(Double.valueOf(s));
-			}
-		} else {
-			for (String col: attributeList) {
-				if (table.getColumn(col) == null)
-					continue;
-
-				Class<?> type = table.getColumn(col).getType();
-				if (type == Double.class) {
-					values.add(row.get(col, Double.class));
-				} else if (type == Integer.class) {
-					Integer i = row.get(col, Integer.class);
-					values.add(i.doubleValue());
-				} else if (type == Float.class) {
-					Float f = row.get(col, Float.class);
-					values.add(f.doubleValue());
-				} else if (type == String.class) {
-					String s = row.get(col, String.class);
-					values.add(Double.valueOf(s));
-				}
-			}
-		}
+		AttributeReader reader = (manager == null) ? new AttributeReader(row.getTable(), attributeList)
+		                                           : manager.getAttributeReader(row.getTable(), attributeList);
+		ValueVector values = reader.read(row);
 
 		// Finally, if we have user-supplied ranges, normalize
-		if (rangeMax != 0.0 || rangeMin != 0.0) {
-			values = normalize(values, rangeMin, rangeMax);
-			normalized = true;
-		}
-		if (labels != null && labels.size() == 0)
-			labels.addAll(attributeList);
-		return values;
-	}
-
-	public List<Double> convertStringList(List<String> input)  {
-		List<Double> values = new ArrayList<Double>(input.size());
-		for (String s: input) {
-			try {
-				Double d = Double.valueOf(s);
-				values.add(d);
-			} catch (NumberFormatException e) {
-				return null;
-			}
-			// System.out.println("");
-		}
-		return values;
-	}
-
-	public List<Double> convertIntegerList(List<Integer> input) {
-		List<Double> values = new ArrayList<Double>(input.size());
-		for (Integer s: input) {
-			double d = s.doubleValue();
-			values.add(d);
-		}
-		return values;
-	}
-
-	public List<Double> parseStringList(String input)  {
-		if (input == null)
-			return null;
-		String[] inputArray = input.split(",");
-		return convertStringList(Arrays.asList(inputArray));
-	}
-	
-	private String[] unescape(String strs[]) {
-		String unescaped_strs[] = new String[strs.length];
-		
-		int j=0;
-		for(String str : strs) {
-			StringBuilder sb = new StringBuilder();
-
-			boolean deleted=false;
-			for(int i=0; i<str.length(); ++i) {
-				char curChar = str.charAt(i);
-
-				// If the current char is the escape character, we delete it
-				if(curChar != '\\' || deleted) {
-					sb.append(curChar);
-					deleted=false;
-				} else {
-					deleted=true;
-				}
-			}
-
-			unescaped_strs[j++] = sb.toString();
-		}
-		return unescaped_strs;
-	}
-
-	public List<String> getStringList(String input) {
-		if (input == null || input.length() == 0)
-			return new ArrayList<String>();
-
-		String[] inputArray = unescape(input.split("(?<!\\\\),",-1));
-		return Arrays.asList(inputArray);
+		return spec.normalize(normalizeToColumns(network, attributeList, values, spec), range[0], range[1]);
 	}
 
 	/**
- 	 * Return the boolean equivalent of the input
+ 	 * Normalize attribute values (in place) against the statistics of their
+ 	 * columns, if the spec asks for rank, quantile or z-score normalization.
+ 	 * If there is a value for each attribute, each is normalized against its
+ 	 * own column; otherwise (the elements of a list column, or if a column was
+ 	 * skipped) they are normalized against all of the columns together.  Each
+ 	 * value costs a binary search of the column's sorted values, or one per
+ 	 * column for quantile normalization.
  	 *
- 	 * @param input an input value that is supposed to be Boolean
- 	 * @return the boolean value it represents
+ 	 * @param network the network the node is in
+ 	 * @param attributeList the column names
+ 	 * @param values the values read from the columns
+ 	 * @param spec the chart specification
+ 	 * @return values
  	 */
-	public boolean getBooleanValue(Object input) {
-		if (input instanceof Boolean)
-			return ((Boolean)input).booleanValue();
-		return Boolean.parseBoolean(input.toString());
-	}
-
-	public int getFontStyle(String input) {
-		if (input.equalsIgnoreCase("italics"))
-			return Font.ITALIC;
-		if (input.equalsIgnoreCase("bold"))
-			return Font.BOLD;
-		if (input.equalsIgnoreCase("bolditalic"))
-			return Font.ITALIC|Font.BOLD;
-		return Font.PLAIN;
-	}
-
-	public Color getColorValue(String input) {
-		String [] colorArray = new String[1];
-		colorArray[0] = input;
-		List<Color> colors = parseColorList(colorArray);
-		return colors.get(0);
-	}
+	protected ValueVector normalizeToColumns(CyNetwork network, List<String> attributeList,
+	                                         ValueVector values, ChartSpec spec) {
+		ChartSpec.Normalization normalization = spec.getNormalization();
+		if (normalization == ChartSpec.Normalization.LINEAR || values.isEmpty())
+			return values;
 
-	/**
- 	 * Return the double equivalent of the input
- 	 *
- 	 * @param input an input value that is supposed to be a double
- 	 * @return the a double value it represents
- 	 * @throws NumberFormatException is the value is illegal
- 	 */
-	public double getDoubleValue(Object input) throws NumberFormatException {
-		if (input instanceof Double)
-			return ((Double)input).doubleValue();
-		else if (input instanceof Integer)
-			return ((Integer)input).doubleValue();
-		else if (input instanceof String)
-			return Double.parseDouble((String)input);
-		throw new NumberFormatException("input can not be converted to double");
+		CyTable table = network.getDefaultNodeTable();
+		boolean perColumn = values.size() == attributeList.size();
+		ColumnStatistics[] stats = new ColumnStatistics[perColumn ? attributeList.size() : 1];
+		for (int c = 0; c < stats.length; c++)
+			stats[c] = getStatistics(table, perColumn ? Collections.singletonList(attributeList.get(c)) : attributeList);
+
+		for (int i = 0; i < values.size(); i++) {
+			double v = values.get(i);
+			if (Double.isNaN(v)) continue;
+			ColumnStatistics columnStats = stats[perColumn ? i : 0];
+			switch (normalization) {
+			case RANK:
+				values.set(i, columnStats.getRank(v));
+				break;
+			case ZSCORE:
+				double sd = columnStats.getStandardDeviation();
+				values.set(i, (sd > 0.0) ? (v - columnStats.getMean()) / sd : 0.0);
+				break;
+			case QUANTILE:
+				// The value with the same rank in the mean of the column distributions
+				double percentile = columnStats.getRank(v) * 100.0;
+				double sum = 0.0;
+				for (ColumnStatistics s: stats)
+					sum += s.getPercentile(percentile);
+				values.set(i, sum / stats.length);
+				break;
+			default:
+				break;
+			}
+		}
+		return values;
 	}
 
 	/**
- 	 * Return the integer equivalent of the input
+ 	 * Return the range to normalize to.  This is the range the user gave us,
+ 	 * or for <code>range=auto</code> the percentiles of every value in the
+ 	 * attribute columns of the network's node table, so that every node is
+ 	 * drawn to the same scale.  A range that doesn't include zero is widened to
+ 	 * it if it would otherwise be empty.
  	 *
- 	 * @param input an input value that is supposed to be a integer
- 	 * @return the a integer value it represents
- 	 * @throws NumberFormatException is the value is illegal
+ 	 * @param network the network the node is in
+ 	 * @param spec the chart specification
+ 	 * @return the minimum and maximum, which are both 0 if there is no range
  	 */
-	public int getIntegerValue(Object input) throws NumberFormatException {
-		if (input instanceof Integer)
-			return ((Integer)input).intValue();
-		else if (input instanceof Integer)
-			return ((Integer)input).intValue();
-		else if (input instanceof String)
-			return Integer.parseInt((String)input);
-		throw new NumberFormatException("input can not be converted to integer");
+	public double[] getRange(CyNetwork network, ChartSpec spec) {
+		// Ranks are always from 0 to 1, and z-scores are in standard deviations
+		if (spec.getNormalization() == ChartSpec.Normalization.RANK)
+			return new double[] {0.0, 1.0};
+		if (spec.getNormalization() == ChartSpec.Normalization.ZSCORE &&
+		    spec.getRangeMin() == 0.0 && spec.getRangeMax() == 0.0)
+			return new double[] {-ZSCORE_RANGE, ZSCORE_RANGE};
+		if (!spec.isAutoRange())
+			return new double[] {spec.getRangeMin(), spec.getRangeMax()};
+
+		ColumnStatistics stats = getStatistics(network.getDefaultNodeTable(), spec.getAttributes());
+		double min = stats.getPercentile(spec.getAutoRangeLow());
+		double max = stats.getPercentile(spec.getAutoRangeHigh());
+		if (Double.isNaN(min) || Double.isNaN(max))
+			return new double[] {0.0, 0.0};
+		if (min == max) {
+			if (min > 0.0) min = 0.0;
+			else if (max < 0.0) max = 0.0;
+		}
+		return new double[] {min, max};
 	}
 
-
 	/**
- 	 * Return the size specified by the user in the width and height fields of the Rectangle
- 	 * The size can be either "sss" where "sss" will be both the height and the width or
- 	 * "hhhxwww" where hhh is the height and www is the width.
+ 	 * Get values from the spec's matrix file.  The node's row is the one named
+ 	 * by the node's value in the matrixrow column, and the values are those in
+ 	 * the matrixcols columns (or all of them), normalized to the range, if any.
  	 *
- 	 * @param input the input size
- 	 * @return a rectangle to get the width and height from
+ 	 * @param network the network the node is in
+ 	 * @param node the node we're getting the custom graphics from
+ 	 * @param spec the chart specification
+ 	 * @return the values, or null if the file can't be read or has no row for
+ 	 * the node
  	 */
-	public Rectangle2D getSize(Object input)  {
-		if (input instanceof Rectangle2D) 
-			return (Rectangle2D) input;
-		else if (input instanceof Double) {
-			double v = ((Double)input).doubleValue();
-			return new Rectangle2D.Double(0.0,0.0,v,v);
-		} else if (input instanceof Integer) {
-			double v = ((Integer)input).doubleValue();
-			return new Rectangle2D.Double(0.0,0.0,v,v);
-		} else if (input instanceof String) {
-			String inputString = (String)input;
-			String[] sizes = inputString.split("[xX]");
-			if (sizes.length == 1) {
-				double v = Double.parseDouble(sizes[0]);
-				return new Rectangle2D.Double(0.0,0.0,v,v);
-			} else if (sizes.length == 2) {
-				double h = Double.parseDouble(sizes[0]);
-				double w = Double.parseDouble(sizes[1]);
-				return new Rectangle2D.Double(0.0,0.0,w,h);
-			} 
-		}
-		return null;
-	}
-
-	/*
-	 * Return the font information
-	 */
-	public Font getFont() {
-		return new Font(labelFont, labelStyle, labelSize);
-	}
-
-	public List<Double> arrayMax(List<Double> maxValues, List<Double> values) {
-		// Initialize, if necessary
-		if (maxValues == null) {
-			maxValues = new ArrayList<Double>(values.size());
-			for (Double d: values)
-				maxValues.add(Math.abs(d));
-			return maxValues;
-		}
-
-		// OK, now we need to actually do the work...
-		for (int index = 0; index < values.size(); index++) {
-			maxValues.set(index, Math.max(maxValues.get(index), Math.abs(values.get(index))));
-		}
-		return maxValues;
-	}
-
-	public void normalize(List<Double> values, List<Double> maxValues) {
-		for (int index = 0; index < values.size(); index++) {
-			values.set(index, values.get(index)/maxValues.get(index));
+	public ValueVector getDataFromMatrix(CyNetwork network, CyNode node, ChartSpec spec) {
+		MatrixFile matrix = null;
+		if (manager != null) {
+			matrix = manager.getMatrix(spec.getMatrixFile());
+		} else {
+			try {
+				matrix = MatrixFile.open(new File(spec.getMatrixFile()));
+			} catch (IOException e) {
+				logger.warn("Unable to open matrix file '"+spec.getMatrixFile()+"': "+e.getMessage());
+			}
 		}
-	}
+		if (matrix == null)
+			return null;
 
-	/**
- 	 * Takes a map of objects indexed by a string keyword and returns
- 	 * a map of strings indexed by that keyword.  This involves figuring
- 	 * out if the object is a list, and if so converting it to a comma
- 	 * separated string
- 	 *
- 	 * @param argMap the map of objects indexed by strings
- 	 * @return the serialized map
- 	 */
-	public Map<String,String> serializeArgMap(Map<String, Object> argMap) {
-		Map<String,String> sMap = new HashMap<String,String>();
-		for (String key: argMap.keySet()) {
-			sMap.put(key, serializeObject(argMap.get(key)));
+		CyRow row = network.getRow(node);
+		Object name = (row == null) ? null : row.getRaw(spec.getMatrixRow());
+		int index = (name == null) ? -1 : matrix.getRow(name.toString());
+		if (index < 0) {
+			logger.warn("Matrix file '"+spec.getMatrixFile()+"' has no row for node "+name);
+			return null;
 		}
-		return sMap;
-	}
 
-	/**
- 	 * Serialize an object that might be a list to a string
- 	 */
-	private String serializeObject(Object obj) {
-		String result;
-		if (obj instanceof List) {
-			result = "";
-			for (Object o: (List)obj) {
-				result += o.toString()+",";
-			}
-			result = result.substring(0, result.length()-1);
-		} else
-			result = obj.toString();
-
-		return result;
-	}
-
-	private static final String	CONTRASTING = "contrasting";
-	protected static final String	DOWN = "down:";
-	// ML: added ':' at the end of missing
-	protected static final String	MISSING = "missing:";
-	private static final String	MODULATED = "modulated";
-	private static final String	RAINBOW = "rainbow";
-	private static final String RANDOM = "random";
-	protected static final String	UP = "up:";
-	protected static final String	ZERO = "zero:";
-	private static final double EPSILON = 1E-8f;
-
-	public List<Color> convertInputToColor(String input, List<Double>values)  {
-		int nColors = values.size();
-
-		if (input == null) {
-			// give the default: contrasting colors
-			return generateContrastingColors(nColors);
+		MatrixColumns columns = matrixColumns;
+		if (columns == null || columns.matrix != matrix) {
+			columns = new MatrixColumns(matrix, resolveMatrixColumns(matrix, spec.getMatrixColumns()));
+			matrixColumns = columns;
 		}
-
-		// OK, we have three posibilities.  The input could be a keyword, a comma-separated list of colors, or
-		// a list of Color objects.  We need to figure this out first...
-		// See if we have a csv
-		String [] colorArray = input.split(",");
-		// Look for up/down special case
-		if (colorArray.length == 2 &&
-		    (colorArray[0].toLowerCase().startsWith(UP) ||
-		     colorArray[0].toLowerCase().startsWith(DOWN))) {
-			return parseUpDownColor(colorArray, values);
-		} else if (colorArray.length == 3 &&
-		    (colorArray[0].toLowerCase().startsWith(UP) ||
-		     colorArray[0].toLowerCase().startsWith(DOWN) ||
-	     colorArray[0].toLowerCase().startsWith(ZERO))) {
-			return parseUpDownColor(colorArray, values);
-		} else if (colorArray.length == 4 &&
-		    (colorArray[0].toLowerCase().startsWith(UP) ||
-		     colorArray[0].toLowerCase().startsWith(DOWN) ||
-	       colorArray[0].toLowerCase().startsWith(ZERO) ||
-			   colorArray[0].toLowerCase().startsWith(MISSING))) {
-			return parseUpDownColor(colorArray, values);
-		} else if (colorArray.length > 1)
-			return parseColorList(colorArray);
-		else
-			return parseColorKeyword(input.trim(), nColors);
-	}
-
-	public List<Color> parseUpDownColor(String[] colorArray)  {
-		if (colorArray.length < 2) {
+		if (columns.columns == null && spec.getMatrixColumns() != null)
 			return null;
-		}
 
-		String [] colors = new String[4];
-		colors[2] = "black";
-		colors[3] = "grey";
-		for (int index = 0; index < colorArray.length; index++) {
-			if (colorArray[index].toLowerCase().startsWith(UP)) {
-				colors[0] = colorArray[index].substring(UP.length());
-			} else if (colorArray[index].toLowerCase().startsWith(DOWN)) {
-				colors[1] = colorArray[index].substring(DOWN.length());
-			} else if (colorArray[index].toLowerCase().startsWith(ZERO)) {
-				colors[2] = colorArray[index].substring(ZERO.length());
-			} else if (colorArray[index].toLowerCase().startsWith(MISSING)) {
-				colors[3] = colorArray[index].substring(MISSING.length());
-			}
-		} 
-		return parseColorList(colors);
+		double[] range = getRange(network, spec);
+		return spec.normalize(matrix.read(index, columns.columns), range[0], range[1]);
 	}
 
-	private List<Color> parseUpDownColor(String[] colorArray, List<Double>values)  {
-		List<Color> upDownColors = parseUpDownColor(colorArray);
-		Color up = upDownColors.get(0);
-		Color down = upDownColors.get(1);
-		Color zero = upDownColors.get(2);
-		Color missing = upDownColors.get(3);
-		// System.out.println("up color = "+up);
-		// System.out.println("down color = "+down);
-		// System.out.println("zero color = "+zero);
-		// System.out.println("missing color = "+missing);
-
-		// System.out.println("values.size() = "+values.size());
-		List<Color> results = new ArrayList<Color>(values.size());
-		for (Double v: values) {
-			// System.out.println("Looking at value "+v);
-			// ML: A NaN should be treated as missing
-			if (v == null || v.isNaN()) {
-				results.add(missing);
+	// Look up the matrix columns by name or index range.  Returns null for all
+	// of the columns, or if one of them can't be found.
+	private int[] resolveMatrixColumns(MatrixFile matrix, List<String> names) {
+		if (names == null)
+			return null;
+		List<Integer> columns = new ArrayList<Integer>();
+		for (String name: names) {
+			int column = matrix.getColumn(name);
+			if (column >= 0) {
+				columns.add(column);
 				continue;
 			}
-			double vn = v;
-			if (!normalized)
-				vn = normalize(v, rangeMin, rangeMax);
-			if (vn < (-EPSILON))  {
-			  // System.out.println("Value = "+v+", Normalized value = "+vn+", Scaled value = "+scaleColor(-vn, zero, down));
-				results.add(scaleColor(-vn, zero, down));
-      } else if (vn > EPSILON) {
-				results.add(scaleColor(vn, zero, up));
-			  // System.out.println("Value = "+v+", Normalized value = "+vn+", Scaled value = "+scaleColor(vn, zero, up));
-      } else
-				results.add(zero);
-		}
-		return results;
-	}
-
-	private Color scaleColor(double v, Color zero, Color c) {
-		if (rangeMin == 0.0 && rangeMax == 0.0) return c;
-
-		if(v < 0 || v > 1) {
-			logger.warn("Warning, one color was out-of-range and replaced by the up or down color."
-					+ "\n"
-					+ "Maybe you should not use a scaling color scheme.");
-			return c;
+			Matcher m = INDEX_RANGE.matcher(name.trim());
+			if (m.matches()) {
+				int first = Integer.parseInt(m.group(1));
+				int last = (m.group(2) == null) ? first : Integer.parseInt(m.group(2));
+				if (first <= last && last < matrix.getColumnCount()) {
+					for (int i = first; i <= last; i++)
+						columns.add(i);
+					continue;
+				}
+			}
+			logger.warn("Matrix file '"+matrix.getFile()+"' has no column '"+name+"'");
+			return null;
 		}
-		
-		// We want to scale our color to be between "zero" and "c"
-		// v = 1-v;
-		int b = (int)(c.getBlue()*v + zero.getBlue()*(1-v));
-		int r = (int)(c.getRed()*v + zero.getRed()*(1-v));
-		int g = (int)(c.getGreen()*v + zero.getGreen()*(1-v));
-		//ML: Added alpha
-		int a = (int)(c.getAlpha()*v + zero.getAlpha()*(1-v));
-		//int b = (int)(Math.abs(c.getBlue()-zero.getBlue())*v)+c.getBlue();
-		//int r = (int)(Math.abs(c.getRed()-zero.getRed())*v)+c.getRed();
-		//int g = (int)(Math.abs(c.getGreen()-zero.getGreen())*v)+c.getGreen();
-		// System.out.println("scaleColor: v = "+v+" r="+r+" g="+g+" b="+b);
-		return new Color(r, g, b, a);
+		int[] result = new int[columns.size()];
+		for (int i = 0; i < result.length; i++)
+			result[i] = columns.get(i);
+		return result;
 	}
 
-	// Zero-centered normalization.  Zero values must remain zero,
-	// negative values must be negative, and positive values must be
-	// positive.  Note that if the user gives us unbalanced ranges, this
-	// approach to normalization will inflate the smaller of the ranges
-	private double normalize(double v, double rangeMin, double rangeMax) {
-		// ML : a NaN should not be normalized
-		if (Double.isNaN(v)) return v;
-		
-		if (rangeMin == 0.0 && rangeMax == 0.0) return v;
-		double range = rangeMax-rangeMin;
-		double val = 0.0;
-
-		// Clamp v
-		if (v < rangeMin) v = rangeMin;
-		if (v > rangeMax) v = rangeMax;
-
-		if (rangeMin > 0.0 && rangeMax > 0.0)
-			val = (v - rangeMin) / range;
-		else if (rangeMin < 0.0 && rangeMax < 0.0) 
-			val = (v - rangeMax) / range;
-		else if (v < 0.0 && rangeMin < 0.0)
-			val = -(v / rangeMin);
-		else if (v > 0.0 && rangeMax > 0.0)
-			val = (v / rangeMax);
-
-		return val;
+	/**
+ 	 * Return the counts of the categories of each node's neighbors.  Without a
+ 	 * manager to keep them up to date, the network is scanned each time.
+ 	 *
+ 	 * @param network the network
+ 	 * @param column the name of the node column the categories come from
+ 	 * @return the counts, or null if the network has no such node column
+ 	 */
+	protected NeighborCounts getNeighborCounts(CyNetwork network, String column) {
+		if (manager != null)
+			return manager.getNeighborCounts(network, column);
+		if (network.getDefaultNodeTable().getColumn(column) == null)
+			return null;
+		return new NeighborCounts(network, column);
 	}
 
-	//ML: Change from private to protected
-	protected List<Double> normalize(List<Double> vList, double rangeMin, double rangeMax) {
-		// System.out.println("Normalize list");
-		for (int i = 0; i < vList.size(); i++) {
-			Double v = vList.get(i);
-			if (v != null) {
-				Double vn = normalize(v, rangeMin, rangeMax);
-				// System.out.println("Value = "+v+", Normalized value = "+vn);
-				vList.set(i, vn);
-			}
-		}
-		// System.out.println("Normalize list..done");
-		return vList;
+	private GroupAggregates getGroupAggregates(List<String> columns) {
+		if (manager == null)
+			return new GroupAggregates(columns);
+		return manager.getGroupAggregates(columns);
 	}
 
-	private List<Color> parseColorKeyword(String input, int nColors)  {
-		if (input.equals(RANDOM))
-			return generateRandomColors(nColors);
-		else if (input.equals(RAINBOW))
-			return generateRainbowColors(nColors);
-		else if (input.equals(MODULATED))
-			return generateModulatedRainbowColors(nColors);
-		else if (input.equals(CONTRASTING))
-			return generateContrastingColors(nColors);
-		else {
-			String [] colorArray = new String[1];
-			colorArray[0] = input;
-			List<Color> colors = parseColorList(colorArray);
-			return colors;
-		}
+	private ColumnStatistics getStatistics(CyTable table, List<String> columns) {
+		if (manager == null)
+			return new ColumnStatistics(table, columns);
+		return manager.getStatistics(table, columns);
 	}
 
-	public Color parseColor(String colorString)  {
-		if (colorString == null) return null;
-		colorString = colorString.trim();
-		if (colorString.matches("^#([A-Fa-f0-9]{8}|[A-Fa-f0-9]{6})$")) {
-			// We have a hex value with either 6 (rgb) or 8 (rgba) digits
-			int r = Integer.parseInt(colorString.substring(1,3), 16);
-			int g = Integer.parseInt(colorString.substring(3,5), 16);
-			int b = Integer.parseInt(colorString.substring(5,7), 16);
-			if (colorString.length() > 7) {
-				int a = Integer.parseInt(colorString.substring(7,9), 16);
-				return new Color(r,g,b,a);
-			} else {
-				return new Color(r,g,b);
-			}
-		} else {
-			// Check for color string
-			Color c = ColorKeyword.getColor(colorString);
-			if (c == null) {
-				logger.warn("Can't find color '"+colorString+"'");
+	/**
+ 	 * Get values from a list of scalar numeric attributes using the column
+ 	 * snapshot, which avoids looking up the row and each column for every node.
+ 	 *
+ 	 * @return the values, or null if they can't all be read from the snapshot (a
+ 	 * list or non-numeric column or a node that isn't in the snapshot), in which
+ 	 * case the caller should read them from the row
+ 	 */
+	private ValueVector getDataFromSnapshot(ColumnSnapshot snapshot, CyNode node, List<String> attributeList) {
+		int index = snapshot.indexOf(node.getSUID());
+		if (index < 0)
+			return null;
+		ValueVector values = new ValueVector(attributeList.size());
+		for (String col: attributeList) {
+			double[] column = snapshot.getValues(col);
+			if (column == null)
 				return null;
-			}
-			return c;
+			values.add(column[index]);
 		}
+		return values;
 	}
 
-	public List<Color> parseColorList(String[] inputArray)  {
-		List<Color> colors = new ArrayList<Color>();
-		// A color in the array can either be a hex value or a text color
-		for (String colorString: inputArray) {
-			if (colorString == null) continue;
-			colorString = colorString.trim();
-			if (colorString.matches("^#([A-Fa-f0-9]{8}|[A-Fa-f0-9]{6})$")) {
-				// We have a hex value with either 6 (rgb) or 8 (rgba) digits
-				int r = Integer.parseInt(colorString.substring(1,3), 16);
-				int g = Integer.parseInt(colorString.substring(3,5), 16);
-				int b = Integer.parseInt(colorString.substring(5,7), 16);
-				if (colorString.length() > 7) {
-					int a = Integer.parseInt(colorString.substring(7,9), 16);
-					colors.add(new Color(r,g,b,a));
-				} else {
-					colors.add(new Color(r,g,b));
-				}
-			} else {
-				// Check for color string
-				Color c = ColorKeyword.getColor(colorString);
-				if (c == null) {
-					logger.warn("Can't find color '"+colorString+"'");
-					return null;
-				}
-				colors.add(c);
-			}
-		}
-		return colors;
+	public List<String> getStringList(String input) {
+		return SpecLexer.splitList(input);
 	}
 
-	private List<Color> generateRandomColors(int nColors) {
-		// System.out.println("Generating random colors");
-		Calendar cal = Calendar.getInstance();
-		int seed = cal.get(Calendar.SECOND);
-		Random rand = new Random(seed);
-
-		List<Color> result = new ArrayList<Color>(nColors);
-		for (int index = 0; index < nColors; index++) {
-			int r = rand.nextInt(255);
-			int g = rand.nextInt(255);
-			int b = rand.nextInt(255);
-			result.add(index, new Color(r,g,b,200));
-		}
-		return result;
-	}
+	private static class MatrixColumns {
+		final MatrixFile matrix;
+		final int[] columns;
 
-	// Rainbow colors just divide the Hue wheel into n pieces and return them
-	private List<Color> generateRainbowColors(int nColors) {
-		// System.out.println("Generating rainbow colors");
-		List<Color> values = new ArrayList<Color>();
-		for (float i = 0.0f; i < (float)nColors; i += 1.0f) {
-			values.add(new Color(Color.HSBtoRGB(i/(float)nColors, 1.0f, 1.0f)));
+		MatrixColumns(MatrixFile matrix, int[] columns) {
+			this.matrix = matrix;
+			this.columns = columns;
 		}
-		return values;
 	}
 
-	// Rainbow colors just divide the Hue wheel into n pieces and return them, but
-	// in this case, we're going to change the saturation and intensity
-	private List<Color> generateModulatedRainbowColors(int nColors) {
-		// System.out.println("Generating modulated colors");
-		List<Color> values = new ArrayList<Color>();
-		for (float i = 0.0f; i < (float)nColors; i += 1.0f) {
-			float sat = (Math.abs(((Number) Math.cos((8 * i) / (2 * Math.PI))).floatValue()) * 0.7f) 
-			             + 0.3f;
-			float br = (Math.abs(((Number) Math.sin(((i) / (2 * Math.PI)) + (Math.PI / 2)))
-			                      .floatValue()) * 0.7f) + 0.3f;
-
-			// System.out.println("Color("+(i/(float)nColors)+","+sat+","+br+")");
-			values.add(new Color(Color.HSBtoRGB(i/(float)nColors, sat, br)));
-		}
-		return values;
-	}
+	private static class CachedLayers<T> {
+		final Long networkViewId;
+		final Long networkId;
+		final Long nodeId;
+		final long version;
+		final double[] range;
+		final List<T> layers;
 
-	// This is like rainbow, but we alternate sides of the color wheel
-	private List<Color> generateContrastingColors(int nColors) {
-		List<Color> values = new ArrayList<Color>();
-		for (int i = 0; i < nColors; i++) {
-			float hue;
-			if (i%2 == 1)
-				hue = (float)i/(float)nColors + 0.5f;
-			else
-				hue = (float)i/(float)nColors;
-			Color rgbColor = new Color(Color.HSBtoRGB(hue, 1.0f, 1.0f));
-			// System.out.println("RGBColor = "+rgbColor);
-			values.add(rgbColor);
+		CachedLayers(Long networkViewId, Long networkId, Long nodeId, long version, double[] range,
+		             List<T> layers) {
+			this.networkViewId = networkViewId;
+			this.networkId = networkId;
+			this.nodeId = nodeId;
+			this.version = version;
+			this.range = range;
+			this.layers = layers;
 		}
-		return values;
 	}
-
-	// TODO: add brewer colors
 }
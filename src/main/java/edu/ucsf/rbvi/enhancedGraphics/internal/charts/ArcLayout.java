@@ -0,0 +1,83 @@
+package edu.ucsf.rbvi.enhancedGraphics.internal.charts;
+
+/**
+ * The slices of a pie, or of one ring of a circos chart: the values as
+ * degrees of arc, and the start and extent of each slice that is drawn.
+ * Layouts are immutable, so a chart whose values don't depend on the node
+ * lays its slices out once and only creates layers from the layout when it
+ * is drawn.
+ */
+public final class ArcLayout {
+	private final ValueVector arcs;
+	private final int[] slices;
+	private final double[] starts;
+	private final double[] extents;
+	private final int count;
+
+	/**
+ 	 * Lay out slices.  Missing and empty slices are skipped, and don't move
+ 	 * the start of the next slice.
+ 	 *
+ 	 * @param values the values of the slices
+ 	 * @param arcStart the angle at which the first slice starts, in degrees
+ 	 * @param isClockwise true if the slices go clockwise
+ 	 * @param positiveOnly true to leave negative values out of the total and
+ 	 * skip their slices, false to include them as the pie chart does
+ 	 */
+	public ArcLayout(ValueVector values, double arcStart, boolean isClockwise, boolean positiveOnly) {
+		int nValues = values.size();
+		double totalSize = ValueKernels.sum(values.array(), nValues, positiveOnly);
+		double[] degrees = new double[nValues];
+		ValueKernels.toDegrees(values.array(), nValues, totalSize, degrees);
+
+		int[] drawn = new int[nValues];
+		double[] start = new double[nValues];
+		double[] extent = new double[nValues];
+		int n = 0;
+		double arc = arcStart;
+		for (int index = 0; index < nValues; index++) {
+			double d = degrees[index];
+			if (Double.isNaN(d) || d == 0.0 || (positiveOnly && d < 0.0)) continue;
+			drawn[n] = index;
+			start[n] = arc;
+			extent[n] = d;
+			n++;
+			if (isClockwise)
+				arc -= d;
+			else
+				arc += d;
+		}
+		this.arcs = ValueVector.readOnly(degrees);
+		this.slices = drawn;
+		this.starts = start;
+		this.extents = extent;
+		this.count = n;
+	}
+
+	/**
+ 	 * Return every value as degrees of arc, including the ones whose slices
+ 	 * are skipped
+ 	 *
+ 	 * @return the read-only degrees, with missing values as NaN
+ 	 */
+	public ValueVector getArcs() { return arcs; }
+
+	/**
+ 	 * Return the number of slices that are drawn
+ 	 *
+ 	 * @return the number of slices
+ 	 */
+	public int size() { return count; }
+
+	/**
+ 	 * Return the index of a drawn slice in the values, for its color and label
+ 	 *
+ 	 * @param slice the drawn slice
+ 	 * @return the index of its value
+ 	 */
+	public int getIndex(int slice) { return slices[slice]; }
+
+	public double getStart(int slice) { return starts[slice]; }
+
+	public double getExtent(int slice) { return extents[slice]; }
+}
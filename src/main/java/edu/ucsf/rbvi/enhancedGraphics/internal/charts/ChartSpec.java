@@ -0,0 +1,836 @@
+package edu.ucsf.rbvi.enhancedGraphics.internal.charts;
+
+import java.awt.Color;
+import java.awt.Font;
+import java.awt.geom.Point2D;
+
+import java.text.ParseException;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.cytoscape.application.CyUserLog;
+import org.cytoscape.model.CyNetwork;
+import org.cytoscape.model.CyRow;
+import org.apache.log4j.Logger;
+
+import edu.ucsf.rbvi.enhancedGraphics.internal.GroupAggregates;
+import edu.ucsf.rbvi.enhancedGraphics.internal.parse.NumberListParser;
+import edu.ucsf.rbvi.enhancedGraphics.internal.parse.SpecLexer;
+import edu.ucsf.rbvi.enhancedGraphics.internal.parse.SpecTemplate;
+import edu.ucsf.rbvi.enhancedGraphics.internal.parse.ValueExpression;
+
+import static edu.ucsf.rbvi.enhancedGraphics.internal.charts.AbstractChartCustomGraphics.*;
+
+/**
+ * The compiled form of the standard chart arguments.  A ChartSpec is built once from
+ * the argument map of a spec string, when the chart is created, and is never changed
+ * afterwards: lists are unmodifiable and colors and fonts are resolved up front.  Each
+ * chart type extends this with its own arguments.  Per-node rendering only reads from
+ * the spec and keeps everything that depends on the node in local variables.
+ *
+ * If the spec has an error that would prevent the chart from being drawn at all,
+ * the first such error is available from {@link #getError()}.
+ */
+public class ChartSpec {
+	protected static final Logger logger = Logger.getLogger(CyUserLog.NAME);
+
+	private final double rangeMin;
+	private final double rangeMax;
+	// range=auto:pLOW,pHIGH takes the range from the percentiles of the
+	// attribute columns
+	private final boolean autoRange;
+	private final double autoLow;
+	private final double autoHigh;
+	private final Normalization normalization;
+	private final boolean normalized;
+	// aggregate=sum|mean|max draws the aggregate of the members of group nodes
+	private final Aggregation aggregation;
+	private final double borderWidth;
+	private final Color borderColor;
+	private final ValueVector values;
+	private final SpecTemplate valueTemplate;
+	private final ValueExpression valueExpression;
+	private final List<String> labels;
+	private final SpecTemplate labelTemplate;
+	private final boolean labelsFromAttributes;
+	private final List<String> attributes;
+	// matrixfile=path takes the values from a row of a matrix file instead
+	private final String matrixFile;
+	private final String matrixRow;
+	private final List<String> matrixColumns;
+	private final Color labelColor;
+	private final int labelSize;
+	private final String labelFont;
+	private final int labelStyle;
+	private final double labelWidth;
+	private final double labelSpacing;
+	private final Font font;
+	private final double scale;
+	private final Object position;
+	private final Point2D labelOffset;
+	private final Object anchor;
+	private final double ybase;
+	private final Map<String, String> arguments;
+	// The columns we read for a node, computed when they are first needed
+	private volatile Set<String> columns = null;
+	private String error = null;
+
+	public ChartSpec(Map<String, String> args) {
+		this(args, true, true);
+	}
+
+	/**
+ 	 * Compile the standard chart arguments.
+ 	 *
+ 	 * @param args the argument map from the spec string
+ 	 * @param parseValues if false, the valuelist argument is left to the subclass
+ 	 * @param inferLabels if true, and no labels are given, the attribute names are
+ 	 * used as labels
+ 	 */
+	protected ChartSpec(Map<String, String> args, boolean parseValues, boolean inferLabels) {
+		arguments = Collections.unmodifiableMap(new HashMap<String, String>(args));
+
+		double min = 0.0;
+		double max = 0.0;
+		boolean auto = false;
+		double low = 0.0;
+		double high = 100.0;
+		if (args.containsKey(RANGE) && args.get(RANGE).trim().toLowerCase().startsWith(AUTO)) {
+			double[] percentiles = parseAutoRange(args.get(RANGE).trim());
+			if (percentiles == null) {
+				logger.warn("Unable to parse percentiles from '"+args.get(RANGE)+"'");
+			} else if (!args.containsKey(ATTRIBUTELIST)) {
+				logger.warn("Ignoring "+RANGE+"="+args.get(RANGE)+", which needs an "+ATTRIBUTELIST);
+			} else {
+				auto = true;
+				low = percentiles[0];
+				high = percentiles[1];
+			}
+		} else if (args.containsKey(RANGE)) {
+			String split[] = args.get(RANGE).split(",");
+			try {
+				if (split.length == 2) {
+					min = getDoubleValue(split[0]);
+					max = getDoubleValue(split[1]);
+				}
+			} catch (NumberFormatException e) {
+				min = 0.0;
+				max = 0.0;
+			}
+			if (min == 0.0 && max == 0.0) {
+				logger.warn("Unable to parse min/max values from '"+args.get(RANGE)+"'");
+			}
+		}
+		rangeMin = min;
+		rangeMax = max;
+		autoLow = low;
+		autoHigh = high;
+
+		double bw = 0.1;
+		if (args.containsKey(BORDERWIDTH)) {
+			try {
+				bw = getDoubleValue(args.get(BORDERWIDTH));
+			} catch (NumberFormatException e) {
+				logger.warn("Unable to parse border width from '"+args.get(BORDERWIDTH)+"'");
+			}
+		}
+		borderWidth = bw;
+		borderColor = getColorValue(args.get(BORDERCOLOR), Color.BLACK);
+
+		// Values that have been normalized to our range are always normalized
+		// by the time we draw them.  Note that the sense of the normalize argument
+		// is inverted: normalize=false means that the values are already normalized.
+		// normalize=rank|quantile|zscore normalizes attribute values against
+		// the statistics of their columns instead.
+		boolean norm = false;
+		Normalization mode = Normalization.LINEAR;
+		if (args.containsKey(NORMALIZE)) {
+			mode = Normalization.getNormalization(args.get(NORMALIZE));
+			if (mode == null) {
+				mode = Normalization.LINEAR;
+				norm = !getBooleanValue(args.get(NORMALIZE));
+			} else if (!args.containsKey(ATTRIBUTELIST)) {
+				logger.warn("Ignoring "+NORMALIZE+"="+args.get(NORMALIZE)+", which needs an "+ATTRIBUTELIST);
+				mode = Normalization.LINEAR;
+			}
+		}
+		normalization = mode;
+		if (auto && (mode == Normalization.RANK || mode == Normalization.ZSCORE)) {
+			logger.warn("Ignoring "+RANGE+"="+args.get(RANGE)+", since "+NORMALIZE+"="+args.get(NORMALIZE)+
+			            " gives its own range");
+			auto = false;
+		}
+		autoRange = auto;
+		normalized = norm || hasRange();
+
+		Aggregation agg = null;
+		if (args.containsKey(AGGREGATE)) {
+			agg = Aggregation.getAggregation(args.get(AGGREGATE));
+			if (agg == null) {
+				logger.warn("Ignoring "+AGGREGATE+"="+args.get(AGGREGATE)+", which must be sum, mean or max");
+			} else if (!args.containsKey(ATTRIBUTELIST)) {
+				logger.warn("Ignoring "+AGGREGATE+"="+args.get(AGGREGATE)+", which needs an "+ATTRIBUTELIST);
+				agg = null;
+			}
+		}
+		aggregation = agg;
+
+		ValueVector vList = null;
+		SpecTemplate vTemplate = null;
+		ValueExpression vExpression = null;
+		if (parseValues && args.containsKey(VALUES)) {
+			// The values may come from the node's columns, either as a template or
+			// as expressions
+			String strValues = args.get(VALUES);
+			vTemplate = SpecTemplate.compile(strValues);
+			if (vTemplate == null) {
+				try {
+					vList = compileValues(NumberListParser.parse(strValues));
+				} catch (ParseException e) {
+					if (!ValueExpression.isExpression(strValues)) {
+						setError("Cannot parse "+VALUES+" from input '"+strValues+"': "+e.getMessage());
+					} else {
+						try {
+							vExpression = ValueExpression.compile(strValues);
+						} catch (ParseException ee) {
+							setError("Cannot parse "+VALUES+" from input '"+strValues+"': "+ee.getMessage());
+						}
+					}
+				}
+			} else if (!vTemplate.isColumnList()) {
+				vExpression = compileExpression(strValues);
+				if (vExpression != null) vTemplate = null;
+			}
+		}
+		values = vList;
+		valueTemplate = vTemplate;
+		valueExpression = vExpression;
+
+		List<String> attrs = null;
+		if (args.containsKey(ATTRIBUTELIST)) {
+			attrs = getStringList(args.get(ATTRIBUTELIST));
+			if (attrs.size() == 0) {
+				setError("Cannot parse "+ATTRIBUTELIST+" from input '"+args.get(ATTRIBUTELIST)+"'");
+			}
+			attrs = Collections.unmodifiableList(attrs);
+		}
+		attributes = attrs;
+
+		String mFile = null;
+		List<String> mColumns = null;
+		if (args.containsKey(MATRIXFILE)) {
+			mFile = args.get(MATRIXFILE).trim();
+			if (mFile.length() == 0)
+				setError("Cannot parse "+MATRIXFILE+" from input '"+args.get(MATRIXFILE)+"'");
+			if (args.containsKey(MATRIXCOLS)) {
+				mColumns = getStringList(args.get(MATRIXCOLS));
+				if (mColumns.size() == 0)
+					setError("Cannot parse "+MATRIXCOLS+" from input '"+args.get(MATRIXCOLS)+"'");
+				mColumns = Collections.unmodifiableList(mColumns);
+			}
+		}
+		matrixFile = mFile;
+		matrixRow = args.containsKey(MATRIXROW) ? args.get(MATRIXROW) : CyNetwork.NAME;
+		matrixColumns = mColumns;
+
+		// Get our labels.  These may or may not be printed depending on options
+		boolean showLabels = true;
+		if (args.containsKey(SHOWLABELS))
+			showLabels = getBooleanValue(args.get(SHOWLABELS));
+
+		List<String> lList = null;
+		boolean inferred = false;
+		SpecTemplate lTemplate = null;
+		if (showLabels) {
+			lTemplate = SpecTemplate.compile(args.get(LABELS));
+			lList = (lTemplate == null) ? getStringList(args.get(LABELS)) : new ArrayList<String>();
+			if (lList.size() == 0 && inferLabels && attrs != null && attrs.size() > 0) {
+				lList = attrs;
+				inferred = true;
+			}
+			lList = Collections.unmodifiableList(lList);
+		}
+		labels = lList;
+		labelsFromAttributes = inferred && lTemplate == null;
+		labelTemplate = lTemplate;
+
+		// Font information
+		labelSize = args.containsKey(LABELSIZE) ? getIntegerValue(args.get(LABELSIZE)) : ViewUtils.DEFAULT_SIZE;
+		labelFont = args.containsKey(LABELFONT) ? args.get(LABELFONT) : ViewUtils.DEFAULT_FONT;
+		labelStyle = args.containsKey(LABELSTYLE) ? getFontStyle(args.get(LABELSTYLE)) : ViewUtils.DEFAULT_STYLE;
+		labelWidth = args.containsKey(LABELWIDTH) ? getDoubleValue(args.get(LABELWIDTH)) : ViewUtils.DEFAULT_LABEL_WIDTH;
+		labelSpacing = args.containsKey(LABELSPACING) ?
+		               getDoubleValue(args.get(LABELSPACING)) : ViewUtils.DEFAULT_LABEL_LINE_SPACING;
+		labelColor = getColorValue(args.get(LABELCOLOR), Color.BLACK);
+		font = new Font(labelFont, labelStyle, labelSize);
+
+		double s = 1.0;
+		if (args.containsKey(SCALE)) {
+			try {
+				s = getDoubleValue(args.get(SCALE));
+			} catch (NumberFormatException e) {
+				logger.warn("Cannot parse "+SCALE+" from input '"+args.get(SCALE)+"'");
+			}
+		}
+		scale = s;
+
+		// Get our position
+		Object pos = ViewUtils.Position.CENTER;
+		if (args.containsKey(POSITION)) {
+			pos = parsePoint(args.get(POSITION), true);
+			if (pos == null) {
+				logger.warn("Cannot parse "+POSITION+" from input '"+args.get(POSITION)+"'");
+				pos = ViewUtils.Position.CENTER;
+			}
+		}
+		position = pos;
+
+		Point2D offset = null;
+		if (args.containsKey(LABELOFFSET)) {
+			offset = (Point2D)parsePoint(args.get(LABELOFFSET), false);
+			if (offset == null)
+				logger.warn("Cannot parse "+LABELOFFSET+" from input '"+args.get(LABELOFFSET)+"'");
+		}
+		labelOffset = offset;
+
+		Object a = ViewUtils.Position.CENTER;
+		if (args.containsKey(ANCHOR)) {
+			a = ViewUtils.getPosition(args.get(ANCHOR));
+			if (a == null) {
+				logger.warn("Cannot parse "+ANCHOR+" from input '"+args.get(ANCHOR)+"'");
+				a = ViewUtils.Position.CENTER;
+			}
+		}
+		anchor = a;
+
+		// Get the base of the chart
+		double yb = 0.5;
+		if (args.containsKey(YBASE)) {
+			String ybString = args.get(YBASE);
+			if (ybString.equalsIgnoreCase("bottom"))
+				yb = 1.0;
+			else if (ybString.equalsIgnoreCase("top"))
+				yb = 0.0;
+			else if (ybString.equalsIgnoreCase("middle"))
+				yb = 0.5;
+			else {
+				try {
+					yb = getDoubleValue(ybString);
+				} catch (NumberFormatException e) {
+					logger.warn("Cannot parse "+YBASE+" from input '"+ybString+"'");
+					yb = 0.5;
+				}
+			}
+		}
+		ybase = yb;
+	}
+
+	public boolean isValid() { return error == null; }
+	public String getError() { return error; }
+
+	/**
+ 	 * Return the arguments this spec was compiled from.  These are what we
+ 	 * save in sessions, since compiling them again gives an identical spec.
+ 	 *
+ 	 * @return the unmodifiable argument map
+ 	 */
+	public Map<String, String> getArguments() { return arguments; }
+
+	public double getRangeMin() { return rangeMin; }
+	public double getRangeMax() { return rangeMax; }
+
+	/**
+ 	 * Return true if the user gave us a range to normalize to, or asked for it
+ 	 * to be taken from the data
+ 	 *
+ 	 * @return true if we have a range
+ 	 */
+	public boolean hasRange() {
+		return autoRange || normalization == Normalization.RANK || normalization == Normalization.ZSCORE ||
+		       rangeMin != 0.0 || rangeMax != 0.0;
+	}
+
+	/**
+ 	 * Return how attribute values are normalized against the statistics of
+ 	 * their columns
+ 	 *
+ 	 * @return the normalization, LINEAR if they aren't
+ 	 */
+	public Normalization getNormalization() { return normalization; }
+
+	/**
+ 	 * Return true if the values drawn for a node depend on the values of every
+ 	 * other node, and not just on the range
+ 	 *
+ 	 * @return true if the normalization uses the column statistics
+ 	 */
+	public boolean dependsOnAllRows() { return normalization != Normalization.LINEAR; }
+
+	/**
+ 	 * Return how the attribute values of the members of a group node are
+ 	 * aggregated to draw the group node
+ 	 *
+ 	 * @return the aggregation, or null if group nodes draw their own values
+ 	 */
+	public Aggregation getAggregation() { return aggregation; }
+
+	/**
+ 	 * Return true if the range is taken from the statistics of the attribute
+ 	 * columns (<code>range=auto</code>), so that it changes with the data
+ 	 *
+ 	 * @return true if the range is automatic
+ 	 */
+	public boolean isAutoRange() { return autoRange; }
+
+	/**
+ 	 * Return the percentile of the attribute values that is the bottom of an
+ 	 * automatic range
+ 	 *
+ 	 * @return the percentile, 0 for the minimum
+ 	 */
+	public double getAutoRangeLow() { return autoLow; }
+
+	/**
+ 	 * Return the percentile of the attribute values that is the top of an
+ 	 * automatic range
+ 	 *
+ 	 * @return the percentile, 100 for the maximum
+ 	 */
+	public double getAutoRangeHigh() { return autoHigh; }
+	public boolean isNormalized() { return normalized; }
+
+	public double getBorderWidth() { return borderWidth; }
+	public Color getBorderColor() { return borderColor; }
+
+	/**
+ 	 * Return the values from the valuelist argument, normalized to our range, if any.
+ 	 *
+ 	 * @return the read-only values, or null if no values were given
+ 	 */
+	public ValueVector getValues() { return values; }
+
+	/**
+ 	 * Return the values for a node.  If the valuelist refers to columns, it is
+ 	 * filled in from the node's row and parsed, otherwise this is the same as
+ 	 * {@link #getValues()}.  Missing column values become NaN.
+ 	 *
+ 	 * @param row the node's row
+ 	 * @return the read-only values, or null if there are no values or they
+ 	 * can't be parsed
+ 	 */
+	public ValueVector getValues(CyRow row) {
+		if (valueExpression != null) return compileValues(valueExpression.evaluate(row));
+		if (valueTemplate == null) return values;
+		String resolved = valueTemplate.resolve(row, "NaN");
+		try {
+			return compileValues(NumberListParser.parse(resolved));
+		} catch (ParseException e) {
+			logger.warn("Cannot parse "+VALUES+" '"+resolved+"' from '"+valueTemplate+"': "+e.getMessage());
+			return null;
+		}
+	}
+
+	/**
+ 	 * Return true if the values depend on the node
+ 	 *
+ 	 * @return true if the valuelist refers to columns
+ 	 */
+	public boolean isValueTemplate() { return valueTemplate != null || valueExpression != null; }
+
+	/**
+ 	 * Return the labels.  If the user didn't provide any labels, but did provide an
+ 	 * attribute list, the attribute names are used as labels.
+ 	 *
+ 	 * @return the unmodifiable list of labels, or null if showlabels is false
+ 	 */
+	public List<String> getLabels() { return labels; }
+
+	/**
+ 	 * Return the labels for a node.  If the labellist refers to columns, it is
+ 	 * filled in from the node's row, otherwise this is the same as {@link #getLabels()}.
+ 	 *
+ 	 * @param row the node's row
+ 	 * @return the unmodifiable list of labels, or null if showlabels is false
+ 	 */
+	public List<String> getLabels(CyRow row) {
+		if (labelTemplate == null) return labels;
+		return Collections.unmodifiableList(getStringList(labelTemplate.resolve(row, "")));
+	}
+
+	/**
+ 	 * Return the names of the columns the chart reads from a node's row.  The
+ 	 * chart's layers for a node only need to be created again when one of these
+ 	 * changes for the node.
+ 	 *
+ 	 * @return the unmodifiable set of column names
+ 	 */
+	public Set<String> getColumns() {
+		Set<String> names = columns;
+		if (names == null) {
+			names = Collections.unmodifiableSet(addColumns(new HashSet<String>()));
+			columns = names;
+		}
+		return names;
+	}
+
+	/**
+ 	 * Add the names of the columns the chart reads to a set.  Specs that read
+ 	 * other columns should override this and call super.
+ 	 *
+ 	 * @param names the set to add to
+ 	 * @return names
+ 	 */
+	protected Set<String> addColumns(Set<String> names) {
+		if (attributes != null) names.addAll(attributes);
+		if (matrixFile != null) names.add(matrixRow);
+		if (valueTemplate != null) names.addAll(valueTemplate.getColumns());
+		if (valueExpression != null) names.addAll(valueExpression.getColumns());
+		if (labelTemplate != null) names.addAll(labelTemplate.getColumns());
+		if (aggregation != null) names.add(GroupAggregates.KEY);
+		return names;
+	}
+
+	/**
+ 	 * Return true if the labels were taken from the attribute names
+ 	 *
+ 	 * @return true if the labels are the attribute names
+ 	 */
+	public boolean isLabelsFromAttributes() { return labelsFromAttributes; }
+
+	/**
+ 	 * Return the path of the matrix file the values are read from
+ 	 *
+ 	 * @return the path, or null if the values don't come from a matrix file
+ 	 */
+	public String getMatrixFile() { return matrixFile; }
+	public boolean hasMatrix() { return matrixFile != null; }
+
+	/**
+ 	 * Return the column whose value is the name of the node's row in the matrix
+ 	 *
+ 	 * @return the column name, <code>name</code> unless matrixrow was given
+ 	 */
+	public String getMatrixRow() { return matrixRow; }
+
+	/**
+ 	 * Return the matrix columns to read, as names or index ranges like
+ 	 * <code>0-99</code>
+ 	 *
+ 	 * @return the unmodifiable list of columns, or null for all of them
+ 	 */
+	public List<String> getMatrixColumns() { return matrixColumns; }
+	public List<String> getAttributes() { return attributes; }
+	public boolean hasAttributes() { return attributes != null && attributes.size() > 0; }
+
+	public Color getLabelColor() { return labelColor; }
+	public int getLabelSize() { return labelSize; }
+	public String getLabelFont() { return labelFont; }
+	public int getLabelStyle() { return labelStyle; }
+	public double getLabelWidth() { return labelWidth; }
+	public double getLabelSpacing() { return labelSpacing; }
+	public Font getFont() { return font; }
+	public double getScale() { return scale; }
+	public Object getPosition() { return position; }
+	public Point2D getLabelOffset() { return labelOffset; }
+	public Object getAnchor() { return anchor; }
+	public double getYBase() { return ybase; }
+
+	/**
+ 	 * Record an error that will prevent the chart from being drawn.  Only the
+ 	 * first error is kept, but all of them are logged.
+ 	 *
+ 	 * @param message the error message
+ 	 */
+	protected void setError(String message) {
+		logger.error(message);
+		if (error == null)
+			error = message;
+	}
+
+	/**
+ 	 * Normalize a vector of values (in place) to our range.  If we don't
+ 	 * have a range, the values are unchanged.
+ 	 *
+ 	 * @param vList the values to normalize
+ 	 * @return the normalized values
+ 	 */
+	public ValueVector normalize(ValueVector vList) {
+		return normalize(vList, rangeMin, rangeMax);
+	}
+
+	/**
+ 	 * Normalize a vector of values (in place) to a range, such as one resolved
+ 	 * from <code>range=auto</code>.  If the range is 0,0 the values are unchanged.
+ 	 *
+ 	 * @param vList the values to normalize
+ 	 * @param min the bottom of the range
+ 	 * @param max the top of the range
+ 	 * @return the normalized values
+ 	 */
+	public ValueVector normalize(ValueVector vList, double min, double max) {
+		if (min == 0.0 && max == 0.0) return vList;
+		vList.normalize(min, max);
+		return vList;
+	}
+
+	// Parse auto or auto:pLOW,pHIGH into the two percentiles
+	private static double[] parseAutoRange(String range) {
+		if (range.equalsIgnoreCase(AUTO))
+			return new double[] {0.0, 100.0};
+		if (range.length() <= AUTO.length() || range.charAt(AUTO.length()) != ':')
+			return null;
+		String split[] = range.substring(AUTO.length()+1).split(",");
+		if (split.length != 2)
+			return null;
+		double[] percentiles = new double[2];
+		for (int i = 0; i < 2; i++) {
+			String p = split[i].trim().toLowerCase();
+			if (p.startsWith("p")) p = p.substring(1);
+			try {
+				percentiles[i] = Double.parseDouble(p);
+			} catch (NumberFormatException e) {
+				return null;
+			}
+			if (percentiles[i] < 0.0 || percentiles[i] > 100.0)
+				return null;
+		}
+		if (percentiles[0] >= percentiles[1])
+			return null;
+		return percentiles;
+	}
+
+	// Zero-centered normalization.  Zero values must remain zero,
+	// negative values must be negative, and positive values must be
+	// positive.  Note that if the user gives us unbalanced ranges, this
+	// approach to normalization will inflate the smaller of the ranges
+	public static double normalize(double v, double rangeMin, double rangeMax) {
+		// ML : a NaN should not be normalized
+		if (Double.isNaN(v)) return v;
+
+		if (rangeMin == 0.0 && rangeMax == 0.0) return v;
+		double range = rangeMax-rangeMin;
+		double val = 0.0;
+
+		// Clamp v
+		if (v < rangeMin) v = rangeMin;
+		if (v > rangeMax) v = rangeMax;
+
+		if (rangeMin > 0.0 && rangeMax > 0.0)
+			val = (v - rangeMin) / range;
+		else if (rangeMin < 0.0 && rangeMax < 0.0)
+			val = (v - rangeMax) / range;
+		else if (v < 0.0 && rangeMin < 0.0)
+			val = -(v / rangeMin);
+		else if (v > 0.0 && rangeMax > 0.0)
+			val = (v / rangeMax);
+
+		return val;
+	}
+
+	/**
+ 	 * Normalize an array of values (in place) to our range.  If we don't
+ 	 * have a range, the values are unchanged.
+ 	 *
+ 	 * @param values the values to normalize
+ 	 * @return the normalized values
+ 	 */
+	public double[] normalize(double[] values) {
+		if (!hasRange()) return values;
+		ValueKernels.normalize(values, values.length, rangeMin, rangeMax);
+		return values;
+	}
+
+	/**
+ 	 * Compile a valuelist as a list of expressions
+ 	 *
+ 	 * @param input the valuelist
+ 	 * @return the expressions, or null if the input isn't a list of expressions
+ 	 * (including a list that doesn't use anything only an expression can,
+ 	 * see {@link ValueExpression#isExpression})
+ 	 */
+	protected ValueExpression compileExpression(String input) {
+		if (!ValueExpression.isExpression(input))
+			return null;
+		try {
+			return ValueExpression.compile(input);
+		} catch (ParseException e) {
+			return null;
+		}
+	}
+
+	/**
+ 	 * Normalize parsed values and turn them into the read-only vector we keep
+ 	 * in the spec.
+ 	 *
+ 	 * @param values the parsed values, which are normalized in place
+ 	 * @return the values
+ 	 */
+	protected ValueVector compileValues(double[] values) {
+		return ValueVector.readOnly(normalize(values));
+	}
+
+	public ValueVector parseStringList(String input)  {
+		if (input == null)
+			return null;
+		try {
+			return ValueVector.wrap(NumberListParser.parse(input));
+		} catch (ParseException e) {
+			return null;
+		}
+	}
+
+	public List<String> getStringList(String input) {
+		return SpecLexer.splitList(input);
+	}
+
+	/**
+ 	 * Return the boolean equivalent of the input
+ 	 *
+ 	 * @param input an input value that is supposed to be Boolean
+ 	 * @return the boolean value it represents
+ 	 */
+	public boolean getBooleanValue(Object input) {
+		if (input instanceof Boolean)
+			return ((Boolean)input).booleanValue();
+		return Boolean.parseBoolean(input.toString());
+	}
+
+	public int getFontStyle(String input) {
+		if (input.equalsIgnoreCase("italics"))
+			return Font.ITALIC;
+		if (input.equalsIgnoreCase("bold"))
+			return Font.BOLD;
+		if (input.equalsIgnoreCase("bolditalic"))
+			return Font.ITALIC|Font.BOLD;
+		return Font.PLAIN;
+	}
+
+	/**
+ 	 * Return the color equivalent of the input
+ 	 *
+ 	 * @param input the color string
+ 	 * @param defaultColor the color to use if there is no input or it can't be parsed
+ 	 * @return the color
+ 	 */
+	public Color getColorValue(String input, Color defaultColor) {
+		if (input == null)
+			return defaultColor;
+		Color color = ColorSpec.parseColor(input);
+		return color == null ? defaultColor : color;
+	}
+
+	/**
+ 	 * Return the double equivalent of the input
+ 	 *
+ 	 * @param input an input value that is supposed to be a double
+ 	 * @return the a double value it represents
+ 	 * @throws NumberFormatException is the value is illegal
+ 	 */
+	public double getDoubleValue(Object input) throws NumberFormatException {
+		if (input instanceof Double)
+			return ((Double)input).doubleValue();
+		else if (input instanceof Integer)
+			return ((Integer)input).doubleValue();
+		else if (input instanceof String)
+			return Double.parseDouble((String)input);
+		throw new NumberFormatException("input can not be converted to double");
+	}
+
+	/**
+ 	 * Return the integer equivalent of the input
+ 	 *
+ 	 * @param input an input value that is supposed to be a integer
+ 	 * @return the a integer value it represents
+ 	 * @throws NumberFormatException is the value is illegal
+ 	 */
+	public int getIntegerValue(Object input) throws NumberFormatException {
+		if (input instanceof Integer)
+			return ((Integer)input).intValue();
+		else if (input instanceof String)
+			return Integer.parseInt((String)input);
+		throw new NumberFormatException("input can not be converted to integer");
+	}
+
+	// Parse either a position keyword (if allowed) or an "x,y" offset
+	private Object parsePoint(String input, boolean allowKeyword) {
+		if (allowKeyword) {
+			Object pos = ViewUtils.getPosition(input);
+			if (pos != null) return pos;
+		}
+		if (input.indexOf(",") > 0) {
+			String[] point = input.split(",");
+			if (point.length == 2) {
+				try {
+					double x = Double.parseDouble(point[0]);
+					double y = Double.parseDouble(point[1]);
+					return new Point2D.Double(x, y);
+				} catch (NumberFormatException e) {
+					return null;
+				}
+			}
+		}
+		return null;
+	}
+
+	/**
+ 	 * The ways attribute values can be normalized against their columns:
+ 	 * <ul>
+ 	 * <li>LINEAR: only to the range, if any</li>
+ 	 * <li>RANK: to the percentile rank of the value in its column, from 0 to 1</li>
+ 	 * <li>QUANTILE: to the value with the same rank in the mean distribution of
+ 	 *     the attribute columns (quantile normalization), and then to the range</li>
+ 	 * <li>ZSCORE: to the number of standard deviations from the mean of its
+ 	 *     column, and then to the range, which is -3,3 if none is given</li>
+ 	 * </ul>
+ 	 */
+	public enum Normalization {
+		LINEAR, RANK, QUANTILE, ZSCORE;
+
+		/**
+ 		 * Return the normalization with a name
+ 		 *
+ 		 * @param name the value of the normalize argument
+ 		 * @return the normalization, or null if it isn't one of ours
+ 		 */
+		public static Normalization getNormalization(String name) {
+			if (name == null) return null;
+			String n = name.trim();
+			for (Normalization normalization: values()) {
+				if (normalization != LINEAR && normalization.name().equalsIgnoreCase(n))
+					return normalization;
+			}
+			return null;
+		}
+	}
+
+	/**
+ 	 * The ways the attribute values of the members of a group node can be
+ 	 * aggregated: the SUM or MEAN of the values that aren't missing, or the
+ 	 * MAX.  Members that are groups themselves count all of their members.
+ 	 */
+	public enum Aggregation {
+		SUM, MEAN, MAX;
+
+		/**
+ 		 * Return the aggregation with a name
+ 		 *
+ 		 * @param name the value of the aggregate argument
+ 		 * @return the aggregation, or null if it isn't one of ours
+ 		 */
+		public static Aggregation getAggregation(String name) {
+			if (name == null) return null;
+			String n = name.trim();
+			for (Aggregation aggregation: values()) {
+				if (aggregation.name().equalsIgnoreCase(n))
+					return aggregation;
+			}
+			return null;
+		}
+	}
+}
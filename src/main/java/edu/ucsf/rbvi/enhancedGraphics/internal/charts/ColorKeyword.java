@@ -33,8 +33,10 @@
 package edu.ucsf.rbvi.enhancedGraphics.internal.charts;
 
 // System imports
-import java.util.HashMap;
-import java.util.Map;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
 
 import java.awt.Color;
 
@@ -700,12 +702,78 @@ public enum ColorKeyword {
 
 	private String label;
 	private int color;
-	private static Map<String, ColorKeyword>cMap;
+	private Color colorObject;
+
+	// Perfect hash over the labels, built once when the class is loaded.  Each
+	// label hashes to a bucket, and each bucket gets a displacement that was
+	// chosen so that every label in the table lands in its own slot.  A lookup
+	// is one hash of the input, one slot, and one string comparison.
+	private static final ColorKeyword[] slots;
+	private static final int[] displacements;
+	private static final int slotMask;
+	private static final int bucketMask;
+
+	static {
+		ColorKeyword[] keywords = values();
+		int nSlots = Integer.highestOneBit(keywords.length*2-1) << 1;
+		int nBuckets = Math.max(1, nSlots/8);
+		slots = new ColorKeyword[nSlots];
+		displacements = new int[nBuckets];
+		slotMask = nSlots-1;
+		bucketMask = nBuckets-1;
+
+		// Put the keywords in their buckets
+		List<List<ColorKeyword>> buckets = new ArrayList<List<ColorKeyword>>(nBuckets);
+		for (int b = 0; b < nBuckets; b++)
+			buckets.add(new ArrayList<ColorKeyword>());
+		for (ColorKeyword k: keywords)
+			buckets.get(bucket(hash(k.label, 0, k.label.length()))).add(k);
+
+		// Place the largest buckets first, since they are the hardest to fit
+		List<Integer> order = new ArrayList<Integer>(nBuckets);
+		for (int b = 0; b < nBuckets; b++)
+			order.add(b);
+		final List<List<ColorKeyword>> bucketList = buckets;
+		Collections.sort(order, new Comparator<Integer>() {
+			public int compare(Integer a, Integer b) {
+				return bucketList.get(b).size() - bucketList.get(a).size();
+			}
+		});
+
+		int[] placed = new int[8];
+		for (Integer b: order) {
+			List<ColorKeyword> bucket = buckets.get(b);
+			if (bucket.isEmpty()) break;
+			if (placed.length < bucket.size()) placed = new int[bucket.size()];
+			for (int d = 0; ; d++) {
+				if (d > (1 << 20))
+					throw new IllegalStateException("Unable to build the color keyword table");
+				int n = 0;
+				for (ColorKeyword k: bucket) {
+					int slot = slot(hash(k.label, 0, k.label.length()), d);
+					if (slots[slot] != null) break;
+					// The keywords in a bucket can't collide with each other either
+					boolean taken = false;
+					for (int j = 0; j < n; j++) {
+						if (placed[j] == slot) { taken = true; break; }
+					}
+					if (taken) break;
+					placed[n++] = slot;
+				}
+				if (n == bucket.size()) {
+					for (int j = 0; j < n; j++)
+						slots[placed[j]] = bucket.get(j);
+					displacements[b] = d;
+					break;
+				}
+			}
+		}
+	}
 
 	ColorKeyword(String label, int color) { 
 		this.label = label; 
 		this.color = color; 
-		addKeyword(this);
+		this.colorObject = new Color(color);
 	}
 
 	public String getLabel() {
@@ -716,18 +784,66 @@ public enum ColorKeyword {
 		return color;
 	}
 
+	/**
+ 	 * Return the Color for this keyword.  This is shared, so callers
+ 	 * get the same instance every time.
+ 	 *
+ 	 * @return the color
+ 	 */
+	public Color getColor() {
+		return colorObject;
+	}
+
 	public String toString() {
 		return label;
 	}
-	
-	private void addKeyword(ColorKeyword col) {
-		if (cMap == null) cMap = new HashMap<String,ColorKeyword>();
-		cMap.put(col.getLabel(), col);
-	}
 
 	static Color getColor(String label) {
-		if (!cMap.containsKey(label))
+		if (label == null) return null;
+		return getColor(label, 0, label.length());
+	}
+
+	/**
+ 	 * Look up a color keyword in part of a string.  The match is exact (and
+ 	 * so case sensitive).
+ 	 *
+ 	 * @param input the string containing the keyword
+ 	 * @param start the index of the first character of the keyword
+ 	 * @param end the index after the last character of the keyword
+ 	 * @return the shared color, or null if this isn't a keyword
+ 	 */
+	static Color getColor(String input, int start, int end) {
+		int length = end-start;
+		int h = hash(input, start, end);
+		ColorKeyword k = slots[slot(h, displacements[bucket(h)])];
+		if (k == null || k.label.length() != length || !k.label.regionMatches(0, input, start, length))
 			return null;
-		return new Color(cMap.get(label).getColorCode());
+		return k.colorObject;
+	}
+
+	// Same as String.hashCode, but over part of a string
+	private static int hash(String input, int start, int end) {
+		int h = 0;
+		for (int i = start; i < end; i++)
+			h = 31*h + input.charAt(i);
+		return h;
+	}
+
+	private static int bucket(int h) {
+		return mix(h) & bucketMask;
+	}
+
+	private static int slot(int h, int displacement) {
+		return mix(h ^ (displacement * 0x9E3779B9) ^ 0x5bd1e995) & slotMask;
+	}
+
+	// Murmur3 finalizer
+	private static int mix(int h) {
+		h ^= h >>> 16;
+		h *= 0x85ebca6b;
+		h ^= h >>> 13;
+		h *= 0xc2b2ae35;
+		h ^= h >>> 16;
+		return h;
 	}
 }
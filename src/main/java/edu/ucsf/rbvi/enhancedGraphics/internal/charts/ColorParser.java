@@ -0,0 +1,69 @@
+package edu.ucsf.rbvi.enhancedGraphics.internal.charts;
+
+import java.awt.Color;
+
+/**
+ * Parser for a single color token: either a hex value (#RRGGBB or #RRGGBBAA)
+ * or one of the {@link ColorKeyword} names.  Hex digits are decoded by hand and
+ * keywords are resolved through the ColorKeyword perfect hash, so parsing a token
+ * never compiles a regular expression or makes a substring.  Keyword colors are
+ * shared instances.
+ */
+public class ColorParser {
+	private ColorParser() {}
+
+	/**
+ 	 * Parse a color.  Leading and trailing whitespace is ignored.
+ 	 *
+ 	 * @param input the color token
+ 	 * @return the color, or null if the token isn't a color
+ 	 */
+	public static Color parse(String input) {
+		if (input == null) return null;
+		return parse(input, 0, input.length());
+	}
+
+	/**
+ 	 * Parse a color from part of a string.  Leading and trailing whitespace is ignored.
+ 	 *
+ 	 * @param input the string containing the color token
+ 	 * @param start the index of the first character of the token
+ 	 * @param end the index after the last character of the token
+ 	 * @return the color, or null if the token isn't a color
+ 	 */
+	public static Color parse(String input, int start, int end) {
+		while (start < end && input.charAt(start) <= ' ')
+			start++;
+		while (end > start && input.charAt(end-1) <= ' ')
+			end--;
+		if (start == end)
+			return null;
+
+		if (input.charAt(start) != '#')
+			return ColorKeyword.getColor(input, start, end);
+
+		// We have a hex value with either 6 (rgb) or 8 (rgba) digits
+		int nDigits = end-start-1;
+		if (nDigits != 6 && nDigits != 8)
+			return null;
+		long value = 0;
+		for (int i = start+1; i < end; i++) {
+			int digit = hexDigit(input.charAt(i));
+			if (digit < 0)
+				return null;
+			value = (value << 4) | digit;
+		}
+
+		if (nDigits == 6)
+			return new Color((int)value);
+		int rgba = (int)value;
+		return new Color(rgba >>> 24, (rgba >>> 16) & 0xff, (rgba >>> 8) & 0xff, rgba & 0xff);
+	}
+
+	private static int hexDigit(char c) {
+		if (c >= '0' && c <= '9') return c - '0';
+		if (c >= 'a' && c <= 'f') return c - 'a' + 10;
+		if (c >= 'A' && c <= 'F') return c - 'A' + 10;
+		return -1;
+	}
+}
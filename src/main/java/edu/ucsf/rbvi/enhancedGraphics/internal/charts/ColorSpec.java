@@ -0,0 +1,283 @@
+package edu.ucsf.rbvi.enhancedGraphics.internal.charts;
+
+import java.awt.Color;
+
+import java.util.ArrayList;
+import java.util.Calendar;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import org.cytoscape.application.CyUserLog;
+import org.apache.log4j.Logger;
+
+/**
+ * A compiled <code>colorlist</code> argument.  The color string is classified
+ * (keyword, explicit list of colors, or up/down scaling colors) and all of the
+ * colors in it are parsed once, when the spec is compiled.  The only thing left
+ * to do per node is to generate or scale colors for that node's values.
+ */
+public class ColorSpec {
+	private static final Logger logger = Logger.getLogger(CyUserLog.NAME);
+
+	private static final String	CONTRASTING = "contrasting";
+	public static final String	DOWN = "down:";
+	// ML: added ':' at the end of missing
+	public static final String	MISSING = "missing:";
+	private static final String	MODULATED = "modulated";
+	private static final String	RAINBOW = "rainbow";
+	private static final String RANDOM = "random";
+	public static final String	UP = "up:";
+	public static final String	ZERO = "zero:";
+	private static final double EPSILON = 1E-8f;
+
+	private enum Mode { CONTRASTING, LIST, MODULATED, RAINBOW, RANDOM, UPDOWN };
+
+	/**
+ 	 * The colors we use when the user doesn't give us a colorlist
+ 	 */
+	public static final ColorSpec DEFAULT = new ColorSpec(null, Mode.CONTRASTING, null);
+
+	private final String input;
+	private final Mode mode;
+	// For LIST this is the list of colors, for UPDOWN it's up, down, zero, missing.
+	// If any of the colors couldn't be parsed, this is null.
+	private final List<Color> colors;
+
+	private ColorSpec(String input, Mode mode, List<Color> colors) {
+		this.input = input;
+		this.mode = mode;
+		this.colors = colors == null ? null : Collections.unmodifiableList(colors);
+	}
+
+	/**
+ 	 * Compile a color specification.  The input can be a keyword (contrasting,
+ 	 * modulated, rainbow, random), a single color, a comma-separated list of colors, or
+ 	 * a set of up:/down:/zero:/missing: scaling colors.
+ 	 *
+ 	 * @param input the color specification (may be null)
+ 	 * @return the compiled color specification
+ 	 */
+	public static ColorSpec compile(String input) {
+		if (input == null) {
+			// give the default: contrasting colors
+			return DEFAULT;
+		}
+
+		// OK, we have three posibilities.  The input could be a keyword, a comma-separated list of colors, or
+		// a list of Color objects.  We need to figure this out first...
+		// See if we have a csv
+		String [] colorArray = input.split(",");
+		// Look for up/down special case
+		if (isUpDown(colorArray)) {
+			List<Color> upDownColors = parseUpDownColor(colorArray);
+			if (upDownColors != null && upDownColors.size() != 4)
+				upDownColors = null;
+			return new ColorSpec(input, Mode.UPDOWN, upDownColors);
+		} else if (colorArray.length > 1) {
+			return new ColorSpec(input, Mode.LIST, parseColorList(colorArray));
+		}
+
+		String keyword = input.trim();
+		if (keyword.equals(RANDOM))
+			return new ColorSpec(input, Mode.RANDOM, null);
+		else if (keyword.equals(RAINBOW))
+			return new ColorSpec(input, Mode.RAINBOW, null);
+		else if (keyword.equals(MODULATED))
+			return new ColorSpec(input, Mode.MODULATED, null);
+		else if (keyword.equals(CONTRASTING))
+			return new ColorSpec(input, Mode.CONTRASTING, null);
+		else
+			return new ColorSpec(input, Mode.LIST, parseColorList(new String[] {keyword}));
+	}
+
+	/**
+ 	 * Return true if this is a set of up/down scaling colors
+ 	 *
+ 	 * @return true if the colors are scaled by the values
+ 	 */
+	public boolean isUpDown() { return mode == Mode.UPDOWN; }
+
+	/**
+ 	 * Return the colors for a list of values.
+ 	 *
+ 	 * @param values the values we need colors for.  For up/down colors, these
+ 	 * must already be normalized if scaled is true.
+ 	 * @param scaled if true, up/down colors are scaled between the zero color and
+ 	 * the up or down color.  Otherwise the up or down color is used as is.
+ 	 * @return the list of colors, or null if the color specification couldn't be parsed
+ 	 */
+	public List<Color> getColors(ValueVector values, boolean scaled) {
+		int nColors = values.size();
+		switch (mode) {
+			case RANDOM:
+				return generateRandomColors(nColors);
+			case RAINBOW:
+				return generateRainbowColors(nColors);
+			case MODULATED:
+				return generateModulatedRainbowColors(nColors);
+			case CONTRASTING:
+				return generateContrastingColors(nColors);
+			case UPDOWN:
+				if (colors == null) return null;
+				return getUpDownColors(values, scaled);
+			default:
+				return colors;
+		}
+	}
+
+	public String toString() { return input; }
+
+	public static boolean isUpDown(String[] colorArray) {
+		if (colorArray.length < 2 || colorArray.length > 4)
+			return false;
+		String first = colorArray[0].toLowerCase();
+		if (first.startsWith(UP) || first.startsWith(DOWN))
+			return true;
+		if (colorArray.length >= 3 && first.startsWith(ZERO))
+			return true;
+		if (colorArray.length == 4 && first.startsWith(MISSING))
+			return true;
+		return false;
+	}
+
+	public static List<Color> parseUpDownColor(String[] colorArray)  {
+		if (colorArray.length < 2) {
+			return null;
+		}
+
+		String [] colors = new String[4];
+		colors[2] = "black";
+		colors[3] = "grey";
+		for (int index = 0; index < colorArray.length; index++) {
+			if (colorArray[index].toLowerCase().startsWith(UP)) {
+				colors[0] = colorArray[index].substring(UP.length());
+			} else if (colorArray[index].toLowerCase().startsWith(DOWN)) {
+				colors[1] = colorArray[index].substring(DOWN.length());
+			} else if (colorArray[index].toLowerCase().startsWith(ZERO)) {
+				colors[2] = colorArray[index].substring(ZERO.length());
+			} else if (colorArray[index].toLowerCase().startsWith(MISSING)) {
+				colors[3] = colorArray[index].substring(MISSING.length());
+			}
+		}
+		return parseColorList(colors);
+	}
+
+	public static Color parseColor(String colorString)  {
+		if (colorString == null) return null;
+		Color c = ColorParser.parse(colorString);
+		if (c == null)
+			logger.warn("Can't find color '"+colorString.trim()+"'");
+		return c;
+	}
+
+	public static List<Color> parseColorList(String[] inputArray)  {
+		List<Color> colors = new ArrayList<Color>();
+		// A color in the array can either be a hex value or a text color
+		for (String colorString: inputArray) {
+			if (colorString == null) continue;
+			Color c = parseColor(colorString);
+			if (c == null)
+				return null;
+			colors.add(c);
+		}
+		return colors;
+	}
+
+	private List<Color> getUpDownColors(ValueVector values, boolean scaled)  {
+		Color up = colors.get(0);
+		Color down = colors.get(1);
+		Color zero = colors.get(2);
+		Color missing = colors.get(3);
+
+		List<Color> results = new ArrayList<Color>(values.size());
+		for (int i = 0; i < values.size(); i++) {
+			// ML: A NaN should be treated as missing
+			double vn = values.get(i);
+			if (Double.isNaN(vn)) {
+				results.add(missing);
+				continue;
+			}
+			if (vn < (-EPSILON))  {
+				results.add(scaled ? scaleColor(-vn, zero, down) : down);
+			} else if (vn > EPSILON) {
+				results.add(scaled ? scaleColor(vn, zero, up) : up);
+			} else
+				results.add(zero);
+		}
+		return results;
+	}
+
+	private static Color scaleColor(double v, Color zero, Color c) {
+		if(v < 0 || v > 1) {
+			logger.warn("Warning, one color was out-of-range and replaced by the up or down color."
+					+ "\n"
+					+ "Maybe you should not use a scaling color scheme.");
+			return c;
+		}
+
+		// We want to scale our color to be between "zero" and "c"
+		int b = (int)(c.getBlue()*v + zero.getBlue()*(1-v));
+		int r = (int)(c.getRed()*v + zero.getRed()*(1-v));
+		int g = (int)(c.getGreen()*v + zero.getGreen()*(1-v));
+		//ML: Added alpha
+		int a = (int)(c.getAlpha()*v + zero.getAlpha()*(1-v));
+		return new Color(r, g, b, a);
+	}
+
+	private static List<Color> generateRandomColors(int nColors) {
+		Calendar cal = Calendar.getInstance();
+		int seed = cal.get(Calendar.SECOND);
+		Random rand = new Random(seed);
+
+		List<Color> result = new ArrayList<Color>(nColors);
+		for (int index = 0; index < nColors; index++) {
+			int r = rand.nextInt(255);
+			int g = rand.nextInt(255);
+			int b = rand.nextInt(255);
+			result.add(index, new Color(r,g,b,200));
+		}
+		return result;
+	}
+
+	// Rainbow colors just divide the Hue wheel into n pieces and return them
+	private static List<Color> generateRainbowColors(int nColors) {
+		List<Color> values = new ArrayList<Color>();
+		for (float i = 0.0f; i < (float)nColors; i += 1.0f) {
+			values.add(new Color(Color.HSBtoRGB(i/(float)nColors, 1.0f, 1.0f)));
+		}
+		return values;
+	}
+
+	// Rainbow colors just divide the Hue wheel into n pieces and return them, but
+	// in this case, we're going to change the saturation and intensity
+	private static List<Color> generateModulatedRainbowColors(int nColors) {
+		List<Color> values = new ArrayList<Color>();
+		for (float i = 0.0f; i < (float)nColors; i += 1.0f) {
+			float sat = (Math.abs(((Number) Math.cos((8 * i) / (2 * Math.PI))).floatValue()) * 0.7f)
+			             + 0.3f;
+			float br = (Math.abs(((Number) Math.sin(((i) / (2 * Math.PI)) + (Math.PI / 2)))
+			                      .floatValue()) * 0.7f) + 0.3f;
+
+			values.add(new Color(Color.HSBtoRGB(i/(float)nColors, sat, br)));
+		}
+		return values;
+	}
+
+	// This is like rainbow, but we alternate sides of the color wheel
+	private static List<Color> generateContrastingColors(int nColors) {
+		List<Color> values = new ArrayList<Color>();
+		for (int i = 0; i < nColors; i++) {
+			float hue;
+			if (i%2 == 1)
+				hue = (float)i/(float)nColors + 0.5f;
+			else
+				hue = (float)i/(float)nColors;
+			Color rgbColor = new Color(Color.HSBtoRGB(hue, 1.0f, 1.0f));
+			values.add(rgbColor);
+		}
+		return values;
+	}
+
+	// TODO: add brewer colors
+}
@@ -62,7 +62,7 @@ import org.cytoscape.view.presentation.customgraphics.PaintedShape;
 
 import edu.ucsf.rbvi.enhancedGraphics.internal.charts.ViewUtils;
 
-public class ShadowLayer implements Cy2DGraphicLayer {
+public class ShadowLayer implements Cy2DGraphicLayer, Cloneable {
 	protected Rectangle2D bounds;
 	protected Shape pShape;
 	protected boolean rescale;
@@ -151,9 +151,15 @@ public class ShadowLayer implements Cy2DGraphicLayer {
 	}
 
 	public ShadowLayer transform(AffineTransform xform) {
-		bounds = xform.createTransformedShape(bounds).getBounds2D();
-		pShape = ViewUtils.createPossiblyTransformedShape(xform, pShape, rescale);
-		return this;
+		ShadowLayer layer;
+		try {
+			layer = (ShadowLayer)clone();
+		} catch (CloneNotSupportedException e) {
+			throw new IllegalStateException(e);
+		}
+		layer.bounds = xform.createTransformedShape(bounds).getBounds2D();
+		layer.pShape = ViewUtils.createPossiblyTransformedShape(xform, pShape, rescale);
+		return layer;
 	}
 
 	private BufferedImage changeImageWidth(BufferedImage image, int width) {
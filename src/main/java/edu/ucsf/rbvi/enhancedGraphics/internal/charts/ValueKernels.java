@@ -0,0 +1,118 @@
+package edu.ucsf.rbvi.enhancedGraphics.internal.charts;
+
+/**
+ * The loops that run over every value of a node when it is drawn, written
+ * against the arrays behind {@link ValueVector}.  Each is a single pass with
+ * no calls or bounds checks beyond the array access, and anything that only
+ * depends on the range (which case of the normalization applies) is decided
+ * once, before the loop, so that HotSpot can unroll the loops and vectorize
+ * the element-wise ones.  Missing values are NaN and pass through unchanged.
+ *
+ * The results are exactly those of the value-at-a-time code they replace,
+ * such as {@link ChartSpec#normalize(double, double, double)}: sums are added
+ * in order, so that slices don't move by a rounding error.
+ */
+final class ValueKernels {
+	private ValueKernels() {}
+
+	/**
+ 	 * Normalize values in place, as {@link ChartSpec#normalize(double, double, double)}
+ 	 * does one value at a time
+ 	 *
+ 	 * @param values the values
+ 	 * @param n the number of values
+ 	 * @param rangeMin the bottom of the range
+ 	 * @param rangeMax the top of the range
+ 	 */
+	static void normalize(double[] values, int n, double rangeMin, double rangeMax) {
+		if (rangeMin == 0.0 && rangeMax == 0.0) return;
+		double range = rangeMax-rangeMin;
+		if (rangeMin > 0.0 && rangeMax > 0.0) {
+			for (int i = 0; i < n; i++) {
+				double v = values[i];
+				if (v < rangeMin) v = rangeMin;
+				if (v > rangeMax) v = rangeMax;
+				values[i] = (v - rangeMin) / range;
+			}
+		} else if (rangeMin < 0.0 && rangeMax < 0.0) {
+			for (int i = 0; i < n; i++) {
+				double v = values[i];
+				if (v < rangeMin) v = rangeMin;
+				if (v > rangeMax) v = rangeMax;
+				values[i] = (v - rangeMax) / range;
+			}
+		} else {
+			// Zero-centered
+			boolean down = rangeMin < 0.0;
+			boolean up = rangeMax > 0.0;
+			for (int i = 0; i < n; i++) {
+				double v = values[i];
+				if (v != v) continue;
+				if (v < rangeMin) v = rangeMin;
+				if (v > rangeMax) v = rangeMax;
+				if (v < 0.0 && down)
+					values[i] = -(v / rangeMin);
+				else if (v > 0.0 && up)
+					values[i] = v / rangeMax;
+				else
+					values[i] = 0.0;
+			}
+		}
+	}
+
+	/**
+ 	 * Add up values
+ 	 *
+ 	 * @param values the values
+ 	 * @param n the number of values
+ 	 * @param positiveOnly true to leave out negative values
+ 	 * @return the sum of the values that aren't missing
+ 	 */
+	static double sum(double[] values, int n, boolean positiveOnly) {
+		double sum = 0.0;
+		if (positiveOnly) {
+			for (int i = 0; i < n; i++) {
+				double v = values[i];
+				if (v >= 0) sum += v;
+			}
+		} else {
+			for (int i = 0; i < n; i++) {
+				double v = values[i];
+				if (v == v) sum += v;
+			}
+		}
+		return sum;
+	}
+
+	/**
+ 	 * Convert values to degrees of arc, as shares of a total
+ 	 *
+ 	 * @param values the values
+ 	 * @param n the number of values
+ 	 * @param total the total, which is a full circle
+ 	 * @param degrees the array to put the degrees in
+ 	 */
+	static void toDegrees(double[] values, int n, double total, double[] degrees) {
+		for (int i = 0; i < n; i++)
+			degrees[i] = values[i]*360.0/total;
+	}
+
+	/**
+ 	 * Find the smallest and largest values, in one pass
+ 	 *
+ 	 * @param values the values
+ 	 * @param n the number of values
+ 	 * @param min the default minimum
+ 	 * @param max the default maximum
+ 	 * @return the smaller of min and the smallest value, and the larger of
+ 	 * max and the largest value
+ 	 */
+	static double[] minMax(double[] values, int n, double min, double max) {
+		for (int i = 0; i < n; i++) {
+			double v = values[i];
+			if (v < min) min = v;
+			if (v > max) max = v;
+		}
+		return new double[] {min, max};
+	}
+}
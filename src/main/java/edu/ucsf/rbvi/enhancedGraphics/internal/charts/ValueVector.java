@@ -0,0 +1,193 @@
+package edu.ucsf.rbvi.enhancedGraphics.internal.charts;
+
+import java.util.Arrays;
+
+/**
+ * A list of chart values backed by a <code>double[]</code>.  A missing value
+ * (an empty cell, a column that isn't numeric, an unparsable value) is NaN:
+ * there are no nulls, and nothing is boxed between fetching a node's values
+ * and creating its layers.
+ *
+ * Vectors that belong to a spec are read-only, since they are shared by every
+ * node drawn with it; {@link #set} throws on them.  Everything that changes
+ * values, like normalization or conversion to arcs, works on a vector created
+ * for the node.
+ */
+public final class ValueVector {
+	public static final ValueVector EMPTY = new ValueVector(new double[0], 0, true);
+
+	private double[] values;
+	private int size;
+	private final boolean readOnly;
+
+	/**
+ 	 * Create an empty vector
+ 	 *
+ 	 * @param capacity the number of values we expect to add
+ 	 */
+	public ValueVector(int capacity) {
+		this(new double[Math.max(capacity, 4)], 0, false);
+	}
+
+	private ValueVector(double[] values, int size, boolean readOnly) {
+		this.values = values;
+		this.size = size;
+		this.readOnly = readOnly;
+	}
+
+	/**
+ 	 * Create a vector that uses an array of values, without copying it
+ 	 *
+ 	 * @param values the values
+ 	 * @return the vector
+ 	 */
+	public static ValueVector wrap(double[] values) {
+		return new ValueVector(values, values.length, false);
+	}
+
+	/**
+ 	 * Create a read-only vector that uses an array of values, without copying it.
+ 	 * The caller must not change the array afterwards.
+ 	 *
+ 	 * @param values the values
+ 	 * @return the vector
+ 	 */
+	public static ValueVector readOnly(double[] values) {
+		return new ValueVector(values, values.length, true);
+	}
+
+	public int size() { return size; }
+
+	public boolean isEmpty() { return size == 0; }
+
+	public boolean isReadOnly() { return readOnly; }
+
+	public double get(int index) {
+		if (index >= size)
+			throw new IndexOutOfBoundsException("Index: "+index+", Size: "+size);
+		return values[index];
+	}
+
+	/**
+ 	 * Return true if a value is missing
+ 	 *
+ 	 * @param index the index of the value
+ 	 * @return true if the value is NaN
+ 	 */
+	public boolean isMissing(int index) {
+		return Double.isNaN(get(index));
+	}
+
+	public void set(int index, double value) {
+		if (readOnly)
+			throw new UnsupportedOperationException("Values belong to a spec and can't be changed");
+		if (index >= size)
+			throw new IndexOutOfBoundsException("Index: "+index+", Size: "+size);
+		values[index] = value;
+	}
+
+	public void add(double value) {
+		if (readOnly)
+			throw new UnsupportedOperationException("Values belong to a spec and can't be changed");
+		if (size == values.length)
+			values = Arrays.copyOf(values, size*2);
+		values[size++] = value;
+	}
+
+	/**
+ 	 * Add a value that may be missing
+ 	 *
+ 	 * @param value the value, or null if it is missing
+ 	 */
+	public void add(Number value) {
+		add(value == null ? Double.NaN : value.doubleValue());
+	}
+
+	/**
+ 	 * Return the sum of the values that aren't missing
+ 	 *
+ 	 * @return the sum
+ 	 */
+	public double sum() {
+		return ValueKernels.sum(values, size, false);
+	}
+
+	/**
+ 	 * Return the smallest value that isn't missing, or a default if it is larger
+ 	 *
+ 	 * @param start the default
+ 	 * @return the smaller of start and the smallest value
+ 	 */
+	public double min(double start) {
+		double min = start;
+		for (int i = 0; i < size; i++) {
+			if (values[i] < min) min = values[i];
+		}
+		return min;
+	}
+
+	/**
+ 	 * Return the largest value that isn't missing, or a default if it is smaller
+ 	 *
+ 	 * @param start the default
+ 	 * @return the larger of start and the largest value
+ 	 */
+	public double max(double start) {
+		double max = start;
+		for (int i = 0; i < size; i++) {
+			if (values[i] > max) max = values[i];
+		}
+		return max;
+	}
+
+	/**
+ 	 * Return the smallest and largest values that aren't missing, in one pass
+ 	 *
+ 	 * @param min the default minimum
+ 	 * @param max the default maximum
+ 	 * @return the smaller of min and the smallest value, and the larger of max
+ 	 * and the largest value
+ 	 */
+	public double[] minMax(double min, double max) {
+		return ValueKernels.minMax(values, size, min, max);
+	}
+
+	/**
+ 	 * Normalize the values in place to a range, as
+ 	 * {@link ChartSpec#normalize(double, double, double)} does one at a time
+ 	 *
+ 	 * @param rangeMin the bottom of the range
+ 	 * @param rangeMax the top of the range
+ 	 */
+	public void normalize(double rangeMin, double rangeMax) {
+		if (readOnly && size > 0)
+			throw new UnsupportedOperationException("Values belong to a spec and can't be changed");
+		ValueKernels.normalize(values, size, rangeMin, rangeMax);
+	}
+
+	// The array behind the vector, which may be longer than the vector, for
+	// the kernels
+	double[] array() { return values; }
+
+	/**
+ 	 * Return a modifiable copy of the values
+ 	 *
+ 	 * @return the copy
+ 	 */
+	public ValueVector copy() {
+		return new ValueVector(Arrays.copyOf(values, Math.max(size, 4)), size, false);
+	}
+
+	/**
+ 	 * Return the values as an array
+ 	 *
+ 	 * @return a new array
+ 	 */
+	public double[] toArray() {
+		return Arrays.copyOf(values, size);
+	}
+
+	public String toString() {
+		return Arrays.toString(toArray());
+	}
+}
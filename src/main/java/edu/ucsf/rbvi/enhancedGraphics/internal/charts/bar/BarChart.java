@@ -54,10 +54,13 @@ import java.awt.geom.Rectangle2D;
 import org.cytoscape.model.CyIdentifiable;
 import org.cytoscape.model.CyNetwork;
 import org.cytoscape.model.CyNode;
+import org.cytoscape.model.CyRow;
 import org.cytoscape.view.model.CyNetworkView;
 import org.cytoscape.view.model.View;
 
+import edu.ucsf.rbvi.enhancedGraphics.internal.EnhancedGraphicsManager;
 import edu.ucsf.rbvi.enhancedGraphics.internal.charts.AbstractChartCustomGraphics;
+import edu.ucsf.rbvi.enhancedGraphics.internal.charts.ValueVector;
 
 /**
  * The BarChart creates a list of custom graphics where each custom graphic represents
@@ -66,13 +69,7 @@ import edu.ucsf.rbvi.enhancedGraphics.internal.charts.AbstractChartCustomGraphic
  * the named Java colors, hex RGB values, or hex RGBA values.
  */
 public class BarChart extends AbstractChartCustomGraphics<BarLayer> {
-	private static final String COLORS = "colorlist";
-	private static final String SEPARATION = "separation";
-
-	private List<Color> colorList = null;
-	private String colorString = null;
-	private int separation = 0;
-	private boolean showAxes = false;
+	private final BarChartSpec spec;
 
 	// Parse the input string, which is always of the form:
 	// piechart:	[attributelist=value]
@@ -84,49 +81,52 @@ public class BarChart extends AbstractChartCustomGraphics<BarLayer> {
 	//            [showlabels=true]
 	//            [valuelist=value]
 	public BarChart(String input) {
-		Map<String, String> args = parseInput(input);
-		// This will populate the values, attributes, and labels lists
-		populateValues(args);
-
-		if (args.containsKey(COLORS)) {
-			colorString = args.get(COLORS);
-		}
-
-		if (args.containsKey(SEPARATION)) {
-			try {
-				separation = Integer.parseInt(args.get(SEPARATION));
-			} catch (NumberFormatException nfe) {
-				logger.warn("Value for "+SEPARATION+" is not an integer");
-			}
-		}
+		this.spec = new BarChartSpec(parseInput(input));
+	}
 
-		if (args.containsKey(SHOWYAXIS)) {
-			showAxes = getBooleanValue(args.get(SHOWYAXIS));
-		}
+	public BarChart(BarChartSpec spec, EnhancedGraphicsManager manager) {
+		super(manager);
+		this.spec = spec;
 	}
 
-	public String toSerializableString() { return this.getIdentifier().toString()+","+displayName; }
+	public BarChartSpec getSpec() { return spec; }
 
 	@Override 
-	public List<BarLayer> getLayers(CyNetworkView networkView, View<? extends CyIdentifiable> nodeView) { 
+	protected List<BarLayer> createLayers(CyNetworkView networkView, View<? extends CyIdentifiable> nodeView) { 
 		CyNetwork network = networkView.getModel();
 		if (!(nodeView.getModel() instanceof CyNode))
 			return null;
+		if (!spec.isValid())
+			return null;
 
-		layers = new ArrayList<>();
+		List<BarLayer> layers = new ArrayList<>();
 		CyNode node = (CyNode)nodeView.getModel();
 
+		List<String> attributes = spec.getAttributes();
+		CyRow row = network.getRow(node);
+		ValueVector values = spec.getValues(row);
+		List<String> labels = spec.getLabels(row);
+
 		// Create all of our pie slices. Each slice becomes a layer
 		if (attributes != null && attributes.size() > 0) {
 			// System.out.println("Getting data from attributes for node "+node);
-			values = getDataFromAttributes (network, node, attributes, labels);
+			values = getDataFromAttributes (network, node, attributes, spec);
 			// System.out.println("Data from attributes returns "+values.size()+" values");
+		} else if (spec.hasMatrix()) {
+			values = getDataFromMatrix(network, node, spec);
 		}
-		colorList = convertInputToColor(colorString, values);
 
 		// Protect against missing values in the input stream
-		// if (values == null || colorList == null) return layers;
-		
+		if (values == null) {
+			logger.error("barchart: no attribute nor values found");
+			return null;
+		}
+
+		List<Color> colorList = spec.getColors().getColors(values, spec.hasRange());
+		if (colorList == null) {
+			logger.error("barchart: no colors found");
+			return null;
+		}
 
 		if (labels != null && labels.size() > 0 &&
 		    (labels.size() != values.size() ||
@@ -143,13 +143,9 @@ public class BarChart extends AbstractChartCustomGraphics<BarLayer> {
 		// We put min and max at 0
 		// so that if we show Y axis, we will display the 0
 		// (except if the user changes the range)
-		double minValue = 0;
-		double maxValue = 0;
-		for (Double val: values) {
-			if (val == null) continue;
-			minValue = Math.min(minValue, val);
-			maxValue = Math.max(maxValue, val);
-		}
+		double[] extent = values.minMax(0.0, 0.0);
+		double minValue = extent[0];
+		double maxValue = extent[1];
 		double labelMin = minValue;
 
 //		if (normalized) {
@@ -158,19 +154,26 @@ public class BarChart extends AbstractChartCustomGraphics<BarLayer> {
 //		}
 
 		int nBars = values.size();
-		Font font = getFont();
+		int separation = spec.getSeparation();
+		boolean showAxes = spec.isShowAxes();
+		double[] range = getRange(network, spec);
+		double rangeMin = range[0];
+		double rangeMax = range[1];
+		boolean normalized = spec.isNormalized();
+		Font font = spec.getFont();
 
 		for (int bar = 0; bar < nBars; bar++) {
 			String label = null;
 			if (labels != null && labels.size() > 0)
 				label = labels.get(bar);
 //			if (values.get(bar) == null || values.get(bar) == 0.0) continue;
-			if (values.get(bar) == null) continue;
+			if (values.isMissing(bar)) continue;
 
 			// System.out.println("Creating bar #"+bar);
 			// Create the slice
 			BarLayer bl = new BarLayer(bar, nBars, separation, values.get(bar), minValue, maxValue, rangeMin, rangeMax, 
-			                           normalized, ybase, colorList.get(bar), showAxes, borderWidth, scale, borderColor);
+			                           normalized, spec.getYBase(), colorList.get(bar), showAxes, spec.getBorderWidth(),
+			                           spec.getScale(), spec.getBorderColor());
 			if (bl == null) continue;
 			layers.add(bl);
 			// System.out.println("BarLayer: "+bar+" bounds: "+bl.getShape().getBounds2D());
@@ -179,7 +182,8 @@ public class BarChart extends AbstractChartCustomGraphics<BarLayer> {
 				// System.out.println("Creating label for bar #"+bar);
 				// Now, create the label
 				BarLayer labelLayer = new BarLayer(bar, nBars, separation, minValue, maxValue, rangeMin, rangeMax, normalized,
-			                                     labelMin, ybase, label, font, labelColor, labelWidth, labelSpacing, showAxes, scale);
+			                                     labelMin, spec.getYBase(), label, font, spec.getLabelColor(),
+			                                     spec.getLabelWidth(), spec.getLabelSpacing(), showAxes, spec.getScale());
 				if (labelLayer != null)
 					labelList.add(labelLayer);
 			}
@@ -6,14 +6,31 @@ import org.cytoscape.view.presentation.customgraphics.CyCustomGraphics;
 import org.cytoscape.view.presentation.customgraphics.CyCustomGraphicsFactory;
 import org.cytoscape.view.presentation.customgraphics.CustomGraphicLayer;
 
-public class BarChartFactory implements CyCustomGraphicsFactory {
+import edu.ucsf.rbvi.enhancedGraphics.internal.EnhancedGraphicsManager;
+import edu.ucsf.rbvi.enhancedGraphics.internal.SpecCompiler;
+import edu.ucsf.rbvi.enhancedGraphics.internal.SpecInterner;
+import edu.ucsf.rbvi.enhancedGraphics.internal.parse.SerializedSpec;
+
+public class BarChartFactory implements CyCustomGraphicsFactory, SpecCompiler {
 	private static final Class<? extends CyCustomGraphics> TARGET_CLASS = BarChart.class;
 
-	public BarChartFactory() {
+	private final EnhancedGraphicsManager manager;
+	private final SpecInterner<BarChartSpec> interner;
+
+	public BarChartFactory(EnhancedGraphicsManager manager) {
+		this.manager = manager;
+		this.interner = manager.createInterner(getPrefix());
 	}
 
 	public CyCustomGraphics<BarLayer> getInstance(String input) {
-		return new BarChart(input);
+		BarChartSpec spec = interner.get(input);
+		if (spec == null)
+			spec = interner.intern(input, new BarChartSpec(manager.parseArguments(input)));
+		return new BarChart(spec, manager);
+	}
+
+	public BarChart compile(String input) {
+		return new BarChart(new BarChartSpec(manager.parseArguments(input)), manager);
 	}
 
 	public CyCustomGraphics<BarLayer> getInstance(URL input) { return null; }
@@ -22,7 +39,13 @@ public class BarChartFactory implements CyCustomGraphicsFactory {
 
 	public Class<? extends CyCustomGraphics> getSupportedClass() { return TARGET_CLASS; }
 
-	public CyCustomGraphics<BarLayer> parseSerializableString(String string) { return null; }
+	public CyCustomGraphics<BarLayer> parseSerializableString(String string) {
+		SerializedSpec serialized = SerializedSpec.parse(string);
+		if (serialized == null) return null;
+		BarChart chart = new BarChart(new BarChartSpec(serialized.getArguments()), manager);
+		serialized.restore(chart);
+		return chart;
+	}
 
 	public boolean supportsMime(String mimeType) { return false; }
 }
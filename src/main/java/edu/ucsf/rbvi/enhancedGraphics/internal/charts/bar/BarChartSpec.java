@@ -0,0 +1,51 @@
+package edu.ucsf.rbvi.enhancedGraphics.internal.charts.bar;
+
+import java.util.Map;
+
+import edu.ucsf.rbvi.enhancedGraphics.internal.charts.ChartSpec;
+import edu.ucsf.rbvi.enhancedGraphics.internal.charts.ColorSpec;
+
+import static edu.ucsf.rbvi.enhancedGraphics.internal.charts.AbstractChartCustomGraphics.SHOWYAXIS;
+
+/**
+ * The compiled arguments for a bar chart:
+ * barchart:	[attributelist=value]
+ *       			[colorlist=value]
+ *            [labellist=value]
+ *            [position=value]
+ *            [scale=0.90]
+ *            [separation=value]
+ *            [showlabels=true]
+ *            [showyaxis=false]
+ *            [valuelist=value]
+ */
+public class BarChartSpec extends ChartSpec {
+	private static final String COLORS = "colorlist";
+	private static final String SEPARATION = "separation";
+
+	private final ColorSpec colors;
+	private final int separation;
+	private final boolean showAxes;
+
+	public BarChartSpec(Map<String, String> args) {
+		super(args);
+
+		colors = ColorSpec.compile(args.get(COLORS));
+
+		int sep = 0;
+		if (args.containsKey(SEPARATION)) {
+			try {
+				sep = Integer.parseInt(args.get(SEPARATION));
+			} catch (NumberFormatException nfe) {
+				logger.warn("Value for "+SEPARATION+" is not an integer");
+			}
+		}
+		separation = sep;
+
+		showAxes = args.containsKey(SHOWYAXIS) ? getBooleanValue(args.get(SHOWYAXIS)) : false;
+	}
+
+	public ColorSpec getColors() { return colors; }
+	public int getSeparation() { return separation; }
+	public boolean isShowAxes() { return showAxes; }
+}
@@ -54,7 +54,7 @@ import java.util.List;
 import org.cytoscape.view.presentation.customgraphics.PaintedShape;
 import edu.ucsf.rbvi.enhancedGraphics.internal.charts.ViewUtils;
 
-public class BarLayer implements PaintedShape {
+public class BarLayer implements PaintedShape, Cloneable {
 	private boolean labelLayer = false;
 	private String label;
 	private Color color;
@@ -169,10 +169,16 @@ public class BarLayer implements PaintedShape {
 		return bounds;
 	}
 
+	// Return a transformed copy, since this layer may be drawn again
 	public BarLayer transform(AffineTransform xform) {
-		Shape newBounds = xform.createTransformedShape(bounds);
-		this.bounds = newBounds.getBounds2D();
-		return this;
+		BarLayer layer;
+		try {
+			layer = (BarLayer)clone();
+		} catch (CloneNotSupportedException e) {
+			throw new IllegalStateException(e);
+		}
+		layer.bounds = xform.createTransformedShape(bounds).getBounds2D();
+		return layer;
 	}
 
 	private Shape barShape() {
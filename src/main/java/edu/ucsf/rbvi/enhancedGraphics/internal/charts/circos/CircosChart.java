@@ -57,11 +57,15 @@ import org.cytoscape.model.CyColumn;
 import org.cytoscape.model.CyIdentifiable;
 import org.cytoscape.model.CyNetwork;
 import org.cytoscape.model.CyNode;
+import org.cytoscape.model.CyRow;
 import org.cytoscape.view.model.CyNetworkView;
 import org.cytoscape.view.model.View;
 import org.cytoscape.view.presentation.customgraphics.CyCustomGraphics;
 
+import edu.ucsf.rbvi.enhancedGraphics.internal.EnhancedGraphicsManager;
 import edu.ucsf.rbvi.enhancedGraphics.internal.charts.AbstractChartCustomGraphics;
+import edu.ucsf.rbvi.enhancedGraphics.internal.charts.ArcLayout;
+import edu.ucsf.rbvi.enhancedGraphics.internal.charts.ValueVector;
 import edu.ucsf.rbvi.enhancedGraphics.internal.charts.ViewUtils;
 import edu.ucsf.rbvi.enhancedGraphics.internal.charts.ViewUtils.Position;
 
@@ -72,36 +76,10 @@ import edu.ucsf.rbvi.enhancedGraphics.internal.charts.ViewUtils.Position;
  * the named Java colors, hex RGB values, or hex RGBA values.
  */
 public class CircosChart extends AbstractChartCustomGraphics<CircosLayer> {
-	private static final String COLORS = "colorlist";
-	// TODO
-	private static final String LABELCIRCLES = "labelcircles"; // Indicate whether to label the circles and where
-	private static final String CIRCLELABELS = "circlelabels"; // String list to provide actual labels
-	private static final String SORTSLICES = "sortslices";
-	private static final String MINIMUMSLICE = "minimumslice";
-	private static final String ARCSTART = "arcstart";
-	private static final String ARCDIRECTION = "arcdirection";
-	private static final String FIRSTARC = "firstarc";
-	private static final String FIRSTARCWIDTH = "firstarcwidth";
-	private static final String ARCWIDTH = "arcwidth";
-	private static final String STROKEWIDTH = "outlineWidth";
-	private static final String STROKECOLOR = "outlineColor";
-
-	//ML:
-	private List<List<Double>> valueList = null;
-	private List<Color> colors = null;
-	private List<String> circleLabels = null;
-	private boolean labelCircles = false;
-	private Position labelOffset = null;
-	private double arcStart = 0.0;
-	private boolean isClockwise = false;
-	private boolean sortSlices = true;
-	private double minimumSlice = 2.0;
-	private double firstArc = 0.2; // 20% out for first inner arc
-	private double arcWidth = 0.1; // 10% of node width for arcs
-	private double firstArcWidth = 0.1; // 10% of node width for arcs
-	private double outlineWidth = 0.1; // 
-
-	private String colorString = null;
+	private final CircosChartSpec spec;
+	// The slices and colors of each circle, if they are the same for every node
+	private final List<ArcLayout> ringLayouts;
+	private final List<List<Color>> ringColors;
 
 	// Parse the input string, which is always of the form:
 	// piechart:	[arcstart=0.0]
@@ -119,228 +97,112 @@ public class CircosChart extends AbstractChartCustomGraphics<CircosLayer> {
 	//            [sortslices=true]
 	//            [valuelist=value]
 	public CircosChart(String input) {
-		Map<String, String> args = parseInput(input);
-		//ML: We want to populate the VALUES ourself
-		String strValues=null;
-		if (args.containsKey(VALUES)) {
-			strValues = args.get(VALUES); // We save it
-			args.remove(VALUES); // And remove it from the Map
-		}
-		// Then we populate: (end of ML)
-		
-		// This will populate the values, attributes, and labels lists
-		populateValues(args);
-		
-		if(!args.containsKey(LABELS)) {
-			// By default, if no labels are given, we use the attribute
-			// Here with circos, labels are for slices not circles
-			// So no labels means we don't label
-			labels = null;
-		}
-		
-		//ML: Now we can infer values
-		//If values is surrounded by [ ] then it is a list
-		if(strValues != null && strValues.startsWith("[") && strValues.endsWith("]")) {
-			valueList = new ArrayList<>();
-			
-			strValues = strValues.substring(1, strValues.length()-1); // We get rid of the first [ and last ]
-			for(String s : strValues.split("\\],\\[")) {
-				values = convertInputToDouble(s);
-				if(values == null) {
-					logger.error("Cannot parse "+VALUES+" from input '"+s+"' of the input list '" + strValues +"'");
-					return;
-				}
-				if (rangeMax != 0.0 || rangeMin != 0.0) {
-					values = normalize(values, rangeMin, rangeMax);
-					normalized = true;
-				}
-				valueList.add(convertData(values));
-			}
-		} else { // if not it is as before:
-			values = null;
-			if (strValues != null) {
-				// Get our values.  convertData returns an array of values in degrees of arc
-				values = convertInputToDouble(strValues);
-				if (values == null) {
-					logger.error("Cannot parse "+VALUES+" from input '"+strValues+"'");
-					return;
-				}
-				if (rangeMax != 0.0 || rangeMin != 0.0) {
-					values = normalize(values, rangeMin, rangeMax);
-					normalized = true;
-				}
-			}
-		}
-		//(end of ML)
-
-		//ML: We take care of the COLORS later:
-		if (args.containsKey(COLORS)) {
-//			if (attributes == null) 
-//				colors = convertInputToColor(args.get(COLORS), values);
-//			else
-				colorString = args.get(COLORS);
-		}
-		//(end of ML)
-
-		// System.out.println("colorString = "+colorString);
-
-		if (args.containsKey(SORTSLICES))
-			sortSlices = getBooleanValue(args.get(SORTSLICES));
-
-		// Get our angular offset
-		if (args.containsKey(ARCSTART)) {
-			arcStart = getDoubleValue(args.get(ARCSTART));
-		}
-		
-		if(args.containsKey(ARCDIRECTION)) {
-			String direction = args.get(ARCDIRECTION).trim().toLowerCase();
-			
-			// By default it is counterclockwise, so we just look for some "clockwise" keywords
-			// All other values will be considered counterclockwise
-			isClockwise = direction.equals("clockwise") || direction.equals("cw") || direction.equals("clock");
-		}
-
-		if (args.containsKey(FIRSTARC)) {
-			firstArc = getDoubleValue(args.get(FIRSTARC));
-		}
-
-		if (args.containsKey(ARCWIDTH)) {
-			arcWidth = getDoubleValue(args.get(ARCWIDTH));
-		}
-
-		if (args.containsKey(FIRSTARCWIDTH)) {
-			firstArcWidth = getDoubleValue(args.get(FIRSTARCWIDTH));
-		} else {
-			firstArcWidth = arcWidth;
-		}
-
-		if (args.containsKey(LABELCIRCLES)) {
-			labelOffset = Position.getPosition(args.get(LABELCIRCLES));
-			if (labelOffset != null) {
-				labelCircles = true;
-			} else {
-				labelCircles = getBooleanValue(args.get(LABELCIRCLES));
-			}
-		}
-
-		if (args.containsKey(CIRCLELABELS))
-			circleLabels = getStringList(args.get(CIRCLELABELS));
-		
-//		// We can only have one type of labels (slices or circles)
-//		if(labelCircles) {
-//			// So if we label the circles, we don't label the slices
-//			labels = null;
-//		}
-
-		if (args.containsKey(STROKEWIDTH))
-			outlineWidth = getDoubleValue(args.get(STROKEWIDTH));
-		else if (args.containsKey(BORDERWIDTH))
-			outlineWidth = getDoubleValue(args.get(BORDERWIDTH));
-		
-		if (args.containsKey(STROKECOLOR))
-			borderColor = getColorValue(args.get(STROKECOLOR));
+		this.spec = new CircosChartSpec(parseInput(input));
+		List<ArcLayout> layouts = new ArrayList<ArcLayout>();
+		List<List<Color>> colors = new ArrayList<List<Color>>();
+		boolean isStatic = layoutStaticRings(layouts, colors);
+		this.ringLayouts = isStatic ? Collections.unmodifiableList(layouts) : null;
+		this.ringColors = isStatic ? Collections.unmodifiableList(colors) : null;
 	}
 
-	public String toSerializableString() { return this.getIdentifier().toString()+","+displayName; }
-	
-	//ML:
-	private List<Color> convertInputToColor(String colorString, List<Double> values, int index) {
-		if(colorString == null || !colorString.startsWith("[") || !colorString.endsWith("]")) {
-			return convertInputToColor(colorString, values);
-		}
-		
-		colorString=colorString.substring(1, colorString.length()-1);
-		
-		String colorsplit[] = colorString.split("\\],\\[");
-		if(index >= colorsplit.length) {
-			return convertInputToColor(colorString, values);
-		}
-		
-		String strcolor = colorsplit[index];
-		return convertInputToColor(strcolor, values);
-		
+	public CircosChart(CircosChartSpec spec, EnhancedGraphicsManager manager) {
+		super(manager);
+		this.spec = spec;
+		List<ArcLayout> layouts = new ArrayList<ArcLayout>();
+		List<List<Color>> colors = new ArrayList<List<Color>>();
+		boolean isStatic = layoutStaticRings(layouts, colors);
+		this.ringLayouts = isStatic ? Collections.unmodifiableList(layouts) : null;
+		this.ringColors = isStatic ? Collections.unmodifiableList(colors) : null;
 	}
 
-	public List<CircosLayer> getLayers(CyNetworkView networkView, View<? extends CyIdentifiable> nodeView) { 
+	public CircosChartSpec getSpec() { return spec; }
+
+	protected List<CircosLayer> createLayers(CyNetworkView networkView, View<? extends CyIdentifiable> nodeView) { 
 		CyNetwork network = networkView.getModel();
 		if (!(nodeView.getModel() instanceof CyNode))
 				return null;
-		layers = new ArrayList<>();
+		if (!spec.isValid())
+			return null;
+		List<CircosLayer> layers = new ArrayList<>();
 		CyNode node = (CyNode)nodeView.getModel();
 
-		//ML:
-//		List<List<Double>> valueList = null;
-		List<List<Color>> colorList = null;
-		List<String> cLabels = circleLabels;
+		CyRow row = network.getRow(node);
+		List<String> attributes = spec.getAttributes();
+		List<String> labels = spec.getLabels(row);
+		List<ValueVector> ringValues = spec.getRingValues(row);
+		boolean scaled = spec.hasRange();
+
+		// The slices and colors for each circle.  values and colors
+		// are for the last circle we set up.
+		List<ArcLayout> layoutList = new ArrayList<ArcLayout>();
+		List<List<Color>> colorList = new ArrayList<List<Color>>();
+		ValueVector values = null;
+		List<Color> colors = null;
+		List<String> cLabels = spec.getCircleLabels();
 		int nCircles = 0;
 
-		Font font = getFont();
+		Font font = spec.getFont();
 
 		// Create all of our slices. Each slice becomes a layer
-		if (attributes != null && attributes.size() > 0) {
-			if (values == null || values.size() == 0) {
+		if (ringLayouts != null) {
+			layoutList = ringLayouts;
+			colorList = ringColors;
+			if (layoutList.size() > 0) {
+				values = layoutList.get(layoutList.size()-1).getArcs();
+				colors = colorList.get(colorList.size()-1);
+			}
+		} else if (attributes != null && attributes.size() > 0) {
+			values = spec.getValues(row);
+			if (values == null && ringValues == null) {
 				// System.out.println("No values");
 				// OK, the colors are constant, the slice width changes
-				valueList = new ArrayList<List<Double>>();
-				//ML:
-				colorList = new ArrayList<List<Color>>();
 				int index=0;
 				for (String attr: attributes) {
-					values = getDataFromAttributes (network, node, Collections.singletonList(attr), labels);
-					values = convertData(values);
-					valueList.add(values);
-					//ML:
-					colorList.add(convertInputToColor(colorString, values, index++));
+					values = getDataFromAttributes (network, node, Collections.singletonList(attr), spec);
+					ArcLayout layout = layoutRing(values, index);
+					values = layout.getArcs();
+					colors = spec.getColors(index++).getColors(values, scaled);
+					if (colors == null) {
+						return null;
+					}
+					layoutList.add(layout);
+					colorList.add(colors);
 				}
-				//ML
-//				colors = convertInputToColor(colorString, values);  // We only do this once
-				nCircles = valueList.size();
 			} else {
 				// System.out.println("Got values");
 				// If we already have values, we must want to use the attributes to map our colors
-				colorList = new ArrayList<List<Color>>();
-				//ML:
+				if (ringValues != null && ringValues.size() < attributes.size()) {
+					logger.error("circoschart: number of value lists (" + ringValues.size()
+					             + ") doesn't match the number of attributes ("+attributes.size()+")");
+					return null;
+				}
+				ValueVector nodeValues = values;
 				int index=0;
 				for (String attr: attributes) {
-					List<Double>attrValues = 
-						getDataFromAttributes (network, node, Collections.singletonList(attr), labels);
-					// System.out.println("Found "+attrValues.size()+" values in '"+attr+"'");
-					// System.out.println("colorString = "+colorString);
-					//ML:
-//					colors = convertInputToColor(colorString, attrValues);
-					colors = convertInputToColor(colorString, attrValues, index++);
-					// System.out.println("convertInputToColor returns: "+colors);
+					ValueVector attrValues = 
+						getDataFromAttributes (network, node, Collections.singletonList(attr), spec);
+					colors = spec.getColors(index).getColors(attrValues, scaled);
 					if (colors == null) {
 						return null;
 					}
-					// System.out.println("Colors for "+attr+"="+colors);
+					ArcLayout layout = layoutRing(ringValues != null ? ringValues.get(index) : nodeValues, index);
+					values = layout.getArcs();
+					layoutList.add(layout);
 					colorList.add(colors);
+					index++;
 				}
-				values = convertData(values);
-				nCircles = colorList.size();
 			}
 		} else {
 			//ML: If there is no attribute, we look at values
-			if (valueList != null) {
-				colorList = new ArrayList<>();
-				for(int i=0; i<valueList.size(); ++i) {
-					values = convertData(valueList.get(i));
-					valueList.set(i, values);
-					colors = convertInputToColor(colorString, values, i);
-					if (colors == null) {
-						return null;
-					}
-					colorList.add(colors);
-				}
-				nCircles = valueList.size();
-			} else if(values != null) {
-				// There is only 1 circle
-				nCircles = 1;
-				values = convertData(values);
-				colors = convertInputToColor(colorString, values, 0);
+			if (!layoutRings(ringValues, spec.getValues(row), layoutList, colorList)) {
+				return null;
+			}
+			if (layoutList.size() > 0) {
+				values = layoutList.get(layoutList.size()-1).getArcs();
+				colors = colorList.get(colorList.size()-1);
 			}
-			//(end of ML)
 		}
+		nCircles = layoutList.size();
 
 		// System.out.println("nCircles = "+nCircles);
 
@@ -359,7 +221,7 @@ public class CircosChart extends AbstractChartCustomGraphics<CircosLayer> {
 			}
 			if (cLabels.size() != nCircles) {
 				// System.out.println("Wrong circle label size");
-				logger.error("circoschart: number of circle labels (" + circleLabels.size()
+				logger.error("circoschart: number of circle labels (" + spec.getCircleLabels().size()
 				             + "), doesn't match the number of circles ("+nCircles+")");
 				return null;
 			} else {
@@ -381,64 +243,42 @@ public class CircosChart extends AbstractChartCustomGraphics<CircosLayer> {
 
 		List<CircosLayer> labelList = new ArrayList<CircosLayer>();
 
-		double rad = firstArc;
-		double maxRadius = firstArc + firstArcWidth + arcWidth*(nCircles-1);
+		boolean isClockwise = spec.isClockwise();
+		double arcStart = spec.getArcStart();
+		double arcWidth = spec.getArcWidth();
+		double firstArcWidth = spec.getFirstArcWidth();
+		double rad = spec.getFirstArc();
+		double maxRadius = rad + firstArcWidth + arcWidth*(nCircles-1);
 		for (int circle = 0; circle < nCircles; circle++) {
-//			String circleLabel = attributes.get(circle);
-//
-//			if (cLabels != null)
-//				circleLabel = cLabels.get(circle);
-
-			if (valueList != null)
-				values = valueList.get(circle);
+			ArcLayout layout = layoutList.get(circle);
+			colors = colorList.get(circle);
 
-			if (colorList != null)
-				colors = colorList.get(circle);
-
-			int nSlices = values.size();
-			double arc = arcStart;
+			int nSlices = layout.size();
 			double circleWidth = arcWidth;
 			if (circle == 0) 
 				circleWidth = firstArcWidth;
 
 			for (int slice = 0; slice < nSlices; slice++) {
+				int index = layout.getIndex(slice);
 				String label = null;
 				if (labels != null && labels.size() > 0)
-					label = labels.get(slice);
-				if (values.get(slice) <= 0.0) {
-					logger.warn("The slice "+slice+" of circle "+circle+" has a negative value: "+values.get(slice)+". This slice is ignored.");
-					continue;
-				}
+					label = labels.get(index);
 
-				// System.out.println("Slice: "+slice+", value: "+values.get(slice));
-				// System.out.println("Slice: "+slice+", color: "+colors.get(slice));
-				// System.out.println("Value: "+values.get(slice)+" color: "+colors.get(slice));
-	
 				// Create the slice
-				CircosLayer pl = new CircosLayer(rad, circleWidth, arc, values.get(slice), isClockwise, colors.get(slice), outlineWidth, borderColor);
-				if (pl == null) continue;
+				CircosLayer pl = new CircosLayer(rad, circleWidth, layout.getStart(slice), layout.getExtent(slice), isClockwise, 
+				                                 colors.get(index), spec.getOutlineWidth(), spec.getOutlineColor());
 				layers.add(pl);
 	
 				// Only create the labels for the last circle
 				if (label != null && circle == (nCircles-1)) {
 					// Now, create the label
-					CircosLayer labelLayer = new CircosLayer(rad, circleWidth, arc, values.get(slice), isClockwise, label, font, labelColor, labelWidth, labelSpacing);
-					if (labelLayer != null)
-						labelList.add(labelLayer);
-				}
-				if(isClockwise) {
-					arc -= values.get(slice).doubleValue();
-				} else {
-					arc += values.get(slice).doubleValue();
+					CircosLayer labelLayer = new CircosLayer(rad, circleWidth, layout.getStart(slice), layout.getExtent(slice), 
+					                                         isClockwise, label, font, 
+					                                         spec.getLabelColor(), spec.getLabelWidth(), spec.getLabelSpacing());
+					labelList.add(labelLayer);
 				}
 			}
 
-//			if (labelCircles && labelOffset == null) {
-//				CircosLayer labelLayer = new CircosLayer(rad, circleWidth, arcStart, isClockwise, circleLabel, font, labelColor, labelWidth, labelSpacing);
-//				if (labelLayer != null)
-//					labelList.add(labelLayer);
-//			}
-
 			rad += circleWidth;
 		}
 
@@ -447,6 +287,7 @@ public class CircosChart extends AbstractChartCustomGraphics<CircosLayer> {
 
 		// reset our starting radius
 		// System.out.println("Drawing circles");
+		Position circleLabelPosition = spec.getCircleLabelPosition();
 		rad = maxRadius;
 		for (int circle = nCircles-1; circle >= 0; circle--) {
 			String circleLabel = "";
@@ -462,9 +303,10 @@ public class CircosChart extends AbstractChartCustomGraphics<CircosLayer> {
 			if (circle == 0) 
 				circleWidth = firstArcWidth;
 
-			if (labelCircles && labelOffset != null) {
-				CircosLayer labelLayer = new CircosLayer(rad, circleWidth, arcStart, isClockwise, circleLabel, font, labelColor, labelWidth, labelSpacing, 
-				                                         labelOffset, maxRadius, circle, nCircles);
+			if (spec.isLabelCircles() && circleLabelPosition != null) {
+				CircosLayer labelLayer = new CircosLayer(rad, circleWidth, arcStart, isClockwise, circleLabel, font, 
+				                                         spec.getLabelColor(), spec.getLabelWidth(), spec.getLabelSpacing(), 
+				                                         circleLabelPosition, maxRadius, circle, nCircles);
 				if (labelLayer != null)
 					labelList.add(labelLayer);
 			}
@@ -480,22 +322,47 @@ public class CircosChart extends AbstractChartCustomGraphics<CircosLayer> {
 		return layers; 
 	}
 
-	private List<Double> convertData(List<Double> values) {
-		double totalSize = 0.0;
-		int nValues = values.size();
-		for (Double d: values) {
-			if(d >= 0) { // We do not draw negative slices
-				totalSize += d.doubleValue();
+	// If the slices only come from the valuelist, they are the same for every
+	// node and are laid out once.  This returns false if they aren't.
+	private boolean layoutStaticRings(List<ArcLayout> layouts, List<List<Color>> colors) {
+		List<String> attributes = spec.getAttributes();
+		if (!spec.isValid() || (attributes != null && attributes.size() > 0) || spec.isValueTemplate())
+			return false;
+		return layoutRings(spec.getRingValues(), spec.getValues(), layouts, colors);
+	}
+
+	// Lay out the slices of the circles given by the valuelist, with the colors
+	// of each circle.  This returns false if a circle has no colors.
+	private boolean layoutRings(List<ValueVector> rings, ValueVector circleValues,
+	                            List<ArcLayout> layouts, List<List<Color>> colors) {
+		if (rings == null && circleValues != null) {
+			// There is only 1 circle
+			rings = Collections.singletonList(circleValues);
+		}
+		if (rings == null)
+			return true;
+		boolean scaled = spec.hasRange();
+		for (int i = 0; i < rings.size(); i++) {
+			ArcLayout layout = layoutRing(rings.get(i), i);
+			List<Color> ringColors = spec.getColors(i).getColors(layout.getArcs(), scaled);
+			if (ringColors == null) {
+				return false;
 			}
+			layouts.add(layout);
+			colors.add(ringColors);
 		}
+		return true;
+	}
 
-		// Now we have an array of doubles, but we need to convert them
-		// to degree offsets
-		for (int index = 0; index < nValues; index++) {
-			double v = values.get(index).doubleValue();
-			values.set(index, v*360.0/totalSize);
+	// Lay out the slices of a circle.  We do not draw negative (or missing) slices.
+	private ArcLayout layoutRing(ValueVector values, int circle) {
+		ArcLayout layout = new ArcLayout(values, spec.getArcStart(), spec.isClockwise(), true);
+		ValueVector arcs = layout.getArcs();
+		for (int slice = 0; slice < arcs.size(); slice++) {
+			if (arcs.get(slice) <= 0.0)
+				logger.warn("The slice "+slice+" of circle "+circle+" has a negative value: "+arcs.get(slice)+". This slice is ignored.");
 		}
-		return values;
+		return layout;
 	}
 
 }
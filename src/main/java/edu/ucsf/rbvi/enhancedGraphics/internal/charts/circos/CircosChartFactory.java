@@ -6,14 +6,31 @@ import org.cytoscape.view.presentation.customgraphics.CyCustomGraphics;
 import org.cytoscape.view.presentation.customgraphics.CyCustomGraphicsFactory;
 import org.cytoscape.view.presentation.customgraphics.CustomGraphicLayer;
 
-public class CircosChartFactory implements CyCustomGraphicsFactory {
+import edu.ucsf.rbvi.enhancedGraphics.internal.EnhancedGraphicsManager;
+import edu.ucsf.rbvi.enhancedGraphics.internal.SpecCompiler;
+import edu.ucsf.rbvi.enhancedGraphics.internal.SpecInterner;
+import edu.ucsf.rbvi.enhancedGraphics.internal.parse.SerializedSpec;
+
+public class CircosChartFactory implements CyCustomGraphicsFactory, SpecCompiler {
 	private static final Class<? extends CyCustomGraphics> TARGET_CLASS = CircosChart.class;
 
-	public CircosChartFactory() {
+	private final EnhancedGraphicsManager manager;
+	private final SpecInterner<CircosChartSpec> interner;
+
+	public CircosChartFactory(EnhancedGraphicsManager manager) {
+		this.manager = manager;
+		this.interner = manager.createInterner(getPrefix());
 	}
 
 	public CyCustomGraphics<CircosLayer> getInstance(String input) {
-		return new CircosChart(input);
+		CircosChartSpec spec = interner.get(input);
+		if (spec == null)
+			spec = interner.intern(input, new CircosChartSpec(manager.parseArguments(input)));
+		return new CircosChart(spec, manager);
+	}
+
+	public CircosChart compile(String input) {
+		return new CircosChart(new CircosChartSpec(manager.parseArguments(input)), manager);
 	}
 
 	public CyCustomGraphics<CircosLayer> getInstance(URL input) { return null; }
@@ -22,7 +39,13 @@ public class CircosChartFactory implements CyCustomGraphicsFactory {
 
 	public Class<? extends CyCustomGraphics> getSupportedClass() { return TARGET_CLASS; }
 
-	public CyCustomGraphics<CircosLayer> parseSerializableString(String string) { return null; }
+	public CyCustomGraphics<CircosLayer> parseSerializableString(String string) {
+		SerializedSpec serialized = SerializedSpec.parse(string);
+		if (serialized == null) return null;
+		CircosChart chart = new CircosChart(new CircosChartSpec(serialized.getArguments()), manager);
+		serialized.restore(chart);
+		return chart;
+	}
 
 	public boolean supportsMime(String mimeType) { return false; }
 }
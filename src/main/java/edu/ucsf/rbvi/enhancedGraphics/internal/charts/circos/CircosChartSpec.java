@@ -0,0 +1,264 @@
+package edu.ucsf.rbvi.enhancedGraphics.internal.charts.circos;
+
+import java.awt.Color;
+
+import java.text.ParseException;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.cytoscape.model.CyRow;
+
+import edu.ucsf.rbvi.enhancedGraphics.internal.charts.ChartSpec;
+import edu.ucsf.rbvi.enhancedGraphics.internal.charts.ColorSpec;
+import edu.ucsf.rbvi.enhancedGraphics.internal.charts.ValueVector;
+import edu.ucsf.rbvi.enhancedGraphics.internal.charts.ViewUtils.Position;
+import edu.ucsf.rbvi.enhancedGraphics.internal.parse.NumberListParser;
+import edu.ucsf.rbvi.enhancedGraphics.internal.parse.SpecTemplate;
+import edu.ucsf.rbvi.enhancedGraphics.internal.parse.ValueExpression;
+
+import static edu.ucsf.rbvi.enhancedGraphics.internal.charts.AbstractChartCustomGraphics.*;
+
+/**
+ * The compiled arguments for a circos chart:
+ * circoschart:	[arcstart=0.0]
+ *       				[arcdirection=clockwise]
+ *       				[arcwidth=0.1]
+ *       				[attributelist=value]
+ *            	[circlelabels=value]
+ *            	[colorlist=value]
+ *            	[firstarc=0.2]
+ *            	[firstarcwidth=0.1]
+ *            	[labelcircles=value]
+ *            	[labellist=value]
+ *            	[outlineColor=value]
+ *            	[outlineWidth=value]
+ *            	[position=value]
+ *            	[scale=0.90]
+ *            	[sortslices=true]
+ *            	[valuelist=value]
+ *
+ * Both the valuelist and the colorlist may be given as a list per circle:
+ * <code>[1,2,3],[4,5,6]</code>.
+ */
+public class CircosChartSpec extends ChartSpec {
+	private static final String COLORS = "colorlist";
+	private static final String LABELCIRCLES = "labelcircles"; // Indicate whether to label the circles and where
+	private static final String CIRCLELABELS = "circlelabels"; // String list to provide actual labels
+	private static final String SORTSLICES = "sortslices";
+	private static final String ARCSTART = "arcstart";
+	private static final String ARCDIRECTION = "arcdirection";
+	private static final String FIRSTARC = "firstarc";
+	private static final String FIRSTARCWIDTH = "firstarcwidth";
+	private static final String ARCWIDTH = "arcwidth";
+	private static final String STROKEWIDTH = "outlineWidth";
+	private static final String STROKECOLOR = "outlineColor";
+
+	private final SpecTemplate valueTemplate;
+	private final ValueExpression valueExpression;
+	private final ValueVector circleValues;
+	private final List<ValueVector> ringValues;
+	private final ColorSpec colors;
+	private final List<ColorSpec> ringColors;
+	private final List<String> circleLabels;
+	private final boolean labelCircles;
+	private final Position circleLabelPosition;
+	private final double arcStart;
+	private final boolean isClockwise;
+	private final boolean sortSlices;
+	private final double firstArc;
+	private final double arcWidth;
+	private final double firstArcWidth;
+	private final double outlineWidth;
+	private final Color outlineColor;
+
+	public CircosChartSpec(Map<String, String> args) {
+		// We parse the values ourselves, and here with circos, labels are for
+		// slices not circles, so no labels means we don't label
+		super(args, false, false);
+
+		//If values is surrounded by [ ] then it is a list
+		String strValues = args.get(VALUES);
+		SpecTemplate template = SpecTemplate.compile(strValues);
+		ValueExpression expression = null;
+		ValueVector vList = null;
+		List<ValueVector> rings = null;
+		if (template == null && strValues != null) {
+			try {
+				if (NumberListParser.isNested(strValues))
+					rings = parseRings(strValues);
+				else
+					vList = compileValues(NumberListParser.parse(strValues));
+			} catch (ParseException e) {
+				// A single circle may also be given as expressions
+				expression = NumberListParser.isNested(strValues) ? null : compileExpression(strValues);
+				if (expression == null)
+					setError("Cannot parse "+VALUES+" from input '"+strValues+"': "+e.getMessage());
+			}
+		} else if (template != null && !template.isColumnList() && !NumberListParser.isNested(strValues)) {
+			expression = compileExpression(strValues);
+			if (expression != null) template = null;
+		}
+		valueTemplate = template;
+		valueExpression = expression;
+		circleValues = vList;
+		ringValues = rings;
+
+		// The colors may also be given per circle
+		String colorString = args.get(COLORS);
+		List<ColorSpec> rColors = null;
+		if (colorString != null && colorString.startsWith("[") && colorString.endsWith("]")) {
+			colorString = colorString.substring(1, colorString.length()-1);
+			rColors = new ArrayList<ColorSpec>();
+			for (String c: colorString.split("\\],\\["))
+				rColors.add(ColorSpec.compile(c));
+			rColors = Collections.unmodifiableList(rColors);
+		}
+		colors = ColorSpec.compile(colorString);
+		ringColors = rColors;
+
+		sortSlices = args.containsKey(SORTSLICES) ? getBooleanValue(args.get(SORTSLICES)) : true;
+
+		// Get our angular offset
+		arcStart = args.containsKey(ARCSTART) ? getDoubleValue(args.get(ARCSTART)) : 0.0;
+
+		boolean clockwise = false;
+		if(args.containsKey(ARCDIRECTION)) {
+			String direction = args.get(ARCDIRECTION).trim().toLowerCase();
+
+			// By default it is counterclockwise, so we just look for some "clockwise" keywords
+			// All other values will be considered counterclockwise
+			clockwise = direction.equals("clockwise") || direction.equals("cw") || direction.equals("clock");
+		}
+		isClockwise = clockwise;
+
+		firstArc = args.containsKey(FIRSTARC) ? getDoubleValue(args.get(FIRSTARC)) : 0.2; // 20% out for first inner arc
+		arcWidth = args.containsKey(ARCWIDTH) ? getDoubleValue(args.get(ARCWIDTH)) : 0.1; // 10% of node width for arcs
+		firstArcWidth = args.containsKey(FIRSTARCWIDTH) ? getDoubleValue(args.get(FIRSTARCWIDTH)) : arcWidth;
+
+		Position labelPosition = null;
+		boolean label = false;
+		if (args.containsKey(LABELCIRCLES)) {
+			labelPosition = Position.getPosition(args.get(LABELCIRCLES));
+			if (labelPosition != null) {
+				label = true;
+			} else {
+				label = getBooleanValue(args.get(LABELCIRCLES));
+			}
+		}
+		circleLabelPosition = labelPosition;
+		labelCircles = label;
+
+		circleLabels = args.containsKey(CIRCLELABELS) ? 
+		                   Collections.unmodifiableList(getStringList(args.get(CIRCLELABELS))) : null;
+
+		if (args.containsKey(STROKEWIDTH))
+			outlineWidth = getDoubleValue(args.get(STROKEWIDTH));
+		else if (args.containsKey(BORDERWIDTH))
+			outlineWidth = getDoubleValue(args.get(BORDERWIDTH));
+		else
+			outlineWidth = 0.1;
+
+		if (args.containsKey(STROKECOLOR))
+			outlineColor = getColorValue(args.get(STROKECOLOR), getBorderColor());
+		else
+			outlineColor = getBorderColor();
+	}
+
+	/**
+ 	 * Return the values for a single circle.  These are the normalized values,
+ 	 * not the arcs.
+ 	 *
+ 	 * @return the values, or null if there are no values or the values are given per circle
+ 	 */
+	@Override
+	public ValueVector getValues() { return circleValues; }
+
+	@Override
+	public ValueVector getValues(CyRow row) {
+		if (valueExpression != null) return compileValues(valueExpression.evaluate(row));
+		if (valueTemplate == null) return circleValues;
+		String resolved = valueTemplate.resolve(row, "NaN");
+		if (NumberListParser.isNested(resolved)) return null;
+		try {
+			return compileValues(NumberListParser.parse(resolved));
+		} catch (ParseException e) {
+			logger.warn("Cannot parse "+VALUES+" '"+resolved+"' from '"+valueTemplate+"': "+e.getMessage());
+			return null;
+		}
+	}
+
+	@Override
+	public boolean isValueTemplate() { return valueTemplate != null || valueExpression != null; }
+
+	/**
+ 	 * Return the values for each circle, if the valuelist was given as <code>[..],[..]</code>.
+ 	 *
+ 	 * @return the normalized values for each circle, or null
+ 	 */
+	public List<ValueVector> getRingValues() { return ringValues; }
+
+	/**
+ 	 * Return the values for each circle for a node.  This is only different from
+ 	 * {@link #getRingValues()} if the valuelist refers to columns.
+ 	 *
+ 	 * @param row the node's row
+ 	 * @return the normalized values for each circle, or null
+ 	 */
+	public List<ValueVector> getRingValues(CyRow row) {
+		if (valueTemplate == null) return ringValues;
+		String resolved = valueTemplate.resolve(row, "NaN");
+		if (!NumberListParser.isNested(resolved)) return null;
+		try {
+			return parseRings(resolved);
+		} catch (ParseException e) {
+			logger.warn("Cannot parse "+VALUES+" '"+resolved+"' from '"+valueTemplate+"': "+e.getMessage());
+			return null;
+		}
+	}
+
+	private List<ValueVector> parseRings(String input) throws ParseException {
+		List<ValueVector> rings = new ArrayList<ValueVector>();
+		for (double[] ring: NumberListParser.parseNested(input))
+			rings.add(compileValues(ring));
+		return Collections.unmodifiableList(rings);
+	}
+
+	/**
+ 	 * Return the colors for a circle.  If the colorlist wasn't given per circle,
+ 	 * or there aren't enough circle colors, the full colorlist is used.
+ 	 *
+ 	 * @param circle the circle index
+ 	 * @return the color specification
+ 	 */
+	public ColorSpec getColors(int circle) {
+		if (ringColors != null && circle < ringColors.size())
+			return ringColors.get(circle);
+		return colors;
+	}
+
+	@Override
+	protected Set<String> addColumns(Set<String> names) {
+		super.addColumns(names);
+		if (valueTemplate != null) names.addAll(valueTemplate.getColumns());
+		if (valueExpression != null) names.addAll(valueExpression.getColumns());
+		// A single circle label may be the name of a column of labels
+		if (circleLabels != null) names.addAll(circleLabels);
+		return names;
+	}
+
+	public List<String> getCircleLabels() { return circleLabels; }
+	public boolean isLabelCircles() { return labelCircles; }
+	public Position getCircleLabelPosition() { return circleLabelPosition; }
+	public double getArcStart() { return arcStart; }
+	public boolean isClockwise() { return isClockwise; }
+	public boolean isSortSlices() { return sortSlices; }
+	public double getFirstArc() { return firstArc; }
+	public double getArcWidth() { return arcWidth; }
+	public double getFirstArcWidth() { return firstArcWidth; }
+	public double getOutlineWidth() { return outlineWidth; }
+	public Color getOutlineColor() { return outlineColor; }
+}
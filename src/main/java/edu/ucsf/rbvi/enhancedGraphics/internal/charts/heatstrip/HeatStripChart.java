@@ -54,10 +54,13 @@ import java.awt.geom.Rectangle2D;
 import org.cytoscape.model.CyIdentifiable;
 import org.cytoscape.model.CyNetwork;
 import org.cytoscape.model.CyNode;
+import org.cytoscape.model.CyRow;
 import org.cytoscape.view.model.CyNetworkView;
 import org.cytoscape.view.model.View;
 
+import edu.ucsf.rbvi.enhancedGraphics.internal.EnhancedGraphicsManager;
 import edu.ucsf.rbvi.enhancedGraphics.internal.charts.AbstractChartCustomGraphics;
+import edu.ucsf.rbvi.enhancedGraphics.internal.charts.ValueVector;
 import edu.ucsf.rbvi.enhancedGraphics.internal.charts.ColorGradients;
 
 /**
@@ -67,14 +70,7 @@ import edu.ucsf.rbvi.enhancedGraphics.internal.charts.ColorGradients;
  * the named Java colors, hex RGB values, or hex RGBA values.
  */
 public class HeatStripChart extends AbstractChartCustomGraphics<HeatStripLayer> {
-	private static final String COLORS = "colorlist";
-	private static final String SEPARATION = "separation";
-
-	private List<Color> colorList = null;
-	private String colorString = null;
-	private int separation = 0;
-	private boolean showAxes = false;
-	Color[] colorScale = null;
+	private final HeatStripChartSpec spec;
 
 	// Parse the input string, which is always of the form:
 	// heatstripchart:	[attributelist=value]
@@ -85,52 +81,41 @@ public class HeatStripChart extends AbstractChartCustomGraphics<HeatStripLayer>
 	//            			[separation=value]
 	//            			[valuelist=value]
 	public HeatStripChart(String input) {
-		Map<String, String> args = parseInput(input);
-		// This will populate the values, attributes, and labels lists
-		populateValues(args);
-
-		colorScale = ColorGradients.YELLOWBLACKCYAN.getColors();
-		if (args.containsKey(COLORS)) {
-			// Get our colors
-			String colorSpec = args.get(COLORS).toString();
-			if (ColorGradients.getGradient(colorSpec) != null) {
-				colorScale = ColorGradients.getGradient(colorSpec);
-			} else {
-				try {
-					String [] colorArray = colorSpec.split(",");
-					List<Color> colors = parseUpDownColor(colorArray);
-					colorScale[1] = colors.get(2);
-					colorScale[0] = colors.get(1);
-					colorScale[2] = colors.get(0);
-				} catch (Exception e) {
-					logger.warn("heatstripchart: Unable to parse up/down color: "+colorSpec);
-					colorScale = ColorGradients.YELLOWBLACKCYAN.getColors();
-				}
-			}
-		}
-
-		if (args.containsKey(SEPARATION)) {
-			separation = Integer.parseInt(args.get(SEPARATION));
-		}
+		this.spec = new HeatStripChartSpec(parseInput(input));
+	}
 
-		if (args.containsKey(SHOWYAXIS)) {
-			showAxes = getBooleanValue(args.get(SHOWYAXIS));
-		}
+	public HeatStripChart(HeatStripChartSpec spec, EnhancedGraphicsManager manager) {
+		super(manager);
+		this.spec = spec;
 	}
 
-	public String toSerializableString() { return this.getIdentifier().toString()+","+displayName; }
+	public HeatStripChartSpec getSpec() { return spec; }
 
 	@Override 
-	public List<HeatStripLayer> getLayers(CyNetworkView networkView, View<? extends CyIdentifiable> nodeView) { 
+	protected List<HeatStripLayer> createLayers(CyNetworkView networkView, View<? extends CyIdentifiable> nodeView) { 
 		CyNetwork network = networkView.getModel();
 		if (!(nodeView.getModel() instanceof CyNode))
 				return null;
-		layers = new ArrayList<>();
+		if (!spec.isValid())
+			return null;
+		List<HeatStripLayer> layers = new ArrayList<>();
 		CyNode node = (CyNode)nodeView.getModel();
 
+		List<String> attributes = spec.getAttributes();
+		CyRow row = network.getRow(node);
+		ValueVector values = spec.getValues(row);
+		List<String> labels = spec.getLabels(row);
+
 		// Create all of our pie slices. Each slice becomes a layer
 		if (attributes != null && attributes.size() > 0) {
-			values = getDataFromAttributes (network, node, attributes, labels);
+			values = getDataFromAttributes (network, node, attributes, spec);
+		} else if (spec.hasMatrix()) {
+			values = getDataFromMatrix(network, node, spec);
+		}
+
+		if (values == null) {
+			logger.error("heatstripchart: no attribute nor values found");
+			return null;
 		}
 
 		if (labels != null && labels.size() > 0 &&
@@ -142,39 +127,42 @@ public class HeatStripChart extends AbstractChartCustomGraphics<HeatStripLayer>
 
 		List<HeatStripLayer> labelList = new ArrayList<HeatStripLayer>();
 
-		double minValue = 0;
-		double maxValue = 0;
-		for (Double val: values) {
-			if (val == null) continue;
-			minValue = Math.min(minValue, val);
-			maxValue = Math.max(maxValue, val);
-		}
+		double[] extent = values.minMax(0.0, 0.0);
+		double minValue = extent[0];
+		double maxValue = extent[1];
 		double labelMin = minValue;
 
+		boolean normalized = spec.isNormalized();
 		if (normalized) {
-			minValue = rangeMin;
-			maxValue = rangeMax;
+			double[] range = getRange(network, spec);
+			minValue = range[0];
+			maxValue = range[1];
 		}
 			
 		int nBars = values.size();
-		Font font = getFont();
+		int separation = spec.getSeparation();
+		boolean showAxes = spec.isShowAxes();
+		Color[] colorScale = spec.getColorScale();
+		Font font = spec.getFont();
 		for (int bar = 0; bar < nBars; bar++) {
 			String label = null;
 			if (labels != null && labels.size() > 0)
 				label = labels.get(bar);
 //			if (values.get(bar) == null || values.get(bar) == 0.0) continue;
-			if (values.get(bar) == null) continue;
+			if (values.isMissing(bar)) continue;
 
 			// Create the slice
 			HeatStripLayer bl = new HeatStripLayer(bar, nBars, separation, values.get(bar), minValue, 
-			                                       maxValue, normalized, colorScale, showAxes, borderWidth, scale, borderColor);
+			                                       maxValue, normalized, colorScale, showAxes, spec.getBorderWidth(),
+			                                       spec.getScale(), spec.getBorderColor());
 			if (bl == null) continue;
 			layers.add(bl);
 
 			if (label != null || (showAxes && bar==0)) {
 				// Now, create the label
 				HeatStripLayer labelLayer = new HeatStripLayer(bar, nBars, separation, minValue, maxValue, 
-				                                               normalized, labelMin, label, font, labelColor, labelWidth, labelSpacing, showAxes, scale);
+				                                               normalized, labelMin, label, font, spec.getLabelColor(),
+				                                               spec.getLabelWidth(), spec.getLabelSpacing(), showAxes, spec.getScale());
 				if (labelLayer != null)
 					labelList.add(labelLayer);
 			}
@@ -0,0 +1,70 @@
+package edu.ucsf.rbvi.enhancedGraphics.internal.charts.heatstrip;
+
+import java.awt.Color;
+
+import java.util.List;
+import java.util.Map;
+
+import edu.ucsf.rbvi.enhancedGraphics.internal.charts.ChartSpec;
+import edu.ucsf.rbvi.enhancedGraphics.internal.charts.ColorGradients;
+import edu.ucsf.rbvi.enhancedGraphics.internal.charts.ColorSpec;
+
+import static edu.ucsf.rbvi.enhancedGraphics.internal.charts.AbstractChartCustomGraphics.SHOWYAXIS;
+
+/**
+ * The compiled arguments for a heat strip chart:
+ * heatstripchart:	[attributelist=value]
+ *       						[colorlist=value]
+ *       						[labellist=value]
+ *            			[position=value]
+ *            			[scale=0.90]
+ *            			[separation=value]
+ *            			[showyaxis=false]
+ *            			[valuelist=value]
+ */
+public class HeatStripChartSpec extends ChartSpec {
+	private static final String COLORS = "colorlist";
+	private static final String SEPARATION = "separation";
+
+	private final Color[] colorScale;
+	private final int separation;
+	private final boolean showAxes;
+
+	public HeatStripChartSpec(Map<String, String> args) {
+		super(args);
+
+		Color[] scale = ColorGradients.YELLOWBLACKCYAN.getColors();
+		if (args.containsKey(COLORS)) {
+			// Get our colors
+			String colorSpec = args.get(COLORS);
+			if (ColorGradients.getGradient(colorSpec) != null) {
+				scale = ColorGradients.getGradient(colorSpec);
+			} else {
+				try {
+					String [] colorArray = colorSpec.split(",");
+					List<Color> colors = ColorSpec.parseUpDownColor(colorArray);
+					scale[1] = colors.get(2);
+					scale[0] = colors.get(1);
+					scale[2] = colors.get(0);
+				} catch (Exception e) {
+					logger.warn("heatstripchart: Unable to parse up/down color: "+colorSpec);
+					scale = ColorGradients.YELLOWBLACKCYAN.getColors();
+				}
+			}
+		}
+		colorScale = scale;
+
+		separation = args.containsKey(SEPARATION) ? Integer.parseInt(args.get(SEPARATION)) : 0;
+		showAxes = args.containsKey(SHOWYAXIS) ? getBooleanValue(args.get(SHOWYAXIS)) : false;
+	}
+
+	/**
+ 	 * Return the color scale.  This is shared by all of the layers, so it must not
+ 	 * be modified.
+ 	 *
+ 	 * @return the down, zero, and up colors
+ 	 */
+	public Color[] getColorScale() { return colorScale; }
+	public int getSeparation() { return separation; }
+	public boolean isShowAxes() { return showAxes; }
+}
@@ -6,14 +6,31 @@ import org.cytoscape.view.presentation.customgraphics.CyCustomGraphics;
 import org.cytoscape.view.presentation.customgraphics.CyCustomGraphicsFactory;
 import org.cytoscape.view.presentation.customgraphics.CustomGraphicLayer;
 
-public class HeatStripFactory implements CyCustomGraphicsFactory {
+import edu.ucsf.rbvi.enhancedGraphics.internal.EnhancedGraphicsManager;
+import edu.ucsf.rbvi.enhancedGraphics.internal.SpecCompiler;
+import edu.ucsf.rbvi.enhancedGraphics.internal.SpecInterner;
+import edu.ucsf.rbvi.enhancedGraphics.internal.parse.SerializedSpec;
+
+public class HeatStripFactory implements CyCustomGraphicsFactory, SpecCompiler {
 	private static final Class<? extends CyCustomGraphics> TARGET_CLASS = HeatStripChart.class;
 
-	public HeatStripFactory() {
+	private final EnhancedGraphicsManager manager;
+	private final SpecInterner<HeatStripChartSpec> interner;
+
+	public HeatStripFactory(EnhancedGraphicsManager manager) {
+		this.manager = manager;
+		this.interner = manager.createInterner(getPrefix());
 	}
 
 	public CyCustomGraphics<HeatStripLayer> getInstance(String input) {
-		return new HeatStripChart(input);
+		HeatStripChartSpec spec = interner.get(input);
+		if (spec == null)
+			spec = interner.intern(input, new HeatStripChartSpec(manager.parseArguments(input)));
+		return new HeatStripChart(spec, manager);
+	}
+
+	public HeatStripChart compile(String input) {
+		return new HeatStripChart(new HeatStripChartSpec(manager.parseArguments(input)), manager);
 	}
 
 	public CyCustomGraphics<HeatStripLayer> getInstance(URL input) { return null; }
@@ -22,7 +39,13 @@ public class HeatStripFactory implements CyCustomGraphicsFactory {
 
 	public Class<? extends CyCustomGraphics> getSupportedClass() { return TARGET_CLASS; }
 
-	public CyCustomGraphics<HeatStripLayer> parseSerializableString(String string) { return null; }
+	public CyCustomGraphics<HeatStripLayer> parseSerializableString(String string) {
+		SerializedSpec serialized = SerializedSpec.parse(string);
+		if (serialized == null) return null;
+		HeatStripChart chart = new HeatStripChart(new HeatStripChartSpec(serialized.getArguments()), manager);
+		serialized.restore(chart);
+		return chart;
+	}
 
 	public boolean supportsMime(String mimeType) { return false; }
 }
@@ -58,7 +58,7 @@ import org.slf4j.LoggerFactory;
 import org.cytoscape.view.presentation.customgraphics.PaintedShape;
 import edu.ucsf.rbvi.enhancedGraphics.internal.charts.ViewUtils;
 
-public class HeatStripLayer implements PaintedShape {
+public class HeatStripLayer implements PaintedShape, Cloneable {
 	private boolean labelLayer = false;
 	private String label;
 	private double labelWidth = ViewUtils.DEFAULT_LABEL_WIDTH;
@@ -174,10 +174,16 @@ public class HeatStripLayer implements PaintedShape {
 		return bounds;
 	}
 
+	// The cached layers are reused, so we don't change our own bounds
 	public HeatStripLayer transform(AffineTransform xform) {
-		Shape newBounds = xform.createTransformedShape(bounds);
-		this.bounds = newBounds.getBounds2D();
-		return this;
+		HeatStripLayer layer;
+		try {
+			layer = (HeatStripLayer)clone();
+		} catch (CloneNotSupportedException e) {
+			throw new IllegalStateException(e);
+		}
+		layer.bounds = xform.createTransformedShape(bounds).getBounds2D();
+		return layer;
 	}
 
 	private Shape barShape() {
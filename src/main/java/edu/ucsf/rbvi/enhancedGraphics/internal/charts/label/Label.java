@@ -64,6 +64,7 @@ import org.cytoscape.view.presentation.customgraphics.Cy2DGraphicLayer;
 import org.cytoscape.view.presentation.customgraphics.PaintedShape;
 import org.cytoscape.view.presentation.property.BasicVisualLexicon;
 
+import edu.ucsf.rbvi.enhancedGraphics.internal.EnhancedGraphicsManager;
 import edu.ucsf.rbvi.enhancedGraphics.internal.charts.AbstractChartCustomGraphics;
 import edu.ucsf.rbvi.enhancedGraphics.internal.charts.ShadowLayer;
 import edu.ucsf.rbvi.enhancedGraphics.internal.charts.ViewUtils;
@@ -75,37 +76,7 @@ import edu.ucsf.rbvi.enhancedGraphics.internal.charts.ViewUtils;
  * the named Java colors, hex RGB values, or hex RGBA values.
  */
 public class Label extends AbstractChartCustomGraphics<CustomGraphicLayer> {
-	private static final String COLOR = "color";
-	// TODO
-	private static final String ANGLE = "angle";
-	private static final String ATTRIBUTE = "attribute";
-	private static final String BACKGROUND = "background";
-	private static final String BGCOLOR = "bgColor";
-	private static final String DROPSHADOW = "dropShadow";
-	private static final String LABEL = "label";
-	private static final String LABELALIGNMENT = "labelAlignment";
-	private static final String OUTLINE = "outline";
-	private static final String OUTLINECOLOR = "outlineColor";
-	private static final String OUTLINETRANS = "outlineTransparency";
-	private static final String OUTLINEWIDTH = "outlineWidth";
-	private static final String PADDING = "padding";
-	private static final String RESCALE = "rescale";
-
-	private Color color = null;
-	private double labelAngle = 0.0;
-	private String labelAttribute = null;
-	private String label = null;
-	// ML: Changed default value from CENTER to MIDDLE
-//	private ViewUtils.TextAlignment labelAlignment = ViewUtils.TextAlignment.ALIGN_CENTER;
-	private ViewUtils.TextAlignment labelAlignment = ViewUtils.TextAlignment.ALIGN_MIDDLE;
-	private boolean background = false;
-	private Color bgColor = null;
-	private boolean dropShadow = false;
-	private boolean outlineLabel = false;
-	private Color outlineColor = null;
-	private double outlineWidth = 0.0;
-	private boolean rescale = false;
-	private double padding = 0.0;
+	private final LabelSpec spec;
 
 	// Parse the input string, which is always of the form:
 	// label:
@@ -120,93 +91,28 @@ public class Label extends AbstractChartCustomGraphics<CustomGraphicLayer> {
 	//      [scale=0.90]
 	//      [label=value]
 	public Label(String input) {
-		Map<String, String> args = parseInput(input);
-
-		// This will populate the values, attributes, and labels lists
-		populateValues(args);
-
-		if (args.containsKey(COLOR)) {
-			color = parseColor(args.get(COLOR));
-		}
-
-		if (args.containsKey(ATTRIBUTE)) {
-			labelAttribute = args.get(ATTRIBUTE);
-		}
-
-		if (args.containsKey(LABEL)) {
-			label = args.get(LABEL);
-		}
-
-		if (args.containsKey(LABELALIGNMENT)) {
-			String lavelAlignArg = args.get(LABELALIGNMENT);
-			if (ViewUtils.textAlignmentMapping.containsKey(lavelAlignArg)) 
-				labelAlignment = ViewUtils.textAlignmentMapping.get(lavelAlignArg);
-		}
-		
-		if (args.containsKey(DROPSHADOW)) {
-			dropShadow = getBooleanValue(args.get(DROPSHADOW));
-		}
-
-		if (args.containsKey(BACKGROUND)) {
-			background = getBooleanValue(args.get(BACKGROUND));
-		}
-
-		if (args.containsKey(RESCALE)) {
-			rescale = getBooleanValue(args.get(RESCALE));
-		}
-
-		if (args.containsKey(BGCOLOR)) {
-			bgColor = parseColor(args.get(BGCOLOR));
-			// Is the color opaque?  If so, make it translucent
-			if (bgColor.getAlpha() == 255) {
-				bgColor = new Color(bgColor.getRed(), 
-				                    bgColor.getGreen(), 
-				                    bgColor.getBlue(), 125);
-			}
-		} else {
-			bgColor = new Color(255,255,255,125);
-		}
-
-		if (args.containsKey(OUTLINE)) {
-			outlineLabel = getBooleanValue(args.get(OUTLINE));
-		}
-
-		if (args.containsKey(OUTLINECOLOR)) {
-			outlineColor = parseColor(args.get(OUTLINECOLOR));
-		}
-
-		if (args.containsKey(OUTLINETRANS)) {
-			if (outlineColor == null) 
-				outlineColor = parseColor(args.get(OUTLINECOLOR));
-			int transp = getIntegerValue(args.get(OUTLINETRANS));
-			outlineColor = new Color(outlineColor.getRed(), 
-					outlineColor.getGreen(), 
-					outlineColor.getBlue(), transp);
-		}
-
-		if (args.containsKey(OUTLINEWIDTH)) {
-			outlineWidth = getDoubleValue(args.get(OUTLINEWIDTH));
-		}
-
-		if (args.containsKey(ANGLE)) {
-			labelAngle = getDoubleValue(args.get(ANGLE));
-		}
-
-		if (args.containsKey(PADDING)) {
-			padding = getDoubleValue(args.get(PADDING));
-		}
+		this.spec = new LabelSpec(parseInput(input));
+	}
 
+	public Label(LabelSpec spec, EnhancedGraphicsManager manager) {
+		super(manager);
+		this.spec = spec;
 	}
 
-	public String toSerializableString() { return this.getIdentifier().toString()+","+displayName; }
+	public LabelSpec getSpec() { return spec; }
 
 	// public Image getRenderedImage() { return null; }
 
-	public List<CustomGraphicLayer> getLayers(CyNetworkView networkView, View<? extends CyIdentifiable> nodeView) { 
+	// Labels are placed relative to the node's size
+	@Override
+	protected boolean isCacheable() { return false; }
+
+	protected List<CustomGraphicLayer> createLayers(CyNetworkView networkView, View<? extends CyIdentifiable> nodeView) { 
 		CyNetwork network = networkView.getModel();
 		if (!(nodeView.getModel() instanceof CyNode))
 				return null;
-		layers = new ArrayList<>();
+		if (!spec.isValid())
+			return null;
 		CyNode node = (CyNode)nodeView.getModel();
 
 		double nodeWidth = nodeView.getVisualProperty(BasicVisualLexicon.NODE_WIDTH);
@@ -214,31 +120,33 @@ public class Label extends AbstractChartCustomGraphics<CustomGraphicLayer> {
 
 		Rectangle2D initialBox = new Rectangle2D.Double(0.0, 0.0, nodeWidth, nodeHeight);
 
-		if (color == null) color = Color.BLACK;
-
-		if (labelAttribute != null) {
-			label = getLabelFromAttribute (network, node, labelAttribute);
+		String label = spec.getLabel(network.getRow(node));
+		if (spec.getLabelAttribute() != null) {
+			label = getLabelFromAttribute (network, node, spec.getLabelAttribute());
 		}
 
-		Font font = getFont();
+		Font font = spec.getFont();
+		boolean rescale = spec.isRescale();
 		List<CustomGraphicLayer> labelLayers = new ArrayList<>();
 		if (label != null && label.length() > 0) {
 			// Create the label (we'll add it at the end)
-			LabelLayer labelLayer = new LabelLayer(label, initialBox, position, anchor, labelOffset, font, 
-			                                       labelAlignment, color, outlineColor, outlineWidth, 
-			                                       false, outlineLabel, labelAngle, rescale, labelWidth, labelSpacing, padding);
+			LabelLayer labelLayer = new LabelLayer(label, initialBox, spec.getPosition(), spec.getAnchor(), spec.getLabelOffset(), 
+			                                       font, spec.getLabelAlignment(), spec.getColor(), spec.getOutlineColor(), 
+			                                       spec.getOutlineWidth(), false, spec.isOutlineLabel(), spec.getLabelAngle(), 
+			                                       rescale, spec.getLabelWidth(), spec.getLabelSpacing(), spec.getPadding());
 
 			// Create the background
-			if (background) {
-				LabelLayer bgLayer = new LabelLayer(label, initialBox, position, anchor, labelOffset, font, 
-				                                    labelAlignment, bgColor, outlineColor, outlineWidth,
-			                                      true, false, labelAngle, rescale, labelWidth, labelSpacing, padding);
+			if (spec.isBackground()) {
+				LabelLayer bgLayer = new LabelLayer(label, initialBox, spec.getPosition(), spec.getAnchor(), spec.getLabelOffset(), 
+				                                    font, spec.getLabelAlignment(), spec.getBgColor(), spec.getOutlineColor(), 
+				                                    spec.getOutlineWidth(), true, false, spec.getLabelAngle(), 
+				                                    rescale, spec.getLabelWidth(), spec.getLabelSpacing(), spec.getPadding());
 				if (bgLayer != null)
 					labelLayers.add(bgLayer);
 			}
 
 			// Create the drop shadow
-			if (dropShadow) {
+			if (spec.isDropShadow()) {
 				double offset = font.getSize2D()/15.0;
 				ShadowLayer shadowLayer = new ShadowLayer(labelLayer.getShape(), offset, rescale);
 				labelLayers.add(shadowLayer);
@@ -7,14 +7,31 @@ import org.cytoscape.view.presentation.customgraphics.CyCustomGraphicsFactory;
 import org.cytoscape.view.presentation.customgraphics.CustomGraphicLayer;
 import org.cytoscape.view.presentation.customgraphics.PaintedShape;
 
-public class LabelFactory implements CyCustomGraphicsFactory {
+import edu.ucsf.rbvi.enhancedGraphics.internal.EnhancedGraphicsManager;
+import edu.ucsf.rbvi.enhancedGraphics.internal.SpecCompiler;
+import edu.ucsf.rbvi.enhancedGraphics.internal.SpecInterner;
+import edu.ucsf.rbvi.enhancedGraphics.internal.parse.SerializedSpec;
+
+public class LabelFactory implements CyCustomGraphicsFactory, SpecCompiler {
 	private static final Class<? extends CyCustomGraphics> TARGET_CLASS = Label.class;
 
-	public LabelFactory() {
+	private final EnhancedGraphicsManager manager;
+	private final SpecInterner<LabelSpec> interner;
+
+	public LabelFactory(EnhancedGraphicsManager manager) {
+		this.manager = manager;
+		this.interner = manager.createInterner(getPrefix());
 	}
 
 	public CyCustomGraphics<CustomGraphicLayer> getInstance(String input) {
-		return new Label(input);
+		LabelSpec spec = interner.get(input);
+		if (spec == null)
+			spec = interner.intern(input, new LabelSpec(manager.parseArguments(input)));
+		return new Label(spec, manager);
+	}
+
+	public Label compile(String input) {
+		return new Label(new LabelSpec(manager.parseArguments(input)), manager);
 	}
 
 	public CyCustomGraphics<CustomGraphicLayer> getInstance(URL input) { return null; }
@@ -23,7 +40,13 @@ public class LabelFactory implements CyCustomGraphicsFactory {
 
 	public Class<? extends CyCustomGraphics> getSupportedClass() { return TARGET_CLASS; }
 
-	public CyCustomGraphics<CustomGraphicLayer> parseSerializableString(String string) { return null; }
+	public CyCustomGraphics<CustomGraphicLayer> parseSerializableString(String string) {
+		SerializedSpec serialized = SerializedSpec.parse(string);
+		if (serialized == null) return null;
+		Label label = new Label(new LabelSpec(serialized.getArguments()), manager);
+		serialized.restore(label);
+		return label;
+	}
 
 	public boolean supportsMime(String mimeType) { return false; }
 }
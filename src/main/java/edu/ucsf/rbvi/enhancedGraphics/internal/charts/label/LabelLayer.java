@@ -49,7 +49,7 @@ import org.cytoscape.view.presentation.customgraphics.PaintedShape;
 import edu.ucsf.rbvi.enhancedGraphics.internal.charts.ViewUtils;
 import edu.ucsf.rbvi.enhancedGraphics.internal.charts.ViewUtils.TextAlignment;
 
-public class LabelLayer implements PaintedShape {
+public class LabelLayer implements PaintedShape, Cloneable {
 	private String label;
 	private Color color;
 	private double maxWidth;
@@ -135,10 +135,17 @@ public class LabelLayer implements PaintedShape {
 		return this.getShape().getBounds2D();
 	}
 
+	// Unlike copy(), this doesn't lay out the text again
 	public LabelLayer transform(AffineTransform xform) {
-		bounds = xform.createTransformedShape(bounds).getBounds2D();
-		labelShape = ViewUtils.createPossiblyTransformedShape(xform, labelShape, rescale);
-		return this;
+		LabelLayer layer;
+		try {
+			layer = (LabelLayer)clone();
+		} catch (CloneNotSupportedException e) {
+			throw new IllegalStateException(e);
+		}
+		layer.bounds = xform.createTransformedShape(bounds).getBounds2D();
+		layer.labelShape = ViewUtils.createPossiblyTransformedShape(xform, labelShape, rescale);
+		return layer;
 	}
 
 	// Original copy from ViewUtils
@@ -0,0 +1,152 @@
+package edu.ucsf.rbvi.enhancedGraphics.internal.charts.label;
+
+import java.awt.Color;
+
+import java.util.Map;
+import java.util.Set;
+
+import org.cytoscape.model.CyRow;
+
+import edu.ucsf.rbvi.enhancedGraphics.internal.charts.ChartSpec;
+import edu.ucsf.rbvi.enhancedGraphics.internal.charts.ColorSpec;
+import edu.ucsf.rbvi.enhancedGraphics.internal.charts.ViewUtils;
+import edu.ucsf.rbvi.enhancedGraphics.internal.parse.SpecTemplate;
+
+/**
+ * The compiled arguments for a label:
+ * label:	[angle=value]
+ *        [attribute=value]
+ *        [background=false]
+ *        [bgColor=value]
+ *        [color=value]
+ *        [dropShadow=false]
+ *        [label=value]
+ *        [labelAlignment=value]
+ *        [labelfont=value]
+ *        [labelsize=8]
+ *        [labelstyle=plain]
+ *        [outline=false]
+ *        [outlineColor=value]
+ *        [outlineTransparency=value]
+ *        [outlineWidth=value]
+ *        [padding=value]
+ *        [position=value]
+ *        [rescale=false]
+ */
+public class LabelSpec extends ChartSpec {
+	private static final String COLOR = "color";
+	private static final String ANGLE = "angle";
+	private static final String ATTRIBUTE = "attribute";
+	private static final String BACKGROUND = "background";
+	private static final String BGCOLOR = "bgColor";
+	private static final String DROPSHADOW = "dropShadow";
+	private static final String LABEL = "label";
+	private static final String LABELALIGNMENT = "labelAlignment";
+	private static final String OUTLINE = "outline";
+	private static final String OUTLINECOLOR = "outlineColor";
+	private static final String OUTLINETRANS = "outlineTransparency";
+	private static final String OUTLINEWIDTH = "outlineWidth";
+	private static final String PADDING = "padding";
+	private static final String RESCALE = "rescale";
+
+	private final Color color;
+	private final double labelAngle;
+	private final String labelAttribute;
+	private final String label;
+	private final SpecTemplate labelTemplate;
+	private final ViewUtils.TextAlignment labelAlignment;
+	private final boolean background;
+	private final Color bgColor;
+	private final boolean dropShadow;
+	private final boolean outlineLabel;
+	private final Color outlineColor;
+	private final double outlineWidth;
+	private final boolean rescale;
+	private final double padding;
+
+	public LabelSpec(Map<String, String> args) {
+		super(args);
+
+		color = getColorValue(args.get(COLOR), Color.BLACK);
+		labelAttribute = args.get(ATTRIBUTE);
+		label = args.get(LABEL);
+		labelTemplate = SpecTemplate.compile(label);
+
+		// ML: Changed default value from CENTER to MIDDLE
+		ViewUtils.TextAlignment alignment = ViewUtils.TextAlignment.ALIGN_MIDDLE;
+		if (args.containsKey(LABELALIGNMENT)) {
+			String lavelAlignArg = args.get(LABELALIGNMENT);
+			if (ViewUtils.textAlignmentMapping.containsKey(lavelAlignArg)) 
+				alignment = ViewUtils.textAlignmentMapping.get(lavelAlignArg);
+		}
+		labelAlignment = alignment;
+
+		dropShadow = args.containsKey(DROPSHADOW) ? getBooleanValue(args.get(DROPSHADOW)) : false;
+		background = args.containsKey(BACKGROUND) ? getBooleanValue(args.get(BACKGROUND)) : false;
+		rescale = args.containsKey(RESCALE) ? getBooleanValue(args.get(RESCALE)) : false;
+
+		Color bg = new Color(255,255,255,125);
+		if (args.containsKey(BGCOLOR)) {
+			bg = getColorValue(args.get(BGCOLOR), bg);
+			// Is the color opaque?  If so, make it translucent
+			if (bg.getAlpha() == 255) {
+				bg = new Color(bg.getRed(), bg.getGreen(), bg.getBlue(), 125);
+			}
+		}
+		bgColor = bg;
+
+		outlineLabel = args.containsKey(OUTLINE) ? getBooleanValue(args.get(OUTLINE)) : false;
+
+		Color outline = null;
+		if (args.containsKey(OUTLINECOLOR)) {
+			outline = ColorSpec.parseColor(args.get(OUTLINECOLOR));
+		}
+
+		if (args.containsKey(OUTLINETRANS)) {
+			if (outline == null) 
+				outline = Color.BLACK;
+			int transp = getIntegerValue(args.get(OUTLINETRANS));
+			outline = new Color(outline.getRed(), outline.getGreen(), outline.getBlue(), transp);
+		}
+		outlineColor = outline;
+
+		outlineWidth = args.containsKey(OUTLINEWIDTH) ? getDoubleValue(args.get(OUTLINEWIDTH)) : 0.0;
+		labelAngle = args.containsKey(ANGLE) ? getDoubleValue(args.get(ANGLE)) : 0.0;
+		padding = args.containsKey(PADDING) ? getDoubleValue(args.get(PADDING)) : 0.0;
+	}
+
+	public Color getColor() { return color; }
+	public double getLabelAngle() { return labelAngle; }
+	@Override
+	protected Set<String> addColumns(Set<String> names) {
+		super.addColumns(names);
+		if (labelAttribute != null) names.add(labelAttribute);
+		if (labelTemplate != null) names.addAll(labelTemplate.getColumns());
+		return names;
+	}
+
+	public String getLabelAttribute() { return labelAttribute; }
+	public String getLabel() { return label; }
+
+	/**
+ 	 * Return the label for a node.  If the label refers to columns, e.g.
+ 	 * <code>label="${name} (${degree})"</code>, they are filled in from the
+ 	 * node's row.  Missing values are left empty.
+ 	 *
+ 	 * @param row the node's row
+ 	 * @return the label
+ 	 */
+	public String getLabel(CyRow row) {
+		if (labelTemplate == null) return label;
+		return labelTemplate.resolve(row, "");
+	}
+	public ViewUtils.TextAlignment getLabelAlignment() { return labelAlignment; }
+	public boolean isBackground() { return background; }
+	public Color getBgColor() { return bgColor; }
+	public boolean isDropShadow() { return dropShadow; }
+	public boolean isOutlineLabel() { return outlineLabel; }
+	public Color getOutlineColor() { return outlineColor; }
+	public double getOutlineWidth() { return outlineWidth; }
+	public boolean isRescale() { return rescale; }
+	public double getPadding() { return padding; }
+}
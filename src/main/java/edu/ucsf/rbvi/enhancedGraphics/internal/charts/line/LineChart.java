@@ -56,7 +56,9 @@ import org.cytoscape.model.CyNode;
 import org.cytoscape.view.model.CyNetworkView;
 import org.cytoscape.view.model.View;
 
+import edu.ucsf.rbvi.enhancedGraphics.internal.EnhancedGraphicsManager;
 import edu.ucsf.rbvi.enhancedGraphics.internal.charts.AbstractChartCustomGraphics;
+import edu.ucsf.rbvi.enhancedGraphics.internal.charts.ValueVector;
 
 /**
  * The LineChart creates a list of custom graphics where each custom graphic represents
@@ -65,13 +67,7 @@ import edu.ucsf.rbvi.enhancedGraphics.internal.charts.AbstractChartCustomGraphic
  * the named Java colors, hex RGB values, or hex RGBA values.
  */
 public class LineChart extends AbstractChartCustomGraphics<LineLayer> {
-	private static final String COLORS = "colorlist";
-	private static final String LINEWIDTH = "linewidth";
-
-	private List<Color> colorList = null;
-	private int labelSize = 4;
-	private String colorString = null;
-	private float lineWidth = 1.5f;
+	private final LineChartSpec spec;
 
 	// Parse the input string, which is always of the form:
 	// linechart:	[attributelist=value]
@@ -84,89 +80,61 @@ public class LineChart extends AbstractChartCustomGraphics<LineLayer> {
 	// 						[valuelist=value]
 	public LineChart(String input) {
 		// System.out.println("Linechart: "+input);
-		Map<String, String> args = parseInput(input);
-		// This will populate the values, attributes, and labels lists
-		populateValues(args);
-
-		if (args.containsKey(COLORS)) {
-			colorString = args.get(COLORS);
-			
-			if (attributes == null)
-				colorList = convertInputToColor(colorString, values);
-		}
+		this.spec = new LineChartSpec(parseInput(input));
+	}
 
-		if (args.containsKey(LINEWIDTH)) {
-			lineWidth = Float.parseFloat(args.get(LINEWIDTH));
-		}
+	public LineChart(LineChartSpec spec, EnhancedGraphicsManager manager) {
+		super(manager);
+		this.spec = spec;
 	}
 
-	public String toSerializableString() { return this.getIdentifier().toString()+","+displayName; }
+	public LineChartSpec getSpec() { return spec; }
 
 	@Override 
-	public List<LineLayer> getLayers(CyNetworkView networkView, View<? extends CyIdentifiable> nodeView) { 
+	protected List<LineLayer> createLayers(CyNetworkView networkView, View<? extends CyIdentifiable> nodeView) { 
 		CyNetwork network = networkView.getModel();
 		if (!(nodeView.getModel() instanceof CyNode))
 				return null;
+		if (!spec.isValid())
+			return null;
 		CyNode node = (CyNode)nodeView.getModel();
+
+		List<String> attributes = spec.getAttributes();
+		ValueVector values = spec.getValues(network.getRow(node));
+		List<Color> colorList = spec.getValueColors();
+
 		// Create all of our pie slices. Each slice becomes a layer
 		if (attributes != null && attributes.size() > 0) {
-			values = getDataFromAttributes (network, (CyNode)node, attributes, labels);
+			values = getDataFromAttributes (network, (CyNode)node, attributes, spec);
 			// System.out.println("linechart: values = "+values);
-			colorList = convertInputToColor(colorString, values);
+			colorList = spec.getColors(values);
 			// System.out.println("linechart: colorList = "+colorList);
+		} else if (spec.hasMatrix()) {
+			values = getDataFromMatrix(network, node, spec);
+			if (values != null)
+				colorList = spec.getColors(values);
+		} else if (values != null && spec.isValueTemplate()) {
+			colorList = spec.getColors(values);
 		}
 
-		layers = new ArrayList<>();
-
-		List<LineLayer> labelList = new ArrayList<LineLayer>();
-
-		double minValue = 0.000001;
-		double maxValue = -minValue;
-		for (double val: values) {
-			minValue = Math.min(minValue, val);
-			maxValue = Math.max(maxValue, val);
+		if (values == null) {
+			logger.error("linechart: no attribute nor values found");
+			return null;
 		}
-		
-		boolean scalingColor = false;
-		String [] colorArray = colorString.split(",");
-		// Look for up/down special case
-		if (colorArray.length == 2 &&
-		    (colorArray[0].toLowerCase().startsWith(UP) ||
-		     colorArray[0].toLowerCase().startsWith(DOWN))) {
-			scalingColor=true;
-		} else if (colorArray.length == 3 &&
-		    (colorArray[0].toLowerCase().startsWith(UP) ||
-		     colorArray[0].toLowerCase().startsWith(DOWN) ||
-	     colorArray[0].toLowerCase().startsWith(ZERO))) {
-			scalingColor=true;
-		} else if (colorArray.length == 4 &&
-		    (colorArray[0].toLowerCase().startsWith(UP) ||
-		     colorArray[0].toLowerCase().startsWith(DOWN) ||
-	       colorArray[0].toLowerCase().startsWith(ZERO) ||
-			   colorArray[0].toLowerCase().startsWith(MISSING))) {
-			scalingColor=true;
+
+		if (colorList == null || colorList.isEmpty()) {
+			logger.error("linechart: no colors found");
+			return null;
 		}
+
+		List<LineLayer> layers = new ArrayList<>();
+
+		double[] extent = values.minMax(0.000001, -0.000001);
+		double minValue = extent[0];
+		double maxValue = extent[1];
 		
 		int nPoints = values.size();
-		
-		if(scalingColor) {
-			// We have to compute the colors again with the values being the difference between two points
-			List<Double> scalingValues = new ArrayList<>();
-			for (int point = 0; point < nPoints-1; point++) {
-				scalingValues.add(values.get(point+1) - values.get(point));
-			}
-			
-			// we don't want to scale the colors
-			// so we have to put rangeMin=rangeMax=0
-			double saved_rangeMin = rangeMin;
-			double saved_rangeMax = rangeMax;
-			rangeMin = 0;
-			rangeMax = 0;
-			colorList = convertInputToColor(colorString, scalingValues);
-			rangeMin = saved_rangeMin;
-			rangeMax = saved_rangeMax;
-		}
-		
+		float lineWidth = spec.getLineWidth();
 		for (int point = 0; point < nPoints-1; point++) {
 			// String label = null;
 			// if (labels != null && labels.size() > 0)
@@ -183,21 +151,8 @@ public class LineChart extends AbstractChartCustomGraphics<LineLayer> {
 			                             minValue, maxValue, color, lineWidth);
 			if (bl == null) continue;
 			layers.add(bl);
-
-/*
-			if (label != null) {
-				// Now, create the label
-				LineLayer labelLayer = new LineLayer(point, nPoints, minValue, maxValue, 
-			                                     label, labelSize);
-				if (labelLayer != null)
-					labelList.add(labelLayer);
-			}
-*/
 		}
 
-		// Now add all of our labels so they will be on top of our slices
-		// if (labelList != null && labelList.size() > 0)
-		// 	layers.addAll(labelList);
 		shapeLayers = layers;
 		return layers; 
 	}
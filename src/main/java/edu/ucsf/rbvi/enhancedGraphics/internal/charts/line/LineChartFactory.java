@@ -6,14 +6,31 @@ import org.cytoscape.view.presentation.customgraphics.CyCustomGraphics;
 import org.cytoscape.view.presentation.customgraphics.CyCustomGraphicsFactory;
 import org.cytoscape.view.presentation.customgraphics.CustomGraphicLayer;
 
-public class LineChartFactory implements CyCustomGraphicsFactory {
+import edu.ucsf.rbvi.enhancedGraphics.internal.EnhancedGraphicsManager;
+import edu.ucsf.rbvi.enhancedGraphics.internal.SpecCompiler;
+import edu.ucsf.rbvi.enhancedGraphics.internal.SpecInterner;
+import edu.ucsf.rbvi.enhancedGraphics.internal.parse.SerializedSpec;
+
+public class LineChartFactory implements CyCustomGraphicsFactory, SpecCompiler {
 	private static final Class<? extends CyCustomGraphics> TARGET_CLASS = LineChart.class;
 
-	public LineChartFactory() {
+	private final EnhancedGraphicsManager manager;
+	private final SpecInterner<LineChartSpec> interner;
+
+	public LineChartFactory(EnhancedGraphicsManager manager) {
+		this.manager = manager;
+		this.interner = manager.createInterner(getPrefix());
 	}
 
 	public CyCustomGraphics<LineLayer> getInstance(String input) {
-		return new LineChart(input);
+		LineChartSpec spec = interner.get(input);
+		if (spec == null)
+			spec = interner.intern(input, new LineChartSpec(manager.parseArguments(input)));
+		return new LineChart(spec, manager);
+	}
+
+	public LineChart compile(String input) {
+		return new LineChart(new LineChartSpec(manager.parseArguments(input)), manager);
 	}
 
 	public CyCustomGraphics<LineLayer> getInstance(URL input) { return null; }
@@ -22,7 +39,13 @@ public class LineChartFactory implements CyCustomGraphicsFactory {
 
 	public Class<? extends CyCustomGraphics> getSupportedClass() { return TARGET_CLASS; }
 
-	public CyCustomGraphics<LineLayer> parseSerializableString(String string) { return null; }
+	public CyCustomGraphics<LineLayer> parseSerializableString(String string) {
+		SerializedSpec serialized = SerializedSpec.parse(string);
+		if (serialized == null) return null;
+		LineChart chart = new LineChart(new LineChartSpec(serialized.getArguments()), manager);
+		serialized.restore(chart);
+		return chart;
+	}
 
 	public boolean supportsMime(String mimeType) { return false; }
 }
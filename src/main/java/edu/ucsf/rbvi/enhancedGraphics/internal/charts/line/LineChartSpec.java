@@ -0,0 +1,76 @@
+package edu.ucsf.rbvi.enhancedGraphics.internal.charts.line;
+
+import java.awt.Color;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+import edu.ucsf.rbvi.enhancedGraphics.internal.charts.ChartSpec;
+import edu.ucsf.rbvi.enhancedGraphics.internal.charts.ColorSpec;
+import edu.ucsf.rbvi.enhancedGraphics.internal.charts.ValueVector;
+
+/**
+ * The compiled arguments for a line chart:
+ * linechart:	[attributelist=value]
+ * 						[colorlist=value]
+ *						[labellist=value]
+ * 						[position=value]
+ * 						[linewidth=value]
+ * 						[scale=0.90]
+ *						[showlabels=true]
+ * 						[valuelist=value]
+ */
+public class LineChartSpec extends ChartSpec {
+	private static final String COLORS = "colorlist";
+	private static final String LINEWIDTH = "linewidth";
+
+	private final ColorSpec colors;
+	private final List<Color> valueColors;
+	private final float lineWidth;
+
+	public LineChartSpec(Map<String, String> args) {
+		super(args);
+
+		colors = ColorSpec.compile(args.get(COLORS));
+		lineWidth = args.containsKey(LINEWIDTH) ? Float.parseFloat(args.get(LINEWIDTH)) : 1.5f;
+
+		// If we only have values, our colors never change
+		List<Color> vColors = null;
+		if (getAttributes() == null && getValues() != null) {
+			vColors = getColors(getValues());
+			if (vColors != null)
+				vColors = Collections.unmodifiableList(vColors);
+		}
+		valueColors = vColors;
+	}
+
+	/**
+ 	 * Return the colors for the line segments.  For up/down colors, the color
+ 	 * of each segment reflects the difference between its two points.
+ 	 *
+ 	 * @param values the (normalized) values
+ 	 * @return the list of colors
+ 	 */
+	public List<Color> getColors(ValueVector values) {
+		if (!colors.isUpDown())
+			return colors.getColors(values, hasRange());
+
+		// We have to compute the colors with the values being the difference between two points
+		ValueVector scalingValues = new ValueVector(values.size());
+		for (int point = 0; point < values.size()-1; point++) {
+			scalingValues.add(values.get(point+1) - values.get(point));
+		}
+
+		// we don't want to scale the colors
+		return colors.getColors(scalingValues, false);
+	}
+
+	/**
+ 	 * Return the colors for a valuelist-only line chart.
+ 	 *
+ 	 * @return the colors, or null if the colors depend on the node
+ 	 */
+	public List<Color> getValueColors() { return valueColors; }
+	public float getLineWidth() { return lineWidth; }
+}
@@ -35,7 +35,6 @@ package edu.ucsf.rbvi.enhancedGraphics.internal.charts.pie;
 // System imports
 import java.util.ArrayList;
 import java.util.Arrays;
-import java.util.Collections;
 import java.util.Comparator;
 import java.util.HashMap;
 import java.util.List;
@@ -62,7 +61,12 @@ import org.cytoscape.view.model.CyNetworkView;
 import org.cytoscape.view.model.View;
 import org.cytoscape.view.presentation.customgraphics.CyCustomGraphics;
 
+import edu.ucsf.rbvi.enhancedGraphics.internal.EnhancedGraphicsManager;
+import edu.ucsf.rbvi.enhancedGraphics.internal.NeighborCounts;
 import edu.ucsf.rbvi.enhancedGraphics.internal.charts.AbstractChartCustomGraphics;
+import edu.ucsf.rbvi.enhancedGraphics.internal.charts.ArcLayout;
+import edu.ucsf.rbvi.enhancedGraphics.internal.charts.ValueVector;
+import edu.ucsf.rbvi.enhancedGraphics.internal.charts.ColorSpec;
 
 /**
  * The PieChart creates a list of custom graphics where each custom graphic represents
@@ -71,21 +75,8 @@ import edu.ucsf.rbvi.enhancedGraphics.internal.charts.AbstractChartCustomGraphic
  * the named Java colors, hex RGB values, or hex RGBA values.
  */
 public class PieChart extends AbstractChartCustomGraphics<PieLayer> {
-	private static final String COLORS = "colorlist";
-	// TODO
-	private static final String LABELOFFSET = "labeloffset";
-	private static final String SORTSLICES = "sortslices";
-	private static final String MINIMUMSLICE = "minimumslice";
-	private static final String ARCSTART = "arcstart";
-	private static final String ARCDIRECTION = "arcdirection";
-	
-
-	private List<Color> colorList = null;
-	private double arcStart = 0.0;
-	private boolean isClockwise = false;
-	private boolean sortSlices = true;
-	private double minimumSlice = 2.0;
-	private String colorString = null;
+	private final PieChartSpec spec;
+	private final ArcLayout layout;
 
 	// Parse the input string, which is always of the form:
 	// piechart:	[arcstart=0.0]
@@ -96,6 +87,7 @@ public class PieChart extends AbstractChartCustomGraphics<PieLayer> {
 	//            [labelsize=8]
 	//            [labelstyle=plain]
 	//            [minimumslice=5.0]
+	//            [neighborattribute=value]
 	//            [network=current]
 	//            [position=value]
 	//            [scale=0.90]
@@ -103,85 +95,97 @@ public class PieChart extends AbstractChartCustomGraphics<PieLayer> {
 	//            [sortslices=true]
 	//            [valuelist=value]
 	public PieChart(String input) {
-		Map<String, String> args = parseInput(input);
-		// This will populate the values, attributes, and labels lists
-		populateValues(args);
-
-		if (args.containsKey(COLORS)) {
-			if (attributes == null) 
-				colorList = convertInputToColor(args.get(COLORS), values);
-			else
-				colorString = args.get(COLORS);
-		}
+		this.spec = new PieChartSpec(parseInput(input));
+		this.layout = createLayout(spec);
+	}
 
-		if (args.containsKey(SORTSLICES))
-			sortSlices = getBooleanValue(args.get(SORTSLICES));
+	public PieChart(PieChartSpec spec, EnhancedGraphicsManager manager) {
+		super(manager);
+		this.spec = spec;
+		this.layout = createLayout(spec);
+	}
 
-		// Get our angular offset
-		if (args.containsKey(ARCSTART)) {
-			arcStart = getDoubleValue(args.get(ARCSTART));
-		}
-		
-		if(args.containsKey(ARCDIRECTION)) {
-			String direction = args.get(ARCDIRECTION).trim().toLowerCase();
-			
-			// By default it is counterclockwise, so we just look for some "clockwise" keywords
-			// All other values will be considered counterclockwise
-			isClockwise = direction.equals("clockwise") || direction.equals("cw") || direction.equals("clock");
-		}
-		
-		/* We only consider one attribute !
-		 * Actually, we need to be able to consider more than one attribute.  We have a use case where we use
-		 * the attributes to provide the gradient value, but the values option to provide the number of
-		 * slices.  In this case colors, attributes, and values must all have the same number of elements.
-		if(attributes != null && attributes.size()>1) {
-			attributes = Collections.singletonList(attributes.get(0));
-			logger.warn("piechart: Too many attributes, only the first one will be used.");
-		}
-		*/
+	// If the slices only come from the valuelist, they are the same for every
+	// node and are laid out once
+	private static ArcLayout createLayout(PieChartSpec spec) {
+		List<String> attributes = spec.getAttributes();
+		if (!spec.isValid() || (attributes != null && attributes.size() > 0) ||
+		    spec.isValueTemplate() || spec.getValues() == null || spec.getNeighborAttribute() != null)
+			return null;
+		return new ArcLayout(spec.getValues(), spec.getArcStart(), spec.isClockwise(), false);
 	}
 
-	public String toSerializableString() { return this.getIdentifier().toString()+","+displayName; }
+	public PieChartSpec getSpec() { return spec; }
 
 	// public Image getRenderedImage() { return null; }
 
-	public List<PieLayer> getLayers(CyNetworkView networkView, View<? extends CyIdentifiable> nodeView) { 
+	protected List<PieLayer> createLayers(CyNetworkView networkView, View<? extends CyIdentifiable> nodeView) { 
 		CyNetwork network = networkView.getModel();
 		if (!(nodeView.getModel() instanceof CyNode))
 				return null;
-		layers = new ArrayList<>();
+		if (!spec.isValid())
+			return null;
+		List<PieLayer> layers = new ArrayList<>();
 		CyNode node = (CyNode)nodeView.getModel();
 
+		CyRow row = network.getRow(node);
+		List<String> attributes = spec.getAttributes();
+		ValueVector values = spec.getValues(row);
+		List<String> labels = spec.getLabels(row);
+		List<Color> colorList = spec.getValueColors(values);
+
 		// Create all of our pie slices. Each slice becomes a layer
-		if (attributes != null && attributes.size() > 0) {
-			// We save if the user did not set any labels
-			// if the user do not give labels,
-			// the labels are inferred from the attributes
-			boolean noLabels = ((labels==null) || labels.isEmpty());
-			
+		if (spec.getNeighborAttribute() != null) {
+			// One slice for each category of the node's neighbors.  The counts are kept
+			// up to date as the network changes, so this doesn't depend on the degree
+			NeighborCounts counts = getNeighborCounts(network, spec.getNeighborAttribute());
+			if (counts == null) {
+				logger.error("piechart: no node column '"+spec.getNeighborAttribute()+"'");
+				return null;
+			}
+			if (counts.hasTooManyCategories()) {
+				logger.error("piechart: node column '"+spec.getNeighborAttribute()+"' has more than "+
+				             NeighborCounts.MAX_CATEGORIES+" categories");
+				return null;
+			}
+			values = counts.getCounts(node.getSUID());
+			if (labels != null && labels.isEmpty())
+				labels = counts.getCategories();
+			colorList = spec.getColors().getColors(values, false);
+			// The number of categories changes with the data, so a colorlist that
+			// doesn't have a color for each one is used over again from the start
+			if (colorList != null && !colorList.isEmpty() && colorList.size() != values.size()) {
+				List<Color> cycled = new ArrayList<Color>(values.size());
+				for (int i = 0; i < values.size(); i++)
+					cycled.add(colorList.get(i % colorList.size()));
+				colorList = cycled;
+			}
+		} else if (attributes != null && attributes.size() > 0) {
 			if (values == null || values.size() == 0) {
-				values = getDataFromAttributes (network, node, attributes, labels);
-				colorList = convertInputToColor(colorString, values);
+				values = getDataFromAttributes (network, node, attributes, spec);
+				colorList = spec.getColors().getColors(values, spec.hasRange());
 			} else {
 				boolean foundColors=false;
-				// System.out.println("Have both attributes and values");
 				// If we already have values, we must want to use the attributes to map our colors
-				List<Double>attrValues = getDataFromAttributes (network, node, attributes, labels);
-				if (colorString != null && colorString.indexOf(';') > 0) {
-					// System.out.println("Found semi-separated colors");
+				ValueVector attrValues = getDataFromAttributes (network, node, attributes, spec);
+				List<ColorSpec> attributeColors = spec.getAttributeColors();
+				if (attributeColors != null) {
 					colorList = new ArrayList<Color>();
-					String[] colors = colorString.split(";");
-					if (colors.length != attrValues.size()) {
+					if (attributeColors.size() != attrValues.size()) {
 							logger.error("piechart: number of colors must match the number of attributes");
 							return null;
 					}
 					int colorIndex = 0;
-					for (Double value: attrValues) {
-							if (value == null)
+					for (int i = 0; i < attrValues.size(); i++) {
+							if (attrValues.isMissing(i))
 								colorList.add(null);
 							else {
 								foundColors=true;
-								colorList.addAll(convertInputToColor(colors[colorIndex++], Collections.singletonList(value)));
+								ValueVector value = new ValueVector(1);
+								value.add(attrValues.get(i));
+								List<Color> colors = attributeColors.get(colorIndex++).getColors(value, spec.hasRange());
+								if (colors != null)
+									colorList.addAll(colors);
 							}
 					}
 					if (!foundColors) {
@@ -189,14 +193,13 @@ public class PieChart extends AbstractChartCustomGraphics<PieLayer> {
 						return null;
 					}
 				} else {
-					colorList = convertInputToColor(colorString, attrValues);
+					colorList = spec.getColors().getColors(attrValues, spec.hasRange());
 				}
 			}
 			
-			if(noLabels && attributes.size()==1) {
+			if(spec.isLabelsFromAttributes() && attributes.size()==1) {
 				// one attribute, it is a List (we don't want labels) or a single Double (we want labels)
-				CyRow nodeRow = network.getRow(node);
-				CyTable nodeTable = nodeRow.getTable();
+				CyTable nodeTable = row.getTable();
 				
 				if(nodeTable.getColumn(attributes.get(0)) != null
 						&& nodeTable.getColumn(attributes.get(0)).getType().equals(List.class)) {
@@ -210,7 +213,7 @@ public class PieChart extends AbstractChartCustomGraphics<PieLayer> {
 			}
 		}
 		
-		if (attributes == null && values == null) {
+		if (values == null) {
 			logger.error("piechart: no attribute nor values found");
 			return null;
 		}
@@ -220,7 +223,8 @@ public class PieChart extends AbstractChartCustomGraphics<PieLayer> {
 			return null;
 		}
 
-		values = convertData(values);
+		ArcLayout arcs = (layout != null) ? layout :
+		                 new ArcLayout(values, spec.getArcStart(), spec.isClockwise(), false);
 
 		if (labels != null && labels.size() > 0 &&
 		    (labels.size() != values.size() ||
@@ -233,30 +237,25 @@ public class PieChart extends AbstractChartCustomGraphics<PieLayer> {
 
 		List<PieLayer> labelList = new ArrayList<PieLayer>();
 
-		Font font = getFont();
-		int nSlices = values.size();
-		double arc = arcStart;
+		Font font = spec.getFont();
+		boolean isClockwise = spec.isClockwise();
+		int nSlices = arcs.size();
 		for (int slice = 0; slice < nSlices; slice++) {
+			int index = arcs.getIndex(slice);
 			String label = null;
 			if (labels != null && labels.size() > 0)
-				label = labels.get(slice);
-			if (values.get(slice) == 0.0) continue;
+				label = labels.get(index);
 
 			// Create the slice
-			PieLayer pl = new PieLayer(arc, values.get(slice), isClockwise, colorList.get(slice), borderWidth, borderColor);
-			if (pl == null) continue;
+			PieLayer pl = new PieLayer(arcs.getStart(slice), arcs.getExtent(slice), isClockwise, colorList.get(index), 
+			                           spec.getBorderWidth(), spec.getBorderColor());
 			layers.add(pl);
 
 			if (label != null && label.length() > 0) {
 				// Now, create the label
-				PieLayer labelLayer = new PieLayer(arc, values.get(slice), isClockwise, label, font, labelColor, labelWidth, labelSpacing);
-				if (labelLayer != null)
-					labelList.add(labelLayer);
-			}
-			if(isClockwise) {
-				arc -= values.get(slice).doubleValue();
-			} else {
-				arc += values.get(slice).doubleValue();
+				PieLayer labelLayer = new PieLayer(arcs.getStart(slice), arcs.getExtent(slice), isClockwise, label, font, 
+				                                   spec.getLabelColor(), spec.getLabelWidth(), spec.getLabelSpacing());
+				labelList.add(labelLayer);
 			}
 		}
 
@@ -267,20 +266,4 @@ public class PieChart extends AbstractChartCustomGraphics<PieLayer> {
 		return layers; 
 	}
 
-	private List<Double> convertData(List<Double> values) {
-		double totalSize = 0.0;
-		int nValues = values.size();
-		for (Double d: values) {
-			totalSize += d.doubleValue();
-		}
-
-		// Now we have an array of doubles, but we need to convert them
-		// to degree offsets
-		for (int index = 0; index < nValues; index++) {
-			double v = values.get(index).doubleValue();
-			values.set(index, v*360.0/totalSize);
-		}
-		return values;
-	}
-
 }
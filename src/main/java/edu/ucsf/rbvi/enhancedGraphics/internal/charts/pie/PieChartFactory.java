@@ -6,14 +6,31 @@ import org.cytoscape.view.presentation.customgraphics.CyCustomGraphics;
 import org.cytoscape.view.presentation.customgraphics.CyCustomGraphicsFactory;
 import org.cytoscape.view.presentation.customgraphics.CustomGraphicLayer;
 
-public class PieChartFactory implements CyCustomGraphicsFactory {
+import edu.ucsf.rbvi.enhancedGraphics.internal.EnhancedGraphicsManager;
+import edu.ucsf.rbvi.enhancedGraphics.internal.SpecCompiler;
+import edu.ucsf.rbvi.enhancedGraphics.internal.SpecInterner;
+import edu.ucsf.rbvi.enhancedGraphics.internal.parse.SerializedSpec;
+
+public class PieChartFactory implements CyCustomGraphicsFactory, SpecCompiler {
 	private static final Class<? extends CyCustomGraphics> TARGET_CLASS = PieChart.class;
 
-	public PieChartFactory() {
+	private final EnhancedGraphicsManager manager;
+	private final SpecInterner<PieChartSpec> interner;
+
+	public PieChartFactory(EnhancedGraphicsManager manager) {
+		this.manager = manager;
+		this.interner = manager.createInterner(getPrefix());
 	}
 
 	public CyCustomGraphics<PieLayer> getInstance(String input) {
-		return new PieChart(input);
+		PieChartSpec spec = interner.get(input);
+		if (spec == null)
+			spec = interner.intern(input, new PieChartSpec(manager.parseArguments(input)));
+		return new PieChart(spec, manager);
+	}
+
+	public PieChart compile(String input) {
+		return new PieChart(new PieChartSpec(manager.parseArguments(input)), manager);
 	}
 
 	public CyCustomGraphics<PieLayer> getInstance(URL input) { return null; }
@@ -22,7 +39,13 @@ public class PieChartFactory implements CyCustomGraphicsFactory {
 
 	public Class<? extends CyCustomGraphics> getSupportedClass() { return TARGET_CLASS; }
 
-	public CyCustomGraphics<PieLayer> parseSerializableString(String string) { return null; }
+	public CyCustomGraphics<PieLayer> parseSerializableString(String string) {
+		SerializedSpec serialized = SerializedSpec.parse(string);
+		if (serialized == null) return null;
+		PieChart chart = new PieChart(new PieChartSpec(serialized.getArguments()), manager);
+		serialized.restore(chart);
+		return chart;
+	}
 
 	public boolean supportsMime(String mimeType) { return false; }
 }
@@ -0,0 +1,158 @@
+package edu.ucsf.rbvi.enhancedGraphics.internal.charts.pie;
+
+import java.awt.Color;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import edu.ucsf.rbvi.enhancedGraphics.internal.NeighborCounts;
+
+import edu.ucsf.rbvi.enhancedGraphics.internal.charts.ChartSpec;
+import edu.ucsf.rbvi.enhancedGraphics.internal.charts.ColorSpec;
+import edu.ucsf.rbvi.enhancedGraphics.internal.charts.ValueVector;
+
+import static edu.ucsf.rbvi.enhancedGraphics.internal.charts.AbstractChartCustomGraphics.*;
+
+/**
+ * The compiled arguments for a pie chart:
+ * piechart:	[arcstart=0.0]
+ *       			[arcdirection=clockwise]
+ *       			[attributelist=value]
+ *            [colorlist=value]
+ *            [labelfont=value]
+ *            [labellist=value]
+ *            [labelsize=8]
+ *            [labelstyle=plain]
+ *            [neighborattribute=value]
+ *            [network=current]
+ *            [position=value]
+ *            [scale=0.90]
+ *            [showlabels=true]
+ *            [sortslices=true]
+ *            [valuelist=value]
+ */
+public class PieChartSpec extends ChartSpec {
+	private static final String COLORS = "colorlist";
+	private static final String SORTSLICES = "sortslices";
+	private static final String ARCSTART = "arcstart";
+	private static final String ARCDIRECTION = "arcdirection";
+	private static final String NEIGHBORATTRIBUTE = "neighborattribute";
+
+	private final ColorSpec colors;
+	private final List<ColorSpec> attributeColors;
+	private final List<Color> valueColors;
+	private final boolean nodeValueColors;
+	private final double arcStart;
+	private final boolean isClockwise;
+	private final boolean sortSlices;
+	private final String neighborAttribute;
+
+	public PieChartSpec(Map<String, String> args) {
+		super(args);
+
+		String colorString = args.get(COLORS);
+		colors = ColorSpec.compile(colorString);
+
+		// If we have both values and attributes, the attributes are used to map our colors,
+		// and the colors may be given as one semicolon-separated color spec per attribute
+		List<ColorSpec> perAttribute = null;
+		if (colorString != null && colorString.indexOf(';') > 0) {
+			perAttribute = new ArrayList<ColorSpec>();
+			for (String c: colorString.split(";"))
+				perAttribute.add(ColorSpec.compile(c));
+			perAttribute = Collections.unmodifiableList(perAttribute);
+		}
+		attributeColors = perAttribute;
+
+		// If we only have values, our colors never change
+		List<Color> vColors = null;
+		if (getAttributes() == null && colorString != null && getValues() != null) {
+			vColors = colors.getColors(getValues(), hasRange());
+			if (vColors != null)
+				vColors = Collections.unmodifiableList(vColors);
+		}
+		valueColors = vColors;
+		// If the values come from the node's columns, so do the colors
+		nodeValueColors = getAttributes() == null && colorString != null && isValueTemplate();
+
+		sortSlices = args.containsKey(SORTSLICES) ? getBooleanValue(args.get(SORTSLICES)) : true;
+
+		// Get our angular offset
+		arcStart = args.containsKey(ARCSTART) ? getDoubleValue(args.get(ARCSTART)) : 0.0;
+
+		boolean clockwise = false;
+		if(args.containsKey(ARCDIRECTION)) {
+			String direction = args.get(ARCDIRECTION).trim().toLowerCase();
+
+			// By default it is counterclockwise, so we just look for some "clockwise" keywords
+			// All other values will be considered counterclockwise
+			clockwise = direction.equals("clockwise") || direction.equals("cw") || direction.equals("clock");
+		}
+		isClockwise = clockwise;
+
+		// The slices can be the categories of the node's neighbors
+		String neighbor = args.get(NEIGHBORATTRIBUTE);
+		if (neighbor != null) {
+			neighbor = neighbor.trim();
+			if (neighbor.length() == 0) {
+				setError("Cannot parse "+NEIGHBORATTRIBUTE+" from input '"+args.get(NEIGHBORATTRIBUTE)+"'");
+				neighbor = null;
+			} else if (getAttributes() != null || getValues() != null || isValueTemplate() ||
+			           getMatrixFile() != null) {
+				setError(NEIGHBORATTRIBUTE+" can't be combined with "+ATTRIBUTELIST+", "+VALUES+" or "+MATRIXFILE);
+			}
+		}
+		neighborAttribute = neighbor;
+	}
+
+	/**
+ 	 * Return the node column whose categories are counted among each node's
+ 	 * neighbors to make the slices
+ 	 *
+ 	 * @return the column name, or null if the slices come from the values
+ 	 */
+	public String getNeighborAttribute() { return neighborAttribute; }
+
+	@Override
+	protected Set<String> addColumns(Set<String> names) {
+		super.addColumns(names);
+		if (neighborAttribute != null) names.add(NeighborCounts.getKey(neighborAttribute));
+		return names;
+	}
+
+	public ColorSpec getColors() { return colors; }
+
+	/**
+ 	 * Return the color specs for each attribute, if the colorlist was given as a
+ 	 * semicolon-separated list.
+ 	 *
+ 	 * @return the per-attribute colors, or null
+ 	 */
+	public List<ColorSpec> getAttributeColors() { return attributeColors; }
+
+	/**
+ 	 * Return the colors for a valuelist-only pie chart.
+ 	 *
+ 	 * @return the colors, or null if there are no static colors
+ 	 */
+	public List<Color> getValueColors() { return valueColors; }
+
+	/**
+ 	 * Return the colors for a valuelist-only pie chart, given a node's values.
+ 	 * These are only different from {@link #getValueColors()} when the valuelist
+ 	 * refers to columns.
+ 	 *
+ 	 * @param values the node's values
+ 	 * @return the colors, or null if there are no value colors
+ 	 */
+	public List<Color> getValueColors(ValueVector values) {
+		if (!nodeValueColors || values == null) return valueColors;
+		return colors.getColors(values, hasRange());
+	}
+	public double getArcStart() { return arcStart; }
+	public boolean isClockwise() { return isClockwise; }
+	public boolean isSortSlices() { return sortSlices; }
+}
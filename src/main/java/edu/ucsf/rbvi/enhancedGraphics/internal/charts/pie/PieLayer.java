@@ -55,7 +55,7 @@ import org.cytoscape.view.presentation.customgraphics.PaintedShape;
 
 import edu.ucsf.rbvi.enhancedGraphics.internal.charts.ViewUtils;
 
-public class PieLayer implements PaintedShape {
+public class PieLayer implements PaintedShape, Cloneable {
 	private boolean labelLayer = false;
 	private double arcStart;
 	private double arc;
@@ -125,10 +125,17 @@ public class PieLayer implements PaintedShape {
 		return bounds;
 	}
 
+	// Charts hand the same layers to the renderer until the node's data
+	// changes, so transform a copy and leave this layer as it was created
 	public PieLayer transform(AffineTransform xform) {
-		Shape newBounds = xform.createTransformedShape(bounds);
-		this.bounds = newBounds.getBounds2D();
-		return this;
+		PieLayer layer;
+		try {
+			layer = (PieLayer)clone();
+		} catch (CloneNotSupportedException e) {
+			throw new IllegalStateException(e);
+		}
+		layer.bounds = xform.createTransformedShape(bounds).getBounds2D();
+		return layer;
 	}
 
 	private Shape sliceShape() {
@@ -55,6 +55,7 @@ import org.cytoscape.model.CyNetwork;
 import org.cytoscape.view.model.CyNetworkView;
 import org.cytoscape.view.model.View;
 
+import edu.ucsf.rbvi.enhancedGraphics.internal.EnhancedGraphicsManager;
 import edu.ucsf.rbvi.enhancedGraphics.internal.charts.AbstractChartCustomGraphics;
 
 /**
@@ -64,36 +65,30 @@ import edu.ucsf.rbvi.enhancedGraphics.internal.charts.AbstractChartCustomGraphic
  * the named Java colors, hex RGB values, or hex RGBA values.
  */
 public class StripeChart extends AbstractChartCustomGraphics<StripeLayer> {
-	private static final String COLORS = "colorlist";
-
-	private List<Color> colorList = null;
-	private int labelSize = 4;
-	private String colorString = null;
+	private final StripeChartSpec spec;
 
 	// Parse the input string, which is always of the form:
 	// linechart:	[colorlist=value]
 	// 						[position=value]
 	// 						[scale=0.90]
 	public StripeChart(String input) {
-		Map<String, String> args = parseInput(input);
-		// This will populate the values, attributes, and labels lists
-		// populateValues(args);
+		this.spec = new StripeChartSpec(parseInput(input));
+	}
 
-		if (args.containsKey(COLORS)) {
-			if (attributes == null) 
-				colorList = convertInputToColor(args.get(COLORS), new ArrayList<Double>());
-			else
-				colorString = args.get(COLORS);
-		}
+	public StripeChart(StripeChartSpec spec, EnhancedGraphicsManager manager) {
+		super(manager);
+		this.spec = spec;
 	}
 
-	public String toSerializableString() { return this.getIdentifier().toString()+","+displayName; }
+	public StripeChartSpec getSpec() { return spec; }
 
 	@Override 
-	public List<StripeLayer> getLayers(CyNetworkView networkView, View nodeView) { 
-		CyNetwork network = networkView.getModel();
+	protected List<StripeLayer> createLayers(CyNetworkView networkView, View<? extends CyIdentifiable> nodeView) { 
+		if (!spec.isValid())
+			return null;
+		List<Color> colorList = spec.getColors();
 		int nStripes = colorList.size();
-		layers = new ArrayList<>();
+		List<StripeLayer> layers = new ArrayList<>();
 		for (int stripe = 0; stripe < nStripes; stripe++) {
 			Color color = colorList.get(stripe);
 
@@ -6,14 +6,31 @@ import org.cytoscape.view.presentation.customgraphics.CyCustomGraphics;
 import org.cytoscape.view.presentation.customgraphics.CyCustomGraphicsFactory;
 import org.cytoscape.view.presentation.customgraphics.CustomGraphicLayer;
 
-public class StripeChartFactory implements CyCustomGraphicsFactory {
+import edu.ucsf.rbvi.enhancedGraphics.internal.EnhancedGraphicsManager;
+import edu.ucsf.rbvi.enhancedGraphics.internal.SpecCompiler;
+import edu.ucsf.rbvi.enhancedGraphics.internal.SpecInterner;
+import edu.ucsf.rbvi.enhancedGraphics.internal.parse.SerializedSpec;
+
+public class StripeChartFactory implements CyCustomGraphicsFactory, SpecCompiler {
 	private static final Class<? extends CyCustomGraphics> TARGET_CLASS = StripeChart.class;
 
-	public StripeChartFactory() {
+	private final EnhancedGraphicsManager manager;
+	private final SpecInterner<StripeChartSpec> interner;
+
+	public StripeChartFactory(EnhancedGraphicsManager manager) {
+		this.manager = manager;
+		this.interner = manager.createInterner(getPrefix());
 	}
 
 	public CyCustomGraphics<StripeLayer> getInstance(String input) {
-		return new StripeChart(input);
+		StripeChartSpec spec = interner.get(input);
+		if (spec == null)
+			spec = interner.intern(input, new StripeChartSpec(manager.parseArguments(input)));
+		return new StripeChart(spec, manager);
+	}
+
+	public StripeChart compile(String input) {
+		return new StripeChart(new StripeChartSpec(manager.parseArguments(input)), manager);
 	}
 
 	public CyCustomGraphics<StripeLayer> getInstance(URL input) { return null; }
@@ -22,7 +39,13 @@ public class StripeChartFactory implements CyCustomGraphicsFactory {
 
 	public Class<? extends CyCustomGraphics> getSupportedClass() { return TARGET_CLASS; }
 
-	public CyCustomGraphics<StripeLayer> parseSerializableString(String string) { return null; }
+	public CyCustomGraphics<StripeLayer> parseSerializableString(String string) {
+		SerializedSpec serialized = SerializedSpec.parse(string);
+		if (serialized == null) return null;
+		StripeChart chart = new StripeChart(new StripeChartSpec(serialized.getArguments()), manager);
+		serialized.restore(chart);
+		return chart;
+	}
 
 	public boolean supportsMime(String mimeType) { return false; }
 }
@@ -0,0 +1,44 @@
+package edu.ucsf.rbvi.enhancedGraphics.internal.charts.stripe;
+
+import java.awt.Color;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import edu.ucsf.rbvi.enhancedGraphics.internal.charts.ChartSpec;
+import edu.ucsf.rbvi.enhancedGraphics.internal.charts.ColorSpec;
+import edu.ucsf.rbvi.enhancedGraphics.internal.charts.ValueVector;
+
+/**
+ * The compiled arguments for a stripe chart:
+ * stripechart:	[colorlist=value]
+ */
+public class StripeChartSpec extends ChartSpec {
+	private static final String COLORS = "colorlist";
+
+	private final List<Color> colors;
+	private final Map<String, String> arguments;
+
+	public StripeChartSpec(Map<String, String> args) {
+		// Stripes don't use any of the standard chart arguments
+		super(new HashMap<String, String>());
+		arguments = Collections.unmodifiableMap(new HashMap<String, String>(args));
+
+		List<Color> colorList = null;
+		if (args.containsKey(COLORS)) {
+			colorList = ColorSpec.compile(args.get(COLORS)).getColors(ValueVector.EMPTY, false);
+			if (colorList == null)
+				setError("stripechart: unable to parse colors from '"+args.get(COLORS)+"'");
+		} else {
+			setError("stripechart: no colors found");
+		}
+		colors = colorList == null ? null : Collections.unmodifiableList(colorList);
+	}
+
+	public List<Color> getColors() { return colors; }
+
+	@Override
+	public Map<String, String> getArguments() { return arguments; }
+}
@@ -7,13 +7,28 @@ import org.cytoscape.view.presentation.customgraphics.CyCustomGraphics;
 import org.cytoscape.view.presentation.customgraphics.CyCustomGraphicsFactory;
 import org.cytoscape.view.presentation.customgraphics.CustomGraphicLayer;
 
-public class LinearGradientCGFactory implements CyCustomGraphicsFactory <LinearGradientLayer> {
+import edu.ucsf.rbvi.enhancedGraphics.internal.EnhancedGraphicsManager;
+import edu.ucsf.rbvi.enhancedGraphics.internal.SpecCompiler;
+import edu.ucsf.rbvi.enhancedGraphics.internal.SpecInterner;
+import edu.ucsf.rbvi.enhancedGraphics.internal.parse.SerializedSpec;
+
+public class LinearGradientCGFactory implements CyCustomGraphicsFactory <LinearGradientLayer>, SpecCompiler {
 	private static final Class<? extends CyCustomGraphics> TARGET_CLASS = LinearGradientCustomGraphics.class;
 
-	public LinearGradientCGFactory() {
+	private final SpecInterner<LinearGradientCustomGraphics> interner;
+
+	public LinearGradientCGFactory(EnhancedGraphicsManager manager) {
+		this.interner = manager.createInterner(getPrefix());
 	}
 
 	public CyCustomGraphics<LinearGradientLayer> getInstance(String input) {
+		LinearGradientCustomGraphics gradient = interner.get(input);
+		if (gradient == null)
+			gradient = interner.intern(input, compile(input));
+		return new LinearGradientCustomGraphics(gradient);
+	}
+
+	public LinearGradientCustomGraphics compile(String input) {
 		return new LinearGradientCustomGraphics(input);
 	}
 
@@ -23,7 +38,13 @@ public class LinearGradientCGFactory implements CyCustomGraphicsFactory <LinearG
 
 	public Class<? extends CyCustomGraphics> getSupportedClass() { return TARGET_CLASS; }
 
-	public CyCustomGraphics<LinearGradientLayer> parseSerializableString(String string) { return null; }
+	public CyCustomGraphics<LinearGradientLayer> parseSerializableString(String string) {
+		SerializedSpec serialized = SerializedSpec.parse(string);
+		if (serialized == null) return null;
+		LinearGradientCustomGraphics gradient = new LinearGradientCustomGraphics(serialized.getArguments());
+		serialized.restore(gradient);
+		return gradient;
+	}
 
 	public boolean supportsMime(String mimeType) { return false; }
 }
@@ -10,6 +10,8 @@ import java.awt.geom.Rectangle2D;
 import java.awt.image.BufferedImage;
 
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 
@@ -19,13 +21,23 @@ import org.cytoscape.view.presentation.customgraphics.CyCustomGraphicsFactory;
 import org.cytoscape.view.presentation.customgraphics.CustomGraphicLayer;
 
 import edu.ucsf.rbvi.enhancedGraphics.internal.AbstractEnhancedCustomGraphics;
+import edu.ucsf.rbvi.enhancedGraphics.internal.parse.SerializedSpec;
+import edu.ucsf.rbvi.enhancedGraphics.internal.parse.SpecLexer;
 
 public class LinearGradientCustomGraphics extends AbstractEnhancedCustomGraphics<LinearGradientLayer> {
+	private final Map<String, String> arguments;
+	// The instance whose layers we share, which stays interned while we're used
+	private final LinearGradientCustomGraphics compiled;
 
 	// Parse the input string, which is always of the form:
 	// 	lingrad: start="x,y" end="x,y" stoplist="r,g,b,a,stop|r,g,b,a,stop|r,g,b,a,stop"
 	public LinearGradientCustomGraphics(String input) {
-		Map<String, String> inputMap = parseInput(input);
+		this(SpecLexer.parse(input));
+	}
+
+	public LinearGradientCustomGraphics(Map<String, String> inputMap) {
+		arguments = Collections.unmodifiableMap(new HashMap<String, String>(inputMap));
+		compiled = null;
 		Point2D start = new Point2D.Float(0.0f, 0.0f);
 		Point2D end = new Point2D.Float(1.0f, 0.0f);
 
@@ -37,21 +49,24 @@ public class LinearGradientCustomGraphics extends AbstractEnhancedCustomGraphics
 		if (inputMap.containsKey("start")) {
 			start = parsePoint(inputMap.get("start"));
 			if (start == null) {
-				logger.error("Not able to parse start point from '"+inputMap.get("start")+"'");
+				error = "Not able to parse start point from '"+inputMap.get("start")+"'";
+				logger.error(error);
 				return;
 			}
 		}
 		if (inputMap.containsKey("end")) {
 			end = parsePoint(inputMap.get("end"));
 			if (end == null) {
-				logger.error("Not able to parse end point from '"+inputMap.get("end")+"'");
+				error = "Not able to parse end point from '"+inputMap.get("end")+"'";
+				logger.error(error);
 				return;
 			}
 		}
 		if (inputMap.containsKey("stoplist")) {
 			nStops = parseStopList(inputMap.get("stoplist"), colorList, stopList);
 			if (nStops == 0) {
-				logger.error("Not able to stop list from '"+inputMap.get("stoplist")+"'");
+				error = "Not able to stop list from '"+inputMap.get("stoplist")+"'";
+				logger.error(error);
 				return;
 			}
 		}
@@ -59,7 +74,22 @@ public class LinearGradientCustomGraphics extends AbstractEnhancedCustomGraphics
 		layers.add(cg);
 	}
 
-	public String toSerializableString() { return this.getIdentifier().toString()+","+displayName; }
+	/**
+ 	 * Create a gradient that shares the layers compiled from a spec with
+ 	 * another, but has its own identifier, name and size
+ 	 *
+ 	 * @param compiled the gradient compiled from the spec
+ 	 */
+	public LinearGradientCustomGraphics(LinearGradientCustomGraphics compiled) {
+		this.compiled = (compiled.compiled == null) ? compiled : compiled.compiled;
+		arguments = compiled.arguments;
+		layers = compiled.layers;
+		error = compiled.error;
+	}
+
+	public String toSerializableString() {
+		return SerializedSpec.format(getIdentifier(), displayName, arguments);
+	}
 
 	public Image getRenderedImage() {
 		CustomGraphicLayer cg = layers.get(0);
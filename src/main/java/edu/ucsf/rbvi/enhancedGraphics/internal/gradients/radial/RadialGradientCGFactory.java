@@ -7,13 +7,28 @@ import org.cytoscape.view.presentation.customgraphics.CyCustomGraphics;
 import org.cytoscape.view.presentation.customgraphics.CyCustomGraphicsFactory;
 import org.cytoscape.view.presentation.customgraphics.CustomGraphicLayer;
 
-public class RadialGradientCGFactory implements CyCustomGraphicsFactory<RadialGradientLayer> {
+import edu.ucsf.rbvi.enhancedGraphics.internal.EnhancedGraphicsManager;
+import edu.ucsf.rbvi.enhancedGraphics.internal.SpecCompiler;
+import edu.ucsf.rbvi.enhancedGraphics.internal.SpecInterner;
+import edu.ucsf.rbvi.enhancedGraphics.internal.parse.SerializedSpec;
+
+public class RadialGradientCGFactory implements CyCustomGraphicsFactory<RadialGradientLayer>, SpecCompiler {
 	private static final Class<? extends CyCustomGraphics> TARGET_CLASS = RadialGradientCustomGraphics.class;
 
-	public RadialGradientCGFactory() {
+	private final SpecInterner<RadialGradientCustomGraphics> interner;
+
+	public RadialGradientCGFactory(EnhancedGraphicsManager manager) {
+		this.interner = manager.createInterner(getPrefix());
 	}
 
 	public CyCustomGraphics<RadialGradientLayer> getInstance(String input) {
+		RadialGradientCustomGraphics gradient = interner.get(input);
+		if (gradient == null)
+			gradient = interner.intern(input, compile(input));
+		return new RadialGradientCustomGraphics(gradient);
+	}
+
+	public RadialGradientCustomGraphics compile(String input) {
 		return new RadialGradientCustomGraphics(input);
 	}
 
@@ -23,7 +38,13 @@ public class RadialGradientCGFactory implements CyCustomGraphicsFactory<RadialGr
 
 	public Class<? extends CyCustomGraphics> getSupportedClass() { return TARGET_CLASS; }
 
-	public CyCustomGraphics<RadialGradientLayer> parseSerializableString(String string) { return null; }
+	public CyCustomGraphics<RadialGradientLayer> parseSerializableString(String string) {
+		SerializedSpec serialized = SerializedSpec.parse(string);
+		if (serialized == null) return null;
+		RadialGradientCustomGraphics gradient = new RadialGradientCustomGraphics(serialized.getArguments());
+		serialized.restore(gradient);
+		return gradient;
+	}
 
 	public boolean supportsMime(String mimeType) { return false; }
 }
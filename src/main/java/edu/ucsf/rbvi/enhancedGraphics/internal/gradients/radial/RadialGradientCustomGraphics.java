@@ -12,6 +12,8 @@ import java.awt.geom.Rectangle2D;
 import java.awt.image.BufferedImage;
 
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 
@@ -20,13 +22,23 @@ import org.cytoscape.view.presentation.customgraphics.CyCustomGraphicsFactory;
 import org.cytoscape.view.presentation.customgraphics.CustomGraphicLayer;
 
 import edu.ucsf.rbvi.enhancedGraphics.internal.AbstractEnhancedCustomGraphics;
+import edu.ucsf.rbvi.enhancedGraphics.internal.parse.SerializedSpec;
+import edu.ucsf.rbvi.enhancedGraphics.internal.parse.SpecLexer;
 
 public class RadialGradientCustomGraphics extends AbstractEnhancedCustomGraphics <RadialGradientLayer> {
+	private final Map<String, String> arguments;
+	// The instance whose layers we share, which stays interned while we're used
+	private final RadialGradientCustomGraphics compiled;
 
 	// Parse the input string, which is always of the form:
 	// 	radgrad: center="x,y" radius="r" stoplist="r,g,b,a,stop|r,g,b,a,stop|r,g,b,a,stop"
 	public RadialGradientCustomGraphics(String input) {
-		Map<String, String> inputMap = parseInput(input);
+		this(SpecLexer.parse(input));
+	}
+
+	public RadialGradientCustomGraphics(Map<String, String> inputMap) {
+		arguments = Collections.unmodifiableMap(new HashMap<String, String>(inputMap));
+		compiled = null;
 		Point2D center = new Point2D.Float(0.5f, 0.5f);
 		float radius = 1.0f;
 
@@ -38,7 +50,8 @@ public class RadialGradientCustomGraphics extends AbstractEnhancedCustomGraphics
 		if (inputMap.containsKey("center")) {
 			center = parsePoint(inputMap.get("center"));
 			if (center == null) {
-				logger.error("Not able to parse center point from '"+inputMap.get("center")+"'");
+				error = "Not able to parse center point from '"+inputMap.get("center")+"'";
+				logger.error(error);
 				return;
 			}
 		}
@@ -46,14 +59,16 @@ public class RadialGradientCustomGraphics extends AbstractEnhancedCustomGraphics
 			try {
 				radius = Float.parseFloat(inputMap.get("radius"));
 			} catch (NumberFormatException nfe) {
-				logger.error("Not able to parse radius from '"+inputMap.get("radius")+"'");
+				error = "Not able to parse radius from '"+inputMap.get("radius")+"'";
+				logger.error(error);
 				return;
 			}
 		}
 		if (inputMap.containsKey("stoplist")) {
 			nStops = parseStopList(inputMap.get("stoplist"), colorList, stopList);
 			if (nStops == 0) {
-				logger.error("Not able to stop list from '"+inputMap.get("stoplist")+"'");
+				error = "Not able to stop list from '"+inputMap.get("stoplist")+"'";
+				logger.error(error);
 				return;
 			}
 		}
@@ -61,7 +76,22 @@ public class RadialGradientCustomGraphics extends AbstractEnhancedCustomGraphics
 		layers.add(cg);
 	}
 
-	public String toSerializableString() { return this.getIdentifier().toString()+","+displayName; }
+	/**
+ 	 * Create a gradient that shares the layers compiled from a spec with
+ 	 * another, but has its own identifier, name and size
+ 	 *
+ 	 * @param compiled the gradient compiled from the spec
+ 	 */
+	public RadialGradientCustomGraphics(RadialGradientCustomGraphics compiled) {
+		this.compiled = (compiled.compiled == null) ? compiled : compiled.compiled;
+		arguments = compiled.arguments;
+		layers = compiled.layers;
+		error = compiled.error;
+	}
+
+	public String toSerializableString() {
+		return SerializedSpec.format(getIdentifier(), displayName, arguments);
+	}
 
 	public Image getRenderedImage() {
 		CustomGraphicLayer cg = layers.get(0);
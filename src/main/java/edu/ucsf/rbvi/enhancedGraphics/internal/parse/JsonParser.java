@@ -0,0 +1,208 @@
+package edu.ucsf.rbvi.enhancedGraphics.internal.parse;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.text.ParseException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A small JSON parser for the files <code>enhancedGraphics load</code> reads,
+ * so that we don't need a JSON library.  Objects become LinkedHashMaps (in
+ * the order of the file), arrays become ArrayLists, numbers become Doubles,
+ * and true, false and null become Boolean.TRUE, Boolean.FALSE and null.  The
+ * input is read one character at a time through a buffer, and numbers are
+ * decoded by {@link NumberListParser}, as they are in a valuelist.
+ */
+public class JsonParser {
+	// Deeper nesting than this is an error rather than a stack overflow
+	private static final int MAX_DEPTH = 256;
+
+	private final Reader reader;
+	private final char[] buffer = new char[1 << 16];
+	private int length = 0;
+	private int position = 0;
+	// The offset in the input of the start of the buffer, and the current line
+	private int offset = 0;
+	private int line = 1;
+	private int depth = 0;
+	private final StringBuilder token = new StringBuilder();
+
+	private JsonParser(Reader reader) {
+		this.reader = reader;
+	}
+
+	/**
+ 	 * Parse a JSON value
+ 	 *
+ 	 * @param reader the input, which isn't closed
+ 	 * @return the value
+ 	 * @throws ParseException if the input isn't JSON.  The error offset is the
+ 	 * position of the error in the input, and the message gives its line.
+ 	 * @throws IOException if the input can't be read
+ 	 */
+	public static Object parse(Reader reader) throws ParseException, IOException {
+		JsonParser parser = new JsonParser(reader);
+		Object value = parser.readValue();
+		if (parser.skipWhitespace() >= 0)
+			throw parser.error("Unexpected '"+(char)parser.peek()+"' after the end of the value");
+		return value;
+	}
+
+	private Object readValue() throws ParseException, IOException {
+		int c = skipWhitespace();
+		if ((c == '{' || c == '[') && depth >= MAX_DEPTH)
+			throw error("Nested more than "+MAX_DEPTH+" deep");
+		switch (c) {
+			case '{': return readObject();
+			case '[': return readArray();
+			case '"': next(); return readString();
+			case 't': readWord("true"); return Boolean.TRUE;
+			case 'f': readWord("false"); return Boolean.FALSE;
+			case 'n': readWord("null"); return null;
+			case -1: throw error("Unexpected end of input");
+			default:
+				if (c == '-' || (c >= '0' && c <= '9'))
+					return readNumber();
+				throw error("Unexpected '"+(char)c+"'");
+		}
+	}
+
+	private Map<String, Object> readObject() throws ParseException, IOException {
+		next();
+		Map<String, Object> object = new LinkedHashMap<String, Object>();
+		if (skipWhitespace() == '}') {
+			next();
+			return object;
+		}
+		depth++;
+		while (true) {
+			if (skipWhitespace() != '"')
+				throw error("Expected a quoted name");
+			next();
+			String name = readString();
+			if (skipWhitespace() != ':')
+				throw error("Expected ':' after \""+name+"\"");
+			next();
+			object.put(name, readValue());
+			int c = skipWhitespace();
+			next();
+			if (c == '}') {
+				depth--;
+				return object;
+			}
+			if (c != ',') throw error("Expected ',' or '}'");
+		}
+	}
+
+	private List<Object> readArray() throws ParseException, IOException {
+		next();
+		List<Object> array = new ArrayList<Object>();
+		if (skipWhitespace() == ']') {
+			next();
+			return array;
+		}
+		depth++;
+		while (true) {
+			array.add(readValue());
+			int c = skipWhitespace();
+			next();
+			if (c == ']') {
+				depth--;
+				return array;
+			}
+			if (c != ',') throw error("Expected ',' or ']'");
+		}
+	}
+
+	// Read a string whose opening quote has been read
+	private String readString() throws ParseException, IOException {
+		token.setLength(0);
+		while (true) {
+			int c = next();
+			if (c == '"') return token.toString();
+			if (c == -1 || c == '\n') throw error("Unterminated string");
+			if (c != '\\') {
+				token.append((char)c);
+				continue;
+			}
+			c = next();
+			switch (c) {
+				case '"': case '\\': case '/': token.append((char)c); break;
+				case 'b': token.append('\b'); break;
+				case 'f': token.append('\f'); break;
+				case 'n': token.append('\n'); break;
+				case 'r': token.append('\r'); break;
+				case 't': token.append('\t'); break;
+				case 'u':
+					int code = 0;
+					for (int i = 0; i < 4; i++) {
+						int digit = Character.digit(next(), 16);
+						if (digit < 0) throw error("Invalid \\u escape");
+						code = code*16 + digit;
+					}
+					token.append((char)code);
+					break;
+				default: throw error("Invalid escape");
+			}
+		}
+	}
+
+	private Double readNumber() throws ParseException, IOException {
+		int start = offset+position;
+		token.setLength(0);
+		int c = peek();
+		while (c == '-' || c == '+' || c == '.' || c == 'e' || c == 'E' || (c >= '0' && c <= '9')) {
+			token.append((char)next());
+			c = peek();
+		}
+		try {
+			String number = token.toString();
+			return NumberListParser.parseNumber(number, 0, number.length());
+		} catch (ParseException e) {
+			throw new ParseException("Invalid number '"+token+"' on line "+line, start);
+		}
+	}
+
+	private void readWord(String word) throws ParseException, IOException {
+		for (int i = 0; i < word.length(); i++) {
+			if (next() != word.charAt(i))
+				throw error("Expected '"+word+"'");
+		}
+	}
+
+	// Skip whitespace and return the next character without reading it
+	private int skipWhitespace() throws IOException {
+		int c = peek();
+		while (c == ' ' || c == '\t' || c == '\n' || c == '\r') {
+			next();
+			c = peek();
+		}
+		return c;
+	}
+
+	private int peek() throws IOException {
+		if (position == length && !fill()) return -1;
+		return buffer[position];
+	}
+
+	private int next() throws IOException {
+		if (position == length && !fill()) return -1;
+		char c = buffer[position++];
+		if (c == '\n') line++;
+		return c;
+	}
+
+	private boolean fill() throws IOException {
+		offset += length;
+		position = 0;
+		length = Math.max(0, reader.read(buffer));
+		return length > 0;
+	}
+
+	private ParseException error(String message) {
+		return new ParseException(message+" on line "+line, offset+position);
+	}
+}
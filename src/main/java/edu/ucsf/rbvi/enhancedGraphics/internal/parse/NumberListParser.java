@@ -0,0 +1,246 @@
+package edu.ucsf.rbvi.enhancedGraphics.internal.parse;
+
+import java.text.ParseException;
+
+/**
+ * Streaming parser for comma-separated lists of numbers, e.g. the
+ * <code>valuelist</code> argument.  The numbers are written straight into
+ * a <code>double[]</code> without splitting the input into Strings or boxing
+ * each element.
+ *
+ * The accepted syntax is the same as <code>input.split(",")</code> followed by
+ * <code>Double.valueOf</code> on each element, which is what we used to do:
+ * <ul>
+ * <li>each element may be surrounded by whitespace</li>
+ * <li>trailing empty elements are ignored, any other empty element is an error</li>
+ * <li>anything Double.valueOf accepts (NaN, Infinity, hex, type suffixes) is
+ *     accepted</li>
+ * </ul>
+ * Simple decimal numbers are decoded directly.  Anything else falls back to
+ * Double.parseDouble on that element.
+ */
+public class NumberListParser {
+	// Powers of ten that are exactly representable as doubles
+	private static final double[] POWERS_OF_TEN = {
+		1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10,
+		1e11, 1e12, 1e13, 1e14, 1e15, 1e16, 1e17, 1e18, 1e19, 1e20,
+		1e21, 1e22
+	};
+	// Largest mantissa we can convert exactly
+	private static final long MAX_EXACT = 1L << 53;
+	// Stop accumulating digits before we can overflow a long
+	private static final long MAX_MANTISSA = (Long.MAX_VALUE - 9) / 10;
+
+	private static final String RING_SEPARATOR = "],[";
+
+	private NumberListParser() {}
+
+	/**
+ 	 * Parse a comma-separated list of numbers.
+ 	 *
+ 	 * @param input the list
+ 	 * @return the values
+ 	 * @throws ParseException if an element isn't a number, or there are more
+ 	 * than {@link ParseLimits#getMaxListLength()} elements.  The error offset
+ 	 * is the position of the bad element in the input.
+ 	 */
+	public static double[] parse(String input) throws ParseException {
+		return parse(input, 0, input.length());
+	}
+
+	/**
+ 	 * Parse a comma-separated list of numbers from part of a string.
+ 	 *
+ 	 * @param input the string containing the list
+ 	 * @param start the index of the first character of the list
+ 	 * @param end the index after the last character of the list
+ 	 * @return the values
+ 	 * @throws ParseException if an element isn't a number.  The error offset
+ 	 * is relative to the start of input, not to start.
+ 	 */
+	public static double[] parse(String input, int start, int end) throws ParseException {
+		if (start == end)
+			throw new ParseException("Empty value at position "+start, start);
+
+		// Trailing empty elements are dropped
+		while (end > start && input.charAt(end-1) == ',')
+			end--;
+		if (end == start)
+			return new double[0];
+
+		int count = 1;
+		for (int i = start; i < end; i++) {
+			if (input.charAt(i) == ',') count++;
+		}
+		checkLength(count, start);
+
+		double[] values = new double[count];
+		int index = 0;
+		int tokenStart = start;
+		for (int i = start; i <= end; i++) {
+			if (i == end || input.charAt(i) == ',') {
+				values[index++] = parseNumber(input, tokenStart, i);
+				tokenStart = i+1;
+			}
+		}
+		return values;
+	}
+
+	/**
+ 	 * Return true if the input is a list of lists, e.g.: <code>[1,2,3],[4,5,6]</code>
+ 	 *
+ 	 * @param input the list
+ 	 * @return true if the list is nested
+ 	 */
+	public static boolean isNested(String input) {
+		return input != null && input.startsWith("[") && input.endsWith("]");
+	}
+
+	/**
+ 	 * Parse a list of lists of numbers, e.g.: <code>[1,2,3],[4,5,6]</code>.  As
+ 	 * with the simple list, trailing empty lists are dropped.
+ 	 *
+ 	 * @param input the list, including the outer brackets
+ 	 * @return the values for each of the inner lists
+ 	 * @throws ParseException if an element isn't a number, or the input isn't
+ 	 * a nested list
+ 	 */
+	public static double[][] parseNested(String input) throws ParseException {
+		if (!isNested(input))
+			throw new ParseException("Nested list must start with '[' and end with ']'", 0);
+
+		int start = 1;
+		int end = input.length()-1;
+		if (end < start)
+			throw new ParseException("Nested list must start with '[' and end with ']'", 0);
+
+		// Find the separators, and the end of the last list that isn't empty.
+		// Trailing empty lists are dropped.
+		int count = 1;
+		int lastContent = end;
+		int sep = input.indexOf(RING_SEPARATOR, start);
+		while (sep >= 0 && sep + RING_SEPARATOR.length() <= end) {
+			count++;
+			sep = input.indexOf(RING_SEPARATOR, sep + RING_SEPARATOR.length());
+		}
+		checkLength(count, 0);
+		while (lastContent-RING_SEPARATOR.length() >= start &&
+		       input.startsWith(RING_SEPARATOR, lastContent-RING_SEPARATOR.length()))
+			lastContent -= RING_SEPARATOR.length();
+
+		double[][] rings = new double[count][];
+		int nRings = 0;
+		int ringStart = start;
+		for (int ring = 0; ring < count; ring++) {
+			int ringEnd = (ring == count-1) ? end : input.indexOf(RING_SEPARATOR, ringStart);
+			if (count > 1 && ringStart >= lastContent)
+				break;
+			rings[nRings++] = parse(input, ringStart, ringEnd);
+			ringStart = ringEnd + RING_SEPARATOR.length();
+		}
+
+		if (nRings == count)
+			return rings;
+		double[][] trimmed = new double[nRings][];
+		System.arraycopy(rings, 0, trimmed, 0, nRings);
+		return trimmed;
+	}
+
+	private static void checkLength(int count, int position) throws ParseException {
+		if (count > ParseLimits.getMaxListLength())
+			throw new ParseException("List has "+count+" elements, more than the limit of "+
+			                         ParseLimits.getMaxListLength(), position);
+	}
+
+	/**
+ 	 * Parse a single number from part of a string.  Leading and trailing
+ 	 * whitespace is ignored.
+ 	 *
+ 	 * @param input the string containing the number
+ 	 * @param start the index of the first character of the number
+ 	 * @param end the index after the last character of the number
+ 	 * @return the value
+ 	 * @throws ParseException if this isn't a number
+ 	 */
+	public static double parseNumber(String input, int start, int end) throws ParseException {
+		int tokenStart = start;
+		while (start < end && input.charAt(start) <= ' ')
+			start++;
+		while (end > start && input.charAt(end-1) <= ' ')
+			end--;
+		if (start == end)
+			throw new ParseException("Empty value at position "+tokenStart, tokenStart);
+
+		int i = start;
+		boolean negative = false;
+		char c = input.charAt(i);
+		if (c == '-' || c == '+') {
+			negative = (c == '-');
+			i++;
+		}
+
+		long mantissa = 0;
+		int exponent = 0;
+		int digits = 0;
+		boolean exact = true;
+		boolean seenPoint = false;
+		for (; i < end; i++) {
+			c = input.charAt(i);
+			if (c >= '0' && c <= '9') {
+				digits++;
+				if (mantissa <= MAX_MANTISSA) {
+					mantissa = mantissa*10 + (c - '0');
+					if (seenPoint) exponent--;
+				} else {
+					// Too many significant digits for the fast path
+					exact = false;
+					if (!seenPoint) exponent++;
+				}
+			} else if (c == '.' && !seenPoint) {
+				seenPoint = true;
+			} else {
+				break;
+			}
+		}
+
+		if (digits > 0 && i < end && (c == 'e' || c == 'E')) {
+			i++;
+			boolean negExp = false;
+			if (i < end && (input.charAt(i) == '-' || input.charAt(i) == '+')) {
+				negExp = (input.charAt(i) == '-');
+				i++;
+			}
+			int expDigits = 0;
+			int exp = 0;
+			for (; i < end; i++) {
+				c = input.charAt(i);
+				if (c < '0' || c > '9') break;
+				expDigits++;
+				if (exp < 100000) exp = exp*10 + (c - '0');
+			}
+			if (expDigits == 0) exact = false;
+			exponent += negExp ? -exp : exp;
+		}
+
+		// Anything else (NaN, Infinity, hex, 1.0f, bad input) is left to Double
+		if (i != end || digits == 0 || !exact || mantissa > MAX_EXACT ||
+		    exponent < -22 || exponent > 22)
+			return slowParse(input, start, end);
+
+		double value = (double)mantissa;
+		if (exponent < 0)
+			value = value / POWERS_OF_TEN[-exponent];
+		else if (exponent > 0)
+			value = value * POWERS_OF_TEN[exponent];
+		return negative ? -value : value;
+	}
+
+	private static double slowParse(String input, int start, int end) throws ParseException {
+		String token = input.substring(start, end);
+		try {
+			return Double.parseDouble(token);
+		} catch (NumberFormatException e) {
+			throw new ParseException("Invalid number '"+token+"' at position "+start, start);
+		}
+	}
+}
@@ -0,0 +1,53 @@
+package edu.ucsf.rbvi.enhancedGraphics.internal.parse;
+
+/**
+ * Limits on the size of the input we are willing to parse.  Specs usually come
+ * from imported tables, so one bad row mustn't be able to stall style
+ * application.  All of our parsers are linear in the length of their input;
+ * these limits bound the input itself:
+ * <ul>
+ * <li>the maximum length of a spec string, in characters.  Longer specs
+ *     are treated as if they had no arguments.</li>
+ * <li>the maximum number of elements in a list of numbers, or of
+ *     <code>[..]</code> lists in a nested list.  Longer lists are a parse error.</li>
+ * </ul>
+ * The limits can be changed with the <code>enhancedGraphics set limits</code>
+ * command.
+ */
+public class ParseLimits {
+	public static final int DEFAULT_MAX_SPEC_LENGTH = 1024*1024;
+	public static final int DEFAULT_MAX_LIST_LENGTH = 100000;
+
+	private static volatile int maxSpecLength = DEFAULT_MAX_SPEC_LENGTH;
+	private static volatile int maxListLength = DEFAULT_MAX_LIST_LENGTH;
+
+	private ParseLimits() {}
+
+	public static int getMaxSpecLength() { return maxSpecLength; }
+
+	public static int getMaxListLength() { return maxListLength; }
+
+	/**
+ 	 * Set the maximum length of a spec string
+ 	 *
+ 	 * @param length the maximum number of characters
+ 	 * @throws IllegalArgumentException if the length isn't positive
+ 	 */
+	public static void setMaxSpecLength(int length) {
+		if (length <= 0)
+			throw new IllegalArgumentException("The maximum spec length must be positive");
+		maxSpecLength = length;
+	}
+
+	/**
+ 	 * Set the maximum number of elements in a list
+ 	 *
+ 	 * @param length the maximum number of elements
+ 	 * @throws IllegalArgumentException if the length isn't positive
+ 	 */
+	public static void setMaxListLength(int length) {
+		if (length <= 0)
+			throw new IllegalArgumentException("The maximum list length must be positive");
+		maxListLength = length;
+	}
+}
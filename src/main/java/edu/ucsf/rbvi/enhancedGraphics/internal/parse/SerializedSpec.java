@@ -0,0 +1,185 @@
+package edu.ucsf.rbvi.enhancedGraphics.internal.parse;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.cytoscape.view.presentation.customgraphics.CyCustomGraphics;
+
+/**
+ * The form of a custom graphics that is saved in a session.  Rather than the
+ * original spec string, we save the compiled argument map (with any presets
+ * already merged in), so a session can be restored without running the spec
+ * lexer and without the presets that were defined when it was saved.
+ *
+ * The format is:
+ * <code>id,displayName,eg1,key=length:value;key=length:value...</code>
+ * where <code>eg1</code> is the format version and length is the number of
+ * characters in the value.  Values are copied out by length, so they are never
+ * escaped or scanned.  The characters <code>% , ; = :</code> and control characters
+ * in the display name and the keys are escaped as <code>%XX</code>.  Anything
+ * before the id (e.g. a class name added by Cytoscape) is ignored.  Arguments
+ * are written in sorted order, so the same spec always serializes to the same
+ * string.
+ */
+public class SerializedSpec {
+	public static final String VERSION = "eg1";
+
+	private static final char FIELD_SEPARATOR = ',';
+	private static final char ARGUMENT_SEPARATOR = ';';
+	private static final char KEY_SEPARATOR = '=';
+	private static final char LENGTH_SEPARATOR = ':';
+	private static final char ESCAPE = '%';
+	private static final char[] HEX = "0123456789ABCDEF".toCharArray();
+
+	private final Long identifier;
+	private final String displayName;
+	private final Map<String, String> arguments;
+
+	private SerializedSpec(Long identifier, String displayName, Map<String, String> arguments) {
+		this.identifier = identifier;
+		this.displayName = displayName;
+		this.arguments = arguments;
+	}
+
+	public Long getIdentifier() { return identifier; }
+
+	public String getDisplayName() { return displayName; }
+
+	/**
+ 	 * Return the arguments, which can be given straight to a spec constructor
+ 	 *
+ 	 * @return the (modifiable) argument map
+ 	 */
+	public Map<String, String> getArguments() { return arguments; }
+
+	/**
+ 	 * Set the identifier and display name of a restored custom graphics
+ 	 *
+ 	 * @param cg the custom graphics created from our arguments
+ 	 */
+	public void restore(CyCustomGraphics<?> cg) {
+		if (identifier != null)
+			cg.setIdentifier(identifier);
+		if (displayName != null)
+			cg.setDisplayName(displayName);
+	}
+
+	/**
+ 	 * Write the serialized form of a custom graphics
+ 	 *
+ 	 * @param identifier the id of the custom graphics (may be null)
+ 	 * @param displayName the display name (may be null)
+ 	 * @param arguments the compiled arguments
+ 	 * @return the serialized string
+ 	 */
+	public static String format(Long identifier, String displayName, Map<String, String> arguments) {
+		List<String> keys = new ArrayList<String>(arguments.keySet());
+		Collections.sort(keys);
+
+		StringBuilder sb = new StringBuilder(64);
+		if (identifier != null)
+			sb.append(identifier);
+		sb.append(FIELD_SEPARATOR);
+		if (displayName != null)
+			escape(displayName, sb);
+		sb.append(FIELD_SEPARATOR).append(VERSION).append(FIELD_SEPARATOR);
+		boolean first = true;
+		for (String key: keys) {
+			String value = arguments.get(key);
+			if (value == null) continue;
+			if (!first) sb.append(ARGUMENT_SEPARATOR);
+			escape(key, sb);
+			sb.append(KEY_SEPARATOR).append(value.length()).append(LENGTH_SEPARATOR).append(value);
+			first = false;
+		}
+		return sb.toString();
+	}
+
+	/**
+ 	 * Read the serialized form of a custom graphics
+ 	 *
+ 	 * @param input the serialized string
+ 	 * @return the serialized spec, or null if the input wasn't written by
+ 	 * {@link #format} (e.g. it's from an older version of enhancedGraphics)
+ 	 */
+	public static SerializedSpec parse(String input) {
+		if (input == null || input.length() > ParseLimits.getMaxSpecLength()) return null;
+
+		// The id and display name never contain commas, and the version comes
+		// before any of the arguments, so the first ",eg1," is the version
+		int versionStart = input.indexOf(FIELD_SEPARATOR+VERSION+FIELD_SEPARATOR);
+		if (versionStart < 0) return null;
+		int nameStart = input.lastIndexOf(FIELD_SEPARATOR, versionStart-1);
+		if (nameStart < 0) return null;
+		int idStart = input.lastIndexOf(FIELD_SEPARATOR, nameStart-1)+1;
+
+		Long identifier = null;
+		if (nameStart > idStart) {
+			try {
+				identifier = Long.valueOf(input.substring(idStart, nameStart));
+			} catch (NumberFormatException e) {
+				return null;
+			}
+		}
+		String displayName = (versionStart > nameStart+1) ? unescape(input, nameStart+1, versionStart) : null;
+
+		Map<String, String> arguments = new HashMap<String, String>();
+		int pos = versionStart+VERSION.length()+2;
+		int length = input.length();
+		while (pos < length) {
+			int eq = input.indexOf(KEY_SEPARATOR, pos);
+			int colon = (eq < 0) ? -1 : input.indexOf(LENGTH_SEPARATOR, eq+1);
+			if (colon < 0) return null;
+			int valueLength = 0;
+			for (int i = eq+1; i < colon; i++) {
+				char c = input.charAt(i);
+				if (c < '0' || c > '9' || valueLength > length) return null;
+				valueLength = valueLength*10 + (c - '0');
+			}
+			int end = colon+1+valueLength;
+			if (eq+1 == colon || end > length || (end < length && input.charAt(end) != ARGUMENT_SEPARATOR))
+				return null;
+			arguments.put(unescape(input, pos, eq), input.substring(colon+1, end));
+			pos = end+1;
+		}
+		return new SerializedSpec(identifier, displayName, arguments);
+	}
+
+	private static void escape(String s, StringBuilder sb) {
+		int length = s.length();
+		for (int i = 0; i < length; i++) {
+			char c = s.charAt(i);
+			if (c == ESCAPE || c == FIELD_SEPARATOR || c == ARGUMENT_SEPARATOR ||
+			    c == KEY_SEPARATOR || c == LENGTH_SEPARATOR || c < ' ') {
+				sb.append(ESCAPE).append(HEX[(c >> 4) & 0xf]).append(HEX[c & 0xf]);
+			} else {
+				sb.append(c);
+			}
+		}
+	}
+
+	private static String unescape(String s, int start, int end) {
+		int esc = s.indexOf(ESCAPE, start);
+		if (esc < 0 || esc >= end)
+			return s.substring(start, end);
+
+		StringBuilder sb = new StringBuilder(end-start);
+		for (int i = start; i < end; i++) {
+			char c = s.charAt(i);
+			if (c == ESCAPE && i+2 < end) {
+				int hi = Character.digit(s.charAt(i+1), 16);
+				int lo = Character.digit(s.charAt(i+2), 16);
+				if (hi >= 0 && lo >= 0) {
+					sb.append((char)((hi << 4) | lo));
+					i += 2;
+					continue;
+				}
+			}
+			sb.append(c);
+		}
+		return sb.toString();
+	}
+}
@@ -0,0 +1,198 @@
+package edu.ucsf.rbvi.enhancedGraphics.internal.parse;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Single-pass lexer for the argument part of a graphics specification, e.g.
+ * <code>attributelist="a,b" colorlist=red,blue showlabels=false</code>.
+ *
+ * This replaces the StreamTokenizer we used to run over a StringReader for
+ * each spec.  The token rules are kept identical to the way we had configured
+ * StreamTokenizer so that existing specs parse exactly as before:
+ * <ul>
+ * <li>words are runs of letters, digits, '/', '_', '-', '.' and characters
+ *     at or above U+00A0</li>
+ * <li>"double" and 'single' quoted strings end at the matching quote or at
+ *     the end of the line, and support the usual backslash escapes</li>
+ * <li>a word or double quoted string following '=' becomes the value of the
+ *     closest preceding unpaired word or string</li>
+ * <li>everything else is ignored</li>
+ * </ul>
+ * Both the lexer and {@link #splitList} make a single pass over their input
+ * and only copy the parts they return, so their time is linear in the input.
+ */
+public class SpecLexer {
+	private static final int WORD = -2;
+	private static final int EOF = -1;
+
+	private final String input;
+	private final int length;
+	private int pos = 0;
+	private String sval = null;
+
+	private SpecLexer(String input) {
+		this.input = input;
+		this.length = input.length();
+	}
+
+	/**
+ 	 * Parse the key=value pairs out of a specification.
+ 	 *
+ 	 * @param input the specification string
+ 	 * @return the map of keys to (unquoted) values.  An empty map is returned
+ 	 * if the input can't be parsed or is longer than {@link ParseLimits#getMaxSpecLength()}.
+ 	 */
+	public static Map<String, String> parse(String input) {
+		Map<String,String> settings = new HashMap<String,String>();
+		if (input == null || input.length() > ParseLimits.getMaxSpecLength()) return settings;
+
+		SpecLexer lexer = new SpecLexer(input);
+		// Most specs are just key=value pairs, so we almost never need this
+		List<String> pending = null;
+		String last = null;
+		int token;
+		while ((token = lexer.nextToken()) != EOF) {
+			if (token == '=') {
+				token = lexer.nextToken();
+				if (token == WORD || token == '"') {
+					if (last == null)
+						return new HashMap<String,String>();
+					settings.put(last, lexer.sval);
+					last = (pending == null || pending.isEmpty()) ? null : pending.remove(pending.size()-1);
+				}
+			} else if (token == WORD || token == '"') {
+				if (last != null) {
+					if (pending == null) pending = new ArrayList<String>();
+					pending.add(last);
+				}
+				last = lexer.sval;
+			}
+		}
+		return settings;
+	}
+
+	/**
+ 	 * Split a comma-separated list.  A backslash escapes the character that
+ 	 * follows it, and a comma that directly follows a backslash is never
+ 	 * treated as a separator.  Empty elements (including trailing ones) are
+ 	 * preserved.
+ 	 *
+ 	 * @param input the list
+ 	 * @return the unescaped list elements
+ 	 */
+	public static List<String> splitList(String input) {
+		List<String> result = new ArrayList<String>();
+		if (input == null || input.length() == 0)
+			return result;
+
+		int length = input.length();
+		int start = 0;
+		boolean escaped = false;
+		StringBuilder sb = null;
+		char prev = 0;
+		for (int i = 0; i < length; i++) {
+			char c = input.charAt(i);
+			if (c == ',' && prev != '\\') {
+				result.add(sb == null ? input.substring(start, i) : sb.toString());
+				sb = null;
+				start = i+1;
+				escaped = false;
+			} else if (c == '\\' && !escaped) {
+				// Drop the escape character, which means we need our own copy
+				if (sb == null)
+					sb = new StringBuilder(i-start+16).append(input, start, i);
+				escaped = true;
+			} else {
+				if (sb != null) sb.append(c);
+				escaped = false;
+			}
+			prev = c;
+		}
+		result.add(sb == null ? input.substring(start) : sb.toString());
+		return result;
+	}
+
+	private static boolean isWordChar(char c) {
+		return (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z') || (c >= '0' && c <= '9') ||
+		       c == '/' || c == '_' || c == '-' || c == '.' || c >= '\u00a0';
+	}
+
+	private int nextToken() {
+		sval = null;
+		while (pos < length && input.charAt(pos) <= ' ')
+			pos++;
+		if (pos >= length)
+			return EOF;
+
+		char c = input.charAt(pos);
+		if (isWordChar(c)) {
+			int start = pos;
+			while (pos < length && isWordChar(input.charAt(pos)))
+				pos++;
+			sval = input.substring(start, pos);
+			return WORD;
+		}
+
+		pos++;
+		if (c == '"' || c == '\'')
+			sval = readQuoted(c);
+		return c;
+	}
+
+	// Read a quoted string.  On entry, pos points just past the opening quote.
+	private String readQuoted(char quote) {
+		int start = pos;
+		StringBuilder sb = null;
+		while (pos < length) {
+			char c = input.charAt(pos);
+			if (c == quote) {
+				String value = (sb == null) ? input.substring(start, pos) : sb.toString();
+				pos++;
+				return value;
+			}
+			if (c == '\n' || c == '\r')
+				break;
+
+			if (c != '\\') {
+				if (sb != null) sb.append(c);
+				pos++;
+				continue;
+			}
+
+			if (sb == null)
+				sb = new StringBuilder(pos-start+16).append(input, start, pos);
+			pos++;
+			if (pos >= length)
+				break;
+			c = input.charAt(pos++);
+			if (c >= '0' && c <= '7') {
+				// Octal escape: up to three digits, the first of which must be 0-3 for three
+				int value = c - '0';
+				if (pos < length && input.charAt(pos) >= '0' && input.charAt(pos) <= '7') {
+					value = (value << 3) + (input.charAt(pos++) - '0');
+					if (c <= '3' && pos < length && input.charAt(pos) >= '0' && input.charAt(pos) <= '7')
+						value = (value << 3) + (input.charAt(pos++) - '0');
+				}
+				sb.append((char)value);
+				continue;
+			}
+			switch (c) {
+				case 'a': c = 0x7; break;
+				case 'b': c = '\b'; break;
+				case 'f': c = 0xC; break;
+				case 'n': c = '\n'; break;
+				case 'r': c = '\r'; break;
+				case 't': c = '\t'; break;
+				case 'v': c = 0xB; break;
+				default: break;
+			}
+			sb.append(c);
+		}
+
+		// Unterminated string: take everything up to the end of the line
+		return (sb == null) ? input.substring(start, pos) : sb.toString();
+	}
+}
@@ -0,0 +1,148 @@
+package edu.ucsf.rbvi.enhancedGraphics.internal.parse;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.cytoscape.model.CyRow;
+
+/**
+ * A spec argument that refers to node columns, e.g.
+ * <code>valuelist="${colA},${colB}"</code> or <code>label="${name}"</code>.
+ * The template is split into literal text and column references once, when
+ * the spec is compiled, and is filled in from a row each time a node is drawn.
+ * This lets every node share the same spec string (and so the same compiled
+ * spec) even though the values or labels differ from node to node.
+ *
+ * A column reference is <code>${</code> followed by the column name and
+ * <code>}</code>.  Any other <code>$</code> is taken literally.  List columns
+ * are expanded into a comma-separated list.
+ */
+public class SpecTemplate {
+	private static final String OPEN = "${";
+	private static final char CLOSE = '}';
+
+	private final String template;
+	// Literal text between the column references.  There is always one more
+	// literal than there are columns (either of them may be empty).
+	private final String[] literals;
+	private final String[] columns;
+
+	private SpecTemplate(String template, List<String> literals, List<String> columns) {
+		this.template = template;
+		this.literals = literals.toArray(new String[literals.size()]);
+		this.columns = columns.toArray(new String[columns.size()]);
+	}
+
+	/**
+ 	 * Return true if the input refers to any columns
+ 	 *
+ 	 * @param input the argument value (may be null)
+ 	 * @return true if this is a template
+ 	 */
+	public static boolean isTemplate(String input) {
+		if (input == null) return false;
+		int open = input.indexOf(OPEN);
+		while (open >= 0) {
+			int close = input.indexOf(CLOSE, open+OPEN.length());
+			if (close < 0) return false;
+			if (close > open+OPEN.length()) return true;
+			open = input.indexOf(OPEN, close+1);
+		}
+		return false;
+	}
+
+	/**
+ 	 * Compile a template.
+ 	 *
+ 	 * @param input the argument value
+ 	 * @return the template, or null if the input doesn't refer to any columns
+ 	 */
+	public static SpecTemplate compile(String input) {
+		if (!isTemplate(input)) return null;
+
+		List<String> literals = new ArrayList<String>();
+		List<String> columns = new ArrayList<String>();
+		int pos = 0;
+		int length = input.length();
+		StringBuilder literal = new StringBuilder();
+		while (pos < length) {
+			int open = input.indexOf(OPEN, pos);
+			int close = (open < 0) ? -1 : input.indexOf(CLOSE, open+OPEN.length());
+			if (open < 0 || close < 0) {
+				literal.append(input, pos, length);
+				break;
+			}
+			literal.append(input, pos, open);
+			if (close == open+OPEN.length()) {
+				// "${}" isn't a column reference
+				literal.append(input, open, close+1);
+			} else {
+				literals.add(literal.toString());
+				literal.setLength(0);
+				columns.add(input.substring(open+OPEN.length(), close));
+			}
+			pos = close+1;
+		}
+		literals.add(literal.toString());
+		return new SpecTemplate(input, literals, columns);
+	}
+
+	/**
+ 	 * Return the names of the columns this template refers to
+ 	 *
+ 	 * @return the column names
+ 	 */
+	public List<String> getColumns() {
+		List<String> names = new ArrayList<String>(columns.length);
+		for (String c: columns)
+			names.add(c);
+		return names;
+	}
+
+	/**
+ 	 * Fill in the template from a row.
+ 	 *
+ 	 * @param row the row to get the column values from (may be null)
+ 	 * @param missing the text to use for a column that is missing or has no value
+ 	 * @return the resolved string
+ 	 */
+	public String resolve(CyRow row, String missing) {
+		StringBuilder sb = new StringBuilder(template.length()+16*columns.length);
+		for (int i = 0; i < columns.length; i++) {
+			sb.append(literals[i]);
+			Object value = (row == null) ? null : row.getRaw(columns[i]);
+			if (value == null) {
+				sb.append(missing);
+			} else if (value instanceof List) {
+				boolean first = true;
+				for (Object v: (List<?>)value) {
+					if (!first) sb.append(',');
+					sb.append(v == null ? missing : v);
+					first = false;
+				}
+			} else {
+				sb.append(value);
+			}
+		}
+		sb.append(literals[columns.length]);
+		return sb.toString();
+	}
+
+	/**
+ 	 * Return true if the template is just a list of column references, e.g.
+ 	 * <code>${colA},${colB}</code>: the literal text is only commas and whitespace
+ 	 *
+ 	 * @return true if this template is a list of columns
+ 	 */
+	public boolean isColumnList() {
+		for (String literal: literals) {
+			for (int i = 0; i < literal.length(); i++) {
+				char c = literal.charAt(i);
+				if (c != ',' && c > ' ') return false;
+			}
+		}
+		return true;
+	}
+
+	public String toString() { return template; }
+}
@@ -0,0 +1,457 @@
+package edu.ucsf.rbvi.enhancedGraphics.internal.parse;
+
+import java.text.ParseException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.cytoscape.model.CyRow;
+
+/**
+ * A comma-separated list of arithmetic expressions over node columns, e.g.
+ * <code>valuelist="log2(colA/colB),colC*2"</code>.  This saves users from
+ * adding derived columns to the table just to chart them.
+ *
+ * The list is compiled once, when the spec is compiled, into a tree of
+ * nodes that operate on doubles.  Each referenced column is given an index,
+ * so evaluating the list for a node reads each column once into a
+ * <code>double[]</code> and walks the trees without any lookups or boxing.
+ *
+ * The syntax is:
+ * <ul>
+ * <li>numbers, in the same form as in a list of values</li>
+ * <li>column names: either a name made of letters, digits, '_' and '.' that
+ *     doesn't start with a digit, or any name as <code>${name}</code></li>
+ * <li>the operators <code>+ - * / ^</code> (power) and unary minus, with the
+ *     usual precedence, and parentheses</li>
+ * <li>the functions <code>abs exp log log2 log10 sqrt</code> of one argument and
+ *     <code>min max pow</code> of two</li>
+ * </ul>
+ * A column that is missing, empty or not numeric has the value NaN.
+ */
+public class ValueExpression {
+	private final String expression;
+	private final String[] columns;
+	private final Node[] values;
+
+	private ValueExpression(String expression, List<String> columns, List<Node> values) {
+		this.expression = expression;
+		this.columns = columns.toArray(new String[columns.size()]);
+		this.values = values.toArray(new Node[values.size()]);
+	}
+
+	/**
+ 	 * Compile a list of expressions
+ 	 *
+ 	 * @param input the list
+ 	 * @return the compiled list
+ 	 * @throws ParseException if the list isn't a valid list of expressions
+ 	 */
+	public static ValueExpression compile(String input) throws ParseException {
+		Compiler compiler = new Compiler(input);
+		List<Node> values = compiler.compileList();
+		return new ValueExpression(input, compiler.columns, values);
+	}
+
+	/**
+ 	 * Return true if a list uses anything only an expression can: an operator,
+ 	 * parentheses (including function calls) or a <code>${name}</code> column
+ 	 * reference.  A list of bare words such as <code>1,two,3</code> is more
+ 	 * likely a mistyped list of values than a list of column names, so it
+ 	 * shouldn't be compiled as an expression.
+ 	 *
+ 	 * @param input the list
+ 	 * @return true if the list should be compiled as expressions
+ 	 */
+	public static boolean isExpression(String input) {
+		if (input == null) return false;
+		if (input.indexOf("${") >= 0) return true;
+		// The index of the last character that wasn't whitespace
+		int last = -1;
+		for (int i = 0; i < input.length(); i++) {
+			char c = input.charAt(i);
+			if (c <= ' ') continue;
+			switch (c) {
+				case '*': case '/': case '^': case '(': case ')':
+					return true;
+				case '+': case '-':
+					// A sign is only an operator if it follows an operand
+					if (last >= 0 && endsOperand(input, last)) return true;
+					break;
+				default:
+					break;
+			}
+			last = i;
+		}
+		return false;
+	}
+
+	// Return true if the character at end ends a column name or a number,
+	// and isn't the 'e' of an exponent such as 1e-5
+	private static boolean endsOperand(String input, int end) {
+		char c = input.charAt(end);
+		if (c == ')') return true;
+		if (!Compiler.isNamePart(c)) return false;
+		if (c != 'e' && c != 'E') return true;
+		int start = end-1;
+		boolean digits = false;
+		while (start >= 0 && ((input.charAt(start) >= '0' && input.charAt(start) <= '9') || input.charAt(start) == '.')) {
+			if (input.charAt(start) != '.') digits = true;
+			start--;
+		}
+		return !digits || (start >= 0 && Compiler.isNamePart(input.charAt(start)));
+	}
+
+	/**
+ 	 * Return the names of the columns the expressions refer to
+ 	 *
+ 	 * @return the column names
+ 	 */
+	public List<String> getColumns() {
+		List<String> names = new ArrayList<String>(columns.length);
+		for (String c: columns)
+			names.add(c);
+		return names;
+	}
+
+	/**
+ 	 * Return the number of values (expressions) in the list
+ 	 *
+ 	 * @return the number of values
+ 	 */
+	public int size() { return values.length; }
+
+	/**
+ 	 * Evaluate the expressions for a row
+ 	 *
+ 	 * @param row the row to get the column values from (may be null)
+ 	 * @return the values
+ 	 */
+	public double[] evaluate(CyRow row) {
+		double[] columnValues = new double[columns.length];
+		for (int i = 0; i < columns.length; i++) {
+			Object value = (row == null) ? null : row.getRaw(columns[i]);
+			columnValues[i] = (value instanceof Number) ? ((Number)value).doubleValue() : Double.NaN;
+		}
+		return evaluate(columnValues);
+	}
+
+	/**
+ 	 * Evaluate the expressions given the values of the columns
+ 	 *
+ 	 * @param columnValues the value of each column, in the order of {@link #getColumns()}
+ 	 * @return the values
+ 	 */
+	public double[] evaluate(double[] columnValues) {
+		double[] result = new double[values.length];
+		for (int i = 0; i < values.length; i++)
+			result[i] = values[i].evaluate(columnValues);
+		return result;
+	}
+
+	public String toString() { return expression; }
+
+	/*
+	 * The compiled tree
+	 */
+	private static abstract class Node {
+		// The height of the tree under (and including) this node
+		final int height;
+		Node(int height) { this.height = height; }
+		abstract double evaluate(double[] columns);
+	}
+
+	private static final class Constant extends Node {
+		final double value;
+		Constant(double value) { super(1); this.value = value; }
+		double evaluate(double[] columns) { return value; }
+	}
+
+	private static final class Column extends Node {
+		final int index;
+		Column(int index) { super(1); this.index = index; }
+		double evaluate(double[] columns) { return columns[index]; }
+	}
+
+	private static final class Negate extends Node {
+		final Node arg;
+		Negate(Node arg) { super(arg.height+1); this.arg = arg; }
+		double evaluate(double[] columns) { return -arg.evaluate(columns); }
+	}
+
+	private static final class Add extends Node {
+		final Node left, right;
+		Add(Node left, Node right) { super(Math.max(left.height, right.height)+1); this.left = left; this.right = right; }
+		double evaluate(double[] columns) { return left.evaluate(columns) + right.evaluate(columns); }
+	}
+
+	private static final class Subtract extends Node {
+		final Node left, right;
+		Subtract(Node left, Node right) { super(Math.max(left.height, right.height)+1); this.left = left; this.right = right; }
+		double evaluate(double[] columns) { return left.evaluate(columns) - right.evaluate(columns); }
+	}
+
+	private static final class Multiply extends Node {
+		final Node left, right;
+		Multiply(Node left, Node right) { super(Math.max(left.height, right.height)+1); this.left = left; this.right = right; }
+		double evaluate(double[] columns) { return left.evaluate(columns) * right.evaluate(columns); }
+	}
+
+	private static final class Divide extends Node {
+		final Node left, right;
+		Divide(Node left, Node right) { super(Math.max(left.height, right.height)+1); this.left = left; this.right = right; }
+		double evaluate(double[] columns) { return left.evaluate(columns) / right.evaluate(columns); }
+	}
+
+	private static final class Function extends Node {
+		static final int ABS = 0, EXP = 1, LOG = 2, LOG2 = 3, LOG10 = 4, SQRT = 5;
+		static final int MIN = 6, MAX = 7, POW = 8;
+		static final String[] NAMES = {"abs", "exp", "log", "log2", "log10", "sqrt", "min", "max", "pow"};
+		static final double LN2 = Math.log(2.0);
+
+		final int function;
+		final Node arg1, arg2;
+		Function(int function, Node arg1, Node arg2) {
+			super(Math.max(arg1.height, arg2 == null ? 0 : arg2.height)+1);
+			this.function = function;
+			this.arg1 = arg1;
+			this.arg2 = arg2;
+		}
+
+		static int lookup(String name) {
+			for (int i = 0; i < NAMES.length; i++)
+				if (NAMES[i].equals(name)) return i;
+			return -1;
+		}
+
+		static int getArgumentCount(int function) { return function >= MIN ? 2 : 1; }
+
+		double evaluate(double[] columns) {
+			double x = arg1.evaluate(columns);
+			switch (function) {
+				case ABS: return Math.abs(x);
+				case EXP: return Math.exp(x);
+				case LOG: return Math.log(x);
+				case LOG2: return Math.log(x)/LN2;
+				case LOG10: return Math.log10(x);
+				case SQRT: return Math.sqrt(x);
+				case MIN: return Math.min(x, arg2.evaluate(columns));
+				case MAX: return Math.max(x, arg2.evaluate(columns));
+				default: return Math.pow(x, arg2.evaluate(columns));
+			}
+		}
+	}
+
+	/*
+	 * Recursive descent compiler:
+	 *   list    := expr (',' expr)*
+	 *   expr    := term (('+'|'-') term)*
+	 *   term    := unary (('*'|'/') unary)*
+	 *   unary   := ('-'|'+') unary | power
+	 *   power   := primary ('^' unary)?
+	 *   primary := number | column | function '(' expr (',' expr)? ')' | '(' expr ')'
+	 */
+	private static class Compiler {
+		// Deeper expressions than this would risk overflowing the stack, either
+		// while we compile them or when they are evaluated
+		static final int MAX_DEPTH = 200;
+
+		final String input;
+		final int length;
+		final List<String> columns = new ArrayList<String>();
+		final Map<String, Integer> columnIndex = new HashMap<String, Integer>();
+		int pos = 0;
+		int depth = 0;
+
+		Compiler(String input) {
+			this.input = input;
+			this.length = input.length();
+		}
+
+		List<Node> compileList() throws ParseException {
+			List<Node> list = new ArrayList<Node>();
+			list.add(expr());
+			while (peek() == ',') {
+				pos++;
+				// Trailing empty elements are ignored, as in a list of values
+				if (peek() == 0) break;
+				if (list.size() == ParseLimits.getMaxListLength())
+					throw error("List has more than "+ParseLimits.getMaxListLength()+" elements");
+				list.add(expr());
+			}
+			if (peek() != 0)
+				throw error("Unexpected '"+input.charAt(pos)+"'");
+			return list;
+		}
+
+		Node expr() throws ParseException {
+			Node node = term();
+			while (true) {
+				char c = peek();
+				if (c == '+') {
+					pos++;
+					node = check(new Add(node, term()));
+				} else if (c == '-') {
+					pos++;
+					node = check(new Subtract(node, term()));
+				} else {
+					return node;
+				}
+			}
+		}
+
+		Node term() throws ParseException {
+			Node node = unary();
+			while (true) {
+				char c = peek();
+				if (c == '*') {
+					pos++;
+					node = check(new Multiply(node, unary()));
+				} else if (c == '/') {
+					pos++;
+					node = check(new Divide(node, unary()));
+				} else {
+					return node;
+				}
+			}
+		}
+
+		// Everything that nests (parentheses, function arguments, unary
+		// operators and powers) passes through here
+		Node unary() throws ParseException {
+			if (++depth > MAX_DEPTH)
+				throw error("Expression is nested more than "+MAX_DEPTH+" deep");
+			try {
+				return signed();
+			} finally {
+				depth--;
+			}
+		}
+
+		Node signed() throws ParseException {
+			char c = peek();
+			if (c == '-') {
+				pos++;
+				Node arg = unary();
+				if (arg instanceof Constant)
+					return new Constant(-((Constant)arg).value);
+				return new Negate(arg);
+			}
+			if (c == '+') {
+				pos++;
+				return unary();
+			}
+			return power();
+		}
+
+		Node power() throws ParseException {
+			Node base = primary();
+			if (peek() != '^')
+				return base;
+			pos++;
+			return new Function(Function.POW, base, unary());
+		}
+
+		Node primary() throws ParseException {
+			char c = peek();
+			int start = pos;
+			if (c == '(') {
+				pos++;
+				Node node = expr();
+				expect(')');
+				return node;
+			}
+			if ((c >= '0' && c <= '9') || c == '.')
+				return number();
+			if (c == '$' && input.startsWith("${", pos)) {
+				int close = input.indexOf('}', pos+2);
+				if (close < 0 || close == pos+2)
+					throw error("Bad column reference");
+				pos = close+1;
+				return column(input.substring(start+2, close));
+			}
+			if (isNameStart(c)) {
+				while (pos < length && isNamePart(input.charAt(pos)))
+					pos++;
+				String name = input.substring(start, pos);
+				if (peek() != '(')
+					return column(name);
+
+				int function = Function.lookup(name);
+				if (function < 0)
+					throw new ParseException("Unknown function '"+name+"' at position "+start, start);
+				pos++;
+				Node arg1 = expr();
+				Node arg2 = null;
+				if (Function.getArgumentCount(function) == 2) {
+					expect(',');
+					arg2 = expr();
+				}
+				expect(')');
+				return new Function(function, arg1, arg2);
+			}
+			if (c == 0)
+				throw error("Missing value");
+			throw error("Unexpected '"+c+"'");
+		}
+
+		Node number() throws ParseException {
+			int start = pos;
+			while (pos < length && ((input.charAt(pos) >= '0' && input.charAt(pos) <= '9') || input.charAt(pos) == '.'))
+				pos++;
+			if (pos < length && (input.charAt(pos) == 'e' || input.charAt(pos) == 'E')) {
+				int exp = pos+1;
+				if (exp < length && (input.charAt(exp) == '+' || input.charAt(exp) == '-'))
+					exp++;
+				if (exp < length && input.charAt(exp) >= '0' && input.charAt(exp) <= '9') {
+					pos = exp;
+					while (pos < length && input.charAt(pos) >= '0' && input.charAt(pos) <= '9')
+						pos++;
+				}
+			}
+			return new Constant(NumberListParser.parseNumber(input, start, pos));
+		}
+
+		Node column(String name) {
+			Integer index = columnIndex.get(name);
+			if (index == null) {
+				index = columns.size();
+				columns.add(name);
+				columnIndex.put(name, index);
+			}
+			return new Column(index);
+		}
+
+		Node check(Node node) throws ParseException {
+			if (node.height > MAX_DEPTH)
+				throw error("Expression is nested more than "+MAX_DEPTH+" deep");
+			return node;
+		}
+
+		void expect(char c) throws ParseException {
+			if (peek() != c)
+				throw error("Expected '"+c+"'");
+			pos++;
+		}
+
+		// Skip whitespace and return the next character, or 0 at the end
+		char peek() {
+			while (pos < length && input.charAt(pos) <= ' ')
+				pos++;
+			return (pos < length) ? input.charAt(pos) : 0;
+		}
+
+		ParseException error(String message) {
+			return new ParseException(message+" at position "+pos, pos);
+		}
+
+		static boolean isNameStart(char c) {
+			return (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z') || c == '_';
+		}
+
+		static boolean isNamePart(char c) {
+			return isNameStart(c) || (c >= '0' && c <= '9') || c == '.';
+		}
+	}
+}
@@ -0,0 +1,53 @@
+package edu.ucsf.rbvi.enhancedGraphics.internal.tasks;
+
+import org.cytoscape.application.CyApplicationManager;
+import org.cytoscape.model.CyNetwork;
+import org.cytoscape.work.AbstractTask;
+import org.cytoscape.work.ObservableTask;
+import org.cytoscape.work.TaskMonitor;
+import org.cytoscape.work.Tunable;
+
+import edu.ucsf.rbvi.enhancedGraphics.internal.EnhancedGraphicsManager;
+import edu.ucsf.rbvi.enhancedGraphics.internal.OffHeapListStore;
+
+public class AddOffHeapTask extends AbstractTask implements ObservableTask {
+
+	@Tunable(description="Network whose node column to copy (default is the current network)")
+	public CyNetwork network = null;
+
+	@Tunable(description="Numeric list column to keep outside the heap")
+	public String column = null;
+
+	final CyApplicationManager appManager;
+	final EnhancedGraphicsManager manager;
+	String report = null;
+
+	public AddOffHeapTask(final CyApplicationManager appManager, final EnhancedGraphicsManager manager) {
+			this.appManager = appManager;
+			this.manager = manager;
+	}
+
+	public void run(TaskMonitor monitor) {
+		if (network == null)
+			network = appManager.getCurrentNetwork();
+		if (network == null)
+			throw new IllegalArgumentException("No network");
+		if (column == null || column.trim().length() == 0)
+			throw new IllegalArgumentException("A column must be provided");
+
+		monitor.setTitle("Copying column '"+column.trim()+"' outside the heap");
+		long start = System.nanoTime();
+		OffHeapListStore store = manager.addOffHeapStore(network.getDefaultNodeTable(), column.trim());
+		report = String.format("Copied %d rows of column '%s' (%.1f MB) outside the heap in %.2f seconds",
+		                       store.getRowCount(), store.getColumn(), store.getLiveBytes()/1048576.0,
+		                       (System.nanoTime()-start)/1e9);
+		monitor.showMessage(TaskMonitor.Level.INFO, report);
+	}
+
+	public <R> R getResults(Class<? extends R> type) {
+		if (type.equals(String.class)) {
+			return (R)report;
+		}
+		return null;
+	}
+}
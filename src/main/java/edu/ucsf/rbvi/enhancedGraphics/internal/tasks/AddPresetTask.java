@@ -0,0 +1,45 @@
+package edu.ucsf.rbvi.enhancedGraphics.internal.tasks;
+
+import java.util.Map;
+
+import org.cytoscape.work.AbstractTask;
+import org.cytoscape.work.ObservableTask;
+import org.cytoscape.work.TaskMonitor;
+import org.cytoscape.work.Tunable;
+
+import edu.ucsf.rbvi.enhancedGraphics.internal.EnhancedGraphicsManager;
+
+public class AddPresetTask extends AbstractTask implements ObservableTask {
+
+	@Tunable(description="Name of the preset")
+	public String name = null;
+
+	@Tunable(description="Arguments for the preset, e.g. colorlist=\"red,green\" arcstart=90")
+	public String arguments = null;
+
+	final EnhancedGraphicsManager manager;
+	Map<String, String> args = null;
+
+	public AddPresetTask(final EnhancedGraphicsManager manager) {
+			this.manager = manager;
+	}
+
+	public void run(TaskMonitor monitor) {
+		if (name == null || name.trim().length() == 0)
+			throw new IllegalArgumentException("A preset name must be provided");
+		if (arguments == null)
+			throw new IllegalArgumentException("Arguments for the preset must be provided");
+
+		args = manager.addPreset(name.trim(), arguments);
+		monitor.showMessage(TaskMonitor.Level.INFO, "Preset '"+name.trim()+"' has "+args.size()+" arguments");
+	}
+
+	public <R> R getResults(Class<? extends R> type) {
+		if (type.equals(String.class)) {
+			if (args == null) return null;
+			String response = "Preset "+name.trim()+": "+ListPresetsTask.formatArguments(args)+"\n";
+			return (R)response;
+		}
+		return null;
+	}
+}
@@ -0,0 +1,154 @@
+package edu.ucsf.rbvi.enhancedGraphics.internal.tasks;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.cytoscape.work.AbstractTask;
+import org.cytoscape.work.ObservableTask;
+import org.cytoscape.work.TaskMonitor;
+import org.cytoscape.work.Tunable;
+
+import edu.ucsf.rbvi.enhancedGraphics.internal.MatrixFile;
+
+/**
+ * Convert a delimited text matrix into a matrix file that charts can read
+ * with <code>matrixfile=</code>.  The first line holds the column names (its
+ * first cell is ignored), and every other line a row name followed by one
+ * value per column.  Empty cells, NA and NaN are missing values.  The matrix
+ * is streamed, so it doesn't need to fit in memory.
+ */
+public class ConvertMatrixTask extends AbstractTask implements ObservableTask {
+	@Tunable(description="Delimited text file to convert")
+	public File input = null;
+
+	@Tunable(description="Matrix file to write (default is the input with a "+MatrixFile.EXTENSION+" extension)")
+	public File output = null;
+
+	@Tunable(description="Delimiter between cells: a character, or 'tab' (default is ',')")
+	public String delimiter = ",";
+
+	@Tunable(description="Store values as doubles instead of floats")
+	public boolean doubles = false;
+
+	String report = null;
+
+	public ConvertMatrixTask() {
+	}
+
+	public void run(TaskMonitor monitor) throws Exception {
+		if (input == null)
+			throw new IllegalArgumentException("An input file must be provided");
+		if (!input.canRead())
+			throw new IllegalArgumentException("Can't read '"+input+"'");
+		if (output == null) {
+			String name = input.getName();
+			int dot = name.lastIndexOf('.');
+			if (dot > 0) name = name.substring(0, dot);
+			output = new File(input.getParentFile(), name+MatrixFile.EXTENSION);
+		}
+		char delim = ',';
+		if (delimiter != null && delimiter.equalsIgnoreCase("tab"))
+			delim = '\t';
+		else if (delimiter != null && delimiter.length() == 1)
+			delim = delimiter.charAt(0);
+		else if (delimiter != null && delimiter.length() > 0)
+			throw new IllegalArgumentException("The delimiter must be a single character or 'tab'");
+
+		monitor.setTitle("Converting '"+input.getName()+"' to a matrix file");
+		long start = System.nanoTime();
+		long length = Math.max(1L, input.length());
+		long read = 0L;
+
+		BufferedReader reader = new BufferedReader(new InputStreamReader(new FileInputStream(input), "UTF-8"),
+		                                           1 << 16);
+		MatrixFile.Writer writer = null;
+		try {
+			String line = reader.readLine();
+			if (line == null)
+				throw new IllegalArgumentException("'"+input+"' is empty");
+			read += line.length()+1;
+			List<String> header = split(line, delim);
+			List<String> columnNames = new ArrayList<String>(header.subList(1, header.size()));
+			writer = new MatrixFile.Writer(output, columnNames, doubles);
+
+			int lineNumber = 1;
+			double[] values = new double[columnNames.size()];
+			while ((line = reader.readLine()) != null && !cancelled) {
+				lineNumber++;
+				read += line.length()+1;
+				if (line.trim().length() == 0) continue;
+				List<String> cells = split(line, delim);
+				if (cells.size() != columnNames.size()+1)
+					throw new IllegalArgumentException("Line "+lineNumber+" has "+(cells.size()-1)+
+					                                   " values, but there are "+columnNames.size()+" columns");
+				for (int i = 0; i < values.length; i++)
+					values[i] = parseValue(cells.get(i+1), lineNumber);
+				writer.addRow(cells.get(0), values);
+				if (lineNumber % 1000 == 0)
+					monitor.setProgress((double)read/length);
+			}
+		} finally {
+			reader.close();
+			if (writer != null)
+				writer.close();
+		}
+		if (cancelled) {
+			output.delete();
+			return;
+		}
+
+		double seconds = (System.nanoTime()-start)/1e9;
+		report = String.format("Wrote %d rows and %d columns of %s to '%s' (%.1f MB) in %.2f seconds",
+		                       writer.getRowCount(), writer.getColumnCount(), doubles ? "doubles" : "floats",
+		                       output, output.length()/1048576.0, seconds);
+		monitor.showMessage(TaskMonitor.Level.INFO, report);
+	}
+
+	public <R> R getResults(Class<? extends R> type) {
+		if (type.equals(String.class)) {
+			return (R)report;
+		}
+		return null;
+	}
+
+	private static double parseValue(String cell, int lineNumber) {
+		String value = cell.trim();
+		if (value.length() == 0 || value.equalsIgnoreCase("NA") || value.equalsIgnoreCase("NaN"))
+			return Double.NaN;
+		try {
+			return Double.parseDouble(value);
+		} catch (NumberFormatException e) {
+			throw new IllegalArgumentException("Line "+lineNumber+" has a value that isn't a number: '"+cell+"'");
+		}
+	}
+
+	// Split a line into cells, removing the quotes around quoted cells
+	static List<String> split(String line, char delim) {
+		List<String> cells = new ArrayList<String>();
+		StringBuilder cell = new StringBuilder();
+		boolean quoted = false;
+		for (int i = 0; i < line.length(); i++) {
+			char c = line.charAt(i);
+			if (c == '"') {
+				if (quoted && i+1 < line.length() && line.charAt(i+1) == '"') {
+					cell.append('"');
+					i++;
+				} else {
+					quoted = !quoted;
+				}
+			} else if (c == delim && !quoted) {
+				cells.add(cell.toString());
+				cell.setLength(0);
+			} else {
+				cell.append(c);
+			}
+		}
+		cells.add(cell.toString());
+		return cells;
+	}
+}
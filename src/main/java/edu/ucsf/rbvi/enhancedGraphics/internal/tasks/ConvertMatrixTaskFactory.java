@@ -0,0 +1,18 @@
+package edu.ucsf.rbvi.enhancedGraphics.internal.tasks;
+
+import org.cytoscape.work.AbstractTaskFactory;
+import org.cytoscape.work.TaskIterator;
+
+public class ConvertMatrixTaskFactory extends AbstractTaskFactory {
+
+	public ConvertMatrixTaskFactory() {
+	}
+
+	public boolean isReady() {
+		return true;
+	}
+
+	public TaskIterator createTaskIterator() {
+		return new TaskIterator(new ConvertMatrixTask());
+	}
+}
@@ -0,0 +1,48 @@
+package edu.ucsf.rbvi.enhancedGraphics.internal.tasks;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+import org.cytoscape.work.AbstractTask;
+import org.cytoscape.work.ObservableTask;
+import org.cytoscape.work.TaskMonitor;
+
+import edu.ucsf.rbvi.enhancedGraphics.internal.EnhancedGraphicsManager;
+
+public class ListPresetsTask extends AbstractTask implements ObservableTask {
+
+	final EnhancedGraphicsManager manager;
+	public ListPresetsTask(final EnhancedGraphicsManager manager) {
+			this.manager = manager;
+	}
+
+	public void run(TaskMonitor monitor) {}
+
+	public <R> R getResults(Class<? extends R> type) {
+		if (type.equals(String.class)) {
+			String response = "Available presets: \n";
+			for (String name: manager.getPresetNames()) {
+				Map<String, String> args = manager.getPreset(name);
+				if (args == null) continue;
+				response += "    "+name+": "+formatArguments(args)+"\n";
+			}
+			return (R)response;
+		}
+		return null;
+	}
+
+	// Format the arguments the same way they would be written in a spec
+	static String formatArguments(Map<String, String> args) {
+		List<String> keys = new ArrayList<String>(args.keySet());
+		Collections.sort(keys);
+		StringBuilder sb = new StringBuilder();
+		for (String key: keys) {
+			if (sb.length() > 0) sb.append(' ');
+			String value = args.get(key).replace("\\", "\\\\").replace("\"", "\\\"");
+			sb.append(key).append("=\"").append(value).append('"');
+		}
+		return sb.toString();
+	}
+}
@@ -0,0 +1,22 @@
+package edu.ucsf.rbvi.enhancedGraphics.internal.tasks;
+
+import org.cytoscape.work.AbstractTaskFactory;
+import org.cytoscape.work.TaskIterator;
+
+import edu.ucsf.rbvi.enhancedGraphics.internal.EnhancedGraphicsManager;
+
+public class ListPresetsTaskFactory extends AbstractTaskFactory {
+
+	final EnhancedGraphicsManager manager;
+	public ListPresetsTaskFactory(final EnhancedGraphicsManager manager) {
+			this.manager = manager;
+	}
+
+	public boolean isReady() {
+		return true;
+	}
+
+	public TaskIterator createTaskIterator() {
+		return new TaskIterator(new ListPresetsTask(manager));
+	}
+}
@@ -0,0 +1,370 @@
+package edu.ucsf.rbvi.enhancedGraphics.internal.tasks;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.text.ParseException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.cytoscape.application.CyApplicationManager;
+import org.cytoscape.event.CyEventHelper;
+import org.cytoscape.model.CyColumn;
+import org.cytoscape.model.CyNetwork;
+import org.cytoscape.model.CyNode;
+import org.cytoscape.model.CyRow;
+import org.cytoscape.model.CyTable;
+import org.cytoscape.work.AbstractTask;
+import org.cytoscape.work.ObservableTask;
+import org.cytoscape.work.TaskMonitor;
+import org.cytoscape.work.Tunable;
+
+import edu.ucsf.rbvi.enhancedGraphics.internal.EnhancedGraphicsManager;
+import edu.ucsf.rbvi.enhancedGraphics.internal.parse.JsonParser;
+
+/**
+ * Load the values (and chart specs) of many nodes and columns from a file in
+ * one go, instead of setting one column at a time.  A JSON file is an object
+ * whose names are node names and whose values are objects of column values,
+ * e.g. <code>{"A": {"expr": [1.5, 2, -0.5], "pie": "piechart: ..."}}</code>;
+ * a CSV file has a header line of column names, and a line for each node
+ * with its name and then a cell for each column, where a list is written as
+ * <code>[1;2;3]</code> (or a quoted <code>"[1,2,3]"</code>).  Numbers become
+ * Double columns, lists of numbers List of Double columns, and anything else
+ * String columns, unless the column already exists, when the values are
+ * converted to its type.  Empty cells and nulls are left alone.
+ *
+ * The whole file is read and converted before anything is written, so a bad
+ * value doesn't leave the table half loaded.  The columns are then written
+ * with the manager in bulk mode, so that charts are made stale and drawn
+ * again once, rather than for every row.
+ */
+public class LoadTask extends AbstractTask implements ObservableTask {
+	@Tunable(description="JSON or CSV file of node names and their column values")
+	public File input = null;
+
+	@Tunable(description="Network whose node table to load into (default is the current network)")
+	public CyNetwork network = null;
+
+	@Tunable(description="Node column the names in the file are matched against (default is 'name')")
+	public String keyColumn = CyNetwork.NAME;
+
+	@Tunable(description="Format of the file: 'json' or 'csv' (default is from the file's extension)")
+	public String format = null;
+
+	@Tunable(description="Delimiter between CSV cells: a character, or 'tab' (default is ',')")
+	public String delimiter = ",";
+
+	final CyApplicationManager appManager;
+	final CyEventHelper eventHelper;
+	final EnhancedGraphicsManager manager;
+	String report = null;
+
+	public LoadTask(final CyApplicationManager appManager, final CyEventHelper eventHelper,
+	                final EnhancedGraphicsManager manager) {
+			this.appManager = appManager;
+			this.eventHelper = eventHelper;
+			this.manager = manager;
+	}
+
+	public void run(TaskMonitor monitor) throws Exception {
+		if (input == null)
+			throw new IllegalArgumentException("An input file must be provided");
+		if (!input.canRead())
+			throw new IllegalArgumentException("Can't read '"+input+"'");
+		if (network == null)
+			network = appManager.getCurrentNetwork();
+		if (network == null)
+			throw new IllegalArgumentException("No network");
+		CyTable table = network.getDefaultNodeTable();
+		if (keyColumn == null || table.getColumn(keyColumn) == null)
+			throw new IllegalArgumentException("The node table has no column '"+keyColumn+"'");
+		boolean json;
+		if (format != null && format.trim().length() > 0)
+			json = format.trim().equalsIgnoreCase("json");
+		else
+			json = input.getName().toLowerCase().endsWith(".json");
+		if (!json && format != null && format.trim().length() > 0 && !format.trim().equalsIgnoreCase("csv"))
+			throw new IllegalArgumentException("The format must be 'json' or 'csv'");
+
+		monitor.setTitle("Loading '"+input.getName()+"' into "+network);
+		long start = System.nanoTime();
+		Map<String, Map<String, Object>> nodes = json ? readJson() : readCsv();
+		long parsed = System.nanoTime();
+
+		// Find the rows, and convert the values of each column to its type
+		Map<String, CyRow> rows = new HashMap<String, CyRow>();
+		for (CyNode node: network.getNodeList()) {
+			CyRow row = network.getRow(node);
+			Object key = row.getRaw(keyColumn);
+			if (key != null && !rows.containsKey(key.toString()))
+				rows.put(key.toString(), row);
+		}
+		Map<String, Column> columns = new LinkedHashMap<String, Column>();
+		int missing = 0;
+		for (Map.Entry<String, Map<String, Object>> node: nodes.entrySet()) {
+			CyRow row = rows.get(node.getKey());
+			if (row == null) {
+				missing++;
+				continue;
+			}
+			for (Map.Entry<String, Object> cell: node.getValue().entrySet()) {
+				if (cell.getValue() == null) continue;
+				Column column = columns.get(cell.getKey());
+				if (column == null) {
+					column = new Column(cell.getKey());
+					columns.put(cell.getKey(), column);
+				}
+				column.rows.add(row);
+				column.values.add(cell.getValue());
+			}
+		}
+		for (Column column: columns.values())
+			column.convert(table.getColumn(column.name));
+		long converted = System.nanoTime();
+
+		// Write everything, and make the charts stale once
+		int cells = 0;
+		manager.beginBulkLoad(table);
+		try {
+			for (Column column: columns.values()) {
+				if (cancelled) break;
+				column.create(table);
+				for (int i = 0; i < column.rows.size(); i++)
+					column.rows.get(i).set(column.name, column.values.get(i));
+				cells += column.rows.size();
+				monitor.setProgress((double)cells/Math.max(1, nodes.size()*columns.size()));
+			}
+			if (eventHelper != null)
+				eventHelper.flushPayloadEvents();
+		} finally {
+			manager.endBulkLoad(table, columns.keySet());
+		}
+		long written = System.nanoTime();
+
+		double seconds = (written-start)/1e9;
+		report = String.format("Loaded %d values into %d columns of %d nodes in %.2f seconds "+
+		                       "(%.0f values/second; read %.2f, convert %.2f, write %.2f seconds)",
+		                       cells, columns.size(), nodes.size()-missing, seconds, cells/Math.max(seconds, 1e-9),
+		                       (parsed-start)/1e9, (converted-parsed)/1e9, (written-converted)/1e9);
+		if (missing > 0)
+			report += String.format("; %d node names in the file weren't found in column '%s'", missing, keyColumn);
+		monitor.showMessage(TaskMonitor.Level.INFO, report);
+	}
+
+	public <R> R getResults(Class<? extends R> type) {
+		if (type.equals(String.class)) {
+			return (R)report;
+		}
+		return null;
+	}
+
+	private Map<String, Map<String, Object>> readJson() throws IOException, ParseException {
+		Reader reader = new BufferedReader(new InputStreamReader(new FileInputStream(input), "UTF-8"), 1 << 16);
+		Object value;
+		try {
+			value = JsonParser.parse(reader);
+		} finally {
+			reader.close();
+		}
+		if (!(value instanceof Map))
+			throw new IllegalArgumentException("'"+input+"' must hold an object of node names");
+		Map<String, Map<String, Object>> nodes = new LinkedHashMap<String, Map<String, Object>>();
+		for (Map.Entry<String, Object> node: ((Map<String, Object>)value).entrySet()) {
+			if (!(node.getValue() instanceof Map))
+				throw new IllegalArgumentException("The value of node '"+node.getKey()+"' must be an object of columns");
+			nodes.put(node.getKey(), (Map<String, Object>)node.getValue());
+		}
+		return nodes;
+	}
+
+	private Map<String, Map<String, Object>> readCsv() throws IOException {
+		char delim = ',';
+		if (delimiter != null && delimiter.equalsIgnoreCase("tab"))
+			delim = '\t';
+		else if (delimiter != null && delimiter.length() == 1)
+			delim = delimiter.charAt(0);
+		else if (delimiter != null && delimiter.length() > 0)
+			throw new IllegalArgumentException("The delimiter must be a single character or 'tab'");
+
+		Map<String, Map<String, Object>> nodes = new LinkedHashMap<String, Map<String, Object>>();
+		BufferedReader reader = new BufferedReader(new InputStreamReader(new FileInputStream(input), "UTF-8"),
+		                                           1 << 16);
+		try {
+			String line = reader.readLine();
+			if (line == null)
+				throw new IllegalArgumentException("'"+input+"' is empty");
+			List<String> header = ConvertMatrixTask.split(line, delim);
+			int lineNumber = 1;
+			while ((line = reader.readLine()) != null && !cancelled) {
+				lineNumber++;
+				if (line.trim().length() == 0) continue;
+				List<String> cells = ConvertMatrixTask.split(line, delim);
+				if (cells.size() > header.size())
+					throw new IllegalArgumentException("Line "+lineNumber+" has "+cells.size()+
+					                                   " cells, but there are "+header.size()+" columns");
+				Map<String, Object> values = new LinkedHashMap<String, Object>();
+				for (int i = 1; i < cells.size(); i++) {
+					String cell = cells.get(i).trim();
+					if (cell.length() == 0) continue;
+					values.put(header.get(i), parseCell(cell));
+				}
+				nodes.put(cells.get(0).trim(), values);
+			}
+		} finally {
+			reader.close();
+		}
+		return nodes;
+	}
+
+	// A cell is a list if it's in brackets, and otherwise a String that is
+	// converted once we know the type of its column
+	private static Object parseCell(String cell) {
+		if (cell.length() < 2 || cell.charAt(0) != '[' || cell.charAt(cell.length()-1) != ']')
+			return cell;
+		List<Object> list = new ArrayList<Object>();
+		String elements = cell.substring(1, cell.length()-1);
+		if (elements.trim().length() == 0)
+			return list;
+		for (String element: elements.split(elements.indexOf(';') >= 0 ? ";" : ","))
+			list.add(element.trim());
+		return list;
+	}
+
+	// The rows and values of one column
+	private static class Column {
+		final String name;
+		final List<CyRow> rows = new ArrayList<CyRow>();
+		final List<Object> values = new ArrayList<Object>();
+		Class<?> type = null;
+		Class<?> elementType = null;
+		boolean create = false;
+
+		Column(String name) {
+			this.name = name;
+		}
+
+		// Decide the type of the column, and convert every value to it
+		void convert(CyColumn existing) {
+			if (existing != null) {
+				type = existing.getType();
+				elementType = existing.getListElementType();
+			} else {
+				create = true;
+				inferType();
+			}
+			for (int i = 0; i < values.size(); i++) {
+				Object value = values.get(i);
+				try {
+					if (type == List.class) {
+						if (!(value instanceof List))
+							throw new IllegalArgumentException("it isn't a list");
+						List<Object> list = new ArrayList<Object>(((List<?>)value).size());
+						for (Object element: (List<?>)value)
+							list.add(element == null ? null : convertValue(element, elementType));
+						values.set(i, list);
+					} else {
+						if (value instanceof List)
+							throw new IllegalArgumentException("it is a list");
+						values.set(i, convertValue(value, type));
+					}
+				} catch (IllegalArgumentException e) {
+					String where = (rows.get(i).getRaw(CyNetwork.NAME) == null) ? "" :
+					               " of node '"+rows.get(i).getRaw(CyNetwork.NAME)+"'";
+					throw new IllegalArgumentException("Can't load '"+value+"' into "+describe()+" '"+name+"'"+
+					                                   where+": "+e.getMessage());
+				}
+			}
+		}
+
+		// Numbers (or cells that are all numbers) are Doubles, and anything
+		// else is a String
+		private void inferType() {
+			boolean list = false;
+			boolean numbers = true;
+			boolean booleans = true;
+			for (Object value: values) {
+				if (value instanceof List) {
+					list = true;
+					for (Object element: (List<?>)value) {
+						if (element != null && !isNumber(element)) numbers = false;
+						if (!(element instanceof Boolean)) booleans = false;
+					}
+				} else {
+					if (!isNumber(value)) numbers = false;
+					if (!(value instanceof Boolean)) booleans = false;
+				}
+			}
+			Class<?> valueType = numbers ? Double.class : booleans ? Boolean.class : String.class;
+			if (list) {
+				type = List.class;
+				elementType = valueType;
+			} else {
+				type = valueType;
+			}
+		}
+
+		void create(CyTable table) {
+			if (!create || table.getColumn(name) != null) return;
+			if (type == List.class)
+				table.createListColumn(name, elementType, false);
+			else
+				table.createColumn(name, type, false);
+		}
+
+		private String describe() {
+			if (type == List.class)
+				return "List of "+elementType.getSimpleName()+" column";
+			return type.getSimpleName()+" column";
+		}
+
+		private static boolean isNumber(Object value) {
+			if (value instanceof Number) return true;
+			if (!(value instanceof String)) return false;
+			try {
+				Double.parseDouble((String)value);
+				return true;
+			} catch (NumberFormatException e) {
+				return false;
+			}
+		}
+
+		private static Object convertValue(Object value, Class<?> type) {
+			if (type == String.class)
+				return value.toString();
+			if (type == Boolean.class) {
+				if (value instanceof Boolean) return value;
+				String s = value.toString().trim();
+				if (s.equalsIgnoreCase("true")) return Boolean.TRUE;
+				if (s.equalsIgnoreCase("false")) return Boolean.FALSE;
+				throw new IllegalArgumentException("it isn't true or false");
+			}
+			double d;
+			if (value instanceof Number) {
+				d = ((Number)value).doubleValue();
+			} else if (value instanceof String) {
+				try {
+					d = Double.parseDouble((String)value);
+				} catch (NumberFormatException e) {
+					throw new IllegalArgumentException("it isn't a number");
+				}
+			} else {
+				throw new IllegalArgumentException("it isn't a number");
+			}
+			if (type == Double.class) return d;
+			if (type == Float.class) return (float)d;
+			if (type == Integer.class || type == Long.class) {
+				if (d != Math.rint(d))
+					throw new IllegalArgumentException("it isn't a whole number");
+				return (type == Integer.class) ? (Object)Integer.valueOf((int)d) : (Object)Long.valueOf((long)d);
+			}
+			throw new IllegalArgumentException("columns of this type can't be loaded");
+		}
+	}
+}
@@ -0,0 +1,29 @@
+package edu.ucsf.rbvi.enhancedGraphics.internal.tasks;
+
+import org.cytoscape.application.CyApplicationManager;
+import org.cytoscape.event.CyEventHelper;
+import org.cytoscape.work.AbstractTaskFactory;
+import org.cytoscape.work.TaskIterator;
+
+import edu.ucsf.rbvi.enhancedGraphics.internal.EnhancedGraphicsManager;
+
+public class LoadTaskFactory extends AbstractTaskFactory {
+
+	final CyApplicationManager appManager;
+	final CyEventHelper eventHelper;
+	final EnhancedGraphicsManager manager;
+	public LoadTaskFactory(final CyApplicationManager appManager, final CyEventHelper eventHelper,
+	                       final EnhancedGraphicsManager manager) {
+			this.appManager = appManager;
+			this.eventHelper = eventHelper;
+			this.manager = manager;
+	}
+
+	public boolean isReady() {
+		return true;
+	}
+
+	public TaskIterator createTaskIterator() {
+		return new TaskIterator(new LoadTask(appManager, eventHelper, manager));
+	}
+}
@@ -0,0 +1,50 @@
+package edu.ucsf.rbvi.enhancedGraphics.internal.tasks;
+
+import org.cytoscape.application.CyApplicationManager;
+import org.cytoscape.model.CyNetwork;
+import org.cytoscape.work.AbstractTask;
+import org.cytoscape.work.ObservableTask;
+import org.cytoscape.work.TaskMonitor;
+import org.cytoscape.work.Tunable;
+
+import edu.ucsf.rbvi.enhancedGraphics.internal.EnhancedGraphicsManager;
+
+public class RemoveOffHeapTask extends AbstractTask implements ObservableTask {
+
+	@Tunable(description="Network whose node column was copied (default is the current network)")
+	public CyNetwork network = null;
+
+	@Tunable(description="List column to stop keeping outside the heap")
+	public String column = null;
+
+	final CyApplicationManager appManager;
+	final EnhancedGraphicsManager manager;
+	boolean removed = false;
+
+	public RemoveOffHeapTask(final CyApplicationManager appManager, final EnhancedGraphicsManager manager) {
+			this.appManager = appManager;
+			this.manager = manager;
+	}
+
+	public void run(TaskMonitor monitor) {
+		if (network == null)
+			network = appManager.getCurrentNetwork();
+		if (network == null)
+			throw new IllegalArgumentException("No network");
+		if (column == null || column.trim().length() == 0)
+			throw new IllegalArgumentException("A column must be provided");
+
+		removed = manager.removeOffHeapStore(network.getDefaultNodeTable(), column.trim());
+		if (!removed)
+			monitor.showMessage(TaskMonitor.Level.WARN, "Column '"+column.trim()+"' isn't kept outside the heap");
+	}
+
+	public <R> R getResults(Class<? extends R> type) {
+		if (type.equals(String.class)) {
+			String response = removed ? "Removed the off-heap copy of "+column.trim()+"\n" :
+			                            "Column "+column+" isn't kept outside the heap\n";
+			return (R)response;
+		}
+		return null;
+	}
+}
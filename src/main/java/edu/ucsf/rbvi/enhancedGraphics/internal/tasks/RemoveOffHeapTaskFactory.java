@@ -0,0 +1,25 @@
+package edu.ucsf.rbvi.enhancedGraphics.internal.tasks;
+
+import org.cytoscape.application.CyApplicationManager;
+import org.cytoscape.work.AbstractTaskFactory;
+import org.cytoscape.work.TaskIterator;
+
+import edu.ucsf.rbvi.enhancedGraphics.internal.EnhancedGraphicsManager;
+
+public class RemoveOffHeapTaskFactory extends AbstractTaskFactory {
+
+	final CyApplicationManager appManager;
+	final EnhancedGraphicsManager manager;
+	public RemoveOffHeapTaskFactory(final CyApplicationManager appManager, final EnhancedGraphicsManager manager) {
+			this.appManager = appManager;
+			this.manager = manager;
+	}
+
+	public boolean isReady() {
+		return true;
+	}
+
+	public TaskIterator createTaskIterator() {
+		return new TaskIterator(new RemoveOffHeapTask(appManager, manager));
+	}
+}
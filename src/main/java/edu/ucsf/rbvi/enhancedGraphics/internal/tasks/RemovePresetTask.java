@@ -0,0 +1,38 @@
+package edu.ucsf.rbvi.enhancedGraphics.internal.tasks;
+
+import org.cytoscape.work.AbstractTask;
+import org.cytoscape.work.ObservableTask;
+import org.cytoscape.work.TaskMonitor;
+import org.cytoscape.work.Tunable;
+
+import edu.ucsf.rbvi.enhancedGraphics.internal.EnhancedGraphicsManager;
+
+public class RemovePresetTask extends AbstractTask implements ObservableTask {
+
+	@Tunable(description="Name of the preset to remove")
+	public String name = null;
+
+	final EnhancedGraphicsManager manager;
+	boolean removed = false;
+
+	public RemovePresetTask(final EnhancedGraphicsManager manager) {
+			this.manager = manager;
+	}
+
+	public void run(TaskMonitor monitor) {
+		if (name == null || name.trim().length() == 0)
+			throw new IllegalArgumentException("A preset name must be provided");
+
+		removed = manager.removePreset(name.trim());
+		if (!removed)
+			monitor.showMessage(TaskMonitor.Level.WARN, "No preset named '"+name.trim()+"'");
+	}
+
+	public <R> R getResults(Class<? extends R> type) {
+		if (type.equals(String.class)) {
+			String response = removed ? "Removed preset "+name.trim()+"\n" : "No preset named "+name+"\n";
+			return (R)response;
+		}
+		return null;
+	}
+}
@@ -0,0 +1,40 @@
+package edu.ucsf.rbvi.enhancedGraphics.internal.tasks;
+
+import org.cytoscape.work.AbstractTask;
+import org.cytoscape.work.ObservableTask;
+import org.cytoscape.work.TaskMonitor;
+import org.cytoscape.work.Tunable;
+
+import edu.ucsf.rbvi.enhancedGraphics.internal.EnhancedGraphicsManager;
+import edu.ucsf.rbvi.enhancedGraphics.internal.parse.ParseLimits;
+
+public class SetLimitsTask extends AbstractTask implements ObservableTask {
+
+	@Tunable(description="Maximum number of characters in a spec")
+	public int maxSpecLength = ParseLimits.getMaxSpecLength();
+
+	@Tunable(description="Maximum number of elements in a list of values")
+	public int maxListLength = ParseLimits.getMaxListLength();
+
+	final EnhancedGraphicsManager manager;
+	public SetLimitsTask(final EnhancedGraphicsManager manager) {
+			this.manager = manager;
+	}
+
+	public void run(TaskMonitor monitor) {
+		ParseLimits.setMaxSpecLength(maxSpecLength);
+		ParseLimits.setMaxListLength(maxListLength);
+		// Specs that were compiled with the old limits need to be compiled again
+		manager.clearInterners();
+	}
+
+	public <R> R getResults(Class<? extends R> type) {
+		if (type.equals(String.class)) {
+			String response = "Parse limits: \n";
+			response += "    Maximum spec length: "+ParseLimits.getMaxSpecLength()+"\n";
+			response += "    Maximum list length: "+ParseLimits.getMaxListLength()+"\n";
+			return (R)response;
+		}
+		return null;
+	}
+}
@@ -0,0 +1,62 @@
+package edu.ucsf.rbvi.enhancedGraphics.internal.tasks;
+
+import org.cytoscape.work.AbstractTask;
+import org.cytoscape.work.ObservableTask;
+import org.cytoscape.work.TaskMonitor;
+
+import edu.ucsf.rbvi.enhancedGraphics.internal.ColumnStatistics;
+import edu.ucsf.rbvi.enhancedGraphics.internal.EnhancedGraphicsManager;
+import edu.ucsf.rbvi.enhancedGraphics.internal.GroupAggregates;
+import edu.ucsf.rbvi.enhancedGraphics.internal.NeighborCounts;
+import edu.ucsf.rbvi.enhancedGraphics.internal.OffHeapListStore;
+import edu.ucsf.rbvi.enhancedGraphics.internal.SpecInterner;
+
+public class StatsTask extends AbstractTask implements ObservableTask {
+
+	final EnhancedGraphicsManager manager;
+	public StatsTask(final EnhancedGraphicsManager manager) {
+			this.manager = manager;
+	}
+
+	public void run(TaskMonitor monitor) {}
+
+	public <R> R getResults(Class<? extends R> type) {
+		if (type.equals(String.class)) {
+			String response = "enhancedGraphics statistics: \n";
+			response += "    Data version: "+manager.getDataVersion()+"\n";
+			response += "    Suppressed failures: "+manager.getSuppressedFailures()+"\n";
+			response += "    Reused layers: "+manager.getReusedLayers()+"\n";
+			response += "    Table change events (batches): "+manager.getChangeTracker().getEvents()+
+			            " ("+manager.getChangeTracker().getBatches()+")\n";
+			response += "    Column snapshots taken: "+manager.getSnapshotsTaken()+"\n";
+			response += "    Column statistics (values/min/max/scans):\n";
+			for (ColumnStatistics stats: manager.getAllStatistics()) {
+				response += "        "+stats.getColumns()+": "+stats.getCount()+"/"+stats.getMin()+"/"+
+				            stats.getMax()+"/"+stats.getScans()+"\n";
+			}
+			response += "    Off-heap list columns (rows/live MB/allocated MB/updates/compactions):\n";
+			for (OffHeapListStore store: manager.getOffHeapStores()) {
+				response += "        "+store.getColumn()+": "+store.getRowCount()+"/"+
+				            String.format("%.1f/%.1f", store.getLiveBytes()/1048576.0, store.getAllocatedBytes()/1048576.0)+
+				            "/"+store.getUpdates()+"/"+store.getCompactions()+"\n";
+			}
+			response += "    Neighbor counts (categories/edges/updates):\n";
+			for (NeighborCounts counts: manager.getAllNeighborCounts()) {
+				response += "        "+counts.getColumn()+" of "+counts.getNetwork().getSUID()+": "+
+				            counts.getCategories().size()+"/"+counts.getEdgeCount()+"/"+counts.getUpdates()+"\n";
+			}
+			response += "    Group aggregates (groups/updates/max rescans):\n";
+			for (GroupAggregates aggregates: manager.getAllGroupAggregates()) {
+				response += "        "+aggregates.getColumns()+": "+aggregates.getGroupCount()+"/"+
+				            aggregates.getUpdates()+"/"+aggregates.getRescans()+"\n";
+			}
+			response += "    Interned specs (hits/misses/size):\n";
+			for (SpecInterner<?> interner: manager.getInterners()) {
+				response += "        "+interner.getName()+": "+interner.getHits()+"/"+
+				            interner.getMisses()+"/"+interner.size()+"\n";
+			}
+			return (R)response;
+		}
+		return null;
+	}
+}
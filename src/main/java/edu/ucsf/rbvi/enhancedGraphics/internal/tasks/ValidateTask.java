@@ -0,0 +1,266 @@
+package edu.ucsf.rbvi.enhancedGraphics.internal.tasks;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.cytoscape.application.CyApplicationManager;
+import org.cytoscape.model.CyColumn;
+import org.cytoscape.model.CyNetwork;
+import org.cytoscape.model.CyNode;
+import org.cytoscape.view.presentation.customgraphics.CyCustomGraphics;
+import org.cytoscape.view.presentation.customgraphics.CyCustomGraphicsFactory;
+import org.cytoscape.work.AbstractTask;
+import org.cytoscape.work.ObservableTask;
+import org.cytoscape.work.TaskMonitor;
+import org.cytoscape.work.Tunable;
+
+import edu.ucsf.rbvi.enhancedGraphics.internal.AbstractEnhancedCustomGraphics;
+import edu.ucsf.rbvi.enhancedGraphics.internal.SpecCompiler;
+import edu.ucsf.rbvi.enhancedGraphics.internal.parse.ParseLimits;
+
+/**
+ * Parse every distinct spec in a node column and report the errors and parse
+ * times, so broken or expensive specs can be found before a style that uses
+ * the column is applied.  The distinct specs are parsed in parallel, so the
+ * times include some contention between the threads.
+ */
+public class ValidateTask extends AbstractTask implements ObservableTask {
+	private static final String UNKNOWN = "(unknown)";
+	private static final int MAX_VALUE_LENGTH = 200;
+
+	@Tunable(description="Network to validate (default is the current network)")
+	public CyNetwork network = null;
+
+	@Tunable(description="Node column containing the specs")
+	public String column = null;
+
+	final CyApplicationManager appManager;
+	final Map<String, CyCustomGraphicsFactory> factories;
+	String report = null;
+
+	public ValidateTask(final CyApplicationManager appManager, final List<CyCustomGraphicsFactory> charts) {
+			this.appManager = appManager;
+			this.factories = new HashMap<String, CyCustomGraphicsFactory>();
+			for (CyCustomGraphicsFactory chart: charts)
+				factories.put(chart.getPrefix(), chart);
+	}
+
+	public void run(TaskMonitor monitor) throws Exception {
+		if (network == null)
+			network = appManager.getCurrentNetwork();
+		if (network == null)
+			throw new IllegalArgumentException("No network to validate");
+		if (column == null || column.length() == 0)
+			throw new IllegalArgumentException("A column must be provided");
+		CyColumn col = network.getDefaultNodeTable().getColumn(column);
+		if (col == null)
+			throw new IllegalArgumentException("Node column '"+column+"' doesn't exist");
+		if (!String.class.equals(col.getType()))
+			throw new IllegalArgumentException("Node column '"+column+"' isn't a String column");
+
+		monitor.setTitle("Validating specs in column '"+column+"'");
+
+		// Count the nodes that use each distinct spec, keeping the order in
+		// which we first saw them so "first offending value" means something
+		final Map<String, Integer> specs = new LinkedHashMap<String, Integer>();
+		for (CyNode node: network.getNodeList()) {
+			String spec = network.getRow(node).get(column, String.class);
+			if (spec == null || spec.trim().length() == 0) continue;
+			Integer count = specs.get(spec);
+			specs.put(spec, count == null ? 1 : count+1);
+		}
+
+		final String[] distinct = specs.keySet().toArray(new String[specs.size()]);
+		final SpecResult[] results = new SpecResult[distinct.length];
+		int nThreads = Math.max(1, Math.min(Runtime.getRuntime().availableProcessors(), distinct.length));
+		int nChunks = Math.min(distinct.length, nThreads*4);
+		ExecutorService pool = Executors.newFixedThreadPool(nThreads);
+		try {
+			List<Future<?>> futures = new ArrayList<Future<?>>(nChunks);
+			for (int chunk = 0; chunk < nChunks; chunk++) {
+				final int start = (int)((long)distinct.length*chunk/nChunks);
+				final int end = (int)((long)distinct.length*(chunk+1)/nChunks);
+				futures.add(pool.submit(new Callable<Void>() {
+					public Void call() {
+						for (int i = start; i < end && !cancelled; i++)
+							results[i] = validate(distinct[i]);
+						return null;
+					}
+				}));
+			}
+			for (int chunk = 0; chunk < nChunks; chunk++) {
+				futures.get(chunk).get();
+				monitor.setProgress((double)(chunk+1)/nChunks);
+			}
+		} catch (ExecutionException e) {
+			throw new RuntimeException("Validation failed: "+e.getCause(), e.getCause());
+		} finally {
+			pool.shutdownNow();
+		}
+		if (cancelled) return;
+
+		report = buildReport(distinct, specs, results);
+		int nInvalid = 0;
+		for (SpecResult result: results)
+			if (result.error != null) nInvalid++;
+		monitor.showMessage(nInvalid == 0 ? TaskMonitor.Level.INFO : TaskMonitor.Level.WARN,
+		                    nInvalid+" of "+distinct.length+" distinct specs in column '"+column+"' are invalid");
+	}
+
+	public <R> R getResults(Class<? extends R> type) {
+		if (type.equals(String.class)) {
+			return (R)report;
+		}
+		return null;
+	}
+
+	// Parse one spec the same way Cytoscape does: the text before the first
+	// ':' selects the factory, and the rest is given to the factory
+	private SpecResult validate(String spec) {
+		String input = spec.trim();
+		int colon = input.indexOf(':');
+		String prefix = (colon < 0) ? "" : input.substring(0, colon).trim();
+		CyCustomGraphicsFactory factory = factories.get(prefix);
+		if (factory == null)
+			return new SpecResult(UNKNOWN, "Not an enhancedGraphics spec", 0L);
+
+		if (input.length() > ParseLimits.getMaxSpecLength())
+			return new SpecResult(prefix, "Spec is "+input.length()+" characters, more than the limit of "+
+			                      ParseLimits.getMaxSpecLength(), 0L);
+
+		String error = null;
+		long start = System.nanoTime();
+		try {
+			// Compile the spec ourselves: going through the factory's intern table
+			// would time a lookup for specs that are already in use, and would
+			// fill the table with the ones that aren't
+			CyCustomGraphics cg = (factory instanceof SpecCompiler) ?
+			                      ((SpecCompiler)factory).compile(input.substring(colon+1)) :
+			                      factory.getInstance(input.substring(colon+1));
+			if (cg == null)
+				error = "Unable to create "+prefix;
+			else if (cg instanceof AbstractEnhancedCustomGraphics)
+				error = ((AbstractEnhancedCustomGraphics)cg).getError();
+		} catch (RuntimeException e) {
+			error = e.toString();
+		}
+		return new SpecResult(prefix, error, System.nanoTime()-start);
+	}
+
+	private String buildReport(String[] distinct, Map<String, Integer> specs, SpecResult[] results) {
+		Map<String, TypeSummary> types = new LinkedHashMap<String, TypeSummary>();
+		long[] times = new long[results.length];
+		int nTimes = 0;
+		int nNodes = 0;
+		int nInvalid = 0;
+		int nInvalidNodes = 0;
+		String slowest = null;
+		long slowestTime = -1L;
+		for (int i = 0; i < results.length; i++) {
+			SpecResult result = results[i];
+			int count = specs.get(distinct[i]);
+			TypeSummary summary = types.get(result.type);
+			if (summary == null) {
+				summary = new TypeSummary();
+				types.put(result.type, summary);
+			}
+			summary.specs++;
+			summary.nodes += count;
+			nNodes += count;
+			if (result.error != null) {
+				if (summary.firstError == null) {
+					summary.firstError = result.error;
+					summary.firstValue = distinct[i];
+				}
+				summary.invalidSpecs++;
+				summary.invalidNodes += count;
+				nInvalid++;
+				nInvalidNodes += count;
+			}
+			if (!UNKNOWN.equals(result.type)) {
+				times[nTimes++] = result.time;
+				if (result.time > summary.maxTime) summary.maxTime = result.time;
+				if (result.time > slowestTime) {
+					slowestTime = result.time;
+					slowest = distinct[i];
+				}
+			}
+		}
+
+		StringBuilder sb = new StringBuilder();
+		sb.append("Validated ").append(distinct.length).append(" distinct specs used by ")
+		  .append(nNodes).append(" nodes in column '").append(column).append("': ")
+		  .append(nInvalid).append(" invalid specs used by ").append(nInvalidNodes).append(" nodes\n");
+		if (nTimes > 0) {
+			Arrays.sort(times, 0, nTimes);
+			sb.append("Parse time per spec: p50=").append(formatTime(percentile(times, nTimes, 50)))
+			  .append(" p90=").append(formatTime(percentile(times, nTimes, 90)))
+			  .append(" p99=").append(formatTime(percentile(times, nTimes, 99)))
+			  .append(" max=").append(formatTime(times[nTimes-1])).append('\n');
+			sb.append("Slowest spec: ").append(abbreviate(slowest)).append('\n');
+		}
+		for (String type: types.keySet()) {
+			TypeSummary summary = types.get(type);
+			sb.append("    ").append(type).append(": ").append(summary.specs).append(" specs, ")
+			  .append(summary.nodes).append(" nodes, ").append(summary.invalidSpecs).append(" invalid specs (")
+			  .append(summary.invalidNodes).append(" nodes)");
+			if (!UNKNOWN.equals(type))
+				sb.append(", max parse time ").append(formatTime(summary.maxTime));
+			sb.append('\n');
+			if (summary.firstError != null) {
+				sb.append("        first error: ").append(summary.firstError).append('\n');
+				sb.append("        in: ").append(abbreviate(summary.firstValue)).append('\n');
+			}
+		}
+		return sb.toString();
+	}
+
+	// Nearest-rank percentile of the first n (sorted) times
+	private static long percentile(long[] sorted, int n, int percent) {
+		int rank = (int)Math.ceil(percent/100.0*n);
+		return sorted[Math.max(0, rank-1)];
+	}
+
+	private static String formatTime(long nanos) {
+		if (nanos < 1000000L)
+			return String.format("%.1fus", nanos/1000.0);
+		return String.format("%.2fms", nanos/1000000.0);
+	}
+
+	private static String abbreviate(String value) {
+		if (value.length() <= MAX_VALUE_LENGTH)
+			return "\""+value+"\"";
+		return "\""+value.substring(0, MAX_VALUE_LENGTH)+"...\" ("+value.length()+" characters)";
+	}
+
+	private static class SpecResult {
+		final String type;
+		final String error;
+		final long time;
+
+		SpecResult(String type, String error, long time) {
+			this.type = type;
+			this.error = error;
+			this.time = time;
+		}
+	}
+
+	private static class TypeSummary {
+		int specs = 0;
+		int nodes = 0;
+		int invalidSpecs = 0;
+		int invalidNodes = 0;
+		long maxTime = 0L;
+		String firstError = null;
+		String firstValue = null;
+	}
+}
@@ -0,0 +1,26 @@
+package edu.ucsf.rbvi.enhancedGraphics.internal.tasks;
+
+import java.util.List;
+
+import org.cytoscape.application.CyApplicationManager;
+import org.cytoscape.view.presentation.customgraphics.CyCustomGraphicsFactory;
+import org.cytoscape.work.AbstractTaskFactory;
+import org.cytoscape.work.TaskIterator;
+
+public class ValidateTaskFactory extends AbstractTaskFactory {
+
+	final CyApplicationManager appManager;
+	final List<CyCustomGraphicsFactory> charts;
+	public ValidateTaskFactory(final CyApplicationManager appManager, final List<CyCustomGraphicsFactory> charts) {
+			this.appManager = appManager;
+			this.charts = charts;
+	}
+
+	public boolean isReady() {
+		return true;
+	}
+
+	public TaskIterator createTaskIterator() {
+		return new TaskIterator(new ValidateTask(appManager, charts));
+	}
+}
@@ -0,0 +1,223 @@
+package edu.ucsf.rbvi.enhancedGraphics.internal.charts;
+
+import java.awt.Shape;
+import java.awt.geom.AffineTransform;
+import java.awt.geom.PathIterator;
+import java.awt.geom.Rectangle2D;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.lang.reflect.Field;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.List;
+import java.util.Locale;
+
+import org.cytoscape.model.CyNetwork;
+import org.cytoscape.model.CyNode;
+import org.cytoscape.model.CyRow;
+import org.cytoscape.model.CyTable;
+import org.cytoscape.view.model.CyNetworkView;
+import org.cytoscape.view.model.View;
+import org.cytoscape.view.presentation.customgraphics.CustomGraphicLayer;
+import org.cytoscape.view.presentation.customgraphics.PaintedShape;
+
+import junit.framework.TestCase;
+
+import edu.ucsf.rbvi.enhancedGraphics.internal.EnhancedGraphicsManager;
+import edu.ucsf.rbvi.enhancedGraphics.internal.charts.circos.CircosChart;
+import edu.ucsf.rbvi.enhancedGraphics.internal.charts.circos.CircosChartSpec;
+import edu.ucsf.rbvi.enhancedGraphics.internal.charts.pie.PieChart;
+import edu.ucsf.rbvi.enhancedGraphics.internal.charts.pie.PieChartSpec;
+
+/**
+ * Pie and circos charts whose values all come from the spec lay their slices
+ * out once.  Check that the layers they create are the same on every call,
+ * including after the renderer has transformed the layers it was given, and
+ * that without a manager (so with no layer cache) creating the layers
+ * allocates little more than the layers themselves.
+ */
+public class StaticLayersTest extends TestCase {
+	private static final String PIE = "valuelist=\"1,2,0,3.5\" colorlist=\"red,green,blue,yellow\" "+
+	                                  "labellist=\"a,b,c,d\" arcstart=30";
+	private static final String CIRCOS = "valuelist=\"[1,2,3],[4,-1,5]\" colorlist=\"[red,green,blue],[cyan,magenta,yellow]\" "+
+	                                     "labellist=\"a,b,c\" firstarc=0.4 arcwidth=0.2";
+	// Without labels, whose outlines would swamp the allocation budget
+	private static final String PIE_SLICES = "valuelist=\"1,2,0,3.5,4,5,6,7,8,9,10,11\" "+
+	                                         "colorlist=\"red,green,blue,yellow,cyan,magenta,black,white,gray,pink,orange,red\"";
+	private static final String CIRCOS_RINGS = "valuelist=\"[1,2,3],[4,-1,5]\" "+
+	                                           "colorlist=\"[red,green,blue],[cyan,magenta,yellow]\" firstarc=0.4 arcwidth=0.2";
+	private static final int CALLS = 5;
+	// What one call to createLayers may allocate besides its layers: the list
+	// and the values and colors from the spec.  Laying the slices out again on
+	// every call would cost a few hundred bytes more.
+	private static final int PIE_BYTES_PER_LAYER = 160;
+	private static final int CIRCOS_BYTES_PER_LAYER = 224;
+	private static final int BYTES_PER_CALL = 64;
+
+	private EnhancedGraphicsManager manager;
+	private CyNetworkView networkView;
+	private View<CyNode> nodeView;
+
+	protected void setUp() {
+		manager = new EnhancedGraphicsManager();
+		final CyTable table = mock(CyTable.class, 1L, null);
+		final CyRow row = mock(CyRow.class, null, null);
+		final CyNode node = mock(CyNode.class, 2L, null);
+		final CyNetwork network = mock(CyNetwork.class, 3L, new InvocationHandler() {
+			public Object invoke(Object proxy, Method method, Object[] args) {
+				if (method.getName().equals("getRow")) return row;
+				if (method.getName().equals("getDefaultNodeTable")) return table;
+				return null;
+			}
+		});
+		networkView = mock(CyNetworkView.class, 4L, new InvocationHandler() {
+			public Object invoke(Object proxy, Method method, Object[] args) {
+				return method.getName().equals("getModel") ? network : null;
+			}
+		});
+		nodeView = mock(View.class, 5L, new InvocationHandler() {
+			public Object invoke(Object proxy, Method method, Object[] args) {
+				return method.getName().equals("getModel") ? node : null;
+			}
+		});
+	}
+
+	protected void tearDown() {
+		manager.dispose();
+	}
+
+	public void testPieLayers() {
+		assertStable(new PieChart(new PieChartSpec(manager.parseArguments(PIE)), manager));
+		PieChart chart = new PieChart(new PieChartSpec(manager.parseArguments(PIE)), null);
+		Object layout = field(chart, "layout");
+		assertNotNull("A static pie chart should lay its slices out once", layout);
+		assertStable(chart);
+		assertSame(layout, field(chart, "layout"));
+
+		chart = new PieChart(new PieChartSpec(manager.parseArguments(PIE_SLICES)), null);
+		assertCheap(chart, PIE_BYTES_PER_LAYER);
+	}
+
+	public void testCircosLayers() {
+		assertStable(new CircosChart(new CircosChartSpec(manager.parseArguments(CIRCOS)), manager));
+		CircosChart chart = new CircosChart(new CircosChartSpec(manager.parseArguments(CIRCOS)), null);
+		List<?> layouts = (List<?>)field(chart, "ringLayouts");
+		assertNotNull("A static circos chart should lay its rings out once", layouts);
+		List<?> before = new java.util.ArrayList<Object>(layouts);
+		assertStable(chart);
+		assertSame(layouts, field(chart, "ringLayouts"));
+		for (int ring = 0; ring < before.size(); ring++)
+			assertSame(before.get(ring), layouts.get(ring));
+
+		chart = new CircosChart(new CircosChartSpec(manager.parseArguments(CIRCOS_RINGS)), null);
+		assertCheap(chart, CIRCOS_BYTES_PER_LAYER);
+	}
+
+	// Call getLayers several times, transforming the layers each time the way
+	// the renderer does, and check that the layers don't change
+	private void assertStable(AbstractChartCustomGraphics<?> chart) {
+		List<? extends CustomGraphicLayer> layers = chart.getLayers(networkView, nodeView);
+		assertNotNull(layers);
+		assertFalse(layers.isEmpty());
+		String expected = describe(layers);
+
+		AffineTransform xform = AffineTransform.getTranslateInstance(35.0, -12.0);
+		xform.scale(0.4, 0.4);
+		String transformed = null;
+		for (int call = 0; call < CALLS; call++) {
+			layers = chart.getLayers(networkView, nodeView);
+			assertEquals("getLayers call "+call, expected, describe(layers));
+			String t = describe(transform(layers, xform));
+			if (transformed != null)
+				assertEquals("transformed layers of call "+call, transformed, t);
+			transformed = t;
+		}
+		assertFalse(expected.equals(transformed));
+	}
+
+	// Without a manager every call creates the layers again, which should
+	// allocate little more than the layers themselves
+	private void assertCheap(AbstractChartCustomGraphics<?> chart, int bytesPerLayer) {
+		ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+		if (!(threads instanceof com.sun.management.ThreadMXBean)) return;
+		com.sun.management.ThreadMXBean allocations = (com.sun.management.ThreadMXBean)threads;
+		if (!allocations.isThreadAllocatedMemorySupported() || !allocations.isThreadAllocatedMemoryEnabled())
+			return;
+
+		long thread = Thread.currentThread().getId();
+		for (int call = 0; call < 1000; call++)
+			chart.getLayers(networkView, nodeView);
+		int calls = 10000;
+		long before = allocations.getThreadAllocatedBytes(thread);
+		for (int call = 0; call < calls; call++)
+			chart.getLayers(networkView, nodeView);
+		long perCall = (allocations.getThreadAllocatedBytes(thread)-before)/calls;
+		int layers = chart.getLayers(networkView, nodeView).size();
+		long budget = layers*bytesPerLayer+BYTES_PER_CALL;
+		assertTrue("Creating "+layers+" layers allocated "+perCall+" bytes, over the budget of "+budget,
+		           perCall <= budget);
+	}
+
+	private static Object field(Object object, String name) {
+		try {
+			Field field = object.getClass().getDeclaredField(name);
+			field.setAccessible(true);
+			return field.get(object);
+		} catch (ReflectiveOperationException e) {
+			throw new AssertionError(e);
+		}
+	}
+
+	private static List<CustomGraphicLayer> transform(List<? extends CustomGraphicLayer> layers, AffineTransform xform) {
+		List<CustomGraphicLayer> transformed = new java.util.ArrayList<CustomGraphicLayer>();
+		for (CustomGraphicLayer layer: layers)
+			transformed.add(layer.transform(xform));
+		return transformed;
+	}
+
+	// The bounds, paint and outline of each layer
+	private static String describe(List<? extends CustomGraphicLayer> layers) {
+		StringBuilder sb = new StringBuilder();
+		for (CustomGraphicLayer layer: layers) {
+			sb.append(layer.getClass().getSimpleName()).append(' ').append(describe(layer.getBounds2D()));
+			if (layer instanceof PaintedShape) {
+				PaintedShape painted = (PaintedShape)layer;
+				sb.append(" paint=").append(painted.getPaint());
+				Shape shape = painted.getShape();
+				if (shape != null) {
+					double[] coords = new double[6];
+					for (PathIterator path = shape.getPathIterator(null); !path.isDone(); path.next()) {
+						int type = path.currentSegment(coords);
+						sb.append(' ').append(type);
+						for (int i = 0; i < 6; i++)
+							sb.append(String.format(Locale.ROOT, ",%.4f", coords[i]));
+					}
+				}
+			}
+			sb.append('\n');
+		}
+		return sb.toString();
+	}
+
+	private static String describe(Rectangle2D bounds) {
+		return String.format(Locale.ROOT, "[%.4f,%.4f %.4fx%.4f]",
+		                     bounds.getX(), bounds.getY(), bounds.getWidth(), bounds.getHeight());
+	}
+
+	// A mock with an SUID, identity equality, and answers from the handler
+	@SuppressWarnings("unchecked")
+	private static <T> T mock(final Class<T> type, final Long suid, final InvocationHandler handler) {
+		return (T)Proxy.newProxyInstance(StaticLayersTest.class.getClassLoader(), new Class<?>[] {type},
+		                                 new InvocationHandler() {
+			public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+				String name = method.getName();
+				if (name.equals("getSUID")) return suid;
+				if (name.equals("hashCode")) return System.identityHashCode(proxy);
+				if (name.equals("equals")) return proxy == args[0];
+				if (name.equals("toString")) return type.getSimpleName()+" "+suid;
+				return (handler == null) ? null : handler.invoke(proxy, method, args);
+			}
+		});
+	}
+}
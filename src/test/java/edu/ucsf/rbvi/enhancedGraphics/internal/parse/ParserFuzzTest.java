@@ -0,0 +1,242 @@
+package edu.ucsf.rbvi.enhancedGraphics.internal.parse;
+
+import java.text.ParseException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Random;
+
+import junit.framework.TestCase;
+
+/**
+ * Fuzz and performance tests for the spec parsers.  The fuzz tests parse
+ * random specs and lists and check that we get back what they were made
+ * from (with Double.parseDouble for the numbers).  The performance tests
+ * run pathological inputs of about a megabyte and check that each stays
+ * within a time budget per character, which a quadratic parser misses by
+ * orders of magnitude.
+ */
+public class ParserFuzzTest extends TestCase {
+	// Generous enough for a slow machine; the quadratic versions took over
+	// 2000 ns per character at this size
+	private static final double NS_PER_CHAR_BUDGET = 250.0;
+	private static final int SIZE = 1000000;
+	private static final int FUZZ_RUNS = 20000;
+
+	private interface Parse {
+		void run(String input) throws Exception;
+	}
+
+	protected void setUp() {
+		// The pathological inputs are bigger than the default limits
+		ParseLimits.setMaxSpecLength(4*SIZE);
+		ParseLimits.setMaxListLength(SIZE);
+	}
+
+	protected void tearDown() {
+		ParseLimits.setMaxSpecLength(ParseLimits.DEFAULT_MAX_SPEC_LENGTH);
+		ParseLimits.setMaxListLength(ParseLimits.DEFAULT_MAX_LIST_LENGTH);
+	}
+
+	public void testEscapedQuotes() {
+		Map<String, String> args = SpecLexer.parse("label=\"say \\\"hi\\\"\" colorlist='a\\'b' x=\"\\101\\tz\"");
+		assertEquals("say \"hi\"", args.get("label"));
+		assertEquals("A\tz", args.get("x"));
+	}
+
+	public void testUnbalancedQuote() {
+		Map<String, String> args = SpecLexer.parse("valuelist=\"1,2,3\nlabel=x");
+		assertEquals("1,2,3", args.get("valuelist"));
+		assertEquals("x", args.get("label"));
+		assertEquals("1,2", SpecLexer.parse("valuelist=\"1,2").get("valuelist"));
+	}
+
+	public void testEscapedCommas() {
+		assertEquals(Arrays.asList("a,b", "c"), SpecLexer.splitList("a\\,b,c"));
+		assertEquals(Arrays.asList("x,,y", "z"), SpecLexer.splitList("x\\,\\,y,z"));
+		assertEquals(Arrays.asList("a", "", ""), SpecLexer.splitList("a,,"));
+	}
+
+	public void testSpecLengthLimit() {
+		ParseLimits.setMaxSpecLength(10);
+		assertTrue(SpecLexer.parse("valuelist=\"1,2,3\"").isEmpty());
+		assertEquals("1", SpecLexer.parse("a=1").get("a"));
+	}
+
+	public void testListLengthLimit() throws ParseException {
+		ParseLimits.setMaxListLength(3);
+		assertEquals(3, NumberListParser.parse("1,2,3").length);
+		try {
+			NumberListParser.parse("1,2,3,4");
+			fail("A list longer than the limit should be an error");
+		} catch (ParseException e) {}
+		try {
+			NumberListParser.parseNested("[1],[2],[3],[4]");
+			fail("A nested list longer than the limit should be an error");
+		} catch (ParseException e) {}
+	}
+
+	public void testQuotedStringFuzz() {
+		Random random = new Random(1);
+		for (int run = 0; run < FUZZ_RUNS; run++) {
+			String value = randomString(random, "ab \\\"',=[]", random.nextInt(20));
+			StringBuilder quoted = new StringBuilder("k=\"");
+			for (int i = 0; i < value.length(); i++) {
+				char c = value.charAt(i);
+				if (c == '"' || c == '\\') quoted.append('\\');
+				quoted.append(c);
+			}
+			quoted.append("\" other=1");
+			Map<String, String> args = SpecLexer.parse(quoted.toString());
+			assertEquals(quoted.toString(), value, args.get("k"));
+			assertEquals("1", args.get("other"));
+		}
+	}
+
+	public void testSplitListFuzz() {
+		Random random = new Random(2);
+		for (int run = 0; run < FUZZ_RUNS; run++) {
+			List<String> elements = new ArrayList<String>();
+			int count = 1+random.nextInt(6);
+			StringBuilder list = new StringBuilder();
+			for (int i = 0; i < count; i++) {
+				String element = randomString(random, "ab ,", random.nextInt(5));
+				elements.add(element);
+				if (i > 0) list.append(',');
+				list.append(element.replace(",", "\\,"));
+			}
+			if (list.length() == 0) continue;
+			assertEquals(list.toString(), elements, SpecLexer.splitList(list.toString()));
+		}
+	}
+
+	public void testLexerRandomInput() {
+		// Anything at all must parse to something, without an exception
+		Random random = new Random(3);
+		for (int run = 0; run < FUZZ_RUNS; run++) {
+			String input = randomString(random, "ab=\"'\\,[] \n$", random.nextInt(40));
+			assertNotNull(SpecLexer.parse(input));
+			assertNotNull(SpecLexer.splitList(input));
+		}
+	}
+
+	public void testNumberListFuzz() throws ParseException {
+		Random random = new Random(4);
+		for (int run = 0; run < FUZZ_RUNS; run++) {
+			double[] expected = new double[1+random.nextInt(8)];
+			StringBuilder list = new StringBuilder();
+			for (int i = 0; i < expected.length; i++) {
+				String number = randomNumber(random);
+				expected[i] = Double.parseDouble(number);
+				if (i > 0) list.append(',');
+				list.append(random.nextInt(4) == 0 ? " "+number+" " : number);
+			}
+			assertTrue(list.toString(), Arrays.equals(expected, NumberListParser.parse(list.toString())));
+		}
+	}
+
+	public void testNestedListFuzz() throws ParseException {
+		Random random = new Random(5);
+		for (int run = 0; run < FUZZ_RUNS; run++) {
+			int rings = 1+random.nextInt(5);
+			double[][] expected = new double[rings][];
+			StringBuilder list = new StringBuilder("[");
+			for (int ring = 0; ring < rings; ring++) {
+				expected[ring] = new double[1+random.nextInt(4)];
+				if (ring > 0) list.append("],[");
+				for (int i = 0; i < expected[ring].length; i++) {
+					String number = randomNumber(random);
+					expected[ring][i] = Double.parseDouble(number);
+					if (i > 0) list.append(',');
+					list.append(number);
+				}
+			}
+			// Trailing empty rings are dropped
+			for (int i = random.nextInt(3); i > 0; i--)
+				list.append("],[");
+			list.append(']');
+			assertTrue(list.toString(), Arrays.deepEquals(expected, NumberListParser.parseNested(list.toString())));
+		}
+	}
+
+	public void testEscapedQuotesTime() throws Exception {
+		assertLinear("escaped quoted strings", repeat("x=\"\\n\\\"\" ", SIZE/9), new Parse() {
+			public void run(String input) { SpecLexer.parse(input); }
+		});
+	}
+
+	public void testEscapedCommasTime() throws Exception {
+		assertLinear("\\, runs in a list", repeat("a\\,\\,b,", SIZE/7), new Parse() {
+			public void run(String input) { SpecLexer.splitList(input); }
+		});
+	}
+
+	public void testUnbalancedQuoteTime() throws Exception {
+		assertLinear("unbalanced quote", "valuelist=\""+repeat("1,", SIZE/2), new Parse() {
+			public void run(String input) { SpecLexer.parse(input); }
+		});
+	}
+
+	public void testMegabyteValueListTime() throws Exception {
+		String spec = "valuelist=\""+repeat("1.25,", SIZE/5)+"\"";
+		assertEquals(SIZE/5, NumberListParser.parse(SpecLexer.parse(spec).get("valuelist")).length);
+		assertLinear("1MB valuelist", spec, new Parse() {
+			public void run(String input) throws Exception {
+				NumberListParser.parse(SpecLexer.parse(input).get("valuelist"));
+			}
+		});
+	}
+
+	public void testNestedGroupsTime() throws Exception {
+		String groups = "["+repeat("1,2],[", SIZE/6)+"3]";
+		assertEquals(SIZE/6+1, NumberListParser.parseNested(groups).length);
+		assertLinear("circos ],[ groups", groups, new Parse() {
+			public void run(String input) throws Exception { NumberListParser.parseNested(input); }
+		});
+		String empty = "[1],["+repeat("],[", SIZE/3)+"]";
+		assertEquals(1, NumberListParser.parseNested(empty).length);
+		assertLinear("circos empty ],[ groups", empty, new Parse() {
+			public void run(String input) throws Exception { NumberListParser.parseNested(input); }
+		});
+	}
+
+	// Time the best of a few runs, after warming up
+	private static void assertLinear(String name, String input, Parse parse) throws Exception {
+		long best = Long.MAX_VALUE;
+		for (int run = 0; run < 5; run++) {
+			long start = System.nanoTime();
+			parse.run(input);
+			best = Math.min(best, System.nanoTime()-start);
+		}
+		double perChar = (double)best/input.length();
+		assertTrue(String.format("%s took %.1f ns per character, over the budget of %.1f",
+		                         name, perChar, NS_PER_CHAR_BUDGET), perChar <= NS_PER_CHAR_BUDGET);
+	}
+
+	private static String repeat(String s, int count) {
+		StringBuilder sb = new StringBuilder(s.length()*count);
+		for (int i = 0; i < count; i++)
+			sb.append(s);
+		return sb.toString();
+	}
+
+	private static String randomString(Random random, String alphabet, int length) {
+		char[] chars = new char[length];
+		for (int i = 0; i < length; i++)
+			chars[i] = alphabet.charAt(random.nextInt(alphabet.length()));
+		return new String(chars);
+	}
+
+	private static String randomNumber(Random random) {
+		switch (random.nextInt(6)) {
+			case 0: return Integer.toString(random.nextInt(2000)-1000);
+			case 1: return Double.toString(random.nextGaussian()*Math.pow(10, random.nextInt(40)-20));
+			case 2: return String.format(Locale.ROOT, "%.3f", random.nextDouble()*100);
+			case 3: return (random.nextBoolean() ? "-" : "")+random.nextInt(100)+"e"+(random.nextInt(20)-10);
+			case 4: return Long.toString(random.nextLong());
+			default: return "0."+random.nextInt(1000000);
+		}
+	}
+}